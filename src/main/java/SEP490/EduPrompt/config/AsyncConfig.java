@@ -9,6 +9,7 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Configuration for async processing and transaction management
@@ -35,6 +36,24 @@ public class AsyncConfig {
         return executor;
     }
 
+    /**
+     * Single worker for size-triggered usage log flushes
+     * One queued flush is enough, extra triggers are dropped (the pending flush drains them)
+     */
+    @Bean(name = "usageLogExecutor")
+    public Executor usageLogExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setThreadNamePrefix("usage-log-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
     /**
      * TransactionTemplate for programmatic transaction management
      */
@@ -1,6 +1,7 @@
 package SEP490.EduPrompt.config;
 
 import SEP490.EduPrompt.filter.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -43,6 +44,8 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .authorizeHttpRequests(auth -> auth
+                        // SSE completion re-dispatches asynchronously, the original request was already authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/BE/api/auth/**", "/api/auth/**").permitAll()
                         .requestMatchers("/BE/api/prompts-share/shared/**", "/api/prompts-share/shared/**").permitAll()
                         .requestMatchers(
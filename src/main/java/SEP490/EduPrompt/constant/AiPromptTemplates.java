@@ -0,0 +1,224 @@
+package SEP490.EduPrompt.constant;
+
+import SEP490.EduPrompt.util.PromptTemplate;
+
+/**
+ * User prompts sent to the AI providers, compiled once when the class loads
+ * - Slot values are passed to render in the order the slots are listed in compile
+ */
+public class AiPromptTemplates {
+
+    // all six scoring dimensions in one structured call
+    public static final PromptTemplate COMBINED_SCORE = PromptTemplate.compile("""
+            Evaluate this teacher's prompt:
+
+            {{promptText}}
+
+            OFFICIAL CURRICULUM CONTEXT:
+            {{curriculumContext}}
+
+            Score each dimension:
+            - instructionClarity (0-40): is the AI's role crystal clear, is the task unambiguous,
+              would different AI models interpret it similarly?
+            - contextCompleteness (0-30): enough background for high-quality educational content?
+              Consider subject details, student characteristics, teaching environment.
+            - outputSpecification (0-50): would a teacher know exactly what format/structure to expect?
+            - constraintStrength (0-60): clear guardrails against hallucination, off-topic or inaccurate content?
+            - curriculumAlignment (0-100): correct lesson/chapter (30), matches learning objectives (30),
+              scope fits the grade level (20), terminology accurate per curriculum (20).
+              Use null when no curriculum context is given.
+            - pedagogicalQuality (0-80): active learning, differentiation, assessment integration,
+              modern teaching methodologies, Bloom's taxonomy level.
+
+            Return ONLY a JSON object with these six numeric fields.
+            """, "promptText", "curriculumContext");
+
+    // single-dimension scoring, used for what the combined call could not score
+    public static final PromptTemplate INSTRUCTION_CLARITY_SCORE = PromptTemplate.compile("""
+            Evaluate the clarity of this instruction (0-40 points):
+
+            {{promptText}}
+
+            Consider:
+            - Is the AI's role crystal clear?
+            - Is the task unambiguous?
+            - Would different AI models interpret this similarly?
+
+            Return ONLY a JSON object:
+            {"score": <0-40>, "reason": "<brief explanation>"}
+            """, "promptText");
+
+    public static final PromptTemplate CONTEXT_COMPLETENESS_SCORE = PromptTemplate.compile("""
+            Rate the contextual richness (0-30 points):
+
+            {{promptText}}
+
+            Does it provide enough background for generating high-quality educational content?
+            Consider: subject details, student characteristics, teaching environment.
+
+            Return ONLY a JSON object:
+            {"score": <0-30>, "reason": "<brief explanation>"}
+            """, "promptText");
+
+    public static final PromptTemplate OUTPUT_SPECIFICATION_SCORE = PromptTemplate.compile("""
+            Score output specification clarity (0-50 points):
+
+            {{promptText}}
+
+            Would a teacher know exactly what format/structure to expect from the AI output?
+
+            Return ONLY a JSON object:
+            {"score": <0-50>, "reason": "<brief explanation>"}
+            """, "promptText");
+
+    public static final PromptTemplate CONSTRAINT_STRENGTH_SCORE = PromptTemplate.compile("""
+            Evaluate constraint strength (0-60 points):
+
+            {{promptText}}
+
+            Are there clear guardrails to prevent hallucination, off-topic content, or inaccurate information?
+
+            Return ONLY a JSON object:
+            {"score": <0-60>, "reason": "<brief explanation>"}
+            """, "promptText");
+
+    public static final PromptTemplate CURRICULUM_ALIGNMENT_SCORE = PromptTemplate.compile("""
+            Score curriculum alignment (0-100 points):
+
+            TEACHER'S PROMPT:
+            {{promptText}}
+
+            OFFICIAL CURRICULUM CONTEXT:
+            {{curriculumContext}}
+
+            Searching for related lesson content in Vietnamese high school curriculum for better curriculum context if you found it missing.
+            Scoring criteria:
+            1. Does the prompt reference the correct lesson/chapter? (30 points)
+            2. Does it match the learning objectives? (30 points)
+            3. Is the scope appropriate for this grade level? (20 points)
+            4. Are terminology and concepts accurate per curriculum? (20 points)
+
+            Return ONLY a JSON object:
+            {"score": <0-100>, "issues": ["issue1", "issue2"], "suggestions": ["suggestion1"]}
+            """, "promptText", "curriculumContext");
+
+    public static final PromptTemplate PEDAGOGICAL_QUALITY_SCORE = PromptTemplate.compile("""
+            Evaluate pedagogical quality (0-80 points):
+
+            {{promptText}}
+
+            Consider:
+            - Active learning vs passive learning approach
+            - Differentiation for different student levels
+            - Assessment integration
+            - Alignment with modern teaching methodologies
+            - Bloom's taxonomy level
+
+            Return ONLY a JSON object:
+            {"score": <0-80>, "reason": "<brief explanation>"}
+            """, "promptText");
+
+    // scratchpad optimization, one per OptimizationMode
+    public static final PromptTemplate SAFE_OPTIMIZATION = PromptTemplate.compile("""
+            Optimize this teacher's prompt using SAFE mode:
+
+            ORIGINAL PROMPT:
+            {{promptText}}
+
+            CURRICULUM CONTEXT:
+            {{curriculumContext}}
+
+            DETECTED WEAKNESSES:
+            {{weaknesses}}
+
+            USER INSTRUCTIONS:
+            {{customInstruction}}
+
+            OPTIMIZATION RULES (SAFE MODE):
+            1. Preserve teacher's intent 100% - do not change the core request
+                    2. Preserve ALL existing sections (Instruction, Context, Input Example, Output Format and Constraint) - DO NOT DELETE ANY TEXT - ONLY ADD IF TEXT IS TOO SHORT TO FORM A PROPER PROMPT
+                    3. Only add missing structural elements identified in weaknesses
+                    4. Add output format specification if missing
+                    5. Add curriculum reference from the context provided
+                    6. Keep the same language and tone
+                    7. Make medium additions
+                    8. Do not add activities or change teaching approach
+
+            Return ONLY the optimized prompt text, nothing else.
+            """, "promptText", "curriculumContext", "weaknesses", "customInstruction");
+
+    public static final PromptTemplate PEDAGOGICAL_OPTIMIZATION = PromptTemplate.compile("""
+            Optimize this teacher's prompt using PEDAGOGICAL ENHANCEMENT mode:
+
+            ORIGINAL PROMPT:
+            {{promptText}}
+
+            CURRICULUM CONTEXT:
+            {{curriculumContext}}
+
+            DETECTED WEAKNESSES:
+            {{weaknesses}}
+
+            USER INSTRUCTIONS:
+            {{customInstruction}}
+
+            OPTIMIZATION RULES (PEDAGOGICAL MODE):
+            1. Preserve teacher's core intent
+            2. Fix all structural issues from weaknesses
+            3. Add 2-3 active learning activities aligned with the lesson content
+            4. Include differentiation strategies for mixed-ability students
+            5. Add formative assessment component
+            6. Align explicitly with learning objectives from curriculum
+            7. Target appropriate Bloom's taxonomy level (Analysis/Application for high school)
+            8. Maintain Vietnamese educational context and terminology
+
+            Format the optimized prompt clearly with 5 sections as original prompt (Instruction, Context, Input Example, Output Format, Constraint).
+            Mark new additions with [ADDED] (can add multiple additions for each section if able) at the start of new sections.
+
+            Return ONLY the optimized prompt text.
+            """, "promptText", "curriculumContext", "weaknesses", "customInstruction");
+
+    // queued optimization of a saved prompt
+    public static final PromptTemplate PROMPT_OPTIMIZATION = PromptTemplate.compile("""
+            System: You are an expert prompt engineer. Strict rules:
+             - Preserve all intent and requirements from the Current Prompt.
+             - Expand and improve the prompt for clarity, pedagogy, and concrete instructions for a high school teacher audience.
+             - Do NOT shorten or remove details. The optimized prompt MUST be AT LEAST {{minChars}} characters and AT LEAST {{minWords}} words.
+             - Keep or expand examples, constraints, and formatting. Add step-by-step instructions, examples, and explicit output format if missing.
+             - Follow prompt-engineering best practices: explicit goal, role, audience, constraints, examples, desired output shape.
+             - Return ONLY the optimized prompt text (no commentary, no meta, no labels). If you produce anything else, the response will be discarded.
+
+            === Current Prompt ===
+            {{currentPrompt}}
+
+            === Optimization Request ===
+            {{optimizationInput}}
+
+            Output requirements (IMPORTANT):
+            1) Return a single block of plain text (the new prompt).
+            2) The prompt must be ready-to-use — teacher can paste it into an LLM as-is.
+            3) The prompt must be at least {{minChars}} characters and at least {{minWords}} words.
+            4) Do not include any preamble like "Here is the optimized prompt:".
+            """, "minChars", "minWords", "currentPrompt", "optimizationInput");
+
+    // prompt generation from an uploaded document: the task template leads (same for every document, cacheable),
+    // the per-call request follows the document
+    public static final PromptTemplate FILE_CONTEXT_TEMPLATE = PromptTemplate.compile("""
+            Based on the uploaded document, generate a structured prompt following this template:
+
+            {{template}}""", "template");
+
+    public static final String FILE_CONTEXT_REQUEST = """
+            IMPORTANT: Return your response as a valid JSON object with these exact fields: \
+            instruction, context, input_example, output_format, constraints""";
+
+    public static final PromptTemplate FILE_CONTEXT_REQUEST_WITH_REQUIREMENTS = PromptTemplate.compile("""
+            ### Additional Requirements from Teacher:
+            {{customInstruction}}
+
+            IMPORTANT: Return your response as a valid JSON object with these exact fields: \
+            instruction, context, input_example, output_format, constraints""", "customInstruction");
+
+    private AiPromptTemplates() {
+    }
+}
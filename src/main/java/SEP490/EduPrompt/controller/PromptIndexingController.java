@@ -1,7 +1,9 @@
 package SEP490.EduPrompt.controller;
 
 import SEP490.EduPrompt.dto.response.ResponseDto;
+import SEP490.EduPrompt.dto.response.search.IndexingJobResponse;
 import SEP490.EduPrompt.dto.response.search.IndexingResult;
+import SEP490.EduPrompt.service.search.BulkIndexingService;
 import SEP490.EduPrompt.service.search.OperationPollingService;
 import SEP490.EduPrompt.service.search.PromptIndexingService;
 import lombok.RequiredArgsConstructor;
@@ -9,7 +11,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.UUID;
 
 @Slf4j
@@ -20,6 +21,7 @@ import java.util.UUID;
 public class PromptIndexingController {
 
     private final PromptIndexingService promptIndexingService;
+    private final BulkIndexingService bulkIndexingService;
     private final OperationPollingService operationPollingService;
 
     /**
@@ -53,20 +55,49 @@ public class PromptIndexingController {
     }
 
     /**
-     * Batch index all pending prompts
+     * Start (or resume) bulk indexing of all pending prompts in the background
      * POST /api/v1/admin/indexing/batch
      */
     @PostMapping("/batch")
-    public ResponseDto<List<IndexingResult>> indexAllPending() {
+    public ResponseDto<IndexingJobResponse> indexAllPending() {
 
         log.info("Received request to batch index all pending prompts");
 
-        List<IndexingResult> results = promptIndexingService.indexAllPendingPrompts();
+        IndexingJobResponse job = bulkIndexingService.start();
 
-//        long successCount = results.stream()
-//                .filter(r -> "success".equals(r.status()))
-//                .count();
-        return ResponseDto.success(results);
+        return ResponseDto.success(job);
+    }
+
+    /**
+     * Progress of the latest bulk indexing job
+     * GET /api/v1/admin/indexing/batch/latest
+     */
+    @GetMapping("/batch/latest")
+    public ResponseDto<IndexingJobResponse> getLatestBatch() {
+        return ResponseDto.success(bulkIndexingService.getLatestJob());
+    }
+
+    /**
+     * Progress of a bulk indexing job
+     * GET /api/v1/admin/indexing/batch/{jobId}
+     */
+    @GetMapping("/batch/{jobId}")
+    public ResponseDto<IndexingJobResponse> getBatch(
+            @PathVariable UUID jobId) {
+        return ResponseDto.success(bulkIndexingService.getJob(jobId));
+    }
+
+    /**
+     * Stop a bulk indexing job, POST /batch resumes it from its checkpoint
+     * POST /api/v1/admin/indexing/batch/{jobId}/cancel
+     */
+    @PostMapping("/batch/{jobId}/cancel")
+    public ResponseDto<IndexingJobResponse> cancelBatch(
+            @PathVariable UUID jobId) {
+
+        log.info("Received request to cancel bulk indexing job {}", jobId);
+
+        return ResponseDto.success(bulkIndexingService.cancel(jobId));
     }
 
     /**
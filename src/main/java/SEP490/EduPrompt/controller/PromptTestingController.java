@@ -1,7 +1,9 @@
 package SEP490.EduPrompt.controller;
 
+import SEP490.EduPrompt.dto.request.prompt.PromptTestBatchRequest;
 import SEP490.EduPrompt.dto.request.prompt.PromptTestRequest;
 import SEP490.EduPrompt.dto.response.ResponseDto;
+import SEP490.EduPrompt.dto.response.prompt.PromptTestBatchResponse;
 import SEP490.EduPrompt.dto.response.prompt.PromptTestResponse;
 import SEP490.EduPrompt.service.ai.PromptTestingService;
 import SEP490.EduPrompt.service.auth.UserPrincipal;
@@ -12,9 +14,11 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.UUID;
@@ -60,6 +64,67 @@ public class PromptTestingController {
         return ResponseDto.success(response);
     }
 
+    /**
+     * POST /api/prompts/test/batch
+     * Test a prompt against several AI models in parallel in one request.
+     * Each model costs one test action and its own tokens, each model's result is stored as a PromptUsage linked by batchId.
+     *
+     * @param request        Contains promptId, aiModels, inputText, temperature, maxTokens, topP
+     * @param idempotencyKey Optional UUID to prevent duplicate processing on retry
+     * @param currentUser    Authenticated user
+     * @return PromptTestBatchResponse with per-model output, tokens used and latency
+     */
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseDto<PromptTestBatchResponse> testPromptAcrossModels(
+            @RequestBody @Valid PromptTestBatchRequest request,
+            @RequestHeader(value = "X-Idempotency-Key", required = false) String idempotencyKey,
+            @AuthenticationPrincipal UserPrincipal currentUser
+    ) {
+        log.info("POST /api/prompts/test/batch - User: {}, Prompt: {}, Models: {}, IdempotencyKey: {}",
+                currentUser.getUserId(), request.promptId(), request.aiModels(), idempotencyKey);
+
+        // without a key every call is a new batch
+        String effectiveKey = idempotencyKey != null ? idempotencyKey : UUID.randomUUID().toString();
+
+        PromptTestBatchResponse response = promptTestingService.testPromptAcrossModels(
+                currentUser.getUserId(),
+                request,
+                effectiveKey
+        );
+
+        return ResponseDto.success(response);
+    }
+
+    /**
+     * POST /api/prompts/test/stream
+     * Test a prompt and receive the output as Server-Sent Events while the model generates it.
+     * Events: "token" (text chunk), "done" (PromptTestResponse once usage is saved), "error" (message)
+     *
+     * @param request        Contains promptId, aiModel, inputText, temperature, maxTokens, topP
+     * @param idempotencyKey Optional UUID to prevent duplicate processing on retry
+     * @param currentUser    Authenticated user
+     * @return SSE stream of the test output
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter testPromptStream(
+            @RequestBody @Valid PromptTestRequest request,
+            @RequestHeader(value = "X-Idempotency-Key", required = false) String idempotencyKey,
+            @AuthenticationPrincipal UserPrincipal currentUser
+    ) {
+        log.info("POST /api/prompts/test/stream - User: {}, Prompt: {}, IdempotencyKey: {}",
+                currentUser.getUserId(), request.promptId(), idempotencyKey);
+
+        // generate idempotency key if not provided
+        String effectiveKey = idempotencyKey != null ? idempotencyKey : String.valueOf(request.promptId());
+
+        return promptTestingService.testPromptStream(
+                currentUser.getUserId(),
+                request,
+                effectiveKey
+        );
+    }
+
     /**
      * GET /api/prompts/test/usage/{usageId}
      * Get details for a specific test usage record by ID.
@@ -46,4 +46,25 @@ public class SemanticSearchController {
 
         return ResponseDto.success(semanticSearchService.search(secureRequest));
     }
+
+    @Operation(summary = "Perform hybrid search",
+            description = "Search for prompts by keywords and meaning; keyword matches only when semantic search is slow")
+    @PostMapping("/hybrid")
+    @PreAuthorize("hasAnyRole('TEACHER', 'SCHOOL_ADMIN', 'SYSTEM_ADMIN')")
+    public ResponseDto<SemanticSearchResponse> hybridSearch(
+            @Valid @RequestBody SemanticSearchRequest request,
+            @AuthenticationPrincipal UserPrincipal currentUser) {
+        log.info("Received hybrid search request from user: {} for query: {}", currentUser.getUserId(),
+                request.query());
+
+        SemanticSearchRequest secureRequest = SemanticSearchRequest.builder()
+                .query(request.query())
+                .limit(request.limit())
+                .context(request.context())
+                .userId(currentUser.getUserId())
+                .username(request.username())
+                .build();
+
+        return ResponseDto.success(semanticSearchService.hybridSearch(secureRequest));
+    }
 }
@@ -0,0 +1,35 @@
+package SEP490.EduPrompt.dto.request.prompt;
+
+import SEP490.EduPrompt.enums.AiModel;
+import jakarta.validation.constraints.*;
+import lombok.Builder;
+
+import java.util.List;
+import java.util.UUID;
+
+@Builder
+public record PromptTestBatchRequest(
+        @NotNull
+        UUID promptId,
+
+        @NotEmpty
+        @Size(max = 4)
+        List<@NotNull AiModel> aiModels,
+
+        @NotBlank
+        String inputText,
+
+        @DecimalMin(value = "0.0")
+        @DecimalMax(value = "2.0")
+        Double temperature,
+
+        @NotNull
+        @Min(1)
+        @Max(8192)
+        Integer maxTokens,
+
+        @DecimalMin(value = "0.0")
+        @DecimalMax(value = "1.0")
+        Double topP
+) {
+}
@@ -0,0 +1,41 @@
+package SEP490.EduPrompt.dto.response.curriculum;
+
+import lombok.Builder;
+
+/**
+ * AI-assisted part of the six scoring dimensions, from one combined model call or the rule-based pre-scorer.
+ * A null field is not known yet and has to be scored by the next source (ultimately its own AI call)
+ */
+@Builder
+public record AiDimensionScores(
+        Double instructionClarity,
+        Double contextCompleteness,
+        Double outputSpecification,
+        Double constraintStrength,
+        Double curriculumAlignment,
+        Double pedagogicalQuality) {
+
+    public static final AiDimensionScores EMPTY = new AiDimensionScores(null, null, null, null, null, null);
+
+    /**
+     * Field-wise: this score when known, otherwise the other one
+     */
+    public AiDimensionScores orElse(AiDimensionScores other) {
+        return new AiDimensionScores(
+                instructionClarity != null ? instructionClarity : other.instructionClarity,
+                contextCompleteness != null ? contextCompleteness : other.contextCompleteness,
+                outputSpecification != null ? outputSpecification : other.outputSpecification,
+                constraintStrength != null ? constraintStrength : other.constraintStrength,
+                curriculumAlignment != null ? curriculumAlignment : other.curriculumAlignment,
+                pedagogicalQuality != null ? pedagogicalQuality : other.pedagogicalQuality);
+    }
+
+    /**
+     * @param withCurriculum false when no lesson is known, curriculum alignment is then never AI scored
+     */
+    public boolean isComplete(boolean withCurriculum) {
+        return instructionClarity != null && contextCompleteness != null && outputSpecification != null
+                && constraintStrength != null && pedagogicalQuality != null
+                && (!withCurriculum || curriculumAlignment != null);
+    }
+}
@@ -5,6 +5,7 @@ import lombok.Builder;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Builder
@@ -17,6 +18,17 @@ public record OptimizationResponse(
         Double improvement,
         CurriculumContextDetail curriculumContext,
         List<String> appliedFixes,
-        Instant createdAt
+        Instant createdAt,
+        // wall time per pipeline stage of this request (ms), "cache" when it was served without computing
+        Map<String, Long> stageLatencyMs
 ) {
+    public OptimizationResponse withStageLatencyMs(Map<String, Long> stageLatencyMs) {
+        return new OptimizationResponse(versionId, originalPrompt, optimizedPrompt, originalScore, optimizedScore,
+                improvement, curriculumContext, appliedFixes, createdAt, stageLatencyMs);
+    }
+
+    public OptimizationResponse withOriginalPrompt(String originalPrompt) {
+        return new OptimizationResponse(versionId, originalPrompt, optimizedPrompt, originalScore, optimizedScore,
+                improvement, curriculumContext, appliedFixes, createdAt, stageLatencyMs);
+    }
 }
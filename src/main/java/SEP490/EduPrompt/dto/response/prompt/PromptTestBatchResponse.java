@@ -0,0 +1,16 @@
+package SEP490.EduPrompt.dto.response.prompt;
+
+import lombok.Builder;
+
+import java.util.List;
+import java.util.UUID;
+
+@Builder
+public record PromptTestBatchResponse(
+        UUID batchId,
+        UUID promptId,
+        List<PromptTestResponse> results,
+        Integer totalTokensUsed,
+        Integer wallTimeMs
+) {
+}
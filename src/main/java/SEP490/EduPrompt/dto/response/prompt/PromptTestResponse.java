@@ -20,6 +20,7 @@ public record PromptTestResponse(
         Integer maxTokens,
         Double topP,
         QueueStatus status,
+        String errorMessage,
         Instant createdAt
 ) {
 }
@@ -2,9 +2,12 @@ package SEP490.EduPrompt.dto.response.search;
 
 import lombok.Builder;
 
+import java.util.UUID;
+
 @Builder
 public record GroundingChunk(
         String documentId,
+        UUID promptId,
         String text,
         Double confidenceScore,
         Integer startIndex,
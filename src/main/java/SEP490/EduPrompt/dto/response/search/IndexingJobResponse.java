@@ -0,0 +1,22 @@
+package SEP490.EduPrompt.dto.response.search;
+
+import lombok.Builder;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Builder
+public record IndexingJobResponse(
+        UUID jobId,
+        String status, // running, completed, cancelled, failed
+        Integer total,
+        Integer processed,
+        Integer succeeded,
+        Integer failed,
+        Integer skipped,
+        Instant createdAt,
+        Instant updatedAt,
+        Instant finishedAt,
+        String errorMessage
+) {
+}
@@ -9,6 +9,8 @@ public record SemanticSearchResponse(
         List<SearchResultItem> results,
         Integer totalFound,
         String searchId,
-        Integer executionTimeMs
+        Integer executionTimeMs,
+        // semantic, hybrid or lexical (hybrid search answered without the semantic tier)
+        String mode
 ) {
 }
@@ -7,16 +7,19 @@ import java.util.Locale;
 
 @Getter
 public enum AiModel {
-    GPT_4O_MINI("gpt-4o-mini"),
-    CLAUDE_3_5_SONNET("claude-3.5-sonnet"),
-    GEMINI_2_5_FLASH("gemini-2.5-flash"),
-    GEMINI_3_FLASH_PREVIEW("gemini-3-flash-preview"),
+    GPT_4O_MINI("gpt-4o-mini", "openai"),
+    CLAUDE_3_5_SONNET("claude-3.5-sonnet", "anthropic"),
+    GEMINI_2_5_FLASH("gemini-2.5-flash", "gemini"),
+    GEMINI_3_FLASH_PREVIEW("gemini-3-flash-preview", "gemini"),
     ;
 
     private final String name;
+    // upstream API the model is served by, used to bound concurrency per provider
+    private final String provider;
 
-    AiModel(String name) {
+    AiModel(String name, String provider) {
         this.name = name;
+        this.provider = provider;
     }
 
     public static AiModel parseAiModel(String a) {
@@ -0,0 +1,8 @@
+package SEP490.EduPrompt.enums;
+
+public enum IndexingJobStatus {
+    RUNNING,
+    COMPLETED,
+    CANCELLED,
+    FAILED
+}
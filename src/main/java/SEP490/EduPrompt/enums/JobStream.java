@@ -0,0 +1,28 @@
+package SEP490.EduPrompt.enums;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Redis streams backing the background job queue
+ * Visibility timeout: how long a delivered job may stay un-acked before another worker reclaims it
+ */
+@Getter
+public enum JobStream {
+    OPTIMIZATION("stream:optimization", Duration.ofSeconds(120)),
+    TEST("stream:test", Duration.ofSeconds(120)),
+    FILE_UPLOAD("stream:file-upload", Duration.ofSeconds(300));
+
+    private final String key;
+    private final Duration visibilityTimeout;
+
+    JobStream(String key, Duration visibilityTimeout) {
+        this.key = key;
+        this.visibilityTimeout = visibilityTimeout;
+    }
+
+    public String getDeadLetterKey() {
+        return key + ":dead";
+    }
+}
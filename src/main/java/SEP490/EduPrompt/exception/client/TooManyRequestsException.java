@@ -0,0 +1,13 @@
+package SEP490.EduPrompt.exception.client;
+
+import SEP490.EduPrompt.exception.BaseException;
+import SEP490.EduPrompt.exception.generic.ExceptionCode;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class TooManyRequestsException extends BaseException {
+    public TooManyRequestsException(String message) {
+        super(ExceptionCode.TOO_MANY_REQUESTS.name(), message, HttpStatus.TOO_MANY_REQUESTS);
+    }
+}
@@ -8,4 +8,5 @@ public enum ExceptionCode {
     GEMINI_CLIENT_ERROR,
     FILE_UPLOAD_FAILED,
     CLOUDINARY_UPLOAD_FAILED,
+    TOO_MANY_REQUESTS,
 }
@@ -0,0 +1,85 @@
+package SEP490.EduPrompt.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Setter
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "indexing_jobs")
+public class IndexingJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", nullable = false)
+    private UUID id;
+
+    @Size(max = 50)
+    @NotNull
+    @ColumnDefault("'RUNNING'")
+    @Column(name = "status", nullable = false, length = 50)
+    private String status;
+
+    @NotNull
+    @ColumnDefault("0")
+    @Column(name = "total", nullable = false)
+    private Integer total;
+
+    @NotNull
+    @ColumnDefault("0")
+    @Column(name = "succeeded", nullable = false)
+    private Integer succeeded;
+
+    @NotNull
+    @ColumnDefault("0")
+    @Column(name = "failed", nullable = false)
+    private Integer failed;
+
+    @NotNull
+    @ColumnDefault("0")
+    @Column(name = "skipped", nullable = false)
+    private Integer skipped;
+
+    // every pending prompt up to this id (in id order) has been processed
+    @Column(name = "checkpoint_prompt_id")
+    private UUID checkpointPromptId;
+
+    // node running the job, it keeps heartbeat_at fresh while it does
+    @Size(max = 64)
+    @Column(name = "owner_node_id", length = 64)
+    private String ownerNodeId;
+
+    @Column(name = "heartbeat_at")
+    private Instant heartbeatAt;
+
+    @Column(name = "error_message", length = Integer.MAX_VALUE)
+    private String errorMessage;
+
+    @ColumnDefault("now()")
+    @Column(name = "created_at")
+    private Instant createdAt;
+
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = Instant.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = Instant.now();
+    }
+}
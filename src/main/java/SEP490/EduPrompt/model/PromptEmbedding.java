@@ -0,0 +1,46 @@
+package SEP490.EduPrompt.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Setter
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "prompt_embeddings")
+public class PromptEmbedding {
+    @Id
+    @Column(name = "prompt_id", nullable = false)
+    private UUID promptId;
+
+    @Size(max = 100)
+    @NotNull
+    @Column(name = "model", nullable = false, length = 100)
+    private String model;
+
+    @NotNull
+    @Column(name = "dimensions", nullable = false)
+    private Integer dimensions;
+
+    // little-endian float32 values
+    @NotNull
+    @Column(name = "vector", nullable = false)
+    private byte[] vector;
+
+    @Size(max = 64)
+    @NotNull
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    @ColumnDefault("now()")
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
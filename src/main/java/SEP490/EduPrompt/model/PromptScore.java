@@ -2,6 +2,7 @@ package SEP490.EduPrompt.model;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.*;
 import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.JdbcTypeCode;
@@ -74,6 +75,10 @@ public class PromptScore {
     @JdbcTypeCode(SqlTypes.JSON)
     private Map<String, Object> detectedContext;
 
+    @Size(max = 64)
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @ColumnDefault("now()")
     @Column(name = "created_at")
     private Instant createdAt;
@@ -86,6 +86,10 @@ public class PromptUsage {
     @Column(name = "updated_at")
     private Instant updatedAt;
 
+    // set on every row of one multi-model test run
+    @Column(name = "batch_id")
+    private UUID batchId;
+
     @PrePersist
     protected void onCreate() {
         createdAt = Instant.now();
@@ -0,0 +1,40 @@
+package SEP490.EduPrompt.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Setter
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "school_token_leases")
+public class SchoolTokenLease {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", nullable = false)
+    private UUID id;
+
+    @NotNull
+    @Column(name = "school_subscription_id", nullable = false)
+    private UUID schoolSubscriptionId;
+
+    @NotNull
+    @Column(name = "node_id", nullable = false, length = 64)
+    private String nodeId;
+
+    @NotNull
+    @ColumnDefault("0")
+    @Column(name = "tokens_remaining", nullable = false)
+    private Integer tokensRemaining;
+
+    @ColumnDefault("now()")
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
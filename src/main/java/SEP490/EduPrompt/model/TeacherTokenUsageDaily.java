@@ -0,0 +1,50 @@
+package SEP490.EduPrompt.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+
+@Getter
+@Setter
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "teacher_token_usage_daily")
+public class TeacherTokenUsageDaily {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", nullable = false)
+    private UUID id;
+
+    @NotNull
+    @Column(name = "school_subscription_id", nullable = false)
+    private UUID schoolSubscriptionId;
+
+    @NotNull
+    @Column(name = "user_id", nullable = false)
+    private UUID userId;
+
+    @NotNull
+    @Column(name = "usage_date", nullable = false)
+    private LocalDate usageDate;
+
+    @NotNull
+    @ColumnDefault("0")
+    @Column(name = "tokens_used", nullable = false)
+    private Long tokensUsed;
+
+    @NotNull
+    @ColumnDefault("0")
+    @Column(name = "call_count", nullable = false)
+    private Integer callCount;
+
+    @ColumnDefault("now()")
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
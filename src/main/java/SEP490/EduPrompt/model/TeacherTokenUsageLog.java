@@ -42,7 +42,10 @@ public class TeacherTokenUsageLog {
 
     @PrePersist
     public void onCreate() {
-        this.usedAt = Instant.now();
+        // batched writes carry the time of the call, not of the flush
+        if (this.usedAt == null) {
+            this.usedAt = Instant.now();
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package SEP490.EduPrompt.repo;
+
+import SEP490.EduPrompt.model.IndexingJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface IndexingJobRepository extends JpaRepository<IndexingJob, UUID> {
+
+    Optional<IndexingJob> findFirstByStatusOrderByCreatedAtDesc(String status);
+
+    Optional<IndexingJob> findFirstByOrderByCreatedAtDesc();
+
+    /**
+     * Take over a cancelled job, or a running one whose owner stopped heart-beating, in one step
+     *
+     * @return 1 when this node now owns the job, 0 when another node is running it
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE IndexingJob j
+            SET j.status = 'RUNNING', j.ownerNodeId = :nodeId, j.heartbeatAt = :now, j.finishedAt = null
+            WHERE j.id = :id
+              AND (j.status = 'CANCELLED'
+                   OR (j.status = 'RUNNING'
+                       AND (j.ownerNodeId = :nodeId OR j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)))
+            """)
+    int claim(@Param("id") UUID id,
+              @Param("nodeId") String nodeId,
+              @Param("now") Instant now,
+              @Param("staleBefore") Instant staleBefore);
+
+    /**
+     * @return 0 when the job was cancelled or taken over since, the owner then stops
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE IndexingJob j SET j.heartbeatAt = :now
+            WHERE j.id = :id AND j.ownerNodeId = :nodeId AND j.status = 'RUNNING'
+            """)
+    int heartbeat(@Param("id") UUID id, @Param("nodeId") String nodeId, @Param("now") Instant now);
+
+    /**
+     * Save progress and heartbeat, only while this node still owns the running job
+     *
+     * @return 0 when the job was cancelled or taken over since
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE IndexingJob j
+            SET j.checkpointPromptId = :checkpoint, j.succeeded = :succeeded, j.failed = :failed,
+                j.skipped = :skipped, j.heartbeatAt = :now, j.updatedAt = :now
+            WHERE j.id = :id AND j.ownerNodeId = :nodeId AND j.status = 'RUNNING'
+            """)
+    int checkpoint(@Param("id") UUID id,
+                   @Param("nodeId") String nodeId,
+                   @Param("checkpoint") UUID checkpoint,
+                   @Param("succeeded") int succeeded,
+                   @Param("failed") int failed,
+                   @Param("skipped") int skipped,
+                   @Param("now") Instant now);
+
+    /**
+     * @return 0 when the job was cancelled or taken over since, its row is then left as is
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE IndexingJob j
+            SET j.status = :status, j.succeeded = :succeeded, j.failed = :failed, j.skipped = :skipped,
+                j.errorMessage = :errorMessage, j.finishedAt = :now, j.updatedAt = :now
+            WHERE j.id = :id AND j.ownerNodeId = :nodeId AND j.status = 'RUNNING'
+            """)
+    int finish(@Param("id") UUID id,
+               @Param("nodeId") String nodeId,
+               @Param("status") String status,
+               @Param("succeeded") int succeeded,
+               @Param("failed") int failed,
+               @Param("skipped") int skipped,
+               @Param("errorMessage") String errorMessage,
+               @Param("now") Instant now);
+}
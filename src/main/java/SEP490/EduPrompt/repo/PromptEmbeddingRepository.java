@@ -0,0 +1,15 @@
+package SEP490.EduPrompt.repo;
+
+import SEP490.EduPrompt.model.PromptEmbedding;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface PromptEmbeddingRepository extends JpaRepository<PromptEmbedding, UUID> {
+
+    Slice<PromptEmbedding> findByModel(String model, Pageable pageable);
+}
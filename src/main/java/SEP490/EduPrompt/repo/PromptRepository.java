@@ -7,10 +7,12 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -98,6 +100,56 @@ public interface PromptRepository extends JpaRepository<Prompt, UUID>, JpaSpecif
 
     List<Prompt> findByIndexingStatusAndIsDeleted(String indexingStatus, boolean isDeleted);
 
+    /**
+     * Non-private prompts never uploaded to file search, in id order after the given id (keyset paging for bulk indexing)
+     */
+    @Query(value = """
+        SELECT id FROM prompts
+        WHERE indexing_status = 'PENDING'
+          AND gemini_file_id IS NULL
+          AND is_deleted = false
+          AND upper(visibility) <> 'PRIVATE'
+          AND id > :afterId
+        ORDER BY id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<UUID> findUploadPendingIdsAfter(@Param("afterId") UUID afterId, @Param("limit") int limit);
+
+    @Query(value = """
+        SELECT count(*) FROM prompts
+        WHERE indexing_status = 'PENDING'
+          AND gemini_file_id IS NULL
+          AND is_deleted = false
+          AND upper(visibility) <> 'PRIVATE'
+          AND id > :afterId
+        """, nativeQuery = true)
+    long countUploadPendingAfter(@Param("afterId") UUID afterId);
+
+    /**
+     * Public prompts indexed in file search, in id order after the given id (keyset paging for the embedding backfill)
+     */
+    @Query(value = """
+        SELECT id FROM prompts
+        WHERE upper(indexing_status) = 'INDEXED'
+          AND is_deleted = false
+          AND upper(visibility) = 'PUBLIC'
+          AND id > :afterId
+        ORDER BY id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<UUID> findIndexedPublicIdsAfter(@Param("afterId") UUID afterId, @Param("limit") int limit);
+
+    /**
+     * Write indexing state only, so an upload finishing late does not overwrite edits made meanwhile
+     */
+    @Modifying
+    @Query("UPDATE Prompt p SET p.geminiFileId = :geminiFileId, p.indexingStatus = :status, " +
+            "p.lastIndexedAt = :lastIndexedAt WHERE p.id = :id")
+    void updateIndexingState(@Param("id") UUID id,
+                             @Param("geminiFileId") String geminiFileId,
+                             @Param("status") String status,
+                             @Param("lastIndexedAt") Instant lastIndexedAt);
+
     /**
      * Find all prompts that need reindexing (updated after last index)
      */
@@ -166,4 +218,27 @@ public interface PromptRepository extends JpaRepository<Prompt, UUID>, JpaSpecif
         LIMIT :limit
         """, nativeQuery = true)
     List<Prompt> findRandomHighSchoolCorePrompts(@Param("limit") int limit);
+
+    /**
+     * Full-text match on the maintained prompts.search_vector column (db_change_v22), ranked by cover density
+     * - terms is a to_tsquery expression; accents are folded the same way as the indexed text
+     */
+    @Query(value = """
+        SELECT p.id AS promptId,
+               CAST(ts_rank_cd(p.search_vector, q.query) AS double precision) AS rank
+        FROM prompts p,
+             to_tsquery('simple', immutable_unaccent(:terms)) AS q(query)
+        WHERE p.search_vector @@ q.query
+          AND p.is_deleted = false
+          AND p.visibility = 'PUBLIC'
+        ORDER BY rank DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<LexicalMatchProjection> searchByText(@Param("terms") String terms, @Param("limit") int limit);
+
+    interface LexicalMatchProjection {
+        UUID getPromptId();
+
+        Double getRank();
+    }
 }
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -20,6 +21,9 @@ public interface PromptScoreRepository extends JpaRepository<PromptScore, UUID>
 
     List<PromptScore> findByPromptIdOrderByCreatedAtDesc(UUID promptId);
 
+    Optional<PromptScore> findFirstByPromptIdAndContentHashAndCreatedAtAfterOrderByCreatedAtDesc(
+            UUID promptId, String contentHash, Instant createdAfter);
+
     @Query("""
             SELECT new SEP490.EduPrompt.dto.response.prompt.PromptScoreResponse(
                 p.id,
@@ -19,6 +19,8 @@ public interface PromptUsageRepository extends JpaRepository<PromptUsage, UUID>
 
     Optional<PromptUsage> findByIdempotencyKey(String idempotencyKey);
 
+    List<PromptUsage> findByBatchIdOrderByCreatedAtAsc(UUID batchId);
+
     @Query("SELECT COUNT(pu) FROM PromptUsage pu " +
             "WHERE pu.userId = :userId " +
             "AND pu.createdAt >= :since")
@@ -2,8 +2,11 @@ package SEP490.EduPrompt.repo;
 
 import SEP490.EduPrompt.model.SchoolSubscription;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -17,4 +20,37 @@ public interface SchoolSubscriptionRepository extends JpaRepository<SchoolSubscr
     List<SchoolSubscription> findByIsActiveTrueOrderByCreatedAtDesc();
 
     List<SchoolSubscription> findAllByOrderByCreatedAtDesc();
-}
\ No newline at end of file
+
+    /**
+     * Move tokens into / out of the unleased part of the pool, negative values give tokens back
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE school_subscriptions
+            SET school_token_remaining = school_token_remaining - :tokens,
+                updated_at = now()
+            WHERE id = :id
+            """, nativeQuery = true)
+    int applyLedgerDelta(@Param("id") UUID id, @Param("tokens") int tokens);
+
+    /**
+     * Lease up to :tokens from the unleased pool, returns the amount granted (null when the pool is empty)
+     */
+    @Transactional
+    @Query(value = """
+            WITH granted AS (
+                SELECT id, LEAST(:tokens, school_token_remaining) AS amount
+                FROM school_subscriptions
+                WHERE id = :id AND school_token_remaining > 0
+                FOR UPDATE
+            )
+            UPDATE school_subscriptions s
+            SET school_token_remaining = s.school_token_remaining - g.amount,
+                updated_at = now()
+            FROM granted g
+            WHERE s.id = g.id
+            RETURNING g.amount
+            """, nativeQuery = true)
+    Integer leaseTokens(@Param("id") UUID id, @Param("tokens") int tokens);
+}
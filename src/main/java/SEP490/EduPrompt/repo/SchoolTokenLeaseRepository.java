@@ -0,0 +1,80 @@
+package SEP490.EduPrompt.repo;
+
+import SEP490.EduPrompt.model.SchoolTokenLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface SchoolTokenLeaseRepository extends JpaRepository<SchoolTokenLease, UUID> {
+
+    /**
+     * Record how many leased tokens a node still holds, also acts as the node heartbeat
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO school_token_leases (school_subscription_id, node_id, tokens_remaining, updated_at)
+            VALUES (:schoolSubscriptionId, :nodeId, :tokens, now())
+            ON CONFLICT (school_subscription_id, node_id)
+            DO UPDATE SET tokens_remaining = EXCLUDED.tokens_remaining, updated_at = now()
+            """, nativeQuery = true)
+    int upsertLease(
+            @Param("schoolSubscriptionId") UUID schoolSubscriptionId,
+            @Param("nodeId") String nodeId,
+            @Param("tokens") int tokens
+    );
+
+    @Modifying
+    @Transactional
+    @Query(value = """
+            DELETE FROM school_token_leases
+            WHERE school_subscription_id = :schoolSubscriptionId AND node_id = :nodeId
+            """, nativeQuery = true)
+    int deleteLease(
+            @Param("schoolSubscriptionId") UUID schoolSubscriptionId,
+            @Param("nodeId") String nodeId
+    );
+
+    /**
+     * Give tokens held by nodes that stopped heart-beating back to their school pool
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            WITH expired AS (
+                DELETE FROM school_token_leases
+                WHERE node_id <> :nodeId AND updated_at < :cutoff
+                RETURNING school_subscription_id, tokens_remaining
+            ), totals AS (
+                SELECT school_subscription_id, SUM(tokens_remaining) AS tokens
+                FROM expired
+                GROUP BY school_subscription_id
+            )
+            UPDATE school_subscriptions s
+            SET school_token_remaining = s.school_token_remaining + t.tokens,
+                updated_at = now()
+            FROM totals t
+            WHERE s.id = t.school_subscription_id
+            """, nativeQuery = true)
+    int reclaimExpiredLeases(@Param("nodeId") String nodeId, @Param("cutoff") Instant cutoff);
+
+    @Query(value = """
+            SELECT school_subscription_id, SUM(tokens_remaining)
+            FROM school_token_leases
+            WHERE school_subscription_id IN (:ids) AND node_id <> :nodeId
+            GROUP BY school_subscription_id
+            """, nativeQuery = true)
+    List<Object[]> sumLeasedTokensExcludingNode(
+            @Param("ids") Collection<UUID> schoolSubscriptionIds,
+            @Param("nodeId") String nodeId
+    );
+}
@@ -0,0 +1,53 @@
+package SEP490.EduPrompt.repo;
+
+import SEP490.EduPrompt.model.TeacherTokenUsageDaily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface TeacherTokenUsageDailyRepository extends JpaRepository<TeacherTokenUsageDaily, UUID> {
+
+    /**
+     * Add usage to a teacher's day, creating the row on first use
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO teacher_token_usage_daily
+                (school_subscription_id, user_id, usage_date, tokens_used, call_count, updated_at)
+            VALUES (:schoolSubscriptionId, :userId, :usageDate, :tokens, :calls, now())
+            ON CONFLICT (school_subscription_id, user_id, usage_date)
+            DO UPDATE SET tokens_used = teacher_token_usage_daily.tokens_used + EXCLUDED.tokens_used,
+                          call_count = teacher_token_usage_daily.call_count + EXCLUDED.call_count,
+                          updated_at = now()
+            """, nativeQuery = true)
+    int addUsage(
+            @Param("schoolSubscriptionId") UUID schoolSubscriptionId,
+            @Param("userId") UUID userId,
+            @Param("usageDate") LocalDate usageDate,
+            @Param("tokens") long tokens,
+            @Param("calls") int calls
+    );
+
+    @Query(value = """
+            SELECT user_id AS userId, SUM(tokens_used) AS tokensUsed
+            FROM teacher_token_usage_daily
+            WHERE school_subscription_id = :schoolSubscriptionId
+            GROUP BY user_id
+            """, nativeQuery = true)
+    List<TeacherUsageTotalProjection> sumTokensByUser(@Param("schoolSubscriptionId") UUID schoolSubscriptionId);
+
+    interface TeacherUsageTotalProjection {
+        UUID getUserId();
+
+        Long getTokensUsed();
+    }
+}
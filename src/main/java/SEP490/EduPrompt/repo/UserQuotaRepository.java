@@ -4,9 +4,11 @@ import SEP490.EduPrompt.model.UserQuota;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.Collection;
@@ -32,4 +34,49 @@ public interface UserQuotaRepository extends JpaRepository<UserQuota, UUID> {
     );
 
     List<UserQuota> findAllByUserIdIn(Collection<UUID> userIds);
+
+    /**
+     * Apply net consumption written behind by QuotaLedger, negative values are refunds
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE user_quota
+            SET individual_token_remaining = LEAST(individual_token_limit, GREATEST(individual_token_remaining - :tokens, 0)),
+                testing_quota_remaining = LEAST(testing_quota_limit, GREATEST(testing_quota_remaining - :tests, 0)),
+                optimization_quota_remaining = LEAST(optimization_quota_limit, GREATEST(optimization_quota_remaining - :optimizations, 0)),
+                updated_at = now()
+            WHERE user_id = :userId
+            """, nativeQuery = true)
+    int applyLedgerDelta(
+            @Param("userId") UUID userId,
+            @Param("tokens") int tokens,
+            @Param("tests") int tests,
+            @Param("optimizations") int optimizations
+    );
+
+    /**
+     * Reset the quota period and apply the consumption made since the reset
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE user_quota
+            SET individual_token_remaining = GREATEST(individual_token_limit - :tokens, 0),
+                testing_quota_remaining = GREATEST(testing_quota_limit - :tests, 0),
+                optimization_quota_remaining = GREATEST(optimization_quota_limit - :optimizations, 0),
+                prompt_action_remaining = prompt_action_limit,
+                prompt_unlock_remaining = prompt_unlock_limit,
+                collection_action_remaining = collection_action_limit,
+                quota_reset_date = :resetDate,
+                updated_at = now()
+            WHERE user_id = :userId
+            """, nativeQuery = true)
+    int resetAndApplyLedgerDelta(
+            @Param("userId") UUID userId,
+            @Param("tokens") int tokens,
+            @Param("tests") int tests,
+            @Param("optimizations") int optimizations,
+            @Param("resetDate") Instant resetDate
+    );
 }
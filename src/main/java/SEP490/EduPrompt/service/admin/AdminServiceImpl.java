@@ -24,6 +24,7 @@ import SEP490.EduPrompt.exception.auth.ResourceNotFoundException;
 import SEP490.EduPrompt.exception.generic.InvalidActionException;
 import SEP490.EduPrompt.model.*;
 import SEP490.EduPrompt.repo.*;
+import SEP490.EduPrompt.service.ai.SchoolTokenPool;
 import SEP490.EduPrompt.service.auth.UserPrincipal;
 import SEP490.EduPrompt.service.permission.PermissionService;
 import lombok.RequiredArgsConstructor;
@@ -52,8 +53,10 @@ public class AdminServiceImpl implements AdminService {
     private final UserAuthRepository userAuthRepo;
     private final SchoolEmailRepository schoolEmailRepo;
     private final TeacherTokenUsageLogRepository teacherTokenUsageLogRepo;
+    private final TeacherTokenUsageDailyRepository teacherTokenUsageDailyRepo;
     private final SubscriptionTierRepository subscriptionTierRepo;
     private final UserQuotaRepository userQuotaRepository;
+    private final SchoolTokenPool schoolTokenPool;
 
     @Override
     @Transactional
@@ -263,14 +266,16 @@ public class AdminServiceImpl implements AdminService {
 
         long teacherCount = userRepo.countBySchoolIdAndRole(schoolId, Role.TEACHER.name());
 
-        Integer tokenUsed = sub.getSchoolTokenPool() - sub.getSchoolTokenRemaining();
+        // row only holds the unleased part, add tokens still held in node shards
+        int tokenRemaining = schoolTokenPool.aggregateRemaining(sub);
+        Integer tokenUsed = sub.getSchoolTokenPool() - tokenRemaining;
 
         return new SchoolSubscriptionUsageResponse(
                 sub.getId(),
                 sub.getSchool().getName(),//need to be in transaction
                 sub.getSchoolTokenPool(),
                 tokenUsed,
-                sub.getSchoolTokenRemaining(),
+                tokenRemaining,
                 sub.getStartDate(),
                 sub.getEndDate(),
                 sub.getQuotaResetDate(),
@@ -336,7 +341,7 @@ public class AdminServiceImpl implements AdminService {
                 .orElseThrow(() -> new ResourceNotFoundException("School not found"));
         SchoolSubscription activeSub = schoolSubRepo.findActiveBySchoolId(user.getSchoolId()).orElse(null);
         Integer schoolTokenPool = activeSub != null ? activeSub.getSchoolTokenPool() : null;
-        Integer schoolTokenRemaining = activeSub != null ? activeSub.getSchoolTokenRemaining() : null;
+        Integer schoolTokenRemaining = activeSub != null ? this.schoolTokenPool.aggregateRemaining(activeSub) : null;
 
         // School total used: compute in service (pool - remaining)
         Integer schoolTotalTokenUsed = (schoolTokenPool != null && schoolTokenRemaining != null) ? schoolTokenPool - schoolTokenRemaining : null;
@@ -347,15 +352,12 @@ public class AdminServiceImpl implements AdminService {
             // Fetch all teachers
             teachers = userRepo.findBySchoolIdAndRole(user.getSchoolId(), Role.TEACHER.name());
 
-            // Fetch all logs for the subscription (no aggregation in repo)
-            List<TeacherTokenUsageLog> allLogs = teacherTokenUsageLogRepo.findBySchoolSubscriptionId(activeSub.getId());
-
-            // Group and sum in service
-            Map<UUID, Long> userTokenSums = allLogs.stream()
-                    .collect(Collectors.groupingBy(
-                            TeacherTokenUsageLog::getId,
-                            Collectors.summingLong(TeacherTokenUsageLog::getTokensUsed)
-                    ));
+            // Per-teacher totals from the daily rollup, one row per teacher regardless of log volume
+            Map<UUID, Long> userTokenSums = new HashMap<>();
+            for (TeacherTokenUsageDailyRepository.TeacherUsageTotalProjection total
+                    : teacherTokenUsageDailyRepo.sumTokensByUser(activeSub.getId())) {
+                userTokenSums.put(total.getUserId(), total.getTokensUsed());
+            }
 
             // Build responses (0 if no logs for user)
             teacherUsageLogList = teachers.stream()
@@ -37,6 +37,7 @@ import SEP490.EduPrompt.exception.generic.InvalidActionException;
 import SEP490.EduPrompt.model.Collection;
 import SEP490.EduPrompt.model.*;
 import SEP490.EduPrompt.repo.*;
+import SEP490.EduPrompt.service.ai.SchoolTokenPool;
 import SEP490.EduPrompt.service.auth.UserPrincipal;
 import SEP490.EduPrompt.service.permission.PermissionService;
 import jakarta.transaction.Transactional;
@@ -74,6 +75,7 @@ public class SystemAdminServiceImpl implements SystemAdminService {
     private final SchoolSubscriptionRepository schoolSubscriptionRepository;
     private final TeacherTokenUsageLogRepository teacherTokenUsageLogRepository;
     private final PromptScoreRepository promptScoreRepository;
+    private final SchoolTokenPool schoolTokenPool;
 
     // ========================================================
     // ======================LIST ALL==========================
@@ -1085,17 +1087,21 @@ public class SystemAdminServiceImpl implements SystemAdminService {
             subscriptions = schoolSubscriptionRepository.findAllByOrderByCreatedAtDesc();
         }
 
+        // one lease query for all subscriptions, row value alone misses tokens leased by nodes
+        Map<UUID, Integer> remainingById = schoolTokenPool.aggregateRemaining(subscriptions);
+
         return subscriptions.stream()
                 .map(sub -> {
                     School school = sub.getSchool();
-                    int used = sub.getSchoolTokenPool() - sub.getSchoolTokenRemaining();
+                    int remaining = remainingById.get(sub.getId());
+                    int used = sub.getSchoolTokenPool() - remaining;
 
                     return SchoolSubscriptionTokenStatusResponse.builder()
                             .id(sub.getId())
                             .schoolId(school.getId())
                             .schoolName(school.getName())
                             .schoolTokenPool(sub.getSchoolTokenPool())
-                            .schoolTokenRemaining(sub.getSchoolTokenRemaining())
+                            .schoolTokenRemaining(remaining)
                             .tokensUsed(used < 0 ? 0 : used)
                             .quotaResetDate(sub.getQuotaResetDate())
                             .isActive(sub.getIsActive())
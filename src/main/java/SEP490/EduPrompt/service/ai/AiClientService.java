@@ -1,5 +1,6 @@
 package SEP490.EduPrompt.service.ai;
 
+import SEP490.EduPrompt.dto.response.curriculum.AiDimensionScores;
 import SEP490.EduPrompt.dto.response.prompt.ClientPromptResponse;
 import SEP490.EduPrompt.enums.AiModel;
 import SEP490.EduPrompt.enums.OptimizationMode;
@@ -8,6 +9,7 @@ import com.google.genai.types.File;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface AiClientService {
     Integer DEFAULT_MAX_TOKEN = 16384;
@@ -15,6 +17,14 @@ public interface AiClientService {
     ClientPromptResponse testPrompt(Prompt prompt, AiModel aiModel, String inputText, Double temperature,
                                     Integer maxTokens, Double topP);
 
+    /**
+     * Same as testPrompt, but hands each text chunk to onChunk as soon as the provider streams it
+     *
+     * @return the whole completion with token usage, once the stream has ended
+     */
+    ClientPromptResponse streamTestPrompt(Prompt prompt, AiModel aiModel, String inputText, Double temperature,
+                                          Integer maxTokens, Double topP, Consumer<String> onChunk);
+
     ClientPromptResponse optimizePrompt(Prompt prompt, String optimizationInput, Double temperature,
                                         Integer maxTokens);
 
@@ -38,6 +48,14 @@ public interface AiClientService {
      */
     File uploadFileToGemini(java.io.File file, String fileName, String mimeType);
 
+    /**
+     * All six AI-assisted dimension scores from one structured-output call
+     *
+     * @param curriculumContext lesson context, null when no lesson is known (curriculumAlignment is then null)
+     * @return scores, with null for every dimension the model did not return validly
+     */
+    AiDimensionScores scoreAllDimensions(String promptText, String curriculumContext);
+
     double scoreInstructionClarity(String promptText);
 
     double scoreContextCompleteness(String promptText);
@@ -1,6 +1,8 @@
 package SEP490.EduPrompt.service.ai;
 
+import SEP490.EduPrompt.constant.AiPromptTemplates;
 import SEP490.EduPrompt.constant.PromptTemplateConstants;
+import SEP490.EduPrompt.dto.response.curriculum.AiDimensionScores;
 import SEP490.EduPrompt.dto.response.prompt.ClientPromptResponse;
 import SEP490.EduPrompt.enums.AiModel;
 import SEP490.EduPrompt.enums.OptimizationMode;
@@ -10,24 +12,34 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.genai.Client;
+import com.google.genai.ResponseStream;
 import com.google.genai.types.*;
 import com.openai.client.OpenAIClient;
+import com.openai.core.http.StreamResponse;
 import com.openai.errors.OpenAIException;
 import com.openai.errors.OpenAIServiceException;
 import com.openai.models.ChatModel;
 import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionChunk;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import com.openai.models.chat.completions.ChatCompletionStreamOptions;
 import com.openai.models.chat.completions.ChatCompletionUserMessageParam;
 import com.openai.models.completions.CompletionUsage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -38,6 +50,30 @@ public class AiClientServiceImpl implements AiClientService {
     private static final Float DEFAULT_TEMPERATURE = 0.3f;
     private static final Float DEFAULT_TOP_P = 0.7f;
     private static final String DEFAULT_MODEL = AiModel.GEMINI_3_FLASH_PREVIEW.getName();
+    private static final String GEMINI = AiModel.GEMINI_3_FLASH_PREVIEW.getProvider();
+    private static final String OPENAI = AiModel.GPT_4O_MINI.getProvider();
+    private static final String SCORING_SINGLE = "single";
+    private static final String SCORING_COMBINED = "combined";
+    // field -> max AI points, same ranges as the per-dimension scoring prompts
+    private static final Map<String, Integer> COMBINED_SCORE_RANGES = Map.of(
+            "instructionClarity", 40,
+            "contextCompleteness", 30,
+            "outputSpecification", 50,
+            "constraintStrength", 60,
+            "curriculumAlignment", 100,
+            "pedagogicalQuality", 80);
+    private static final Schema COMBINED_SCORE_SCHEMA = Schema.builder()
+            .type(Type.Known.OBJECT)
+            .properties(Map.of(
+                    "instructionClarity", Schema.builder().type(Type.Known.NUMBER).build(),
+                    "contextCompleteness", Schema.builder().type(Type.Known.NUMBER).build(),
+                    "outputSpecification", Schema.builder().type(Type.Known.NUMBER).build(),
+                    "constraintStrength", Schema.builder().type(Type.Known.NUMBER).build(),
+                    "curriculumAlignment", Schema.builder().type(Type.Known.NUMBER).nullable(true).build(),
+                    "pedagogicalQuality", Schema.builder().type(Type.Known.NUMBER).build()))
+            .required(List.of("instructionClarity", "contextCompleteness", "outputSpecification",
+                    "constraintStrength", "pedagogicalQuality"))
+            .build();
     private static final ImmutableList<SafetySetting> DEFAULT_SAFETY_SETTINGS = ImmutableList.of(
             SafetySetting.builder()
                     .category(HarmCategory.Known.HARM_CATEGORY_HATE_SPEECH)
@@ -50,6 +86,9 @@ public class AiClientServiceImpl implements AiClientService {
     private final Client geminiClient;
     private final OpenAIClient openAiClient;
     private final ObjectMapper objectMapper;
+    private final AiProviderGuard providerGuard;
+    private final MeterRegistry meterRegistry;
+    private final GeminiContextCache contextCache;
     @Value("${ai.timeout.read:30}")
     private int readTimeoutSeconds;
 
@@ -83,6 +122,36 @@ public class AiClientServiceImpl implements AiClientService {
         }
     }
 
+    @Override
+    public ClientPromptResponse streamTestPrompt(
+            Prompt prompt,
+            AiModel aiModel,
+            String inputText,
+            Double temperature,
+            Integer maxTokens,
+            Double topP,
+            Consumer<String> onChunk) {
+
+        log.info("Streaming test of prompt {} with model: {}", prompt.getId(), aiModel.getName());
+
+        String fullPrompt = buildFullPrompt(prompt, inputText);
+
+        try {
+            return switch (aiModel) {
+                case GEMINI_2_5_FLASH, GEMINI_3_FLASH_PREVIEW ->
+                        streamGeminiApi(fullPrompt, aiModel.getName(), temperature, maxTokens, topP, onChunk);
+                case GPT_4O_MINI -> streamOpenAiApi(fullPrompt, aiModel.getName(), temperature, maxTokens, topP, onChunk);
+                default -> throw new AiProviderException("Streaming not supported for AI model: " + aiModel.getName());
+            };
+        } catch (AiProviderException e) {
+            // Already wrapped, re-throw
+            throw e;
+        } catch (Exception e) {
+            log.error("Unexpected error streaming AI model {}", aiModel.getName(), e);
+            throw new AiProviderException("AI call failed: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public ClientPromptResponse optimizePrompt(
             Prompt prompt,
@@ -103,6 +172,51 @@ public class AiClientServiceImpl implements AiClientService {
                 1.0);
     }
 
+    @Override
+    public AiDimensionScores scoreAllDimensions(String promptText, String curriculumContext) {
+        log.debug("Calling Gemini for combined six-dimension scoring");
+
+        String systemPrompt = """
+                You are an expert in evaluating prompt quality for educational purposes,
+                in pedagogy and in the Vietnamese high school curriculum.
+                Score the given prompt on every dimension below, each on its own scale.
+                """;
+
+        String userPrompt = AiPromptTemplates.COMBINED_SCORE.render(
+                promptText, curriculumContext != null ? curriculumContext : "(none)");
+
+        long start = System.nanoTime();
+        try {
+            GenerateContentResponse response = generateGemini(systemPrompt, userPrompt, false, COMBINED_SCORE_SCHEMA);
+            recordScoringCall(SCORING_COMBINED, start, response);
+            JsonNode jsonNode = objectMapper.readTree(extractOptimizedPrompt(extractResponseContent(response)));
+            return AiDimensionScores.builder()
+                    .instructionClarity(combinedScore(jsonNode, "instructionClarity"))
+                    .contextCompleteness(combinedScore(jsonNode, "contextCompleteness"))
+                    .outputSpecification(combinedScore(jsonNode, "outputSpecification"))
+                    .constraintStrength(combinedScore(jsonNode, "constraintStrength"))
+                    .curriculumAlignment(curriculumContext != null ? combinedScore(jsonNode, "curriculumAlignment") : null)
+                    .pedagogicalQuality(combinedScore(jsonNode, "pedagogicalQuality"))
+                    .build();
+        } catch (Exception e) {
+            // every dimension falls back to its own call
+            log.warn("Combined scoring failed, falling back to per-dimension calls: {}", e.getMessage());
+            return AiDimensionScores.EMPTY;
+        }
+    }
+
+    /**
+     * null when the field is missing, not a number or outside its range, so only that dimension is re-scored
+     */
+    private Double combinedScore(JsonNode jsonNode, String field) {
+        JsonNode value = jsonNode.get(field);
+        if (value == null || !value.isNumber()) {
+            return null;
+        }
+        double score = value.asDouble();
+        return score >= 0 && score <= COMBINED_SCORE_RANGES.get(field) ? score : null;
+    }
+
     @Override
     public double scoreInstructionClarity(String promptText) {
         log.debug("Calling Gemini for instruction clarity scoring");
@@ -112,19 +226,7 @@ public class AiClientServiceImpl implements AiClientService {
                 Score the instruction clarity of the given prompt on a scale of 0-40.
                 """;
 
-        String userPrompt = String.format("""
-                Evaluate the clarity of this instruction (0-40 points):
-
-                %s
-
-                Consider:
-                - Is the AI's role crystal clear?
-                - Is the task unambiguous?
-                - Would different AI models interpret this similarly?
-
-                Return ONLY a JSON object:
-                {"score": <0-40>, "reason": "<brief explanation>"}
-                """, promptText);
+        String userPrompt = AiPromptTemplates.INSTRUCTION_CLARITY_SCORE.render(promptText);
 
         return callGeminiForScore(systemPrompt, userPrompt);
     }
@@ -138,17 +240,7 @@ public class AiClientServiceImpl implements AiClientService {
                 Score how complete the contextual information is on a scale of 0-30.
                 """;
 
-        String userPrompt = String.format("""
-                Rate the contextual richness (0-30 points):
-
-                %s
-
-                Does it provide enough background for generating high-quality educational content?
-                Consider: subject details, student characteristics, teaching environment.
-
-                Return ONLY a JSON object:
-                {"score": <0-30>, "reason": "<brief explanation>"}
-                """, promptText);
+        String userPrompt = AiPromptTemplates.CONTEXT_COMPLETENESS_SCORE.render(promptText);
 
         return callGeminiForScore(systemPrompt, userPrompt);
     }
@@ -162,16 +254,7 @@ public class AiClientServiceImpl implements AiClientService {
                 Score how well-defined the output requirements are on a scale of 0-50.
                 """;
 
-        String userPrompt = String.format("""
-                Score output specification clarity (0-50 points):
-
-                %s
-
-                Would a teacher know exactly what format/structure to expect from the AI output?
-
-                Return ONLY a JSON object:
-                {"score": <0-50>, "reason": "<brief explanation>"}
-                """, promptText);
+        String userPrompt = AiPromptTemplates.OUTPUT_SPECIFICATION_SCORE.render(promptText);
 
         return callGeminiForScore(systemPrompt, userPrompt);
     }
@@ -185,16 +268,7 @@ public class AiClientServiceImpl implements AiClientService {
                 Score the strength of constraints on a scale of 0-60.
                 """;
 
-        String userPrompt = String.format("""
-                Evaluate constraint strength (0-60 points):
-
-                %s
-
-                Are there clear guardrails to prevent hallucination, off-topic content, or inaccurate information?
-
-                Return ONLY a JSON object:
-                {"score": <0-60>, "reason": "<brief explanation>"}
-                """, promptText);
+        String userPrompt = AiPromptTemplates.CONSTRAINT_STRENGTH_SCORE.render(promptText);
 
         return callGeminiForScore(systemPrompt, userPrompt);
     }
@@ -208,36 +282,21 @@ public class AiClientServiceImpl implements AiClientService {
                 Score how well a prompt aligns with official curriculum content on a scale of 0-100.
                 """;
 
-        String userPrompt = String.format(
-                """
-                        Score curriculum alignment (0-100 points):
-
-                        TEACHER'S PROMPT:
-                        %s
-
-                        OFFICIAL CURRICULUM CONTEXT:
-                        %s
-
-                        Searching for related lesson content in Vietnamese high school curriculum for better curriculum context if you found it missing.
-                        Scoring criteria:
-                        1. Does the prompt reference the correct lesson/chapter? (30 points)
-                        2. Does it match the learning objectives? (30 points)
-                        3. Is the scope appropriate for this grade level? (20 points)
-                        4. Are terminology and concepts accurate per curriculum? (20 points)
-
-                        Return ONLY a JSON object:
-                        {"score": <0-100>, "issues": ["issue1", "issue2"], "suggestions": ["suggestion1"]}
-                        """,
-                promptText, curriculumContext);
+        String userPrompt = AiPromptTemplates.CURRICULUM_ALIGNMENT_SCORE.render(promptText, curriculumContext);
 
+        long start = System.nanoTime();
         try {
-            String response = callGeminiApi(systemPrompt, userPrompt, false);
-            String jsonString = extractOptimizedPrompt(response);
+            GenerateContentResponse response = generateGemini(systemPrompt, userPrompt, false, null);
+            recordScoringCall(SCORING_SINGLE, start, response);
+            String jsonString = extractOptimizedPrompt(extractResponseContent(response));
             JsonNode jsonNode = objectMapper.readTree(jsonString);
             if (jsonNode.has("score")) {
                 return jsonNode.get("score").asDouble();
             }
             return 0.0;
+        } catch (AiProviderException e) {
+            // provider rejected the call (circuit open, over its limit): a failed dimension, not a zero score
+            throw e;
         } catch (Exception e) {
             log.error("Error parsing curriculum alignment score", e);
             return 0.0;
@@ -253,21 +312,7 @@ public class AiClientServiceImpl implements AiClientService {
                 Score the pedagogical quality of a prompt on a scale of 0-80.
                 """;
 
-        String userPrompt = String.format("""
-                Evaluate pedagogical quality (0-80 points):
-
-                %s
-
-                Consider:
-                - Active learning vs passive learning approach
-                - Differentiation for different student levels
-                - Assessment integration
-                - Alignment with modern teaching methodologies
-                - Bloom's taxonomy level
-
-                Return ONLY a JSON object:
-                {"score": <0-80>, "reason": "<brief explanation>"}
-                """, promptText);
+        String userPrompt = AiPromptTemplates.PEDAGOGICAL_QUALITY_SCORE.render(promptText);
 
         return callGeminiForScore(systemPrompt, userPrompt);
     }
@@ -300,37 +345,7 @@ public class AiClientServiceImpl implements AiClientService {
                                                Map<String, List<String>> weaknesses, String customInstruction) {
         String weaknessesString = formatWeaknesses(weaknesses);
 
-        return String.format(
-                """
-                        Optimize this teacher's prompt using SAFE mode:
-
-                        ORIGINAL PROMPT:
-                        %s
-
-                        CURRICULUM CONTEXT:
-                        %s
-
-                        DETECTED WEAKNESSES:
-                        %s
-
-                        USER INSTRUCTIONS:
-                        %s
-
-                        OPTIMIZATION RULES (SAFE MODE):
-                        1. Preserve teacher's intent 100%% - do not change the core request
-                                2. Preserve ALL existing sections (Instruction, Context, Input Example, Output Format and Constraint) - DO NOT DELETE ANY TEXT - ONLY ADD IF TEXT IS TOO SHORT TO FORM A PROPER PROMPT
-                                3. Only add missing structural elements identified in weaknesses
-                                4. Add output format specification if missing
-                                5. Add curriculum reference from the context provided
-                                6. Keep the same language and tone
-                                7. Make medium additions
-                                8. Do not add activities or change teaching approach
-
-                        Return ONLY the optimized prompt text, nothing else.
-                        """,
-                promptText,
-                curriculumContext,
-                weaknessesString,
+        return AiPromptTemplates.SAFE_OPTIMIZATION.render(promptText, curriculumContext, weaknessesString,
                 customInstruction != null ? customInstruction : "None");
     }
 
@@ -338,39 +353,7 @@ public class AiClientServiceImpl implements AiClientService {
                                                       Map<String, List<String>> weaknesses, String customInstruction) {
         String weaknessesString = formatWeaknesses(weaknesses);
 
-        return String.format("""
-                        Optimize this teacher's prompt using PEDAGOGICAL ENHANCEMENT mode:
-
-                        ORIGINAL PROMPT:
-                        %s
-
-                        CURRICULUM CONTEXT:
-                        %s
-
-                        DETECTED WEAKNESSES:
-                        %s
-
-                        USER INSTRUCTIONS:
-                        %s
-
-                        OPTIMIZATION RULES (PEDAGOGICAL MODE):
-                        1. Preserve teacher's core intent
-                        2. Fix all structural issues from weaknesses
-                        3. Add 2-3 active learning activities aligned with the lesson content
-                        4. Include differentiation strategies for mixed-ability students
-                        5. Add formative assessment component
-                        6. Align explicitly with learning objectives from curriculum
-                        7. Target appropriate Bloom's taxonomy level (Analysis/Application for high school)
-                        8. Maintain Vietnamese educational context and terminology
-
-                        Format the optimized prompt clearly with 5 sections as original prompt (Instruction, Context, Input Example, Output Format, Constraint).
-                        Mark new additions with [ADDED] (can add multiple additions for each section if able) at the start of new sections.
-
-                        Return ONLY the optimized prompt text.
-                        """,
-                promptText,
-                curriculumContext,
-                weaknessesString,
+        return AiPromptTemplates.PEDAGOGICAL_OPTIMIZATION.render(promptText, curriculumContext, weaknessesString,
                 customInstruction != null ? customInstruction : "None");
     }
 
@@ -387,22 +370,48 @@ public class AiClientServiceImpl implements AiClientService {
     }
 
     private double callGeminiForScore(String systemPrompt, String userPrompt) {
+        long start = System.nanoTime();
         try {
-            String response = callGeminiApi(systemPrompt, userPrompt, false);
+            GenerateContentResponse response = generateGemini(systemPrompt, userPrompt, false, null);
+            recordScoringCall(SCORING_SINGLE, start, response);
             // Clean markdown formatting if present
-            String jsonString = extractOptimizedPrompt(response);
+            String jsonString = extractOptimizedPrompt(extractResponseContent(response));
             JsonNode jsonNode = objectMapper.readTree(jsonString);
             if (jsonNode.has("score")) {
                 return jsonNode.get("score").asDouble();
             }
             return 0.0;
+        } catch (AiProviderException e) {
+            // provider rejected the call (circuit open, over its limit): a failed dimension, not a zero score
+            throw e;
         } catch (Exception e) {
             log.error("Error calling Gemini API for scoring", e);
             return 0.0;
         }
     }
 
+    /**
+     * Latency and token spend of scoring calls, per mode, to compare combined vs per-dimension scoring
+     */
+    private void recordScoringCall(String mode, long startNanos, GenerateContentResponse response) {
+        Timer.builder("ai.scoring.call")
+                .tag("mode", mode)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        response.usageMetadata()
+                .flatMap(GenerateContentResponseUsageMetadata::totalTokenCount)
+                .ifPresent(tokens -> meterRegistry.counter("ai.scoring.tokens", "mode", mode).increment(tokens));
+    }
+
     private String callGeminiApi(String systemPrompt, String userPrompt, Boolean enableGoogleSearch) {
+        return extractResponseContent(generateGemini(systemPrompt, userPrompt, enableGoogleSearch, null));
+    }
+
+    /**
+     * @param responseSchema structured JSON output when not null (cannot be combined with Google search)
+     */
+    private GenerateContentResponse generateGemini(String systemPrompt, String userPrompt, Boolean enableGoogleSearch,
+                                                   Schema responseSchema) {
         Content systemInstruction = Content.builder()
                 .parts(Part.builder()
                         .text(systemPrompt)
@@ -421,29 +430,46 @@ public class AiClientServiceImpl implements AiClientService {
                     .build());
         }
 
-        GenerateContentConfig config = GenerateContentConfig.builder()
+        GenerateContentConfig.Builder configBuilder = GenerateContentConfig.builder()
                 .temperature(DEFAULT_TEMPERATURE)
                 .maxOutputTokens(DEFAULT_MAX_TOKEN)
                 .topP(DEFAULT_TOP_P)
                 .safetySettings(DEFAULT_SAFETY_SETTINGS)
+                // scoring / optimization system prompts stay far below Gemini's cacheable minimum, sent inline
                 .systemInstruction(systemInstruction)
-                .tools(toolBuilder)
-                .build();
+                .tools(toolBuilder);
+        if (responseSchema != null) {
+            configBuilder.responseMimeType("application/json")
+                    .responseSchema(responseSchema);
+        }
+        GenerateContentConfig config = configBuilder.build();
 
         try {
-            GenerateContentResponse response = geminiClient.models.generateContent(
-                    AiModel.GEMINI_3_FLASH_PREVIEW.getName(),
+            GenerateContentResponse response = providerGuard.call(GEMINI, () -> geminiClient.models.generateContent(
+                    DEFAULT_MODEL,
                     prompt,
-                    config);
-
-            return extractResponseContent(response);
+                    config));
+            recordCachedTokens(response);
+            return response;
 
+        } catch (AiProviderException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error calling Gemini API", e);
             throw new RuntimeException("Gemini API call failed", e);
         }
     }
 
+    /**
+     * Prompt tokens Gemini served from a context cache (explicit or implicit), billed at the cached rate
+     */
+    private void recordCachedTokens(GenerateContentResponse response) {
+        response.usageMetadata()
+                .flatMap(GenerateContentResponseUsageMetadata::cachedContentTokenCount)
+                .filter(tokens -> tokens > 0)
+                .ifPresent(tokens -> meterRegistry.counter("ai.cached_tokens", "provider", GEMINI).increment(tokens));
+    }
+
     private String extractOptimizedPrompt(String response) {
         // Remove markdown code blocks (json, text, etc)
         String cleaned = response.trim()
@@ -496,69 +522,65 @@ public class AiClientServiceImpl implements AiClientService {
         log.debug("Generating prompt from file with model: {}", effectiveModel);
 
         try {
-            // Build the user prompt
-            StringBuilder promptBuilder = new StringBuilder();
-            promptBuilder.append(
-                    "Based on the uploaded document, generate a structured prompt following this template:\n\n");
-            promptBuilder.append(template);
-
-            if (customInstruction != null && !customInstruction.isBlank()) {
-                promptBuilder.append("\n\n### Additional Requirements from Teacher:\n");
-                promptBuilder.append(customInstruction);
-            }
-
-            promptBuilder
-                    .append("\n\nIMPORTANT: Return your response as a valid JSON object with these exact fields: ");
-            promptBuilder.append("instruction, context, input_example, output_format, constraints");
-
-            String userPrompt = promptBuilder.toString();
+            // The system instruction, search tool and template are the same for every document of a task, they go
+            // into a context cache when large enough and only the document and requirements are sent per call.
+            // Both paths send template -> document -> requirements, so cached and inline calls see the same prompt
+            String templatePrompt = AiPromptTemplates.FILE_CONTEXT_TEMPLATE.render(template);
+            String requestPrompt = customInstruction != null && !customInstruction.isBlank()
+                    ? AiPromptTemplates.FILE_CONTEXT_REQUEST_WITH_REQUIREMENTS.render(customInstruction)
+                    : AiPromptTemplates.FILE_CONTEXT_REQUEST;
+            String systemPrompt = PromptTemplateConstants.buildSystemInstruction();
+            Optional<String> cachedContent = contextCache.lookup(effectiveModel,
+                    new GeminiContextCache.Prefix(systemPrompt, templatePrompt, true));
 
             // Build generation config
-            GenerateContentConfig config = GenerateContentConfig.builder()
+            GenerateContentConfig.Builder configBuilder = GenerateContentConfig.builder()
                     .temperature(DEFAULT_TEMPERATURE)
                     .maxOutputTokens(DEFAULT_MAX_TOKEN)
                     .topP(DEFAULT_TOP_P)
-                    .build();
+                    .safetySettings(ImmutableList.of(
+                            SafetySetting.builder()
+                                    .category(HarmCategory.Known.HARM_CATEGORY_HATE_SPEECH)
+                                    .threshold(HarmBlockThreshold.Known.BLOCK_ONLY_HIGH)
+                                    .build(),
+                            SafetySetting.builder()
+                                    .category(HarmCategory.Known.HARM_CATEGORY_DANGEROUS_CONTENT)
+                                    .threshold(HarmBlockThreshold.Known.BLOCK_LOW_AND_ABOVE)
+                                    .build()));
 
             // Build content with file and prompt
-            Content content = Content.builder()
-                    .role("user")
-                    .parts(
-                            Part.builder().text(userPrompt).build(),
-                            Part.builder()
-                                    .fileData(FileData.builder()
-                                            .fileUri(file.uri().get())
-                                            .mimeType(file.mimeType().get())
-                                            .build())
-                                    .build())
+            Part filePart = Part.builder()
+                    .fileData(FileData.builder()
+                            .fileUri(file.uri().get())
+                            .mimeType(file.mimeType().get())
+                            .build())
                     .build();
-
-            // System instruction
-            Content systemInstruction = Content.fromParts(
-                    Part.fromText(PromptTemplateConstants.buildSystemInstruction()));
-
-            // Safety settings
-            ImmutableList<SafetySetting> safetySettings = ImmutableList.of(
-                    SafetySetting.builder()
-                            .category(HarmCategory.Known.HARM_CATEGORY_HATE_SPEECH)
-                            .threshold(HarmBlockThreshold.Known.BLOCK_ONLY_HIGH)
-                            .build(),
-                    SafetySetting.builder()
-                            .category(HarmCategory.Known.HARM_CATEGORY_DANGEROUS_CONTENT)
-                            .threshold(HarmBlockThreshold.Known.BLOCK_LOW_AND_ABOVE)
-                            .build());
+            Content content;
+            if (cachedContent.isPresent()) {
+                configBuilder.cachedContent(cachedContent.get());
+                content = Content.builder()
+                        .role("user")
+                        .parts(filePart, Part.fromText(requestPrompt))
+                        .build();
+            } else {
+                configBuilder.systemInstruction(Content.fromParts(Part.fromText(systemPrompt)))
+                        .tools(Tool.builder()
+                                .googleSearch(GoogleSearch.builder().build())
+                                .build());
+                content = Content.builder()
+                        .role("user")
+                        .parts(Part.fromText(templatePrompt), filePart, Part.fromText(requestPrompt))
+                        .build();
+            }
+            GenerateContentConfig config = configBuilder.build();
+            String userPrompt = templatePrompt + "\n\n" + requestPrompt;
 
             // Generate content
-            GenerateContentResponse response = geminiClient.models.generateContent(
+            GenerateContentResponse response = providerGuard.call(GEMINI, () -> geminiClient.models.generateContent(
                     effectiveModel,
                     content,
-                    config.toBuilder()
-                            .safetySettings(safetySettings)
-                            .systemInstruction(systemInstruction)
-                            .tools(Tool.builder()
-                                    .googleSearch(GoogleSearch.builder().build())
-                                    .build())
-                            .build());
+                    config));
+            recordCachedTokens(response);
 
             long duration = System.currentTimeMillis() - startTime;
             log.info("Prompt generation completed in {}ms", duration);
@@ -594,6 +616,9 @@ public class AiClientServiceImpl implements AiClientService {
                     .createdAt(Instant.now())
                     .build();
 
+        } catch (AiProviderException e) {
+            // limiter / breaker rejection, already user facing
+            throw e;
         } catch (Exception e) {
             long duration = System.currentTimeMillis() - startTime;
             log.error("Error generating prompt after {}ms: {}", duration, e.getMessage(), e);
@@ -641,7 +666,7 @@ public class AiClientServiceImpl implements AiClientService {
             ChatCompletionCreateParams request = requestBuilder.build();
 
             // Call OpenAI API with configured timeouts
-            ChatCompletion completion = openAiClient.chat().completions().create(request);
+            ChatCompletion completion = providerGuard.call(OPENAI, () -> openAiClient.chat().completions().create(request));
 
             long duration = System.currentTimeMillis() - startTime;
             log.info("OpenAI API call completed in {}ms", duration);
@@ -673,6 +698,10 @@ public class AiClientServiceImpl implements AiClientService {
                     .createdAt(Instant.ofEpochSecond(completion.created()))
                     .build();
 
+        } catch (AiProviderException e) {
+            // limiter / breaker rejection, already user facing
+            throw e;
+
         } catch (OpenAIServiceException e) {
             long duration = System.currentTimeMillis() - startTime;
             log.error("OpenAI service error after {}ms: {} - {}", duration, e.statusCode(), e.getMessage());
@@ -745,10 +774,10 @@ public class AiClientServiceImpl implements AiClientService {
                     .build();
 
             // Generate content
-            GenerateContentResponse response = geminiClient.models.generateContent(
+            GenerateContentResponse response = providerGuard.call(GEMINI, () -> geminiClient.models.generateContent(
                     effectiveModel,
                     List.of(content),
-                    configBuilder.build());
+                    configBuilder.build()));
 
             long duration = System.currentTimeMillis() - startTime;
             log.info("Gemini API call completed in {}ms", duration);
@@ -786,6 +815,9 @@ public class AiClientServiceImpl implements AiClientService {
                     .createdAt(Instant.now())
                     .build();
 
+        } catch (AiProviderException e) {
+            // limiter / breaker rejection, already user facing
+            throw e;
         } catch (Exception e) {
             long duration = System.currentTimeMillis() - startTime;
             log.error("Error calling Gemini API after {}ms with model {}: {}",
@@ -863,14 +895,14 @@ public class AiClientServiceImpl implements AiClientService {
                             " familiar with secondary education standards and pedagogical best practices."));
 
             // Generate content
-            GenerateContentResponse response = geminiClient.models.generateContent(
+            GenerateContentResponse response = providerGuard.call(GEMINI, () -> geminiClient.models.generateContent(
                     effectiveModel,
                     content,
                     configBuilder
                             .safetySettings(safetySettings)
                             .systemInstruction(systemInstruction)
                             .thinkingConfig(ThinkingConfig.builder().thinkingBudget(4096))
-                            .build());
+                            .build()));
 
             long duration = System.currentTimeMillis() - startTime;
             log.info("Gemini API call completed in {}ms", duration);
@@ -908,6 +940,9 @@ public class AiClientServiceImpl implements AiClientService {
                     .createdAt(Instant.now())
                     .build();
 
+        } catch (AiProviderException e) {
+            // limiter / breaker rejection, already user facing
+            throw e;
         } catch (Exception e) {
             long duration = System.currentTimeMillis() - startTime;
             log.error("Error calling Gemini API after {}ms with model {}: {}",
@@ -923,6 +958,217 @@ public class AiClientServiceImpl implements AiClientService {
         }
     }
 
+    /**
+     * Stream OpenAI chat completion, usage arrives in the last chunk (include_usage)
+     */
+    protected ClientPromptResponse streamOpenAiApi(
+            String prompt,
+            String model,
+            Double temperature,
+            Integer maxTokens,
+            Double topP,
+            Consumer<String> onChunk) {
+
+        long startTime = System.currentTimeMillis();
+
+        try {
+            log.debug("Streaming OpenAI API with model: {}", model);
+
+            ChatCompletionCreateParams.Builder requestBuilder = ChatCompletionCreateParams.builder()
+                    .model(ChatModel.GPT_4O)
+                    .addMessage(ChatCompletionUserMessageParam.builder()
+                            .content(ChatCompletionUserMessageParam.Content.ofText(prompt))
+                            .build())
+                    .streamOptions(ChatCompletionStreamOptions.builder()
+                            .includeUsage(true)
+                            .build());
+
+            if (temperature != null) {
+                requestBuilder.temperature(temperature);
+            }
+            if (maxTokens != null) {
+                requestBuilder.maxCompletionTokens(maxTokens.longValue());
+            }
+            if (topP != null) {
+                requestBuilder.topP(topP);
+            }
+
+            ChatCompletionCreateParams request = requestBuilder.build();
+            StringBuilder output = new StringBuilder();
+
+            StreamedCompletion streamed = providerGuard.callStreaming(OPENAI, firstChunk -> {
+                String id = null;
+                String finishReason = null;
+                CompletionUsage usage = null;
+                try (StreamResponse<ChatCompletionChunk> stream = openAiClient.chat().completions().createStreaming(request)) {
+                    Iterator<ChatCompletionChunk> chunks = stream.stream().iterator();
+                    while (chunks.hasNext()) {
+                        ChatCompletionChunk chunk = chunks.next();
+                        id = chunk.id();
+                        for (ChatCompletionChunk.Choice choice : chunk.choices()) {
+                            choice.delta().content().ifPresent(text -> {
+                                firstChunk.run();
+                                output.append(text);
+                                onChunk.accept(text);
+                            });
+                            if (choice.finishReason().isPresent()) {
+                                finishReason = choice.finishReason().get().toString();
+                            }
+                        }
+                        if (chunk.usage().isPresent()) {
+                            usage = chunk.usage().get();
+                        }
+                    }
+                }
+                return new StreamedCompletion(id, finishReason,
+                        usage != null ? Math.toIntExact(usage.promptTokens()) : null,
+                        usage != null ? Math.toIntExact(usage.completionTokens()) : null,
+                        usage != null ? Math.toIntExact(usage.totalTokens()) : null);
+            });
+
+            log.info("OpenAI stream completed in {}ms", System.currentTimeMillis() - startTime);
+
+            return ClientPromptResponse.builder()
+                    .content(output.toString())
+                    .prompt(prompt)
+                    .model(model)
+                    .temperature(temperature)
+                    .maxTokens(maxTokens)
+                    .topP(topP)
+                    .promptTokens(streamed.promptTokens())
+                    .completionTokens(streamed.completionTokens())
+                    .totalTokens(streamed.totalTokens())
+                    .finishReason(streamed.finishReason())
+                    .id(streamed.id())
+                    .createdAt(Instant.now())
+                    .build();
+
+        } catch (AiProviderException e) {
+            // limiter / breaker rejection, already user facing
+            throw e;
+
+        } catch (OpenAIServiceException e) {
+            log.error("OpenAI stream error after {}ms: {} - {}",
+                    System.currentTimeMillis() - startTime, e.statusCode(), e.getMessage());
+            String errorMsg = switch (e.statusCode()) {
+                case 429 -> "Rate limit exceeded. Please try again later.";
+                case 500, 502, 503 -> "OpenAI service temporarily unavailable. Please retry.";
+                case 401 -> "Invalid API key configuration.";
+                default -> "OpenAI API error: " + e.getMessage();
+            };
+            throw new AiProviderException(errorMsg, e);
+
+        } catch (Exception e) {
+            log.error("Unexpected error streaming OpenAI API after {}ms", System.currentTimeMillis() - startTime, e);
+            if (e.getCause() instanceof java.net.SocketTimeoutException) {
+                throw new AiProviderException(
+                        String.format("OpenAI request timed out after %d seconds", readTimeoutSeconds),
+                        e);
+            }
+            throw new AiProviderException("Failed to call OpenAI API: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stream Gemini generation, usage and finish reason are read from the last chunk
+     */
+    protected ClientPromptResponse streamGeminiApi(
+            String prompt,
+            String model,
+            Double temperature,
+            Integer maxTokens,
+            Double topP,
+            Consumer<String> onChunk) {
+
+        String effectiveModel = (model != null && !model.isBlank())
+                ? model
+                : DEFAULT_MODEL;
+
+        long startTime = System.currentTimeMillis();
+
+        log.debug("Streaming Gemini API with model: {}", effectiveModel);
+
+        try {
+            GenerateContentConfig.Builder configBuilder = GenerateContentConfig.builder();
+            if (temperature != null) {
+                configBuilder.temperature(temperature.floatValue());
+            }
+            if (maxTokens != null) {
+                configBuilder.maxOutputTokens(maxTokens);
+            }
+            if (topP != null) {
+                configBuilder.topP(topP.floatValue());
+            }
+
+            Content content = Content.builder()
+                    .role("user")
+                    .parts(List.of(Part.builder().text(prompt).build()))
+                    .build();
+
+            StringBuilder output = new StringBuilder();
+
+            GenerateContentResponse lastChunk = providerGuard.callStreaming(GEMINI, firstChunk -> {
+                GenerateContentResponse last = null;
+                try (ResponseStream<GenerateContentResponse> stream = geminiClient.models.generateContentStream(
+                        effectiveModel,
+                        List.of(content),
+                        configBuilder.build())) {
+                    for (GenerateContentResponse chunk : stream) {
+                        String text = extractResponseContent(chunk);
+                        if (!text.isEmpty()) {
+                            firstChunk.run();
+                            output.append(text);
+                            onChunk.accept(text);
+                        }
+                        last = chunk;
+                    }
+                }
+                return last;
+            });
+
+            log.info("Gemini stream completed in {}ms", System.currentTimeMillis() - startTime);
+
+            Integer promptTokens = null;
+            Integer completionTokens = null;
+            Integer totalTokens = null;
+
+            if (lastChunk != null && lastChunk.usageMetadata().isPresent()) {
+                var usageMetadata = lastChunk.usageMetadata().get();
+                promptTokens = usageMetadata.promptTokenCount().orElse(null);
+                completionTokens = usageMetadata.candidatesTokenCount().orElse(null);
+                totalTokens = usageMetadata.totalTokenCount().orElse(null);
+            }
+
+            return ClientPromptResponse.builder()
+                    .content(output.toString())
+                    .prompt(prompt)
+                    .model(effectiveModel)
+                    .temperature(temperature)
+                    .maxTokens(maxTokens)
+                    .topP(topP)
+                    .promptTokens(promptTokens)
+                    .completionTokens(completionTokens)
+                    .totalTokens(totalTokens)
+                    .finishReason(lastChunk != null ? extractFinishReason(lastChunk) : "UNKNOWN")
+                    .id(UUID.randomUUID().toString())
+                    .createdAt(Instant.now())
+                    .build();
+
+        } catch (AiProviderException e) {
+            // limiter / breaker rejection, already user facing
+            throw e;
+        } catch (Exception e) {
+            log.error("Error streaming Gemini API after {}ms with model {}: {}",
+                    System.currentTimeMillis() - startTime, effectiveModel, e.getMessage(), e);
+            if (e.getCause() instanceof java.net.SocketTimeoutException) {
+                throw new AiProviderException(
+                        String.format("Gemini request timed out after %d seconds", readTimeoutSeconds),
+                        e);
+            }
+            throw new AiProviderException("Failed to call Gemini API: " + e.getMessage(), e);
+        }
+    }
+
     protected ClientPromptResponse callAnthropicApi(
             String prompt,
             String model,
@@ -963,7 +1209,11 @@ public class AiClientServiceImpl implements AiClientService {
     }
 
     private String buildFullPrompt(Prompt prompt, String inputText) {
-        StringBuilder fullPrompt = new StringBuilder();
+        // sized for every section up front, a prompt with long sections would otherwise grow the buffer repeatedly
+        StringBuilder fullPrompt = new StringBuilder(96
+                + length(prompt.getInstruction()) + length(prompt.getContext())
+                + Math.max(length(inputText), length(prompt.getInputExample()))
+                + length(prompt.getOutputFormat()) + length(prompt.getConstraints()));
 
         if (prompt.getInstruction() != null && !prompt.getInstruction().isBlank()) {
             fullPrompt.append("Instruction: ").append(prompt.getInstruction()).append("\n\n");
@@ -990,38 +1240,26 @@ public class AiClientServiceImpl implements AiClientService {
         return fullPrompt.toString().trim();
     }
 
+    private static int length(String text) {
+        return text != null ? text.length() : 0;
+    }
+
     private String buildOptimizationPrompt(Prompt prompt, String optimizationInput) {
         String currentPrompt = buildFullPrompt(prompt, null);
 
         int minChars = Math.max(800, currentPrompt.length());
         int minWords = Math.max(120, currentPrompt.split("\\s+").length);
 
-        return String.format(
-                """
-                        System: You are an expert prompt engineer. Strict rules:
-                         - Preserve all intent and requirements from the Current Prompt.
-                         - Expand and improve the prompt for clarity, pedagogy, and concrete instructions for a high school teacher audience.
-                         - Do NOT shorten or remove details. The optimized prompt MUST be AT LEAST %d characters and AT LEAST %d words.
-                         - Keep or expand examples, constraints, and formatting. Add step-by-step instructions, examples, and explicit output format if missing.
-                         - Follow prompt-engineering best practices: explicit goal, role, audience, constraints, examples, desired output shape.
-                         - Return ONLY the optimized prompt text (no commentary, no meta, no labels). If you produce anything else, the response will be discarded.
-
-                        === Current Prompt ===
-                        %s
-
-                        === Optimization Request ===
-                        %s
-
-                        Output requirements (IMPORTANT):
-                        1) Return a single block of plain text (the new prompt).
-                        2) The prompt must be ready-to-use — teacher can paste it into an LLM as-is.
-                        3) The prompt must be at least %d characters and at least %d words.
-                        4) Do not include any preamble like "Here is the optimized prompt:".
-                        """,
-                minChars, minWords,
-                currentPrompt,
-                optimizationInput,
-                minChars, minWords);
+        return AiPromptTemplates.PROMPT_OPTIMIZATION.render(
+                String.valueOf(minChars), String.valueOf(minWords), currentPrompt, optimizationInput);
     }
 
-}
\ No newline at end of file
+    private record StreamedCompletion(
+            String id,
+            String finishReason,
+            Integer promptTokens,
+            Integer completionTokens,
+            Integer totalTokens
+    ) {
+    }
+}
@@ -0,0 +1,304 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.exception.client.AiProviderException;
+import SEP490.EduPrompt.exception.client.TooManyRequestsException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Dedicated executor for AI jobs and provider calls
+ * - Virtual threads, so a job blocked on provider HTTP I/O costs no platform thread (common pool stays free)
+ * - executeJob blocks the caller once max-jobs are running, which back-pressures the job queue poll loop;
+ *   tryExecuteJob is for callers that must not block (scheduler, request threads)
+ * - Provider calls are only timed and measured here; their concurrency is AiProviderGuard's adaptive limit,
+ *   so a call waits in one queue only and streams (guard only) share the same limit
+ * - Workload pools (scoring fan-out, optimization stages, search, indexing) get a bounded semaphore under
+ *   ai.executor.pools; a pool with max-queued callers already waiting fails fast instead of piling up
+ * - The call timeout covers waiting for a permit plus the call; on timeout the call is interrupted
+ */
+@Component
+@Slf4j
+public class AiJobExecutor {
+
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    private final ExecutorService virtualThreads =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ai-job-", 0).factory());
+
+    private final Semaphore jobSlots;
+    private final AtomicInteger activeJobs = new AtomicInteger();
+    private final AtomicInteger waitingJobs = new AtomicInteger();
+    private final Map<String, Limit> providers = new ConcurrentHashMap<>();
+    private final Map<String, Limit> pools = new ConcurrentHashMap<>();
+
+    @Value("${ai.executor.pool-limit:16}")
+    private int defaultPoolLimit = 16;
+
+    @Value("${ai.executor.max-queued-per-pool:64}")
+    private int maxQueuedPerPool = 64;
+
+    public AiJobExecutor(MeterRegistry meterRegistry,
+                         Environment environment,
+                         @Value("${ai.executor.max-jobs:32}") int maxJobs) {
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+        this.jobSlots = new Semaphore(maxJobs);
+        Gauge.builder("ai.jobs.active", activeJobs, AtomicInteger::get)
+                .description("AI jobs currently running")
+                .register(meterRegistry);
+        Gauge.builder("ai.jobs.waiting", waitingJobs, AtomicInteger::get)
+                .description("Jobs blocked waiting for a free job slot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a queued job on a virtual thread, blocks while max-jobs are already running
+     */
+    public void executeJob(Runnable job) {
+        waitingJobs.incrementAndGet();
+        try {
+            jobSlots.acquireUninterruptibly();
+        } finally {
+            waitingJobs.decrementAndGet();
+        }
+        activeJobs.incrementAndGet();
+        try {
+            virtualThreads.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    activeJobs.decrementAndGet();
+                    jobSlots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // only after shutdown
+            activeJobs.decrementAndGet();
+            jobSlots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Run a job on a virtual thread only if a job slot is free right now, never blocks
+     *
+     * @return false when max-jobs are already running
+     */
+    public boolean tryExecuteJob(Runnable job) {
+        if (!jobSlots.tryAcquire()) {
+            return false;
+        }
+        activeJobs.incrementAndGet();
+        try {
+            virtualThreads.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    activeJobs.decrementAndGet();
+                    jobSlots.release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // only after shutdown
+            activeJobs.decrementAndGet();
+            jobSlots.release();
+            throw e;
+        }
+    }
+
+    public boolean hasFreeJobSlot() {
+        return jobSlots.availablePermits() > 0;
+    }
+
+    /**
+     * Call a provider with a timeout, the task goes through AiProviderGuard for the provider's concurrency limit
+     *
+     * @throws TimeoutException    when the call (including the guard's queue wait) exceeds the timeout
+     *                             (the call is interrupted)
+     * @throws AiProviderException when the call fails with a checked exception
+     */
+    public <T> T call(String provider, Duration timeout, Callable<T> task) throws TimeoutException {
+        return run(providerLimit(provider), timeout, task);
+    }
+
+    /**
+     * Run a task within the concurrency limit of a workload pool, same timeout and interrupt semantics as call
+     *
+     * @throws TooManyRequestsException when max-queued-per-pool tasks are already waiting
+     */
+    public <T> T callInPool(String pool, Duration timeout, Callable<T> task) throws TimeoutException {
+        Limit limit = poolLimit(pool);
+        if (limit.queued.get() >= maxQueuedPerPool) {
+            limit.record(0, "rejected");
+            throw new TooManyRequestsException("Too many " + pool + " requests in progress, try again later");
+        }
+        return run(limit, timeout, task);
+    }
+
+    private <T> T run(Limit limit, Duration timeout, Callable<T> task) throws TimeoutException {
+        long start = System.nanoTime();
+        Future<T> future = virtualThreads.submit(() -> limit.run(task));
+        try {
+            T result = future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            limit.record(System.nanoTime() - start, "success");
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            limit.record(System.nanoTime() - start, "timeout");
+            throw e;
+        } catch (ExecutionException e) {
+            limit.record(System.nanoTime() - start, "error");
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new AiProviderException("AI call failed: " + cause.getMessage(), (Exception) cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AiProviderException("AI call interrupted");
+        }
+    }
+
+    /**
+     * Non-blocking call for fan-out, the future fails with the same exceptions call throws
+     * (a TimeoutException arrives wrapped in a CompletionException)
+     * - cancel(true) on the returned future interrupts the call, so a caller's overall deadline frees the
+     *   provider permit instead of leaving the call running until its own timeout
+     */
+    public <T> CompletableFuture<T> callAsync(String provider, Duration timeout, Callable<T> task) {
+        return async(() -> call(provider, timeout, task));
+    }
+
+    /**
+     * Non-blocking callInPool, same future semantics as callAsync
+     */
+    public <T> CompletableFuture<T> callInPoolAsync(String pool, Duration timeout, Callable<T> task) {
+        return async(() -> callInPool(pool, timeout, task));
+    }
+
+    private <T> CompletableFuture<T> async(TimedCall<T> call) {
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            runner.set(Thread.currentThread());
+            try {
+                return call.run();
+            } catch (TimeoutException e) {
+                throw new CompletionException(e);
+            } finally {
+                runner.set(null);
+            }
+        }, virtualThreads);
+        future.whenComplete((result, error) -> {
+            Thread thread = runner.get();
+            if (future.isCancelled() && thread != null) {
+                // the runner is blocked in call(), which cancels the provider call when interrupted
+                thread.interrupt();
+            }
+        });
+        return future;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        virtualThreads.shutdown();
+        try {
+            if (!virtualThreads.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("AI jobs still running after 30s, interrupting");
+                virtualThreads.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            virtualThreads.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // metrics only, no permits: a second semaphore in front of the guard would queue every call twice
+    private Limit providerLimit(String provider) {
+        return providers.computeIfAbsent(provider, p -> new Limit("provider", p, 0));
+    }
+
+    private Limit poolLimit(String pool) {
+        return pools.computeIfAbsent(pool, p -> new Limit("pool", p,
+                environment.getProperty("ai.executor.pools." + p + ".limit", Integer.class, defaultPoolLimit)));
+    }
+
+    @FunctionalInterface
+    private interface TimedCall<T> {
+        T run() throws TimeoutException;
+    }
+
+    /**
+     * Semaphore of one provider or pool, metrics are ai.{kind}.call / in_flight / queued tagged {kind}=name
+     * - A limit of 0 has no semaphore, only the metrics
+     */
+    private final class Limit {
+        private final String kind;
+        private final String name;
+        private final Semaphore permits;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger queued = new AtomicInteger();
+
+        private Limit(String kind, String name, int limit) {
+            this.kind = kind;
+            this.name = name;
+            this.permits = limit > 0 ? new Semaphore(limit, true) : null;
+            Gauge.builder("ai." + kind + ".in_flight", inFlight, AtomicInteger::get)
+                    .tag(kind, name)
+                    .description("Calls currently running in the " + kind)
+                    .register(meterRegistry);
+            Gauge.builder("ai." + kind + ".queued", queued, AtomicInteger::get)
+                    .tag(kind, name)
+                    .description("Calls waiting for a " + kind + " permit")
+                    .register(meterRegistry);
+            if (permits != null) {
+                log.info("AI {} {} limited to {} concurrent calls", kind, name, limit);
+            }
+        }
+
+        private <T> T run(Callable<T> task) throws Exception {
+            if (permits != null) {
+                queued.incrementAndGet();
+                try {
+                    // interrupted by cancel(true) when the caller times out while we wait
+                    permits.acquire();
+                } finally {
+                    queued.decrementAndGet();
+                }
+            }
+            inFlight.incrementAndGet();
+            try {
+                return task.call();
+            } finally {
+                inFlight.decrementAndGet();
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }
+
+        private void record(long nanos, String outcome) {
+            Timer.builder("ai." + kind + ".call")
+                    .tag(kind, name)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
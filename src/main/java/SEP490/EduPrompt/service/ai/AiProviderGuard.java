@@ -0,0 +1,300 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.exception.client.AiProviderException;
+import com.google.genai.errors.ApiException;
+import com.openai.errors.OpenAIServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive concurrency limit + circuit breaker per AI provider
+ * - AIMD: the limit grows by 1/limit on each fast success while it is in use, and is cut by backoff-ratio
+ *   on a 429 / 5xx / timeout or a response slower than latency-threshold-ms (first chunk for streams)
+ * - Callers over the limit wait at most queue-wait-ms, then fail fast instead of piling up
+ * - failure-threshold consecutive overload failures open the breaker for open-duration-ms, every call fails
+ *   fast meanwhile; after that a single probe call decides between closing and re-opening
+ * - Client errors (4xx other than 429) say nothing about provider health and leave limit and breaker alone
+ * - This is the only per-provider concurrency limit; a provider's ceiling is ai.limiter.providers.{name}.max-limit,
+ *   falling back to max-limit
+ */
+@Component
+@Slf4j
+public class AiProviderGuard {
+
+    enum Outcome {SUCCESS, SLOW, OVERLOAD, IGNORED}
+
+    enum BreakerState {CLOSED, HALF_OPEN, OPEN}
+
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    private final Map<String, ProviderState> providers = new ConcurrentHashMap<>();
+
+    @Value("${ai.limiter.initial-limit:4}")
+    private int initialLimit = 4;
+
+    @Value("${ai.limiter.min-limit:1}")
+    private int minLimit = 1;
+
+    @Value("${ai.limiter.max-limit:32}")
+    private int maxLimit = 32;
+
+    @Value("${ai.limiter.backoff-ratio:0.5}")
+    private double backoffRatio = 0.5;
+
+    @Value("${ai.limiter.latency-threshold-ms:20000}")
+    private long latencyThresholdMs = 20000;
+
+    @Value("${ai.limiter.queue-wait-ms:5000}")
+    private long queueWaitMs = 5000;
+
+    @Value("${ai.breaker.failure-threshold:5}")
+    private int failureThreshold = 5;
+
+    @Value("${ai.breaker.open-duration-ms:30000}")
+    private long openDurationMs = 30000;
+
+    public AiProviderGuard(MeterRegistry meterRegistry, Environment environment) {
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    /**
+     * Run one provider call under the provider's limit and breaker, exceptions of the call pass through unchanged
+     *
+     * @throws AiProviderException when the breaker is open or no permit frees up within queue-wait-ms
+     */
+    public <T> T call(String provider, Supplier<T> call) {
+        return callStreaming(provider, firstChunk -> call.get());
+    }
+
+    /**
+     * Run one streamed provider call, only the wait for the first chunk counts against latency-threshold-ms
+     * - The call runs firstChunk once output starts arriving, a long answer is not a slow provider
+     * - A stream that never reports a first chunk is timed to its end like a plain call
+     *
+     * @throws AiProviderException when the breaker is open or no permit frees up within queue-wait-ms
+     */
+    public <T> T callStreaming(String provider, Function<Runnable, T> call) {
+        ProviderState state = stateFor(provider);
+        boolean probe = state.acquire();
+        long start = System.nanoTime();
+        long[] firstChunkNanos = {-1};
+        Outcome outcome = Outcome.IGNORED;
+        try {
+            T result = call.apply(() -> {
+                if (firstChunkNanos[0] < 0) {
+                    firstChunkNanos[0] = System.nanoTime() - start;
+                }
+            });
+            long latencyNanos = firstChunkNanos[0] >= 0 ? firstChunkNanos[0] : System.nanoTime() - start;
+            outcome = TimeUnit.NANOSECONDS.toMillis(latencyNanos) > latencyThresholdMs
+                    ? Outcome.SLOW
+                    : Outcome.SUCCESS;
+            return result;
+        } catch (RuntimeException e) {
+            outcome = classify(e);
+            throw e;
+        } finally {
+            state.release(outcome, probe);
+        }
+    }
+
+    int currentLimit(String provider) {
+        return (int) stateFor(provider).limit;
+    }
+
+    BreakerState breakerState(String provider) {
+        return stateFor(provider).breaker;
+    }
+
+    /**
+     * Rate limits, server errors and timeouts mean the provider is overloaded, anything else is the request's fault
+     */
+    static Outcome classify(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof OpenAIServiceException serviceException) {
+                return statusOutcome(serviceException.statusCode());
+            }
+            if (e instanceof ApiException apiException) {
+                return statusOutcome(apiException.code());
+            }
+            // socket / http timeouts, resets and interrupted reads
+            if (e instanceof IOException) {
+                return Outcome.OVERLOAD;
+            }
+        }
+        return Outcome.IGNORED;
+    }
+
+    private static Outcome statusOutcome(int status) {
+        return status == 429 || status >= 500 ? Outcome.OVERLOAD : Outcome.IGNORED;
+    }
+
+    private ProviderState stateFor(String provider) {
+        return providers.computeIfAbsent(provider, ProviderState::new);
+    }
+
+    private final class ProviderState {
+        private final String provider;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition permitFreed = lock.newCondition();
+        private final Counter openRejections;
+        private final Counter queueRejections;
+        private final int maxLimit;
+
+        // guarded by lock, read unlocked by the gauges
+        private volatile double limit;
+        private volatile int inFlight;
+        private volatile int waiting;
+        private volatile BreakerState breaker = BreakerState.CLOSED;
+        private int consecutiveFailures;
+        private long openUntilNanos;
+        private boolean probeInFlight;
+
+        private ProviderState(String provider) {
+            this.provider = provider;
+            this.maxLimit = environment.getProperty("ai.limiter.providers." + provider + ".max-limit", Integer.class,
+                    AiProviderGuard.this.maxLimit);
+            this.limit = Math.min(initialLimit, maxLimit);
+            Gauge.builder("ai.limiter.limit", this, s -> s.limit)
+                    .tag("provider", provider)
+                    .description("Current adaptive concurrency limit")
+                    .register(meterRegistry);
+            Gauge.builder("ai.limiter.in_flight", this, s -> s.inFlight)
+                    .tag("provider", provider)
+                    .register(meterRegistry);
+            Gauge.builder("ai.limiter.waiting", this, s -> s.waiting)
+                    .tag("provider", provider)
+                    .description("Calls queued for a limiter permit")
+                    .register(meterRegistry);
+            Gauge.builder("ai.breaker.state", this, s -> s.breaker.ordinal())
+                    .tag("provider", provider)
+                    .description("0 closed, 1 half-open, 2 open")
+                    .register(meterRegistry);
+            this.openRejections = Counter.builder("ai.limiter.rejected")
+                    .tag("provider", provider)
+                    .tag("reason", "breaker_open")
+                    .register(meterRegistry);
+            this.queueRejections = Counter.builder("ai.limiter.rejected")
+                    .tag("provider", provider)
+                    .tag("reason", "queue_timeout")
+                    .register(meterRegistry);
+        }
+
+        /**
+         * @return true when this call is the half-open probe
+         */
+        private boolean acquire() {
+            lock.lock();
+            try {
+                if (breaker == BreakerState.OPEN) {
+                    if (System.nanoTime() - openUntilNanos < 0) {
+                        openRejections.increment();
+                        throw new AiProviderException("AI provider " + provider + " is unavailable, try again later");
+                    }
+                    breaker = BreakerState.HALF_OPEN;
+                    log.info("Circuit breaker of {} half-open, sending a probe", provider);
+                }
+                if (breaker == BreakerState.HALF_OPEN) {
+                    if (probeInFlight) {
+                        openRejections.increment();
+                        throw new AiProviderException("AI provider " + provider + " is unavailable, try again later");
+                    }
+                    probeInFlight = true;
+                    inFlight++;
+                    return true;
+                }
+
+                long remaining = TimeUnit.MILLISECONDS.toNanos(queueWaitMs);
+                waiting++;
+                try {
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0) {
+                            queueRejections.increment();
+                            throw new AiProviderException("AI provider " + provider + " is busy, try again later");
+                        }
+                        remaining = permitFreed.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AiProviderException("AI call interrupted");
+                } finally {
+                    waiting--;
+                }
+                inFlight++;
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(Outcome outcome, boolean probe) {
+            lock.lock();
+            try {
+                inFlight--;
+                if (probe) {
+                    probeInFlight = false;
+                }
+                switch (outcome) {
+                    case SUCCESS -> {
+                        // only grow while the limit is actually the bottleneck
+                        if (inFlight + 1 >= (int) limit / 2) {
+                            limit = Math.min(maxLimit, limit + 1.0 / limit);
+                        }
+                        onHealthy();
+                    }
+                    case SLOW -> {
+                        // answered, so healthy for the breaker, but the limit is past what it serves well
+                        limit = Math.max(minLimit, limit * backoffRatio);
+                        onHealthy();
+                    }
+                    case OVERLOAD -> {
+                        limit = Math.max(minLimit, limit * backoffRatio);
+                        onOverload();
+                    }
+                    case IGNORED -> {
+                        if (probe) {
+                            onHealthy();
+                        }
+                    }
+                }
+                permitFreed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onHealthy() {
+            consecutiveFailures = 0;
+            if (breaker == BreakerState.HALF_OPEN) {
+                breaker = BreakerState.CLOSED;
+                log.info("Circuit breaker of {} closed", provider);
+            }
+        }
+
+        private void onOverload() {
+            consecutiveFailures++;
+            if (breaker == BreakerState.HALF_OPEN
+                    || (breaker == BreakerState.CLOSED && consecutiveFailures >= failureThreshold)) {
+                breaker = BreakerState.OPEN;
+                openUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+                log.warn("Circuit breaker of {} opened after {} failures, limit now {}",
+                        provider, consecutiveFailures, (int) limit);
+            }
+        }
+    }
+}
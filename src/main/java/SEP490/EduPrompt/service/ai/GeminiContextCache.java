@@ -0,0 +1,171 @@
+package SEP490.EduPrompt.service.ai;
+
+import com.google.genai.Client;
+import com.google.genai.types.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gemini explicit context caches for the static prefix of a request (system instruction, tools, fixed leading text)
+ * - One cache per model and prefix, created on first use and referenced by name afterwards, so the prefix is
+ *   billed at the cached-token rate instead of being sent and processed on every call
+ * - Recreated refresh-margin before its TTL ends, the old cache expires on its own
+ * - Prefixes estimated under min-tokens (Gemini's smallest cacheable size) never reach the cache API; only the
+ *   document prompt prefix (system instruction + task template, ~1.4k-1.7k tokens) is large enough today
+ * - One caller creates the cache outside the map, the others send the prefix inline until it is ready
+ *   instead of waiting on the create call
+ * - A failed creation is retried after retry-after, callers send the prefix inline meanwhile
+ */
+@Component
+@Slf4j
+public class GeminiContextCache {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Key, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+    private Backend backend;
+    private Clock clock = Clock.systemUTC();
+
+    @Value("${ai.context-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${ai.context-cache.ttl-minutes:60}")
+    private long ttlMinutes = 60;
+
+    @Value("${ai.context-cache.refresh-margin-minutes:5}")
+    private long refreshMarginMinutes = 5;
+
+    @Value("${ai.context-cache.min-tokens:1024}")
+    private int minTokens = 1024;
+
+    @Value("${ai.context-cache.retry-after-minutes:30}")
+    private long retryAfterMinutes = 30;
+
+    public GeminiContextCache(Client geminiClient, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.backend = (model, prefix, ttl) -> createInGemini(geminiClient, model, prefix, ttl);
+    }
+
+    /**
+     * Static part of a request; everything here moves into the cache and must be left out of the request itself
+     *
+     * @param leadingText first user content before the per-call content, null when there is none
+     */
+    public record Prefix(String systemInstruction, String leadingText, boolean googleSearch) {
+
+        int estimatedTokens() {
+            // ~4 chars per token for English, Vietnamese text tokenizes denser so this rather under-counts
+            return (systemInstruction.length() + (leadingText != null ? leadingText.length() : 0)) / 4;
+        }
+    }
+
+    /**
+     * Creates a cache with the prefix and returns its name
+     */
+    interface Backend {
+        String create(String model, Prefix prefix, Duration ttl) throws Exception;
+    }
+
+    /**
+     * @return name of a live cache holding the prefix, empty when the prefix has to be sent inline
+     */
+    public Optional<String> lookup(String model, Prefix prefix) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        if (prefix.estimatedTokens() < minTokens) {
+            record("skipped");
+            return Optional.empty();
+        }
+        Key key = new Key(model, prefix);
+        Instant now = clock.instant();
+        CompletableFuture<Entry> current = entries.get(key);
+        if (current != null) {
+            if (!current.isDone()) {
+                // another caller is creating it
+                record("pending");
+                return Optional.empty();
+            }
+            Entry entry = current.join();
+            if (now.isBefore(entry.refreshAt())) {
+                if (entry.name() != null) {
+                    record("hit");
+                }
+                return Optional.ofNullable(entry.name());
+            }
+        }
+
+        // claim the (re)creation, the blocking create call then runs outside the map
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        boolean claimed = current == null
+                ? entries.putIfAbsent(key, mine) == null
+                : entries.replace(key, current, mine);
+        if (!claimed) {
+            record("pending");
+            return Optional.empty();
+        }
+        try {
+            Entry created = create(model, prefix, now);
+            mine.complete(created);
+            return Optional.ofNullable(created.name());
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Entry create(String model, Prefix prefix, Instant now) {
+        Duration ttl = Duration.ofMinutes(ttlMinutes);
+        try {
+            String name = backend.create(model, prefix, ttl);
+            record("created");
+            log.info("Created Gemini context cache {} for {} (~{} tokens)", name, model, prefix.estimatedTokens());
+            return new Entry(name, now.plus(ttl).minus(Duration.ofMinutes(refreshMarginMinutes)));
+        } catch (Exception e) {
+            record("failed");
+            log.warn("Gemini context cache creation failed for {}, sending the prefix inline for {} min: {}",
+                    model, retryAfterMinutes, e.getMessage());
+            return new Entry(null, now.plus(Duration.ofMinutes(retryAfterMinutes)));
+        }
+    }
+
+    private static String createInGemini(Client geminiClient, String model, Prefix prefix, Duration ttl) {
+        CreateCachedContentConfig.Builder config = CreateCachedContentConfig.builder()
+                .ttl(ttl)
+                .systemInstruction(Content.fromParts(Part.fromText(prefix.systemInstruction())));
+        if (prefix.leadingText() != null) {
+            config.contents(List.of(Content.builder()
+                    .role("user")
+                    .parts(Part.fromText(prefix.leadingText()))
+                    .build()));
+        }
+        if (prefix.googleSearch()) {
+            config.tools(List.of(Tool.builder().googleSearch(GoogleSearch.builder().build()).build()));
+        }
+        CachedContent cached = geminiClient.caches.create(model, config.build());
+        return cached.name().orElseThrow(() -> new IllegalStateException("Gemini returned a cache without a name"));
+    }
+
+    private void record(String outcome) {
+        meterRegistry.counter("ai.context_cache", "outcome", outcome).increment();
+    }
+
+    // full texts, a hash collision would answer with another prompt's context
+    private record Key(String model, Prefix prefix) {
+    }
+
+    // name null: creation failed, do not retry before refreshAt
+    private record Entry(String name, Instant refreshAt) {
+    }
+}
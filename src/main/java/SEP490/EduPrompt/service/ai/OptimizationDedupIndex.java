@@ -0,0 +1,143 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.util.TextFingerprintUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * MinHash / LSH index over the inputs of cached optimization results, shared by all nodes through Redis
+ * - Each cached input stores its signature and is added to one bucket per band; a lookup only compares
+ *   against inputs sharing at least one band bucket
+ * - Buckets are scoped by everything but the prompt text (mode, lesson, instruction, weaknesses) plus the
+ *   numbers in the prompt, so "lớp 10" never reuses a result made for "lớp 11"
+ * - The full scope hash is part of the bucket key and stored with each signature; a candidate of another
+ *   scope is never returned, even when the buckets of two scopes collide
+ * - Entries expire with the cached result they point to
+ */
+@Component
+@Slf4j
+public class OptimizationDedupIndex {
+
+    private static final String SIGNATURE_PREFIX = "opt:sig:";
+    private static final String BUCKET_PREFIX = "opt:lsh:";
+    private static final int BANDS = 16;
+    private static final int ROWS = TextFingerprintUtil.SIGNATURE_SIZE / BANDS;
+    private static final int MAX_CANDIDATES = 50;
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${optimization.dedup.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${optimization.dedup.similarity-threshold:0.8}")
+    private double similarityThreshold = 0.8;
+
+    public OptimizationDedupIndex(RedisTemplate<String, String> redisTemplate, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param scope      hash of the non-text request fields
+     * @param normalized TextFingerprintUtil.normalize of the prompt
+     * @return cache key of the most similar indexed input at or above the threshold, null when there is none
+     */
+    public String findSimilar(String scope, String normalized) {
+        if (!enabled || normalized.isEmpty()) {
+            return null;
+        }
+        try {
+            long[] signature = TextFingerprintUtil.minHash(normalized);
+            String bucketScope = bucketScope(scope, normalized);
+            Set<String> candidates = new LinkedHashSet<>();
+            for (int band = 0; band < BANDS && candidates.size() < MAX_CANDIDATES; band++) {
+                Set<String> members = redisTemplate.opsForSet().members(bucketKey(bucketScope, signature, band));
+                if (members != null) {
+                    candidates.addAll(members);
+                }
+            }
+            if (candidates.isEmpty()) {
+                record("miss");
+                return null;
+            }
+
+            List<String> keys = new ArrayList<>(candidates);
+            List<String> signatures = redisTemplate.opsForValue()
+                    .multiGet(keys.stream().map(key -> SIGNATURE_PREFIX + key).toList());
+            String best = null;
+            double bestSimilarity = similarityThreshold;
+            String scopePrefix = bucketScope + "|";
+            for (int i = 0; i < keys.size(); i++) {
+                String stored = signatures != null ? signatures.get(i) : null;
+                if (stored == null || !stored.startsWith(scopePrefix)) {
+                    continue;
+                }
+                double similarity = TextFingerprintUtil.similarity(signature,
+                        TextFingerprintUtil.decode(stored.substring(scopePrefix.length())));
+                if (similarity >= bestSimilarity) {
+                    best = keys.get(i);
+                    bestSimilarity = similarity;
+                }
+            }
+            record(best != null ? "hit" : "miss");
+            if (best != null) {
+                log.info("Near-duplicate optimization input found, similarity {}", bestSimilarity);
+            }
+            return best;
+        } catch (Exception e) {
+            log.warn("Near-duplicate lookup failed", e);
+            return null;
+        }
+    }
+
+    /**
+     * Make a cached result findable by near-duplicate inputs
+     */
+    public void index(String scope, String normalized, String cacheKey, Duration ttl) {
+        if (!enabled || normalized.isEmpty()) {
+            return;
+        }
+        try {
+            long[] signature = TextFingerprintUtil.minHash(normalized);
+            String bucketScope = bucketScope(scope, normalized);
+            redisTemplate.opsForValue().set(SIGNATURE_PREFIX + cacheKey,
+                    bucketScope + "|" + TextFingerprintUtil.encode(signature), ttl);
+            for (int band = 0; band < BANDS; band++) {
+                String bucketKey = bucketKey(bucketScope, signature, band);
+                redisTemplate.opsForSet().add(bucketKey, cacheKey);
+                redisTemplate.expire(bucketKey, ttl);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to index optimization input {}", cacheKey, e);
+        }
+    }
+
+    private static String bucketScope(String scope, String normalized) {
+        StringBuilder numbers = new StringBuilder(scope);
+        Matcher matcher = NUMBER.matcher(normalized);
+        while (matcher.find()) {
+            numbers.append('.').append(matcher.group());
+        }
+        return DigestUtils.sha256Hex(numbers.toString());
+    }
+
+    private static String bucketKey(String bucketScope, long[] signature, int band) {
+        return BUCKET_PREFIX + bucketScope + ":" + band + ":"
+                + Long.toHexString(TextFingerprintUtil.bandHash(signature, band, ROWS));
+    }
+
+    private void record(String outcome) {
+        meterRegistry.counter("optimization.near_duplicate", "outcome", outcome).increment();
+    }
+}
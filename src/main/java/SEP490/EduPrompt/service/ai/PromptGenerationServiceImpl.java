@@ -5,6 +5,7 @@ import SEP490.EduPrompt.dto.request.prompt.GeneratePromptFromFileRequest;
 import SEP490.EduPrompt.dto.response.prompt.ClientPromptResponse;
 import SEP490.EduPrompt.dto.response.prompt.GeneratePromptFromFileResponse;
 import SEP490.EduPrompt.dto.response.prompt.PromptSections;
+import SEP490.EduPrompt.enums.JobStream;
 import SEP490.EduPrompt.enums.QuotaType;
 import SEP490.EduPrompt.exception.client.AiProviderException;
 import SEP490.EduPrompt.exception.generic.InvalidFileException;
@@ -13,7 +14,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.genai.types.File;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -26,11 +26,10 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class PromptGenerationServiceImpl implements PromptGenerationService {
 
-    private static final String UPLOAD_TOPIC = "file:upload";
     private final QuotaService quotaService;
     private final AiClientService aiClientService;
     private final ObjectMapper objectMapper;
-    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisJobQueue jobQueue;
 
     @Override
     public GeneratePromptFromFileResponse generatePromptFromFile(
@@ -130,8 +129,8 @@ public class PromptGenerationServiceImpl implements PromptGenerationService {
             // Serialize to JSON
             String message = objectMapper.writeValueAsString(event);
 
-            // Publish to Redis
-            redisTemplate.convertAndSend(UPLOAD_TOPIC, message);
+            // Queue on the Redis stream
+            jobQueue.publish(JobStream.FILE_UPLOAD, message);
 
             log.info("Queued Cloudinary upload for file: {}", originalFile.getOriginalFilename());
 
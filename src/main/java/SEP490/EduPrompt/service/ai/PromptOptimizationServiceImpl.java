@@ -10,21 +10,27 @@ import SEP490.EduPrompt.dto.response.prompt.OptimizationQueueResponse;
 import SEP490.EduPrompt.dto.response.prompt.OptimizationResponse;
 import SEP490.EduPrompt.dto.response.prompt.PromptScoreResult;
 import SEP490.EduPrompt.enums.AiModel;
+import SEP490.EduPrompt.enums.JobStream;
 import SEP490.EduPrompt.enums.QueueStatus;
 import SEP490.EduPrompt.enums.QuotaType;
 import SEP490.EduPrompt.exception.auth.InvalidInputException;
 import SEP490.EduPrompt.exception.auth.ResourceNotFoundException;
+import SEP490.EduPrompt.exception.client.AiProviderException;
 import SEP490.EduPrompt.exception.generic.InvalidActionException;
 import SEP490.EduPrompt.model.*;
 import SEP490.EduPrompt.repo.OptimizationQueueRepository;
 import SEP490.EduPrompt.repo.PromptRepository;
 import SEP490.EduPrompt.repo.PromptScoreRepository;
 import SEP490.EduPrompt.repo.UserRepository;
+import SEP490.EduPrompt.service.cache.NearCache;
+import SEP490.EduPrompt.service.cache.SingleFlight;
 import SEP490.EduPrompt.service.curriculum.CurriculumMatchingService;
 import SEP490.EduPrompt.service.prompt.PromptScoringService;
 import SEP490.EduPrompt.service.prompt.PromptVersionService;
+import SEP490.EduPrompt.util.TextFingerprintUtil;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -40,6 +46,9 @@ import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Slf4j
@@ -50,6 +59,10 @@ public class PromptOptimizationServiceImpl implements PromptOptimizationService
     private static final Duration IDEMPOTENCY_TTL = Duration.ofHours(24);
     private static final int BATCH_SIZE = 10;
     private static final Duration LOCK_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration OPTIMIZATION_CACHE_TTL = Duration.ofHours(24);
+    // AiJobExecutor pool of the pipeline stages, its permits are ai.executor.pools.optimization.limit
+    private static final String PIPELINE_POOL = "optimization";
+    private static final Duration PIPELINE_STAGE_TIMEOUT = Duration.ofSeconds(90);
 
     private final QuotaService quotaService;
     private final PromptScoringService scoringService;
@@ -63,6 +76,12 @@ public class PromptOptimizationServiceImpl implements PromptOptimizationService
     private final ObjectMapper objectMapper;
     private final UserRepository userRepository;
     private final TransactionTemplate transactionTemplate;
+    private final RedisJobQueue jobQueue;
+    private final SingleFlight singleFlight;
+    private final NearCache nearCache;
+    private final OptimizationDedupIndex dedupIndex;
+    private final AiJobExecutor aiJobExecutor;
+    private final MeterRegistry meterRegistry;
 
     @Override
     public OptimizationQueueResponse requestOptimization(UUID userId, PromptOptimizationRequest request,
@@ -275,13 +294,11 @@ public class PromptOptimizationServiceImpl implements PromptOptimizationService
     }
 
     /**
-     * Publish optimization event to Redis
+     * Publish optimization job to the Redis stream
      */
     private void publishOptimizationEvent(UUID queueId) {
         try {
-            redisTemplate.convertAndSend(
-                    "queue:optimization",
-                    queueId.toString());
+            jobQueue.publish(JobStream.OPTIMIZATION, queueId.toString());
             log.debug("Published optimization event for queue: {}", queueId);
         } catch (Exception e) {
             log.error("Failed to publish optimization event, will rely on fallback scheduler", e);
@@ -318,90 +335,197 @@ public class PromptOptimizationServiceImpl implements PromptOptimizationService
     @Override
     public OptimizationResponse optimize(UUID userId, OptimizationRequest request) {
         log.info("Starting optimization. Scratchpad mode: {}", request.promptId() == null);
+        long start = System.nanoTime();
 
-        // Validate quota
+        // Reserve quota, nothing is charged until commit
         int defaultTokenLimit = SEP490.EduPrompt.service.ai.AiClientService.DEFAULT_MAX_TOKEN;
-        quotaService.validateAndDecrementQuota(userId, QuotaType.OPTIMIZATION, defaultTokenLimit, true);
+        Reservation reservation = quotaService.reserve(userId, QuotaType.OPTIMIZATION, defaultTokenLimit, true);
 
         try {
-            String cacheKey = generateOptimizationCacheKey(request);
-            try {
-                String cached = redisTemplate.opsForValue().get(cacheKey);
-                if (cached != null) {
-                    log.info("Returning cached optimization result");
-                    // Refund all since cached
-                    quotaService.refundQuotaAsync(userId, QuotaType.OPTIMIZATION, defaultTokenLimit);
-                    return objectMapper.readValue(cached, OptimizationResponse.class);
-                }
-            } catch (Exception e) {
-                log.warn("Cache read failed", e);
+            String normalized = TextFingerprintUtil.normalize(request.promptContent());
+            String scope = optimizationScope(request);
+            String cacheKey = "opt:" + hashString(normalized + "|" + scope);
+            AtomicBoolean nearDuplicate = new AtomicBoolean();
+            SingleFlight.Flight<OptimizationResponse> flight = singleFlight.load(cacheKey, OptimizationResponse.class,
+                    OPTIMIZATION_CACHE_TTL, () -> {
+                        OptimizationResponse reused = findNearDuplicate(scope, normalized, request.promptContent());
+                        if (reused != null) {
+                            nearDuplicate.set(true);
+                            return reused;
+                        }
+                        OptimizationResponse computed = computeOptimization(request);
+                        dedupIndex.index(scope, normalized, cacheKey, OPTIMIZATION_CACHE_TTL);
+                        return computed;
+                    });
+            if (flight.shared() || nearDuplicate.get()) {
+                log.info("Returning cached optimization result");
+                // Nothing charged since cached, reused from a near-duplicate or computed by a concurrent identical
+                // request
+                reservation.release();
+                // the stored text and breakdown belong to the request that computed it
+                return flight.value()
+                        .withOriginalPrompt(request.promptContent())
+                        .withStageLatencyMs(Map.of("cache", (System.nanoTime() - start) / 1_000_000));
             }
+            // the pipeline reports no token usage, a computed optimization is charged its reservation as before
+            reservation.commit(defaultTokenLimit);
+            return flight.value();
 
-            PromptScoreResult originalScore = scoringService.scorePrompt(
-                    request.promptContent(),
-                    request.lessonId());
-
-            log.info("Original prompt score: {}", originalScore.overallScore());
-
-            CurriculumContextDetail curriculumContext = resolveCurriculumContext(
-                    request.promptContent(),
-                    request.lessonId(),
-                    originalScore.detectedContext());
-
-            String contextString = buildCurriculumContextString(curriculumContext);
-
-            String optimizedPrompt = geminiService.optimizePrompt(
-                    request.promptContent(),
-                    request.optimizationMode(),
-                    contextString,
-                    request.selectedWeaknesses(),
-                    request.customInstruction());
-
-            log.info("Generated optimized prompt");
+        } catch (Exception e) {
+            log.error("Optimization failed for user {}, releasing reservation", userId, e);
+            reservation.release();
+            throw e;
+        }
+    }
 
-            PromptScoreResult optimizedScore = scoringService.scorePrompt(
-                    optimizedPrompt,
-                    curriculumContext.lessonId());
+    /**
+     * Optimize pipeline as two overlapping branches:
+     * - original prompt scoring (often a cache hit)
+     * - curriculum resolution -> optimization -> optimized prompt scoring
+     * Both branches start from one curriculum context detection instead of the curriculum branch waiting for the
+     * original score. The first failing stage cancels everything still running, so a failed optimization stops
+     * spending; scoring stages are only detached, not interrupted, since the run may be the single-flight leader
+     * other requests for the same prompt are waiting on
+     */
+    private OptimizationResponse computeOptimization(OptimizationRequest request) {
+        long start = System.nanoTime();
+        Map<String, Long> stageLatencyMs = new ConcurrentHashMap<>();
+        List<CompletableFuture<?>> stages = new CopyOnWriteArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        CompletableFuture<CurriculumContext> detectedFuture = stage("detect_context", stageLatencyMs, stages,
+                () -> curriculumService.detectContext(request.promptContent()));
+        CompletableFuture<PromptScoreResult> originalScoreFuture = detectedFuture.thenCompose(detected ->
+                sharedStage("original_score", stageLatencyMs, stages,
+                        () -> scoringService.scorePrompt(request.promptContent(), request.lessonId(), detected)));
+
+        CompletableFuture<CurriculumContextDetail> curriculumFuture = detectedFuture.thenCompose(detected ->
+                stage("curriculum", stageLatencyMs, stages,
+                        () -> resolveCurriculumContext(request.promptContent(), request.lessonId(), detected)));
+        CompletableFuture<String> optimizedPromptFuture = curriculumFuture.thenCompose(curriculumContext ->
+                stage("optimize", stageLatencyMs, stages, () -> geminiService.optimizePrompt(
+                        request.promptContent(),
+                        request.optimizationMode(),
+                        buildCurriculumContextString(curriculumContext),
+                        request.selectedWeaknesses(),
+                        request.customInstruction())));
+        CompletableFuture<PromptScoreResult> optimizedScoreFuture = optimizedPromptFuture.thenCompose(optimizedPrompt ->
+                sharedStage("optimized_score", stageLatencyMs, stages,
+                        () -> scoringService.scorePrompt(optimizedPrompt, curriculumFuture.join().lessonId())));
+
+        for (CompletableFuture<?> branch : List.of(originalScoreFuture, optimizedScoreFuture)) {
+            branch.whenComplete((result, error) -> {
+                if (error != null && failure.compareAndSet(null, unwrap(error))) {
+                    stages.forEach(running -> running.cancel(true));
+                }
+            });
+        }
+        try {
+            CompletableFuture.allOf(originalScoreFuture, optimizedScoreFuture).join();
+        } catch (CompletionException | CancellationException e) {
+            throw asRuntimeException(failure.get() != null ? failure.get() : unwrap(e));
+        }
 
-            log.info("Optimized prompt score: {}", optimizedScore.overallScore());
+        PromptScoreResult originalScore = originalScoreFuture.join();
+        CurriculumContextDetail curriculumContext = curriculumFuture.join();
+        String optimizedPrompt = optimizedPromptFuture.join();
+        PromptScoreResult optimizedScore = optimizedScoreFuture.join();
+        stageLatencyMs.put("total", (System.nanoTime() - start) / 1_000_000);
+
+        log.info("Optimization scores: original {}, optimized {}, stages {}",
+                originalScore.overallScore(), optimizedScore.overallScore(), stageLatencyMs);
+
+        List<String> appliedFixes = identifyAppliedFixes(originalScore, optimizedScore);
+        double improvement = optimizedScore.overallScore() - originalScore.overallScore();
+
+        return new OptimizationResponse(
+                null, // versionId is null for scratchpad/unsaved
+                request.promptContent(),
+                optimizedPrompt,
+                originalScore,
+                optimizedScore,
+                improvement,
+                curriculumContext,
+                appliedFixes,
+                Instant.now(),
+                new TreeMap<>(stageLatencyMs));
+    }
 
-            List<String> appliedFixes = identifyAppliedFixes(originalScore, optimizedScore);
-            double improvement = optimizedScore.overallScore() - originalScore.overallScore();
+    private <T> CompletableFuture<T> stage(String name, Map<String, Long> stageLatencyMs,
+                                           List<CompletableFuture<?>> stages, Callable<T> work) {
+        CompletableFuture<T> future = runStage(name, stageLatencyMs, work);
+        stages.add(future);
+        return future;
+    }
 
-            OptimizationResponse response = new OptimizationResponse(
-                    null, // versionId is null for scratchpad/unsaved
-                    request.promptContent(),
-                    optimizedPrompt,
-                    originalScore,
-                    optimizedScore,
-                    improvement,
-                    curriculumContext,
-                    appliedFixes,
-                    Instant.now());
+    /**
+     * Stage whose work may be shared with other requests: cancelling it detaches this pipeline from the run
+     * instead of interrupting it, the run still completes and fills the cache
+     */
+    private <T> CompletableFuture<T> sharedStage(String name, Map<String, Long> stageLatencyMs,
+                                                 List<CompletableFuture<?>> stages, Callable<T> work) {
+        CompletableFuture<T> detached = runStage(name, stageLatencyMs, work).copy();
+        stages.add(detached);
+        return detached;
+    }
 
+    private <T> CompletableFuture<T> runStage(String name, Map<String, Long> stageLatencyMs, Callable<T> work) {
+        return aiJobExecutor.callInPoolAsync(PIPELINE_POOL, PIPELINE_STAGE_TIMEOUT, () -> {
+            long start = System.nanoTime();
             try {
-                redisTemplate.opsForValue().set(cacheKey, objectMapper.writeValueAsString(response),
-                        Duration.ofHours(24));
-            } catch (Exception e) {
-                log.warn("Cache write failed", e);
+                return work.call();
+            } finally {
+                long nanos = System.nanoTime() - start;
+                stageLatencyMs.put(name, nanos / 1_000_000);
+                meterRegistry.timer("optimization.stage", "stage", name).record(nanos, TimeUnit.NANOSECONDS);
             }
+        });
+    }
 
-            return response;
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
 
-        } catch (Exception e) {
-            log.error("Optimization failed for user {}", userId, e);
-            quotaService.refundQuotaAsync(userId, QuotaType.OPTIMIZATION, defaultTokenLimit);
+    private static RuntimeException asRuntimeException(Throwable error) {
+        if (error instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (error instanceof TimeoutException) {
+            return new AiProviderException(
+                    "Optimization stage timed out after " + PIPELINE_STAGE_TIMEOUT.toSeconds() + "s");
+        }
+        if (error instanceof Error e) {
             throw e;
         }
+        return new AiProviderException("Optimization failed: " + error.getMessage(), (Exception) error);
+    }
+
+    /**
+     * Cached result of a near-duplicate input, with this request's text as the original prompt
+     */
+    private OptimizationResponse findNearDuplicate(String scope, String normalized, String promptContent) {
+        String similarKey = dedupIndex.findSimilar(scope, normalized);
+        if (similarKey == null) {
+            return null;
+        }
+        OptimizationResponse similar = nearCache.get(similarKey, OptimizationResponse.class);
+        if (similar == null) {
+            return null;
+        }
+        meterRegistry.counter("optimization.ai_calls_saved").increment();
+        return similar.withOriginalPrompt(promptContent);
     }
 
-    private String generateOptimizationCacheKey(OptimizationRequest request) {
-        String input = request.promptContent() +
-                "|" + request.optimizationMode() +
+    // every request field except the prompt text, whitespace / punctuation of the text is normalized away
+    private String optimizationScope(OptimizationRequest request) {
+        String input = request.optimizationMode() +
                 "|" + request.lessonId() +
                 "|" + request.customInstruction() +
                 "|" + (request.selectedWeaknesses() != null ? request.selectedWeaknesses().toString() : "");
-        return "opt:" + hashString(input);
+        return hashString(input);
     }
 
     private String hashString(String input) {
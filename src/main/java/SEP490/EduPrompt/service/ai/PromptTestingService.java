@@ -1,9 +1,12 @@
 package SEP490.EduPrompt.service.ai;
 
+import SEP490.EduPrompt.dto.request.prompt.PromptTestBatchRequest;
 import SEP490.EduPrompt.dto.request.prompt.PromptTestRequest;
+import SEP490.EduPrompt.dto.response.prompt.PromptTestBatchResponse;
 import SEP490.EduPrompt.dto.response.prompt.PromptTestResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.UUID;
@@ -11,6 +14,16 @@ import java.util.UUID;
 public interface PromptTestingService {
     PromptTestResponse testPrompt(UUID userId, PromptTestRequest request, String idempotencyKey);
 
+    /**
+     * Run the same prompt/input on several models in parallel, one quota reservation for the whole batch
+     */
+    PromptTestBatchResponse testPromptAcrossModels(UUID userId, PromptTestBatchRequest request, String idempotencyKey);
+
+    /**
+     * Stream the model output as Server-Sent Events, quota and usage are settled when the stream ends
+     */
+    SseEmitter testPromptStream(UUID userId, PromptTestRequest request, String idempotencyKey);
+
 //    PromptTestResponse testPromptSync(UUID userId, PromptTestRequest request, String idempotencyKey);
 //
 //    PromptTestResponse testPromptAsync(UUID userId, PromptTestRequest request, String idempotencyKey);
@@ -1,14 +1,18 @@
 package SEP490.EduPrompt.service.ai;
 
+import SEP490.EduPrompt.dto.request.prompt.PromptTestBatchRequest;
 import SEP490.EduPrompt.dto.request.prompt.PromptTestRequest;
 import SEP490.EduPrompt.dto.response.prompt.ClientPromptResponse;
+import SEP490.EduPrompt.dto.response.prompt.PromptTestBatchResponse;
 import SEP490.EduPrompt.dto.response.prompt.PromptTestResponse;
 import SEP490.EduPrompt.enums.AiModel;
+import SEP490.EduPrompt.enums.JobStream;
 import SEP490.EduPrompt.enums.QueueStatus;
 import SEP490.EduPrompt.enums.QuotaType;
 import SEP490.EduPrompt.exception.auth.InvalidInputException;
 import SEP490.EduPrompt.exception.auth.ResourceNotFoundException;
 import SEP490.EduPrompt.exception.client.AiProviderException;
+import SEP490.EduPrompt.exception.client.TooManyRequestsException;
 import SEP490.EduPrompt.model.Prompt;
 import SEP490.EduPrompt.model.PromptUsage;
 import SEP490.EduPrompt.model.User;
@@ -27,13 +31,17 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -47,9 +55,11 @@ import java.util.concurrent.TimeoutException;
 public class PromptTestingServiceImpl implements PromptTestingService {
 
     protected static final String IDEMPOTENCY_KEY_PREFIX = "idempotency:test:";
+    protected static final String BATCH_LOCK_PREFIX = "lock:idempotency:test-batch:";
     private static final Duration IDEMPOTENCY_TTL = Duration.ofHours(24);
     private static final Duration LOCK_TIMEOUT = Duration.ofSeconds(30);
-    private static final int AI_CALL_TIMEOUT_SECONDS = 30;
+    private static final Duration AI_CALL_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration STREAM_TIMEOUT = Duration.ofMinutes(5);
 
     private final QuotaService quotaService;
     private final PromptRepository promptRepository;
@@ -60,6 +70,8 @@ public class PromptTestingServiceImpl implements PromptTestingService {
     private final UserRepository userRepository;
     private final TransactionTemplate transactionTemplate;
     private final PromptUsageService promptUsageService;
+    private final RedisJobQueue jobQueue;
+    private final AiJobExecutor aiJobExecutor;
 
     /**
      * Main test method - decides between sync and async
@@ -125,14 +137,13 @@ public class PromptTestingServiceImpl implements PromptTestingService {
                 return response;
             }
 
-            // Reserve quota
-            int reservedTokens = request.maxTokens();
-            quotaService.validateAndDecrementQuota(userId, QuotaType.TEST, reservedTokens, true);
-
             // Fetch prompt
             Prompt prompt = promptRepository.findById(request.promptId())
                     .orElseThrow(() -> new ResourceNotFoundException("prompt not found"));
 
+            // Reserve quota, nothing is charged until commit
+            Reservation reservation = quotaService.reserve(userId, QuotaType.TEST, request.maxTokens(), true);
+
             // Call AI with timeout
             long startTime = System.currentTimeMillis();
             ClientPromptResponse aiResponse;
@@ -140,19 +151,16 @@ public class PromptTestingServiceImpl implements PromptTestingService {
             try {
                 aiResponse = callAiWithTimeout(prompt, request);
             } catch (Exception e) {
-                log.error("AI call failed, refunding tokens", e);
-                quotaService.refundQuota(userId, QuotaType.TEST, reservedTokens);
+                log.error("AI call failed, releasing reservation", e);
+                reservation.release();
                 throw new AiProviderException("Failed to test prompt: " + e.getMessage());
             }
 
             int executionTime = (int) (System.currentTimeMillis() - startTime);
             int tokensUsed = aiResponse.totalTokens();
 
-            // Refund unused
-            int tokensToRefund = reservedTokens - tokensUsed;
-            if (tokensToRefund > 0) {
-                quotaService.refundTokens(userId, tokensToRefund);
-            }
+            // Charge actual usage, unused tokens go back in the same step
+            reservation.commit(tokensUsed);
 
             // Save in transaction
             PromptUsage savedUsage = promptUsageService.saveUsage(
@@ -172,6 +180,281 @@ public class PromptTestingServiceImpl implements PromptTestingService {
         }
     }
 
+    /**
+     * Multi-model test: every model runs in parallel on the AI job executor (each within its provider limit),
+     * each model reserves its own test action and tokens and is charged with its own usage.
+     * The batch id is derived from user + idempotency key, so a retry returns the stored rows
+     */
+    @Override
+    public PromptTestBatchResponse testPromptAcrossModels(UUID userId, PromptTestBatchRequest request,
+                                                          String idempotencyKey) {
+        List<AiModel> models = request.aiModels().stream().distinct().toList();
+        UUID batchId = UUID.nameUUIDFromBytes((userId + ":" + idempotencyKey).getBytes(StandardCharsets.UTF_8));
+        log.info("Testing prompt {} across models {} for user: {} (batch {})",
+                request.promptId(), models, userId, batchId);
+
+        // Acquire lock
+        String lockKey = BATCH_LOCK_PREFIX + batchId;
+        Boolean lockAcquired = redisTemplate.opsForValue().setIfAbsent(
+                lockKey, userId.toString(), LOCK_TIMEOUT.plus(AI_CALL_TIMEOUT)
+        );
+
+        if (Boolean.FALSE.equals(lockAcquired)) {
+            throw new InvalidInputException("Duplicate request in progress");
+        }
+
+        try {
+            // Check DB
+            List<PromptUsage> existingUsages = usageRepository.findByBatchIdOrderByCreatedAtAsc(batchId);
+            if (!existingUsages.isEmpty()) {
+                return mapToBatchResponse(batchId, request.promptId(), existingUsages, null);
+            }
+
+            // Fetch prompt
+            Prompt prompt = promptRepository.findById(request.promptId())
+                    .orElseThrow(() -> new ResourceNotFoundException("prompt not found"));
+
+            // One reservation per model, every model run costs a test action like a single test does
+            List<Reservation> reservations = new ArrayList<>(models.size());
+            try {
+                for (int i = 0; i < models.size(); i++) {
+                    reservations.add(quotaService.reserve(userId, QuotaType.TEST, request.maxTokens(), true));
+                }
+            } catch (RuntimeException e) {
+                reservations.forEach(Reservation::release);
+                throw e;
+            }
+
+            long batchStart = System.currentTimeMillis();
+            List<CompletableFuture<ModelRun>> runs = new ArrayList<>(models.size());
+            for (AiModel model : models) {
+                long startTime = System.currentTimeMillis();
+                runs.add(aiJobExecutor.callAsync(model.getProvider(), AI_CALL_TIMEOUT, () ->
+                                aiClientService.testPrompt(
+                                        prompt,
+                                        model,
+                                        request.inputText(),
+                                        request.temperature(),
+                                        request.maxTokens(),
+                                        request.topP()))
+                        .handle((response, error) -> new ModelRun(model, response, error,
+                                (int) (System.currentTimeMillis() - startTime))));
+            }
+            CompletableFuture.allOf(runs.toArray(new CompletableFuture[0])).join();
+            int wallTimeMs = (int) (System.currentTimeMillis() - batchStart);
+
+            List<ModelRun> results = runs.stream().map(CompletableFuture::join).toList();
+
+            // Charge actual usage of the models that answered, a failed model gets its action and tokens back
+            int tokensUsed = 0;
+            for (int i = 0; i < results.size(); i++) {
+                ModelRun run = results.get(i);
+                if (run.error() != null) {
+                    reservations.get(i).release();
+                    continue;
+                }
+                int modelTokens = run.response().totalTokens() != null ? run.response().totalTokens() : 0;
+                reservations.get(i).commit(modelTokens);
+                tokensUsed += modelTokens;
+            }
+            if (results.stream().allMatch(run -> run.error() != null)) {
+                log.error("Every model of batch {} failed, reservations released", batchId);
+                throw new AiProviderException("Failed to test prompt: " + errorMessage(results.getFirst().error()));
+            }
+
+            // Save all rows of the batch in one transaction
+            List<PromptUsage> savedUsages = transactionTemplate.execute(status -> {
+                User user = userRepository.getReferenceById(userId);
+                List<PromptUsage> usages = new ArrayList<>(results.size());
+                for (ModelRun run : results) {
+                    usages.add(PromptUsage.builder()
+                            .prompt(prompt)
+                            .promptId(prompt.getId())
+                            .user(user)
+                            .userId(userId)
+                            .batchId(batchId)
+                            .aiModel(run.model().getName())
+                            .inputText(request.inputText())
+                            .output(run.error() == null ? run.response().content() : null)
+                            .tokensUsed(run.error() == null ? run.response().totalTokens() : Integer.valueOf(0))
+                            .executionTimeMs(run.executionTimeMs())
+                            .idempotencyKey(batchId + ":" + run.model().getName())
+                            .temperature(request.temperature())
+                            .maxTokens(request.maxTokens())
+                            .topP(request.topP())
+                            .status(run.error() == null ? QueueStatus.COMPLETED.name() : QueueStatus.FAILED.name())
+                            .errorMessage(run.error() == null ? null : errorMessage(run.error()))
+                            .build());
+                }
+                return usageRepository.saveAll(usages);
+            });
+
+            log.info("Batch test {} completed in {}ms, {} tokens", batchId, wallTimeMs, tokensUsed);
+            return mapToBatchResponse(batchId, prompt.getId(), savedUsages, wallTimeMs);
+
+        } finally {
+            redisTemplate.delete(lockKey);
+        }
+    }
+
+    private String errorMessage(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            return "AI request timed out after " + AI_CALL_TIMEOUT.toSeconds() + " seconds";
+        }
+        return cause.getMessage();
+    }
+
+    private PromptTestBatchResponse mapToBatchResponse(UUID batchId, UUID promptId, List<PromptUsage> usages,
+                                                       Integer wallTimeMs) {
+        return PromptTestBatchResponse.builder()
+                .batchId(batchId)
+                .promptId(promptId)
+                .results(usages.stream().map(this::mapToResponse).toList())
+                .totalTokensUsed(usages.stream()
+                        .mapToInt(usage -> usage.getTokensUsed() != null ? usage.getTokensUsed() : 0)
+                        .sum())
+                .wallTimeMs(wallTimeMs)
+                .build();
+    }
+
+    /**
+     * Streaming test: tokens are relayed as "token" events while the model generates,
+     * then "done" carries the saved result, or "error" the failure message.
+     * The request thread returns right after the quota reservation, the stream runs on the AI job executor
+     */
+    @Override
+    public SseEmitter testPromptStream(UUID userId, PromptTestRequest request, String idempotencyKey) {
+        log.info("Streaming prompt test: {} for user: {}", request.promptId(), userId);
+
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT.toMillis());
+        String cacheKey = IDEMPOTENCY_KEY_PREFIX + idempotencyKey;
+
+        // Check cache first
+        PromptTestResponse cachedResponse = getCachedResponse(cacheKey);
+        if (cachedResponse != null) {
+            sendEvent(emitter, "done", cachedResponse);
+            emitter.complete();
+            return emitter;
+        }
+
+        // Acquire lock, held until the stream ends
+        String lockKey = "lock:" + cacheKey;
+        Boolean lockAcquired = redisTemplate.opsForValue().setIfAbsent(
+                lockKey, userId.toString(), STREAM_TIMEOUT
+        );
+
+        if (Boolean.FALSE.equals(lockAcquired)) {
+            throw new InvalidInputException("Duplicate request in progress");
+        }
+
+        boolean streaming = false;
+        try {
+            // Check DB
+            PromptUsage existingUsage = usageRepository.findByIdempotencyKey(idempotencyKey).orElse(null);
+            if (existingUsage != null) {
+                PromptTestResponse response = mapToResponse(existingUsage);
+                cacheIdempotencyResult(cacheKey, response);
+                sendEvent(emitter, "done", response);
+                emitter.complete();
+                return emitter;
+            }
+
+            // Fetch prompt
+            Prompt prompt = promptRepository.findById(request.promptId())
+                    .orElseThrow(() -> new ResourceNotFoundException("prompt not found"));
+
+            // Reserve quota before answering, so quota errors are still a plain HTTP error
+            Reservation reservation = quotaService.reserve(userId, QuotaType.TEST, request.maxTokens(), true);
+
+            // Never block the request thread on a job slot, a full executor answers 429 instead
+            try {
+                streaming = aiJobExecutor.tryExecuteJob(() -> streamTest(emitter, userId, prompt, request,
+                        idempotencyKey, reservation, cacheKey, lockKey));
+            } finally {
+                if (!streaming) {
+                    reservation.release();
+                }
+            }
+            if (!streaming) {
+                throw new TooManyRequestsException("Too many AI jobs running, try again later");
+            }
+            return emitter;
+
+        } finally {
+            if (!streaming) {
+                redisTemplate.delete(lockKey);
+            }
+        }
+    }
+
+    /**
+     * Runs on the AI job executor, one virtual thread per stream
+     */
+    private void streamTest(SseEmitter emitter, UUID userId, Prompt prompt, PromptTestRequest request,
+                            String idempotencyKey, Reservation reservation, String cacheKey, String lockKey) {
+        try {
+            long startTime = System.currentTimeMillis();
+            ClientPromptResponse aiResponse;
+
+            try {
+                aiResponse = aiClientService.streamTestPrompt(
+                        prompt,
+                        request.aiModel(),
+                        request.inputText(),
+                        request.temperature(),
+                        request.maxTokens(),
+                        request.topP(),
+                        chunk -> sendEvent(emitter, "token", chunk));
+            } catch (Exception e) {
+                log.error("AI stream failed, releasing reservation", e);
+                reservation.release();
+                sendEvent(emitter, "error", "Failed to test prompt: " + e.getMessage());
+                emitter.complete();
+                return;
+            }
+
+            int executionTime = (int) (System.currentTimeMillis() - startTime);
+            // usage comes with the last chunk, charge the reservation if the provider did not report it
+            int tokensUsed = aiResponse.totalTokens() != null
+                    ? aiResponse.totalTokens()
+                    : reservation.getReservedTokens();
+
+            // Charge actual usage, unused tokens go back in the same step
+            reservation.commit(tokensUsed);
+
+            PromptUsage savedUsage = promptUsageService.saveUsage(
+                    userId, prompt, request, aiResponse,
+                    tokensUsed, executionTime, idempotencyKey
+            );
+
+            PromptTestResponse response = mapToResponse(savedUsage);
+            cacheIdempotencyResult(cacheKey, response);
+
+            sendEvent(emitter, "done", response);
+            emitter.complete();
+            log.info("Streaming test completed: {}", savedUsage.getId());
+
+        } catch (Exception e) {
+            log.error("Streaming test of prompt {} failed", request.promptId(), e);
+            sendEvent(emitter, "error", "Failed to test prompt: " + e.getMessage());
+            emitter.complete();
+        } finally {
+            redisTemplate.delete(lockKey);
+        }
+    }
+
+    /**
+     * A client that went away does not stop the generation, the result still lands in the test history
+     */
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("SSE client gone, dropping {} event", name);
+        }
+    }
+
     /**
      * Async test (for long-running requests)
      */
@@ -243,11 +526,11 @@ public class PromptTestingServiceImpl implements PromptTestingService {
     }
 
     /**
-     * Publish test event to Redis
+     * Publish test job to the Redis stream
      */
     private void publishTestEvent(UUID usageId) {
         try {
-            redisTemplate.convertAndSend("queue:test", usageId.toString());
+            jobQueue.publish(JobStream.TEST, usageId.toString());
             log.debug("Published test event for usage: {}", usageId);
         } catch (Exception e) {
             log.error("Failed to publish test event, will rely on fallback scheduler", e);
@@ -285,7 +568,7 @@ public class PromptTestingServiceImpl implements PromptTestingService {
      */
     private ClientPromptResponse callAiWithTimeout(Prompt prompt, PromptTestRequest request) {
         try {
-            CompletableFuture<ClientPromptResponse> future = CompletableFuture.supplyAsync(() ->
+            return aiJobExecutor.call(request.aiModel().getProvider(), AI_CALL_TIMEOUT, () ->
                     aiClientService.testPrompt(
                             prompt,
                             request.aiModel(),
@@ -296,10 +579,10 @@ public class PromptTestingServiceImpl implements PromptTestingService {
                     )
             );
 
-            return future.get(AI_CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-
         } catch (TimeoutException e) {
-            throw new AiProviderException("AI request timed out after " + AI_CALL_TIMEOUT_SECONDS + " seconds");
+            throw new AiProviderException("AI request timed out after " + AI_CALL_TIMEOUT.toSeconds() + " seconds");
+        } catch (AiProviderException e) {
+            throw e;
         } catch (Exception e) {
             throw new AiProviderException("AI call failed: " + e.getMessage());
         }
@@ -428,7 +711,11 @@ public class PromptTestingServiceImpl implements PromptTestingService {
                 .maxTokens(usage.getMaxTokens())
                 .topP(usage.getTopP())
                 .status(usage.getStatus() != null ? QueueStatus.parseQueueStatus(usage.getStatus()) : null)
+                .errorMessage(usage.getErrorMessage())
                 .createdAt(usage.getCreatedAt())
                 .build();
     }
-}
\ No newline at end of file
+
+    private record ModelRun(AiModel model, ClientPromptResponse response, Throwable error, int executionTimeMs) {
+    }
+}
@@ -2,6 +2,7 @@ package SEP490.EduPrompt.service.ai;
 
 import SEP490.EduPrompt.dto.response.prompt.ClientPromptResponse;
 import SEP490.EduPrompt.enums.AiModel;
+import SEP490.EduPrompt.enums.JobStream;
 import SEP490.EduPrompt.enums.QueueStatus;
 import SEP490.EduPrompt.enums.QuotaType;
 import SEP490.EduPrompt.exception.auth.ResourceNotFoundException;
@@ -9,6 +10,7 @@ import SEP490.EduPrompt.model.*;
 import SEP490.EduPrompt.repo.*;
 import com.cloudinary.Cloudinary;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,23 +19,23 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Event-driven queue processor
- * Listens to Redis Pub/Sub and processes items immediately
+ * Consumes the Redis Streams job queue and processes items immediately
  */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class QueueEventListener {
 
-    private static final int AI_CALL_TIMEOUT_SECONDS = 60;
+    private static final Duration AI_CALL_TIMEOUT = Duration.ofSeconds(60);
 
     private final OptimizationQueueRepository queueRepository;
     private final UserRepository userRepository;
@@ -46,40 +48,70 @@ public class QueueEventListener {
     private final ObjectMapper objectMapper;
     private final Cloudinary cloudinary;
     private final AttachmentRepository attachmentRepository;
+    private final RedisJobQueue jobQueue;
+    private final AiJobExecutor aiJobExecutor;
 
     @Value("${cloudinary.api-key}")
     private String apiKey;
 
+    @PostConstruct
+    public void registerJobHandlers() {
+        jobQueue.register(JobStream.OPTIMIZATION, this::onOptimizationQueued, this::onOptimizationDeadLettered);
+        jobQueue.register(JobStream.TEST, this::onTestQueued, this::onTestDeadLettered);
+        jobQueue.register(JobStream.FILE_UPLOAD, (message, redelivered) -> onFileUploadRequested(message));
+    }
+
     /**
      * Called when optimization request is queued
      * Message format: "queueId"
+     * AI failures are handled here (re-queued or FAILED) and the job is acked; only a failure before the row is
+     * claimed, or a row still leased by a live worker, propagates and leaves the job pending for redelivery
      */
-    public void onOptimizationQueued(String message) {
-        try {
-            UUID queueId = UUID.fromString(message);
-            log.info("Received optimization event for queue: {}", queueId);
+    public void onOptimizationQueued(String message, boolean redelivered) {
+        UUID queueId = UUID.fromString(message);
+        log.info("Received optimization event for queue: {} (redelivered: {})", queueId, redelivered);
 
-            processOptimizationItem(queueId);
-
-        } catch (Exception e) {
-            log.error("Failed to process optimization event: {}", message, e);
-        }
+        processOptimizationItem(queueId, redelivered);
     }
 
     /**
      * Called when test request is queued
      * Message format: "usageId"
+     * AI failures mark the row FAILED and the job is acked; only a failure before the row is claimed, or a row
+     * still leased by a live worker, propagates and leaves the job pending for redelivery
      */
-    public void onTestQueued(String message) {
-        try {
-            UUID usageId = UUID.fromString(message);
-            log.info("Received test event for usage: {}", usageId);
+    public void onTestQueued(String message, boolean redelivered) {
+        UUID usageId = UUID.fromString(message);
+        log.info("Received test event for usage: {} (redelivered: {})", usageId, redelivered);
 
-            processTestItem(usageId);
+        processTestItem(usageId, redelivered);
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to process test event: {}", message, e);
-        }
+    /**
+     * Job kept failing until it was dead-lettered, do not leave the row PENDING/PROCESSING forever
+     */
+    public void onOptimizationDeadLettered(String message) {
+        UUID queueId = UUID.fromString(message);
+        transactionTemplate.executeWithoutResult(status -> queueRepository.findById(queueId).ifPresent(item -> {
+            if (!QueueStatus.COMPLETED.name().equals(item.getStatus())) {
+                item.setStatus(QueueStatus.FAILED.name());
+                item.setErrorMessage("Job failed repeatedly and was dead-lettered");
+                item.setUpdatedAt(Instant.now());
+                queueRepository.save(item);
+            }
+        }));
+    }
+
+    public void onTestDeadLettered(String message) {
+        UUID usageId = UUID.fromString(message);
+        transactionTemplate.executeWithoutResult(status -> usageRepository.findById(usageId).ifPresent(usage -> {
+            if (!QueueStatus.COMPLETED.name().equals(usage.getStatus())) {
+                usage.setStatus(QueueStatus.FAILED.name());
+                usage.setErrorMessage("Job failed repeatedly and was dead-lettered");
+                usage.setUpdatedAt(Instant.now());
+                usageRepository.save(usage);
+            }
+        }));
     }
 
     /**
@@ -100,7 +132,7 @@ public class QueueEventListener {
     /**
      * Process optimization item - Load data in transaction, then call AI
      */
-    private void processOptimizationItem(UUID queueId) {
+    private void processOptimizationItem(UUID queueId, boolean redelivered) {
         // load data and update status in transaction
         OptimizationQueueData queueData = transactionTemplate.execute(status -> {
             OptimizationQueue item = queueRepository.findById(queueId).orElse(null);
@@ -109,8 +141,8 @@ public class QueueEventListener {
                 return null;
             }
 
-            // Check if already processed
-            if (!QueueStatus.PENDING.name().equals(item.getStatus())) {
+            // Check if already processed, a redelivered job may find the row PROCESSING from a dead worker
+            if (!isClaimable(item.getStatus(), item.getUpdatedAt(), JobStream.OPTIMIZATION, redelivered)) {
                 log.info("Item {} already processed, status: {}", queueId, item.getStatus());
                 return null;
             }
@@ -156,27 +188,19 @@ public class QueueEventListener {
      * Core optimization logic (outside transaction)
      */
     private void processOptimizationLogic(OptimizationQueueData data) {
-        int reservedTokens = data.maxTokens;
+        // Reserve quota, nothing is charged until commit
+        Reservation reservation = quotaService.reserve(data.userId, QuotaType.OPTIMIZATION, data.maxTokens, true);
 
         try {
-            // Reserve quota
-            quotaService.validateAndDecrementQuota(data.userId, QuotaType.OPTIMIZATION, reservedTokens, true);
-
-            // Call AI with timeout
-            ClientPromptResponse response = callAiWithTimeout(() -> aiClientService.optimizePrompt(
+            // Call AI with timeout, optimizePrompt always goes to OpenAI
+            ClientPromptResponse response = callAiWithTimeout(AiModel.GPT_4O_MINI.getProvider(), () -> aiClientService.optimizePrompt(
                     data.prompt,
                     data.input,
                     data.temperature,
                     data.maxTokens));
 
-            int tokensUsed = response.totalTokens();
-
-            // Refund unused tokens
-            int tokensToRefund = reservedTokens - tokensUsed;
-            if (tokensToRefund > 0) {
-                quotaService.refundTokens(data.userId, tokensToRefund);
-                log.debug("Refunded {} unused tokens", tokensToRefund);
-            }
+            // Charge actual usage, unused tokens go back in the same step
+            reservation.commit(response.totalTokens());
 
             // save results in new transaction
             transactionTemplate.executeWithoutResult(status -> {
@@ -211,8 +235,9 @@ public class QueueEventListener {
             log.info("Optimization completed: {}", data.queueId);
 
         } catch (Exception e) {
-            log.error("AI call failed, refunding quota", e);
-            quotaService.refundQuota(data.userId, QuotaType.OPTIMIZATION, reservedTokens);
+            // no-op once committed, the AI work is already paid for
+            log.error("Optimization failed, releasing reservation if still open", e);
+            reservation.release();
             throw e;
         }
     }
@@ -220,7 +245,7 @@ public class QueueEventListener {
     /**
      * Process test item - Load data in transaction, then call AI
      */
-    private void processTestItem(UUID usageId) {
+    private void processTestItem(UUID usageId, boolean redelivered) {
         // load data and update status in transaction
         TestUsageData usageData = transactionTemplate.execute(status -> {
             PromptUsage usage = usageRepository.findById(usageId).orElse(null);
@@ -229,8 +254,8 @@ public class QueueEventListener {
                 return null;
             }
 
-            // Check if already processed
-            if (!QueueStatus.PENDING.name().equals(usage.getStatus())) {
+            // Check if already processed, a redelivered job may find the row PROCESSING from a dead worker
+            if (!isClaimable(usage.getStatus(), usage.getUpdatedAt(), JobStream.TEST, redelivered)) {
                 log.info("Usage {} already processed, status: {}", usageId, usage.getStatus());
                 return null;
             }
@@ -277,17 +302,16 @@ public class QueueEventListener {
      * Core test logic (outside transaction)
      */
     private void processTestLogic(TestUsageData data) {
-        int reservedTokens = data.maxTokens;
+        // Reserve quota, nothing is charged until commit
+        Reservation reservation = quotaService.reserve(data.userId, QuotaType.TEST, data.maxTokens, true);
 
         try {
-            // Reserve quota
-            quotaService.validateAndDecrementQuota(data.userId, QuotaType.TEST, reservedTokens, true);
-
             // Call AI with timeout
             long startTime = System.currentTimeMillis();
-            ClientPromptResponse response = callAiWithTimeout(() -> aiClientService.testPrompt(
+            AiModel aiModel = AiModel.parseAiModel(data.aiModel);
+            ClientPromptResponse response = callAiWithTimeout(aiModel.getProvider(), () -> aiClientService.testPrompt(
                     data.prompt,
-                    AiModel.parseAiModel(data.aiModel),
+                    aiModel,
                     data.inputText,
                     data.temperature,
                     data.maxTokens,
@@ -296,11 +320,8 @@ public class QueueEventListener {
             int executionTime = (int) (System.currentTimeMillis() - startTime);
             int tokensUsed = response.totalTokens();
 
-            // Refund unused tokens
-            int tokensToRefund = reservedTokens - tokensUsed;
-            if (tokensToRefund > 0) {
-                quotaService.refundTokens(data.userId, tokensToRefund);
-            }
+            // Charge actual usage, unused tokens go back in the same step
+            reservation.commit(tokensUsed);
 
             // save results in new transaction
             transactionTemplate.executeWithoutResult(status -> {
@@ -318,8 +339,9 @@ public class QueueEventListener {
             log.info("Test completed: {}", data.usageId);
 
         } catch (Exception e) {
-            log.error("AI call failed, refunding quota", e);
-            quotaService.refundQuota(data.userId, QuotaType.TEST, reservedTokens);
+            // no-op once committed, the AI work is already paid for
+            log.error("Test failed, releasing reservation if still open", e);
+            reservation.release();
             throw e;
         }
     }
@@ -401,19 +423,40 @@ public class QueueEventListener {
     }
 
     /**
-     * Handle optimization failure
+     * PENDING rows are claimable; a PROCESSING row is leased to its worker until updated_at plus the stream's
+     * visibility timeout, and only taken over once that lease is stale
+     * - A redelivery that finds a live lease throws, so the job stays pending instead of running twice or being
+     *   acked while its worker may still die
+     */
+    private boolean isClaimable(String status, Instant updatedAt, JobStream stream, boolean redelivered) {
+        if (QueueStatus.PENDING.name().equals(status)) {
+            return true;
+        }
+        if (!redelivered || !QueueStatus.PROCESSING.name().equals(status)) {
+            return false;
+        }
+        Instant leaseEnd = (updatedAt != null ? updatedAt : Instant.EPOCH).plus(stream.getVisibilityTimeout());
+        if (Instant.now().isBefore(leaseEnd)) {
+            throw new IllegalStateException("Job still leased by another worker until " + leaseEnd);
+        }
+        return true;
+    }
+
+    /**
+     * Handle optimization failure, re-queue the item while it has retries left
      */
     private void handleOptimizationFailure(UUID queueId, String errorMessage) {
-        transactionTemplate.executeWithoutResult(status -> {
+        Boolean retry = transactionTemplate.execute(status -> {
             OptimizationQueue item = queueRepository.findById(queueId).orElse(null);
             if (item == null)
-                return;
+                return false;
 
             item.setRetryCount(item.getRetryCount() + 1);
             item.setErrorMessage(errorMessage);
             item.setUpdatedAt(Instant.now());
 
-            if (item.getRetryCount() >= item.getMaxRetries()) {
+            boolean willRetry = item.getRetryCount() < item.getMaxRetries();
+            if (!willRetry) {
                 log.warn("Max retries reached for: {}", queueId);
                 item.setStatus(QueueStatus.FAILED.name());
             } else {
@@ -422,7 +465,16 @@ public class QueueEventListener {
             }
 
             queueRepository.save(item);
+            return willRetry;
         });
+
+        if (Boolean.TRUE.equals(retry)) {
+            try {
+                jobQueue.publish(JobStream.OPTIMIZATION, queueId.toString());
+            } catch (Exception e) {
+                log.error("Failed to re-queue optimization {}, will rely on fallback scheduler", queueId, e);
+            }
+        }
     }
 
     /**
@@ -442,22 +494,14 @@ public class QueueEventListener {
     }
 
     /**
-     * Call AI with timeout protection
+     * Call AI with timeout protection, within the provider's concurrency limit
      */
-    private ClientPromptResponse callAiWithTimeout(AiCallSupplier supplier) {
+    private ClientPromptResponse callAiWithTimeout(String provider, AiCallSupplier supplier) {
         try {
-            CompletableFuture<ClientPromptResponse> future = CompletableFuture.supplyAsync(() -> {
-                try {
-                    return supplier.get();
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            });
-
-            return future.get(AI_CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return aiJobExecutor.call(provider, AI_CALL_TIMEOUT, supplier::get);
 
-        } catch (java.util.concurrent.TimeoutException e) {
-            throw new RuntimeException("AI request timed out after " + AI_CALL_TIMEOUT_SECONDS + " seconds");
+        } catch (TimeoutException e) {
+            throw new RuntimeException("AI request timed out after " + AI_CALL_TIMEOUT.toSeconds() + " seconds");
         } catch (Exception e) {
             throw new RuntimeException("AI call failed: " + e.getMessage(), e);
         }
@@ -0,0 +1,98 @@
+package SEP490.EduPrompt.service.ai;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Remaining individual quota shared by every node, so the same balance cannot be spent once per node
+ * - take and give are atomic per user, take also rolls the quota period over once it has passed
+ * - A user missing from the store (first access, expired, evicted) is seeded by the ledger from user_quota
+ * - user_quota stays the durable copy, the ledger writes the spend behind as before
+ * - Holds are recorded in the store with a deadline; one not settled or released by then is given back by
+ *   releaseExpiredHolds on any node, so a node crashing mid-call cannot keep a user's quota
+ */
+public interface QuotaBalanceStore {
+
+    /**
+     * Store the balance unless another node already did
+     *
+     * @return the balance now stored for the user
+     */
+    Balance seed(UUID userId, Balance balance);
+
+    /**
+     * Take tokens and actions only if all of them are available
+     *
+     * @return the outcome, null when the user is not in the store
+     */
+    Result take(UUID userId, int tokens, int tests, int optimizations, Instant now, Instant nextResetDate);
+
+    /**
+     * Take like take and record it as a hold that is given back after expiresAt unless closed before
+     *
+     * @return the outcome, null when the user is not in the store
+     */
+    Result hold(UUID userId, UUID holdId, int tokens, int tests, int optimizations, Instant now,
+                Instant nextResetDate, Instant expiresAt);
+
+    /**
+     * Close a hold: charged tokens (capped at the hold) and its actions stay spent, the rest goes back
+     *
+     * @return the outcome, balance null when the user's balance expired meanwhile; null when the hold was
+     * already closed (released by the expiry sweep)
+     */
+    Result settleHold(UUID userId, UUID holdId, int chargedTokens);
+
+    /**
+     * Give a hold back whole
+     *
+     * @return same as settleHold
+     */
+    Result releaseHold(UUID userId, UUID holdId);
+
+    /**
+     * Give back up to limit holds whose deadline has passed, whichever node took them
+     *
+     * @return number of holds given back
+     */
+    int releaseExpiredHolds(Instant now, int limit);
+
+    /**
+     * Give tokens and actions back, capped at the limits
+     *
+     * @return the outcome with the amounts actually given, null when the user is not in the store
+     */
+    Result give(UUID userId, int tokens, int tests, int optimizations);
+
+    Optional<Balance> get(UUID userId);
+
+    void remove(UUID userId);
+
+    record Balance(
+            int tokens,
+            int tests,
+            int optimizations,
+            int tokenLimit,
+            int testLimit,
+            int optimizationLimit,
+            Instant resetDate
+    ) {
+    }
+
+    /**
+     * @param granted    take only: everything requested was taken
+     * @param rolledOver take only: this call started the new quota period
+     * @param balance    the balance after the call
+     * @param tokens     tokens actually taken or given
+     */
+    record Result(
+            boolean granted,
+            boolean rolledOver,
+            Balance balance,
+            int tokens,
+            int tests,
+            int optimizations
+    ) {
+    }
+}
@@ -0,0 +1,783 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.enums.QuotaType;
+import SEP490.EduPrompt.exception.auth.InvalidInputException;
+import SEP490.EduPrompt.exception.auth.ResourceNotFoundException;
+import SEP490.EduPrompt.exception.client.QuotaExceededException;
+import SEP490.EduPrompt.model.UserQuota;
+import SEP490.EduPrompt.repo.UserQuotaRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory quota ledger
+ * - Individual balances are taken from the shared QuotaBalanceStore, so every node spends the same balance;
+ *   the cached balance mirrors it and is only decided on when the store cannot be reached
+ * - No DB row lock per AI call, net deltas are written behind to user_quota with atomic UPDATEs
+ * - School users spend from the sharded SchoolTokenPool instead of their own balance
+ * - Holds are recorded in the shared store with a deadline, so one left open by a crashed node goes back
+ *   to the user once the deadline has passed instead of staying taken until the period resets
+ * - Reconciliation re-bases cached balances on the DB (admin changes) and evicts idle users
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class QuotaLedger {
+
+    private static final int STRIPE_COUNT = 64;
+
+    private final UserQuotaRepository userQuotaRepository;
+    private final SchoolTokenPool schoolTokenPool;
+    private final QuotaBalanceStore balanceStore;
+
+    private final ReentrantLock[] stripes = createStripes();
+    private final Map<UUID, UserBalance> users = new ConcurrentHashMap<>();
+    // flush and reconcile must not interleave, otherwise a re-base can double count a delta
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+
+    @Value("${quota.ledger.idle-eviction-minutes:30}")
+    private long idleEvictionMinutes = 30;
+
+    @Value("${quota.ledger.hold-sweep-batch:200}")
+    private int holdSweepBatch = 200;
+
+    /**
+     * Validate and take tokens (and one action for individual users) from the cached balance
+     */
+    public Charge reserve(UUID userId, QuotaType quotaType, int tokens) {
+        return take(userId, quotaType, tokens, null);
+    }
+
+    /**
+     * Same checks as reserve, but the tokens/action are only held: nothing is written behind until
+     * settle, so a crash between hold and settle leaves the DB untouched
+     * - The shared hold is given back by releaseExpiredHolds on any node once expiresAt has passed
+     */
+    public Charge hold(UUID userId, QuotaType quotaType, int tokens, Instant expiresAt) {
+        return take(userId, quotaType, tokens, expiresAt);
+    }
+
+    /**
+     * Give back shared holds past their deadline, including those of nodes that crashed before settling
+     */
+    public void releaseExpiredHolds() {
+        try {
+            int released = balanceStore.releaseExpiredHolds(Instant.now(), holdSweepBatch);
+            if (released > 0) {
+                log.warn("Released {} expired quota holds", released);
+            }
+        } catch (Exception e) {
+            log.warn("Shared quota balance unavailable, expired holds are released on the next sweep", e);
+        }
+    }
+
+    /**
+     * Turn a hold into spend: charge the actual tokens (capped at the hold) and give the rest back
+     */
+    public void settle(Charge charge, int actualTokens) {
+        int charged = Math.max(0, Math.min(actualTokens, charge.tokens()));
+        if (charge.schoolSubscriptionId() != null) {
+            schoolTokenPool.settle(charge.schoolSubscriptionId(), charge.userId(), charge.schoolPoolGeneration(),
+                    charge.tokens(), charged);
+            return;
+        }
+        ReentrantLock lock = stripeFor(charge.userId());
+        lock.lock();
+        try {
+            UserBalance balance = loadUser(charge.userId());
+            balance.heldTokens = Math.max(0, balance.heldTokens - charge.tokens());
+            if (charge.holdId() == null) {
+                giveBack(balance, charge.tokens() - charged, 0, 0);
+            } else if (!settleShared(balance, charge, charged)) {
+                return;
+            }
+            balance.pendingTokens += charged;
+            switch (charge.quotaType()) {
+                case TEST -> {
+                    balance.heldTests = Math.max(0, balance.heldTests - 1);
+                    balance.pendingTests++;
+                }
+                case OPTIMIZATION -> {
+                    balance.heldOptimizations = Math.max(0, balance.heldOptimizations - 1);
+                    balance.pendingOptimizations++;
+                }
+                default -> {
+                    // no action counter for other quota types
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop a hold, tokens and action go back to the balance
+     */
+    public void cancel(Charge charge) {
+        if (charge.schoolSubscriptionId() != null) {
+            schoolTokenPool.settle(charge.schoolSubscriptionId(), charge.userId(), charge.schoolPoolGeneration(),
+                    charge.tokens(), 0);
+            return;
+        }
+        ReentrantLock lock = stripeFor(charge.userId());
+        lock.lock();
+        try {
+            UserBalance balance = loadUser(charge.userId());
+            balance.heldTokens = Math.max(0, balance.heldTokens - charge.tokens());
+            int tests = 0;
+            int optimizations = 0;
+            switch (charge.quotaType()) {
+                case TEST -> {
+                    balance.heldTests = Math.max(0, balance.heldTests - 1);
+                    tests = 1;
+                }
+                case OPTIMIZATION -> {
+                    balance.heldOptimizations = Math.max(0, balance.heldOptimizations - 1);
+                    optimizations = 1;
+                }
+                default -> {
+                    // no action counter for other quota types
+                }
+            }
+            if (charge.holdId() == null) {
+                giveBack(balance, charge.tokens(), tests, optimizations);
+                return;
+            }
+            try {
+                QuotaBalanceStore.Result result = balanceStore.releaseHold(balance.userId, charge.holdId());
+                if (result != null && result.balance() != null) {
+                    mirror(balance, result.balance(), false);
+                }
+            } catch (Exception e) {
+                log.warn("Shared quota balance unavailable for user: {}, hold {} is released after its deadline",
+                        balance.userId, charge.holdId(), e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // caller holds the user's stripe; false when nothing was charged
+    private boolean settleShared(UserBalance balance, Charge charge, int charged) {
+        QuotaBalanceStore.Result result;
+        try {
+            result = balanceStore.settleHold(balance.userId, charge.holdId(), charged);
+        } catch (Exception e) {
+            // written behind all the same; the shared hold goes back at its deadline until reconcile re-bases
+            log.warn("Shared quota balance unavailable for user: {}, hold {} is released after its deadline",
+                    balance.userId, charge.holdId(), e);
+            return true;
+        }
+        if (result != null) {
+            if (result.balance() != null) {
+                mirror(balance, result.balance(), false);
+            }
+            return true;
+        }
+        // the call outlived the hold and the sweep gave it back: charge what was used as a plain take
+        int tests = charge.quotaType() == QuotaType.TEST ? 1 : 0;
+        QuotaBalanceStore.Result taken = takeShared(balance, charged, tests, 1 - tests, null, null);
+        if (taken != null && !taken.granted()) {
+            log.warn("Quota drained after hold {} of user {} expired, {} tokens not charged",
+                    charge.holdId(), balance.userId, charged);
+            return false;
+        }
+        return true;
+    }
+
+    private Charge take(UUID userId, QuotaType quotaType, int tokens, Instant holdExpiresAt) {
+        UUID schoolSubscriptionId;
+        Instant quotaResetDate;
+        ReentrantLock lock = stripeFor(userId);
+        lock.lock();
+        try {
+            UserBalance balance = loadUser(userId);
+            if (balance.schoolSubscriptionId == null) {
+                return takeIndividual(balance, quotaType, tokens, holdExpiresAt);
+            }
+            resetIfExpired(balance);
+            schoolSubscriptionId = balance.schoolSubscriptionId;
+            quotaResetDate = balance.quotaResetDate;
+        } finally {
+            lock.unlock();
+        }
+
+        // school users spend the school pool and have no test/optimize action limit; the pool may lease from
+        // the DB, so it is called without holding the user's stripe
+        long generation = holdExpiresAt != null
+                ? schoolTokenPool.hold(schoolSubscriptionId, userId, tokens)
+                : schoolTokenPool.take(schoolSubscriptionId, userId, tokens) ? 0 : -1;
+        if (generation < 0) {
+            throw new QuotaExceededException(QuotaType.SCHOOL, quotaResetDate,
+                    (int) schoolTokenPool.available(schoolSubscriptionId));
+        }
+        return new Charge(userId, quotaType, schoolSubscriptionId, null, tokens, generation, null);
+    }
+
+    // caller holds the user's stripe
+    private Charge takeIndividual(UserBalance balance, QuotaType quotaType, int tokens, Instant holdExpiresAt) {
+        int tests = switch (quotaType) {
+            case TEST -> 1;
+            case OPTIMIZATION -> 0;
+            default -> throw new InvalidInputException("Unknown quota type");
+        };
+        int optimizations = 1 - tests;
+
+        boolean held = holdExpiresAt != null;
+        UUID holdId = held ? UUID.randomUUID() : null;
+        QuotaBalanceStore.Result shared = takeShared(balance, tokens, tests, optimizations, holdId, holdExpiresAt);
+        if (shared != null) {
+            if (!shared.granted()) {
+                throw exceeded(balance, quotaType, tokens);
+            }
+        } else {
+            // shared store unreachable, this node decides on its cached balance alone
+            holdId = null;
+            resetIfExpired(balance);
+            if (balance.tokenRemaining < tokens
+                    || balance.testingRemaining < tests
+                    || balance.optimizationRemaining < optimizations) {
+                throw exceeded(balance, quotaType, tokens);
+            }
+            balance.tokenRemaining -= tokens;
+            balance.testingRemaining -= tests;
+            balance.optimizationRemaining -= optimizations;
+        }
+
+        if (held) {
+            balance.heldTokens += tokens;
+            balance.heldTests += tests;
+            balance.heldOptimizations += optimizations;
+        } else {
+            balance.pendingTokens += tokens;
+            balance.pendingTests += tests;
+            balance.pendingOptimizations += optimizations;
+        }
+        return new Charge(balance.userId, quotaType, null, balance.subscriptionTierId, tokens, 0, holdId);
+    }
+
+    /**
+     * Same checks as reserve without taking anything
+     */
+    public void check(UUID userId, QuotaType quotaType, int tokens) {
+        UUID schoolSubscriptionId;
+        Instant quotaResetDate;
+        ReentrantLock lock = stripeFor(userId);
+        lock.lock();
+        try {
+            UserBalance balance = loadUser(userId);
+            if (balance.schoolSubscriptionId == null) {
+                checkIndividual(balance, quotaType, tokens);
+                return;
+            }
+            resetIfExpired(balance);
+            schoolSubscriptionId = balance.schoolSubscriptionId;
+            quotaResetDate = balance.quotaResetDate;
+        } finally {
+            lock.unlock();
+        }
+
+        long schoolRemaining = schoolTokenPool.available(schoolSubscriptionId);
+        if (schoolRemaining < tokens) {
+            throw new QuotaExceededException(QuotaType.SCHOOL, quotaResetDate, (int) schoolRemaining);
+        }
+    }
+
+    // caller holds the user's stripe
+    private void checkIndividual(UserBalance balance, QuotaType quotaType, int tokens) {
+        if (!refreshShared(balance)) {
+            resetIfExpired(balance);
+        }
+        // a passed period is rolled over by the next take, judge against the full limits
+        boolean expired = balance.quotaResetDate != null && Instant.now().isAfter(balance.quotaResetDate);
+        int tokensLeft = expired ? balance.tokenLimit : balance.tokenRemaining;
+        if (tokensLeft < tokens) {
+            throw new QuotaExceededException(QuotaType.INDIVIDUAL, balance.quotaResetDate, tokensLeft);
+        }
+        switch (quotaType) {
+            case TEST -> {
+                int testsLeft = expired ? balance.testingLimit : balance.testingRemaining;
+                if (testsLeft < 1)
+                    throw new QuotaExceededException(QuotaType.TEST, balance.quotaResetDate, testsLeft);
+            }
+            case OPTIMIZATION -> {
+                int optimizationsLeft = expired ? balance.optimizationLimit : balance.optimizationRemaining;
+                if (optimizationsLeft < 1)
+                    throw new QuotaExceededException(QuotaType.OPTIMIZATION, balance.quotaResetDate,
+                            optimizationsLeft);
+            }
+            default -> throw new InvalidInputException("Unknown quota type");
+        }
+    }
+
+    /**
+     * Give tokens back to the pool the user currently spends from (capped at the individual limit)
+     */
+    public void refundTokens(UUID userId, int tokens) {
+        if (tokens <= 0) {
+            return;
+        }
+        UUID schoolSubscriptionId;
+        ReentrantLock lock = stripeFor(userId);
+        lock.lock();
+        try {
+            UserBalance balance = loadUser(userId);
+            schoolSubscriptionId = balance.schoolSubscriptionId;
+            if (schoolSubscriptionId == null) {
+                balance.pendingTokens -= giveBack(balance, tokens, 0, 0).tokens();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        schoolTokenPool.give(schoolSubscriptionId, userId, tokens);
+    }
+
+    /**
+     * Give back the action count of a failed test/optimization, school users have no action limit
+     */
+    public void refundAction(UUID userId, QuotaType quotaType) {
+        ReentrantLock lock = stripeFor(userId);
+        lock.lock();
+        try {
+            UserBalance balance = loadUser(userId);
+            if (balance.schoolSubscriptionId != null) {
+                return;
+            }
+            switch (quotaType) {
+                case TEST -> balance.pendingTests -= giveBack(balance, 0, 1, 0).tests();
+                case OPTIMIZATION -> balance.pendingOptimizations -= giveBack(balance, 0, 0, 1).optimizations();
+                default -> {
+                    // No action limit for school / individual token pools
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Current shared view of a user, else the cached one; empty when the user is in neither
+     */
+    public Optional<Snapshot> snapshot(UUID userId) {
+        try {
+            Optional<QuotaBalanceStore.Balance> shared = balanceStore.get(userId);
+            if (shared.isPresent()) {
+                QuotaBalanceStore.Balance balance = shared.get();
+                return Optional.of(new Snapshot(
+                        balance.tokens(),
+                        balance.tests(),
+                        balance.optimizations(),
+                        balance.resetDate()));
+            }
+        } catch (Exception e) {
+            log.warn("Shared quota balance unavailable for user: {}, using the cached balance", userId, e);
+        }
+        ReentrantLock lock = stripeFor(userId);
+        lock.lock();
+        try {
+            UserBalance balance = users.get(userId);
+            if (balance == null) {
+                return Optional.empty();
+            }
+            return Optional.of(new Snapshot(
+                    balance.tokenRemaining,
+                    balance.testingRemaining,
+                    balance.optimizationRemaining,
+                    balance.quotaResetDate));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop a user from the cache and the shared store without writing its pending deltas, used when the
+     * quota row is rebuilt (subscription sync) and the unflushed spend no longer applies
+     */
+    public void evict(UUID userId) {
+        ReentrantLock lock = stripeFor(userId);
+        lock.lock();
+        try {
+            users.remove(userId);
+            balanceStore.remove(userId);
+        } catch (Exception e) {
+            // the shared balance keeps the old limits until its TTL runs out
+            log.error("Failed to drop shared quota balance of user: {}", userId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write-behind: push net deltas to the DB
+     */
+    @Scheduled(fixedDelayString = "${quota.ledger.flush-interval-ms:2000}")
+    public void flush() {
+        maintenanceLock.lock();
+        try {
+            flushUsers();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Flush, then re-base cached balances on the DB rows and evict idle users
+     */
+    @Scheduled(fixedDelayString = "${quota.ledger.reconcile-interval-ms:60000}", initialDelay = 60000)
+    public void reconcile() {
+        maintenanceLock.lock();
+        try {
+            flushUsers();
+            reconcileUsers();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void drainOnShutdown() {
+        log.info("Flushing quota ledger before shutdown");
+        flush();
+    }
+
+    private void flushUsers() {
+        for (UserBalance balance : users.values()) {
+            UserDelta delta;
+            ReentrantLock lock = stripeFor(balance.userId);
+            lock.lock();
+            try {
+                delta = balance.drain();
+            } finally {
+                lock.unlock();
+            }
+            if (delta == null) {
+                continue;
+            }
+
+            try {
+                if (delta.resetDate() != null) {
+                    userQuotaRepository.resetAndApplyLedgerDelta(balance.userId, delta.tokens(), delta.tests(),
+                            delta.optimizations(), delta.resetDate());
+                } else {
+                    userQuotaRepository.applyLedgerDelta(balance.userId, delta.tokens(), delta.tests(),
+                            delta.optimizations());
+                }
+            } catch (Exception e) {
+                log.error("Failed to flush quota delta for user: {}, will retry", balance.userId, e);
+                lock.lock();
+                try {
+                    balance.restore(delta);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void reconcileUsers() {
+        if (users.isEmpty()) {
+            return;
+        }
+        long idleCutoff = System.currentTimeMillis() - idleEvictionMinutes * 60_000;
+        List<UUID> userIds = new ArrayList<>(users.keySet());
+        Map<UUID, UserQuota> rows = new HashMap<>();
+        for (UserQuota quota : userQuotaRepository.findAllByUserIdIn(userIds)) {
+            rows.put(quota.getUserId(), quota);
+        }
+
+        int evicted = 0;
+        for (UUID userId : userIds) {
+            ReentrantLock lock = stripeFor(userId);
+            lock.lock();
+            try {
+                UserBalance balance = users.get(userId);
+                if (balance == null) {
+                    continue;
+                }
+                UserQuota row = rows.get(userId);
+                if (row == null || (balance.lastAccess < idleCutoff && !balance.isDirty() && !balance.hasHolds())) {
+                    users.remove(userId);
+                    evicted++;
+                } else if (!balance.resetPending) {
+                    balance.rebase(row);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        log.debug("Quota ledger reconciled {} users, evicted {}", userIds.size(), evicted);
+    }
+
+    private UserBalance loadUser(UUID userId) {
+        UserBalance balance = users.get(userId);
+        if (balance == null) {
+            UserQuota quota = userQuotaRepository.findByUserId(userId)
+                    .orElseThrow(() -> new ResourceNotFoundException("User quota not found"));
+            balance = new UserBalance(userId);
+            balance.rebase(quota);
+            users.put(userId, balance);
+        }
+        balance.lastAccess = System.currentTimeMillis();
+        return balance;
+    }
+
+    // null when the shared store cannot be reached, the caller then decides on the cached balance
+    // a non-null holdId records the take as a hold given back after holdExpiresAt
+    private QuotaBalanceStore.Result takeShared(UserBalance balance, int tokens, int tests, int optimizations,
+                                                UUID holdId, Instant holdExpiresAt) {
+        try {
+            Instant now = Instant.now();
+            QuotaBalanceStore.Result result = takeOrHold(balance.userId, tokens, tests, optimizations, now,
+                    holdId, holdExpiresAt);
+            if (result == null) {
+                // first node to see the user (or its entry expired): seed from the cached balance and retry
+                balanceStore.seed(balance.userId, balance.toShared());
+                result = takeOrHold(balance.userId, tokens, tests, optimizations, now, holdId, holdExpiresAt);
+            }
+            if (result != null) {
+                mirror(balance, result.balance(), result.rolledOver());
+            }
+            return result;
+        } catch (Exception e) {
+            log.warn("Shared quota balance unavailable for user: {}, using the cached balance", balance.userId, e);
+            return null;
+        }
+    }
+
+    private QuotaBalanceStore.Result takeOrHold(UUID userId, int tokens, int tests, int optimizations,
+                                                Instant now, UUID holdId, Instant holdExpiresAt) {
+        return holdId == null
+                ? balanceStore.take(userId, tokens, tests, optimizations, now, calculateNextResetDate())
+                : balanceStore.hold(userId, holdId, tokens, tests, optimizations, now, calculateNextResetDate(),
+                holdExpiresAt);
+    }
+
+    // the amounts actually given back; falls back to the cached balance when the shared one is missing
+    private QuotaBalanceStore.Result giveBack(UserBalance balance, int tokens, int tests, int optimizations) {
+        if (tokens > 0 || tests > 0 || optimizations > 0) {
+            try {
+                QuotaBalanceStore.Result result = balanceStore.give(balance.userId, Math.max(0, tokens),
+                        tests, optimizations);
+                if (result != null) {
+                    mirror(balance, result.balance(), false);
+                    return result;
+                }
+            } catch (Exception e) {
+                log.warn("Shared quota balance unavailable for user: {}, refunding the cached balance",
+                        balance.userId, e);
+            }
+        }
+        int givenTokens = Math.max(0, Math.min(balance.tokenRemaining + tokens, balance.tokenLimit)
+                - balance.tokenRemaining);
+        int givenTests = Math.max(0, Math.min(balance.testingRemaining + tests, balance.testingLimit)
+                - balance.testingRemaining);
+        int givenOptimizations = Math.max(0, Math.min(balance.optimizationRemaining + optimizations,
+                balance.optimizationLimit) - balance.optimizationRemaining);
+        balance.tokenRemaining += givenTokens;
+        balance.testingRemaining += givenTests;
+        balance.optimizationRemaining += givenOptimizations;
+        return new QuotaBalanceStore.Result(true, false, balance.toShared(), givenTokens, givenTests,
+                givenOptimizations);
+    }
+
+    // false when the shared balance is missing or cannot be read
+    private boolean refreshShared(UserBalance balance) {
+        try {
+            Optional<QuotaBalanceStore.Balance> shared = balanceStore.get(balance.userId);
+            shared.ifPresent(value -> mirror(balance, value, false));
+            return shared.isPresent();
+        } catch (Exception e) {
+            log.warn("Shared quota balance unavailable for user: {}, using the cached balance", balance.userId, e);
+            return false;
+        }
+    }
+
+    private void mirror(UserBalance balance, QuotaBalanceStore.Balance shared, boolean rolledOver) {
+        if (shared.resetDate() != null
+                && (balance.quotaResetDate == null || shared.resetDate().isAfter(balance.quotaResetDate))) {
+            // a new period started (here or on another node): spend of the old one no longer matters
+            balance.pendingTokens = 0;
+            balance.pendingTests = 0;
+            balance.pendingOptimizations = 0;
+            balance.quotaResetDate = shared.resetDate();
+            if (rolledOver) {
+                log.info("Quota expired for user: {}, resetting...", balance.userId);
+                balance.resetPending = true;
+            }
+        }
+        balance.tokenRemaining = shared.tokens();
+        balance.testingRemaining = shared.tests();
+        balance.optimizationRemaining = shared.optimizations();
+    }
+
+    private static QuotaExceededException exceeded(UserBalance balance, QuotaType quotaType, int tokens) {
+        if (balance.tokenRemaining < tokens) {
+            return new QuotaExceededException(QuotaType.INDIVIDUAL, balance.quotaResetDate, balance.tokenRemaining);
+        }
+        return quotaType == QuotaType.TEST
+                ? new QuotaExceededException(QuotaType.TEST, balance.quotaResetDate, balance.testingRemaining)
+                : new QuotaExceededException(QuotaType.OPTIMIZATION, balance.quotaResetDate,
+                balance.optimizationRemaining);
+    }
+
+    private void resetIfExpired(UserBalance balance) {
+        if (balance.quotaResetDate != null && Instant.now().isAfter(balance.quotaResetDate)) {
+            log.info("Quota expired for user: {}, resetting...", balance.userId);
+            balance.reset(calculateNextResetDate());
+        }
+    }
+
+    private ReentrantLock stripeFor(UUID userId) {
+        return stripes[(userId.hashCode() & 0x7fffffff) % STRIPE_COUNT];
+    }
+
+    private static ReentrantLock[] createStripes() {
+        ReentrantLock[] locks = new ReentrantLock[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private static Instant calculateNextResetDate() {
+        return Instant.now()
+                .plus(1, ChronoUnit.DAYS)
+                .truncatedTo(ChronoUnit.DAYS);
+    }
+
+    private static int valueOrZero(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    private static UUID parseUuid(String value) {
+        return value != null ? UUID.fromString(value) : null;
+    }
+
+    /**
+     * What a reserve took and from which pool, so callers can log usage against it
+     *
+     * @param schoolPoolGeneration generation of the school pool a hold was taken from, 0 otherwise
+     * @param holdId               id of the hold in the shared store, null for plain takes and holds decided on
+     *                             the cached balance
+     */
+    public record Charge(
+            UUID userId,
+            QuotaType quotaType,
+            UUID schoolSubscriptionId,
+            UUID subscriptionTierId,
+            int tokens,
+            long schoolPoolGeneration,
+            UUID holdId
+    ) {
+    }
+
+    public record Snapshot(
+            int individualTokenRemaining,
+            int testingQuotaRemaining,
+            int optimizationQuotaRemaining,
+            Instant quotaResetDate
+    ) {
+    }
+
+    private record UserDelta(int tokens, int tests, int optimizations, Instant resetDate) {
+    }
+
+    // guarded by the user's stripe lock
+    private static class UserBalance {
+        final UUID userId;
+        UUID schoolSubscriptionId;
+        UUID subscriptionTierId;
+        Instant quotaResetDate;
+        int tokenLimit;
+        int tokenRemaining;
+        int testingLimit;
+        int testingRemaining;
+        int optimizationLimit;
+        int optimizationRemaining;
+        // net consumption not yet written to user_quota
+        int pendingTokens;
+        int pendingTests;
+        int pendingOptimizations;
+        boolean resetPending;
+        // taken by open reservations, never written behind
+        int heldTokens;
+        int heldTests;
+        int heldOptimizations;
+        long lastAccess = System.currentTimeMillis();
+
+        UserBalance(UUID userId) {
+            this.userId = userId;
+        }
+
+        void rebase(UserQuota quota) {
+            schoolSubscriptionId = parseUuid(quota.getSchoolSubscriptionId());
+            subscriptionTierId = parseUuid(quota.getSubscriptionTierId());
+            quotaResetDate = quota.getQuotaResetDate();
+            tokenLimit = valueOrZero(quota.getIndividualTokenLimit());
+            testingLimit = valueOrZero(quota.getTestingQuotaLimit());
+            optimizationLimit = valueOrZero(quota.getOptimizationQuotaLimit());
+            tokenRemaining = valueOrZero(quota.getIndividualTokenRemaining()) - pendingTokens - heldTokens;
+            testingRemaining = valueOrZero(quota.getTestingQuotaRemaining()) - pendingTests - heldTests;
+            optimizationRemaining = valueOrZero(quota.getOptimizationQuotaRemaining()) - pendingOptimizations
+                    - heldOptimizations;
+        }
+
+        void reset(Instant nextResetDate) {
+            tokenRemaining = tokenLimit - heldTokens;
+            testingRemaining = testingLimit - heldTests;
+            optimizationRemaining = optimizationLimit - heldOptimizations;
+            quotaResetDate = nextResetDate;
+            // spend before the reset no longer matters once the row is reset
+            pendingTokens = 0;
+            pendingTests = 0;
+            pendingOptimizations = 0;
+            resetPending = true;
+        }
+
+        QuotaBalanceStore.Balance toShared() {
+            return new QuotaBalanceStore.Balance(tokenRemaining, testingRemaining, optimizationRemaining,
+                    tokenLimit, testingLimit, optimizationLimit, quotaResetDate);
+        }
+
+        boolean hasHolds() {
+            return heldTokens != 0 || heldTests != 0 || heldOptimizations != 0;
+        }
+
+        boolean isDirty() {
+            return resetPending || pendingTokens != 0 || pendingTests != 0 || pendingOptimizations != 0;
+        }
+
+        UserDelta drain() {
+            if (!isDirty()) {
+                return null;
+            }
+            UserDelta delta = new UserDelta(pendingTokens, pendingTests, pendingOptimizations,
+                    resetPending ? quotaResetDate : null);
+            pendingTokens = 0;
+            pendingTests = 0;
+            pendingOptimizations = 0;
+            resetPending = false;
+            return delta;
+        }
+
+        void restore(UserDelta delta) {
+            if (delta.resetDate() != null && !resetPending) {
+                resetPending = true;
+            }
+            pendingTokens += delta.tokens();
+            pendingTests += delta.tests();
+            pendingOptimizations += delta.optimizations();
+        }
+    }
+}
@@ -29,6 +29,10 @@ public interface QuotaService {
 
     void refundTokens(UUID userId, int tokens);
 
+    Reservation reserve(UUID userId, QuotaType quotaType, int maxTokens);
+
+    Reservation reserve(UUID userId, QuotaType quotaType, int maxTokens, boolean logUsage);
+
     // TODO: manage action (5 prompt per day, 3 collection per day,.. based on
     // subscription tier) quota for user
 }
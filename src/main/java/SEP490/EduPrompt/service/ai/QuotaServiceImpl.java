@@ -2,13 +2,13 @@ package SEP490.EduPrompt.service.ai;
 
 import SEP490.EduPrompt.dto.response.quota.UserQuotaResponse;
 import SEP490.EduPrompt.enums.QuotaType;
-import SEP490.EduPrompt.exception.auth.InvalidInputException;
 import SEP490.EduPrompt.exception.auth.ResourceNotFoundException;
 import SEP490.EduPrompt.exception.client.QuotaExceededException;
 import SEP490.EduPrompt.model.*;
 import SEP490.EduPrompt.repo.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -16,9 +16,12 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
@@ -28,8 +31,16 @@ public class QuotaServiceImpl implements QuotaService {
     private final UserQuotaRepository userQuotaRepository;
     private final UserRepository userRepository;
     private final SubscriptionTierRepository subscriptionTierRepository;
-    private final SchoolSubscriptionRepository schoolSubscriptionRepository;
-    private final TeacherTokenUsageLogRepository teacherTokenUsageLogRepository;
+    private final QuotaLedger quotaLedger;
+    private final UsageLogWriter usageLogWriter;
+
+    private final Map<UUID, Reservation> openReservations = new ConcurrentHashMap<>();
+
+    @Value("${quota.reservation.ttl-seconds:300}")
+    private long reservationTtlSeconds = 300;
+
+    @Value("${quota.reservation.sweep-interval-ms:30000}")
+    private long sweepIntervalMs = 30000;
 
     @Override
     @Transactional(readOnly = true)
@@ -39,13 +50,16 @@ public class QuotaServiceImpl implements QuotaService {
         UserQuota userQuota = userQuotaRepository.findByUserId(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Not found user quota"));
 
+        // ledger holds spend that may not be written back yet
+        QuotaLedger.Snapshot live = quotaLedger.snapshot(userId).orElse(null);
+
         return UserQuotaResponse.builder()
                 .userId(userQuota.getUserId())
                 .individualTokenLimit(userQuota.getIndividualTokenLimit())
-                .individualTokenRemaining(userQuota.getIndividualTokenRemaining())
-                .testingQuotaRemaining(userQuota.getTestingQuotaRemaining())
+                .individualTokenRemaining(live != null ? live.individualTokenRemaining() : userQuota.getIndividualTokenRemaining())
+                .testingQuotaRemaining(live != null ? live.testingQuotaRemaining() : userQuota.getTestingQuotaRemaining())
                 .testingQuotaLimit(userQuota.getTestingQuotaLimit())
-                .optimizationQuotaRemaining(userQuota.getOptimizationQuotaRemaining())
+                .optimizationQuotaRemaining(live != null ? live.optimizationQuotaRemaining() : userQuota.getOptimizationQuotaRemaining())
                 .optimizationQuotaLimit(userQuota.getOptimizationQuotaLimit())
                 .promptActionLimit(userQuota.getPromptActionLimit())
                 .promptActionRemaining(userQuota.getCollectionActionRemaining())
@@ -53,262 +67,42 @@ public class QuotaServiceImpl implements QuotaService {
                 .collectionActionRemaining(userQuota.getCollectionActionRemaining())
                 .promptUnlockLimit(userQuota.getPromptUnlockLimit())
                 .promptUnlockRemaining(userQuota.getPromptUnlockRemaining())
-                .quotaResetDate(userQuota.getQuotaResetDate())
+                .quotaResetDate(live != null ? live.quotaResetDate() : userQuota.getQuotaResetDate())
                 .build();
     }
 
     @Override
     public void validateQuota(UUID userId, QuotaType quotaType, int estimatedTokens) {
-        UserQuota userQuota = userQuotaRepository.findByUserId(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User quota not found"));
-
-        String schoolSubId = userQuota.getSchoolSubscriptionId();
-        if (schoolSubId != null) {
-            SchoolSubscription schoolSub = schoolSubscriptionRepository.findById(UUID.fromString(schoolSubId))
-                    .orElseThrow(() -> new ResourceNotFoundException("School subscription not found"));
-
-            int tokenRemaining = schoolSub.getSchoolTokenRemaining();
-            if (tokenRemaining < estimatedTokens) {
-                throw new QuotaExceededException(
-                        QuotaType.SCHOOL,
-                        userQuota.getQuotaResetDate(),
-                        tokenRemaining);
-            }
-        } else {
-            int indvTokenRemaining = userQuota.getIndividualTokenRemaining();
-            if (indvTokenRemaining < estimatedTokens) {
-                throw new QuotaExceededException(QuotaType.INDIVIDUAL, userQuota.getQuotaResetDate(),
-                        indvTokenRemaining);
-            }
-
-            switch (quotaType) {
-                case TEST -> {
-                    int testQuota = userQuota.getTestingQuotaRemaining();
-                    if (testQuota < 1)
-                        throw new QuotaExceededException(QuotaType.TEST, userQuota.getQuotaResetDate(), testQuota);
-                }
-
-                case OPTIMIZATION -> {
-                    int optQuota = userQuota.getOptimizationQuotaRemaining();
-                    if (optQuota < 1)
-                        throw new QuotaExceededException(QuotaType.OPTIMIZATION, userQuota.getQuotaResetDate(),
-                                optQuota);
-                }
-
-                default -> throw new InvalidInputException("Unknown quota type");
-            }
-        }
+        quotaLedger.check(userId, quotaType, estimatedTokens);
     }
 
     @Override
-    @Transactional
     public void decrementQuota(UUID userId, QuotaType quotaType, int actualTokensUsed) {
-        UserQuota userQuota = userQuotaRepository.findByUserIdWithLock(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User quota not found"));
-
-        if (userQuota.getSchoolSubscriptionId() != null) {
-            SchoolSubscription schoolSub = userQuota.getSchoolSubscription();
-            int schoolTokensLeft = schoolSub.getSchoolTokenRemaining();
-            if (schoolTokensLeft < actualTokensUsed) {
-                throw new QuotaExceededException(QuotaType.SCHOOL, userQuota.getQuotaResetDate(), schoolTokensLeft);
-            }
-
-            schoolSub.setSchoolTokenRemaining(schoolTokensLeft - actualTokensUsed);
-            schoolSub.setUpdatedAt(Instant.now());
-        } else {
-            int indvTokensLeft = userQuota.getIndividualTokenRemaining();
-            if (indvTokensLeft < actualTokensUsed) {
-                throw new QuotaExceededException(QuotaType.INDIVIDUAL, userQuota.getQuotaResetDate(), indvTokensLeft);
-            }
-
-            switch (quotaType) {
-                case TEST -> {
-                    int testQuota = userQuota.getTestingQuotaRemaining();
-                    if (testQuota < 1)
-                        throw new QuotaExceededException(QuotaType.TEST, userQuota.getQuotaResetDate(), testQuota);
-                    userQuota.setTestingQuotaRemaining(testQuota - 1);
-                }
-                case OPTIMIZATION -> {
-                    int optQuota = userQuota.getOptimizationQuotaRemaining();
-                    if (optQuota < 1)
-                        throw new QuotaExceededException(QuotaType.OPTIMIZATION, userQuota.getQuotaResetDate(),
-                                optQuota);
-                    userQuota.setOptimizationQuotaRemaining(optQuota - 1);
-                }
-                default -> throw new InvalidInputException("Unknown quota type");
-            }
-            userQuota.setIndividualTokenRemaining(indvTokensLeft - actualTokensUsed);
-        }
-        userQuota.setUpdatedAt(Instant.now());
-        userQuotaRepository.save(userQuota);
+        quotaLedger.reserve(userId, quotaType, actualTokensUsed);
     }
 
     @Override
-    @Transactional
     public void validateAndDecrementQuota(UUID userId, QuotaType quotaType, int tokenUsed) {
-        log.info("Validating {} quota for user: {}", quotaType, userId);
-
-        // prevent concurrent quota
-        UserQuota userQuota = userQuotaRepository.findByUserIdWithLock(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("user not found"));
-
-        // Auto-reset if quota period expired
-        if (Instant.now().isAfter(userQuota.getQuotaResetDate())) {
-            log.info("Quota expired for user: {}, resetting...", userId);
-            resetUserQuota(userQuota);
-        }
-
-        // if user have school sub, count token used toward school token pool, ignore
-        // test/optimize quota limit
-        if (userQuota.getSchoolSubscriptionId() != null) {
-            SchoolSubscription schoolSub = userQuota.getSchoolSubscription();
-
-            int schoolTokensLeft = schoolSub.getSchoolTokenRemaining();
-            if (schoolTokensLeft < tokenUsed) {
-                throw new QuotaExceededException(QuotaType.SCHOOL, userQuota.getQuotaResetDate(), schoolTokensLeft);
-            }
-            schoolSub.setSchoolTokenRemaining(schoolTokensLeft - tokenUsed);
-            schoolSub.setUpdatedAt(Instant.now());
-            schoolSubscriptionRepository.save(schoolSub);
-            log.info("Decremented school pool for user {} by {}, remaining: {}", userId, tokenUsed, schoolTokensLeft);
-        }
-        // if user dont have school sub, then proceed as normal
-        else {
-            int indvTokensLeft = userQuota.getIndividualTokenRemaining();
-            if (indvTokensLeft < tokenUsed) {
-                throw new QuotaExceededException(
-                        QuotaType.INDIVIDUAL,
-                        userQuota.getQuotaResetDate(),
-                        userQuota.getIndividualTokenRemaining());
-            }
-
-            switch (quotaType) {
-                case TEST -> {
-                    int testQuotaLeft = userQuota.getTestingQuotaRemaining();
-                    if (testQuotaLeft < 1) {
-                        throw new QuotaExceededException(
-                                QuotaType.TEST,
-                                userQuota.getQuotaResetDate(),
-                                testQuotaLeft);
-                    }
-                    userQuota.setTestingQuotaRemaining(testQuotaLeft - 1);
-                }
-                case OPTIMIZATION -> {
-                    int optQuotaLeft = userQuota.getOptimizationQuotaRemaining();
-                    if (optQuotaLeft < 1) {
-                        throw new QuotaExceededException(
-                                QuotaType.OPTIMIZATION,
-                                userQuota.getQuotaResetDate(),
-                                optQuotaLeft);
-                    }
-                    userQuota.setOptimizationQuotaRemaining(optQuotaLeft - 1);
-                }
-                default -> throw new InvalidInputException("Unknown quota type");
-            }
-
-            userQuota.setIndividualTokenRemaining(indvTokensLeft - tokenUsed);
-            log.info("Decremented individual quota pools for user {} by {} token(s); action: {}", userId, tokenUsed,
-                    quotaType);
-        }
-
-        userQuota.setUpdatedAt(Instant.now());
-        userQuotaRepository.save(userQuota);
+        validateAndDecrementQuota(userId, quotaType, tokenUsed, false);
     }
 
     @Override
-    @Transactional
     public void validateAndDecrementQuota(UUID userId, QuotaType quotaType, int tokenUsed, boolean logUsage) {
         log.info("Validating {} quota for user: {}", quotaType, userId);
 
-        // prevent concurrent quota
-        UserQuota userQuota = userQuotaRepository.findByUserIdWithLock(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("user not found"));
-
-        User user = userRepository.getReferenceById(userId);
-
-        // Auto-reset if quota period expired
-        if (Instant.now().isAfter(userQuota.getQuotaResetDate())) {
-            log.info("Quota expired for user: {}, resetting...", userId);
-            resetUserQuota(userQuota);
-        }
-
-        // if user have school sub, count token used toward school token pool, ignore
-        // test/optimize quota limit
-        if (userQuota.getSchoolSubscriptionId() != null) {
-            SchoolSubscription schoolSub = userQuota.getSchoolSubscription();
+        // in-memory reserve, the ledger writes the delta behind so no row lock is taken here
+        QuotaLedger.Charge charge = quotaLedger.reserve(userId, quotaType, tokenUsed);
 
-            int schoolTokensLeft = schoolSub.getSchoolTokenRemaining();
-            if (schoolTokensLeft < tokenUsed) {
-                throw new QuotaExceededException(QuotaType.SCHOOL, userQuota.getQuotaResetDate(), schoolTokensLeft);
-            }
-            schoolSub.setSchoolTokenRemaining(schoolTokensLeft - tokenUsed);
-            schoolSub.setUpdatedAt(Instant.now());
-            schoolSubscriptionRepository.save(schoolSub);
-
-            if (logUsage) {
-                TeacherTokenUsageLog usageLog = TeacherTokenUsageLog.builder()
-                        .user(user)
-                        .schoolSubscriptionId(schoolSub.getId())
-                        .subscriptionTierId(null)
-                        .tokensUsed(tokenUsed)
-                        .usedAt(Instant.now())
-                        .build();
-                teacherTokenUsageLogRepository.save(usageLog);
-            }
-
-            log.info("Decremented school pool for user {} by {}, remaining: {}", userId, tokenUsed, schoolTokensLeft);
+        if (logUsage) {
+            saveUsageLog(charge, tokenUsed);
         }
-        // if user dont have school sub, then proceed as normal
-        else {
-            int indvTokensLeft = userQuota.getIndividualTokenRemaining();
-            if (indvTokensLeft < tokenUsed) {
-                throw new QuotaExceededException(
-                        QuotaType.INDIVIDUAL,
-                        userQuota.getQuotaResetDate(),
-                        userQuota.getIndividualTokenRemaining());
-            }
-
-            switch (quotaType) {
-                case TEST -> {
-                    int testQuotaLeft = userQuota.getTestingQuotaRemaining();
-                    if (testQuotaLeft < 1) {
-                        throw new QuotaExceededException(
-                                QuotaType.TEST,
-                                userQuota.getQuotaResetDate(),
-                                testQuotaLeft);
-                    }
-                    userQuota.setTestingQuotaRemaining(testQuotaLeft - 1);
-                }
-                case OPTIMIZATION -> {
-                    int optQuotaLeft = userQuota.getOptimizationQuotaRemaining();
-                    if (optQuotaLeft < 1) {
-                        throw new QuotaExceededException(
-                                QuotaType.OPTIMIZATION,
-                                userQuota.getQuotaResetDate(),
-                                optQuotaLeft);
-                    }
-                    userQuota.setOptimizationQuotaRemaining(optQuotaLeft - 1);
-                }
-                default -> throw new InvalidInputException("Unknown quota type");
-            }
 
-            userQuota.setIndividualTokenRemaining(indvTokensLeft - tokenUsed);
-            if (logUsage) {
-                TeacherTokenUsageLog usageLog = TeacherTokenUsageLog.builder()
-                        .user(user)
-                        .schoolSubscriptionId(null)
-                        .subscriptionTierId(UUID.fromString(userQuota.getSubscriptionTierId()))
-                        .tokensUsed(tokenUsed)
-                        .usedAt(Instant.now())
-                        .build();
-                teacherTokenUsageLogRepository.save(usageLog);
-            }
+        if (charge.schoolSubscriptionId() != null) {
+            log.info("Decremented school pool for user {} by {}", userId, tokenUsed);
+        } else {
             log.info("Decremented individual quota pools for user {} by {} token(s); action: {}", userId, tokenUsed,
                     quotaType);
         }
-
-        userQuota.setUpdatedAt(Instant.now());
-        userQuotaRepository.save(userQuota);
     }
 
     @Override
@@ -317,6 +111,9 @@ public class QuotaServiceImpl implements QuotaService {
     public void resetExpiredQuotas() {
         log.info("Starting scheduled quota reset job");
 
+        // write pending spend before the rows are reset so it is not applied to the new period
+        quotaLedger.flush();
+
         Instant now = Instant.now();
         List<UserQuota> expiredQuotas = userQuotaRepository.findByQuotaResetDateBefore(now);
 
@@ -372,6 +169,7 @@ public class QuotaServiceImpl implements QuotaService {
                 .build();
 
         userQuotaRepository.save(updatedQuota);
+        quotaLedger.evict(userId);
         log.info("Quota synced successfully for user: {}", userId);
     }
 
@@ -412,6 +210,7 @@ public class QuotaServiceImpl implements QuotaService {
                 .build();
 
         userQuotaRepository.save(updatedQuota);
+        quotaLedger.evict(userId);
         log.info("Quota synced successfully for user: {}", userId);
     }
 
@@ -420,63 +219,22 @@ public class QuotaServiceImpl implements QuotaService {
     }
 
     @Override
-    @Transactional
     public void refundTokens(UUID userId, int tokensToRefund) {
         log.info("Refunding {} tokens for user: {}", tokensToRefund, userId);
-
-        UserQuota userQuota = userQuotaRepository.findByUserIdWithLock(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User quota not found"));
-
-        if (userQuota.getSchoolSubscriptionId() != null) {
-            SchoolSubscription schoolSub = userQuota.getSchoolSubscription();
-            schoolSub.setSchoolTokenRemaining(schoolSub.getSchoolTokenRemaining() + tokensToRefund);
-            schoolSub.setUpdatedAt(Instant.now());
-            schoolSubscriptionRepository.save(schoolSub);
-        } else {
-            // only refund token count
-            int limit = userQuota.getIndividualTokenLimit();
-            int current = userQuota.getIndividualTokenRemaining();
-            userQuota.setIndividualTokenRemaining(Math.min(current + tokensToRefund, limit));
-        }
-
-        userQuota.setUpdatedAt(Instant.now());
-        userQuotaRepository.save(userQuota);
+        quotaLedger.refundTokens(userId, tokensToRefund);
     }
 
     @Override
-    @Transactional
     public void refundQuota(UUID userId, QuotaType quotaType, int tokensToRefund) {
         // Refund tokens
         refundTokens(userId, tokensToRefund);
 
         // Also refund action count since operation failed
-        UserQuota userQuota = userQuotaRepository.findByUserIdWithLock(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
-
-        if (userQuota.getSchoolSubscriptionId() == null) { // School users don't have action limits
-            switch (quotaType) {
-                case TEST -> {
-                    int limit = userQuota.getTestingQuotaLimit();
-                    int current = userQuota.getTestingQuotaRemaining();
-                    userQuota.setTestingQuotaRemaining(Math.min(current + 1, limit));
-                }
-                case OPTIMIZATION -> {
-                    int limit = userQuota.getOptimizationQuotaLimit();
-                    int current = userQuota.getOptimizationQuotaRemaining();
-                    userQuota.setOptimizationQuotaRemaining(Math.min(current + 1, limit));
-                }
-                case SCHOOL -> {
-                    // No action limit for school
-                }
-            }
-            userQuota.setUpdatedAt(Instant.now());
-            userQuotaRepository.save(userQuota);
-        }
+        quotaLedger.refundAction(userId, quotaType);
     }
 
     @Override
     @Async
-    @Transactional(propagation = org.springframework.transaction.annotation.Propagation.REQUIRES_NEW)
     public void refundQuotaAsync(UUID userId, QuotaType quotaType, int tokensToRefund) {
         log.info("Async refunding {} tokens for user: {} type: {}", tokensToRefund, userId, quotaType);
         try {
@@ -486,6 +244,86 @@ public class QuotaServiceImpl implements QuotaService {
         }
     }
 
+    @Override
+    public Reservation reserve(UUID userId, QuotaType quotaType, int maxTokens) {
+        return reserve(userId, quotaType, maxTokens, false);
+    }
+
+    @Override
+    public Reservation reserve(UUID userId, QuotaType quotaType, int maxTokens, boolean logUsage) {
+        log.info("Reserving {} {} tokens for user: {}", maxTokens, quotaType, userId);
+
+        // nothing reaches the DB until commit; the shared hold outlives the reservation by one sweep interval
+        // so this node normally releases it, other nodes only step in when this one is gone
+        Instant expiresAt = Instant.now().plusSeconds(reservationTtlSeconds);
+        QuotaLedger.Charge charge = quotaLedger.hold(userId, quotaType, maxTokens,
+                expiresAt.plusMillis(sweepIntervalMs));
+        Reservation reservation = new Reservation(this, charge, logUsage, expiresAt);
+        openReservations.put(reservation.getId(), reservation);
+        return reservation;
+    }
+
+    /**
+     * Give back reservations whose caller never committed or released them (lost thread, missed finally)
+     */
+    @Scheduled(fixedDelayString = "${quota.reservation.sweep-interval-ms:30000}")
+    public void releaseExpiredReservations() {
+        Instant now = Instant.now();
+        List<Reservation> expired = new ArrayList<>();
+        for (Reservation reservation : openReservations.values()) {
+            if (reservation.isExpired(now)) {
+                expired.add(reservation);
+            }
+        }
+        for (Reservation reservation : expired) {
+            log.warn("Reservation {} of user {} expired, releasing {} tokens",
+                    reservation.getId(), reservation.getUserId(), reservation.getReservedTokens());
+            reservation.release();
+        }
+        quotaLedger.releaseExpiredHolds();
+    }
+
+    void commitReservation(Reservation reservation, int actualTokens) {
+        openReservations.remove(reservation.getId());
+        QuotaLedger.Charge charge = reservation.charge();
+        quotaLedger.settle(charge, actualTokens);
+        if (reservation.logUsage()) {
+            saveUsageLog(charge, Math.max(0, Math.min(actualTokens, charge.tokens())));
+        }
+        log.info("Committed reservation {} for user {}: {}/{} tokens", reservation.getId(), charge.userId(),
+                actualTokens, charge.tokens());
+    }
+
+    void commitExpiredReservation(Reservation reservation, int actualTokens) {
+        QuotaLedger.Charge charge = reservation.charge();
+        int tokens = Math.max(0, Math.min(actualTokens, charge.tokens()));
+        try {
+            quotaLedger.reserve(charge.userId(), charge.quotaType(), tokens);
+        } catch (QuotaExceededException e) {
+            log.warn("Quota drained while reservation {} was expired, {} tokens not charged",
+                    reservation.getId(), tokens);
+            return;
+        }
+        if (reservation.logUsage()) {
+            saveUsageLog(charge, tokens);
+        }
+    }
+
+    void releaseReservation(Reservation reservation) {
+        openReservations.remove(reservation.getId());
+        quotaLedger.cancel(reservation.charge());
+        log.info("Released reservation {} for user {}", reservation.getId(), reservation.getUserId());
+    }
+
+    private void saveUsageLog(QuotaLedger.Charge charge, int tokensUsed) {
+        // buffered, written in batches off the request thread
+        usageLogWriter.record(
+                charge.userId(),
+                charge.schoolSubscriptionId(),
+                charge.schoolSubscriptionId() == null ? charge.subscriptionTierId() : null,
+                tokensUsed);
+    }
+
     private void resetUserQuota(UserQuota userQuota) {
         log.debug("Resetting quota for user: {}", userQuota.getUserId());
 
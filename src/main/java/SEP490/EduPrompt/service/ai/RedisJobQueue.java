@@ -0,0 +1,403 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.enums.JobStream;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Durable job queue on Redis Streams
+ * - Jobs are XADDed, so nothing is lost when no node is listening
+ * - Every node reads through one consumer group, each job goes to exactly one node
+ * - A job is XACKed only after its handler returns; a job whose handler throws (or whose node dies) stays
+ *   pending and is XCLAIMed by any node once it has been idle longer than the stream's visibility timeout
+ * - Jobs this node has received and not finished (running or waiting for a job slot) are re-claimed to this
+ *   node on every heartbeat, so a live node never loses a long job to another one; a job another node already
+ *   reclaimed is left with that node
+ * - The pending list is scanned page by page, so stale jobs behind many fresh ones are still reclaimed
+ * - A node deletes its consumer on shutdown once it owns no pending job, consumers of dead nodes are pruned
+ *   once they have been idle for consumer-prune-idle-minutes and own nothing
+ * - Reclaimed jobs only start when a job slot is free, the scheduler thread never blocks on a full executor
+ * - Jobs delivered max-deliveries times are moved to the stream's dead-letter stream
+ * - Acked history is trimmed up to the oldest pending job, pending and undelivered jobs are never trimmed
+ */
+@Component
+@Slf4j
+public class RedisJobQueue {
+
+    public static final String CONSUMER_GROUP = "eduprompt-workers";
+    private static final String FIELD_PAYLOAD = "payload";
+    private static final int PENDING_PAGE_SIZE = 100;
+
+    // ARGV: group, consumer, ids; re-claims only the ids still owned by the consumer, replies those ids
+    // JUSTID neither returns the payload nor counts as a delivery
+    private static final RedisScript<List> HEARTBEAT = new DefaultRedisScript<>("""
+            local owned = {}
+            for i = 3, #ARGV do
+              local entry = redis.call('XPENDING', KEYS[1], ARGV[1], ARGV[i], ARGV[i], 1, ARGV[2])
+              if #entry > 0 then
+                redis.call('XCLAIM', KEYS[1], ARGV[1], ARGV[2], 0, ARGV[i], 'JUSTID')
+                owned[#owned + 1] = ARGV[i]
+              end
+            end
+            return owned
+            """, List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final AiJobExecutor aiJobExecutor;
+
+    private final String consumerName = "node-" + UUID.randomUUID();
+    private final Map<JobStream, JobHandler> handlers = new EnumMap<>(JobStream.class);
+    private final Map<JobStream, DeadLetterHandler> deadLetterHandlers = new EnumMap<>(JobStream.class);
+    // received by this node and not finished yet, kept alive by the heartbeat
+    private final Map<JobStream, Set<RecordId>> inFlight = new ConcurrentHashMap<>();
+    private StreamMessageListenerContainer<String, MapRecord<String, String, String>> container;
+
+    @Value("${queue.jobs.max-deliveries:3}")
+    private int maxDeliveries = 3;
+
+    @Value("${queue.jobs.consumer-prune-idle-minutes:60}")
+    private long consumerPruneIdleMinutes = 60;
+
+    public RedisJobQueue(RedisTemplate<String, String> redisTemplate,
+                         RedisConnectionFactory connectionFactory,
+                         AiJobExecutor aiJobExecutor) {
+        this.redisTemplate = redisTemplate;
+        this.connectionFactory = connectionFactory;
+        this.aiJobExecutor = aiJobExecutor;
+    }
+
+    @FunctionalInterface
+    public interface JobHandler {
+        /**
+         * @param redelivered true when the job was reclaimed from a worker that did not ack it
+         */
+        void handle(String payload, boolean redelivered) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface DeadLetterHandler {
+        void onDeadLetter(String payload);
+    }
+
+    /**
+     * Register the handler of a stream, must be called before the application is ready
+     */
+    public void register(JobStream stream, JobHandler handler) {
+        handlers.put(stream, handler);
+    }
+
+    /**
+     * Same as register, plus a callback run once when a job of the stream is dead-lettered (e.g. mark its row FAILED)
+     */
+    public void register(JobStream stream, JobHandler handler, DeadLetterHandler deadLetterHandler) {
+        handlers.put(stream, handler);
+        deadLetterHandlers.put(stream, deadLetterHandler);
+    }
+
+    /**
+     * Append a job, throws when Redis is unreachable so callers can fall back
+     */
+    public RecordId publish(JobStream stream, String payload) {
+        RecordId id = redisTemplate.opsForStream().add(
+                StreamRecords.string(Map.of(FIELD_PAYLOAD, payload)).withStreamKey(stream.getKey()));
+        log.debug("Queued job {} on {}", id, stream.getKey());
+        return id;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        StreamMessageListenerContainer.StreamMessageListenerContainerOptions<String, MapRecord<String, String, String>> options =
+                StreamMessageListenerContainer.StreamMessageListenerContainerOptions.builder()
+                        .pollTimeout(Duration.ofSeconds(2))
+                        .batchSize(10)
+                        .errorHandler(e -> log.error("Job stream poll failed", e))
+                        .build();
+        container = StreamMessageListenerContainer.create(connectionFactory, options);
+
+        for (JobStream stream : handlers.keySet()) {
+            ensureGroup(stream);
+            // manual ack: receive() (not receiveAutoAck) leaves the entry pending until we XACK it
+            container.receive(
+                    Consumer.from(CONSUMER_GROUP, consumerName),
+                    StreamOffset.create(stream.getKey(), ReadOffset.lastConsumed()),
+                    record -> dispatch(stream, record.getId(), record.getValue().get(FIELD_PAYLOAD), false));
+        }
+        container.start();
+        log.info("Job queue consumer {} started for streams {}", consumerName, handlers.keySet());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (container != null) {
+            container.stop();
+        }
+        for (JobStream stream : handlers.keySet()) {
+            try {
+                deleteConsumerIfIdle(stream);
+            } catch (Exception e) {
+                log.warn("Failed to delete consumer {} on {}", consumerName, stream.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Reclaim jobs whose worker died or failed, dead-letter the ones that keep failing, trim acked history
+     */
+    @Scheduled(fixedDelayString = "${queue.jobs.reclaim-interval-ms:15000}", initialDelay = 30000)
+    public void reclaimStaleJobs() {
+        for (JobStream stream : handlers.keySet()) {
+            try {
+                reclaim(stream);
+                pruneDeadConsumers(stream);
+                trimAcked(stream);
+            } catch (Exception e) {
+                log.error("Failed to reclaim stale jobs of {}", stream.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Reset the idle time of every job this node still works on, well within the visibility timeout
+     * - Only jobs still pending on this consumer are touched, a job another node reclaimed stays with that node
+     */
+    @Scheduled(fixedDelayString = "${queue.jobs.heartbeat-interval-ms:30000}", initialDelay = 30000)
+    public void heartbeat() {
+        for (Map.Entry<JobStream, Set<RecordId>> entry : inFlight.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            JobStream stream = entry.getKey();
+            List<RecordId> ids = List.copyOf(entry.getValue());
+            List<String> args = new ArrayList<>(ids.size() + 2);
+            args.add(CONSUMER_GROUP);
+            args.add(consumerName);
+            ids.forEach(id -> args.add(id.getValue()));
+            try {
+                List<?> owned = redisTemplate.execute(HEARTBEAT, List.of(stream.getKey()), args.toArray());
+                Set<String> ownedIds = new HashSet<>();
+                if (owned != null) {
+                    owned.forEach(id -> ownedIds.add(id.toString()));
+                }
+                for (RecordId id : ids) {
+                    if (!ownedIds.contains(id.getValue())) {
+                        // still running here, but its result will be acked by whichever node owns it now
+                        entry.getValue().remove(id);
+                        log.warn("Job {} on {} was reclaimed by another node, no longer heartbeating it",
+                                id, stream.getKey());
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Failed to heartbeat {} running jobs of {}", ids.size(), stream.getKey(), e);
+            }
+        }
+    }
+
+    private void reclaim(JobStream stream) {
+        Range<String> range = Range.unbounded();
+        while (true) {
+            PendingMessages pending = redisTemplate.opsForStream()
+                    .pending(stream.getKey(), CONSUMER_GROUP, range, PENDING_PAGE_SIZE);
+            if (!reclaimPage(stream, pending)) {
+                // the rest stays pending for the next round, or for a node with free slots
+                return;
+            }
+            if (pending.size() < PENDING_PAGE_SIZE) {
+                return;
+            }
+            String lastId = pending.get(pending.size() - 1).getIdAsString();
+            range = Range.rightUnbounded(Range.Bound.inclusive(nextId(lastId)));
+        }
+    }
+
+    // false when no job slot is free anymore
+    private boolean reclaimPage(JobStream stream, PendingMessages pending) {
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().compareTo(stream.getVisibilityTimeout()) < 0) {
+                continue;
+            }
+            if (message.getTotalDeliveryCount() >= maxDeliveries) {
+                deadLetter(stream, message);
+                continue;
+            }
+            if (!aiJobExecutor.hasFreeJobSlot()) {
+                return false;
+            }
+            // XCLAIM re-checks the idle time, so only one node wins a given job
+            List<MapRecord<String, Object, Object>> claimed = redisTemplate.opsForStream().claim(
+                    stream.getKey(), CONSUMER_GROUP, consumerName, stream.getVisibilityTimeout(), message.getId());
+            for (MapRecord<String, Object, Object> record : claimed) {
+                log.warn("Reclaimed job {} on {} after {} deliveries",
+                        record.getId(), stream.getKey(), message.getTotalDeliveryCount());
+                Object payload = record.getValue().get(FIELD_PAYLOAD);
+                if (!tryDispatch(stream, record.getId(), payload != null ? payload.toString() : null)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // smallest id after the given one, XPENDING ranges are inclusive
+    private static String nextId(String id) {
+        int dash = id.indexOf('-');
+        return id.substring(0, dash) + "-" + (Long.parseLong(id.substring(dash + 1)) + 1);
+    }
+
+    // consumers of dead nodes (a new one per boot) stay in the group until removed; one owning jobs is kept
+    private void pruneDeadConsumers(JobStream stream) {
+        long maxIdleMs = Duration.ofMinutes(consumerPruneIdleMinutes).toMillis();
+        redisTemplate.opsForStream().consumers(stream.getKey(), CONSUMER_GROUP).stream()
+                .filter(consumer -> !consumerName.equals(consumer.consumerName()))
+                .filter(consumer -> consumer.pendingCount() == 0 && consumer.idleTimeMs() > maxIdleMs)
+                .forEach(consumer -> {
+                    redisTemplate.opsForStream().deleteConsumer(
+                            stream.getKey(), Consumer.from(CONSUMER_GROUP, consumer.consumerName()));
+                    log.info("Deleted idle consumer {} on {}", consumer.consumerName(), stream.getKey());
+                });
+    }
+
+    // a consumer still owning pending jobs is kept, so they remain visible to XPENDING until reclaimed
+    private void deleteConsumerIfIdle(JobStream stream) {
+        Consumer consumer = Consumer.from(CONSUMER_GROUP, consumerName);
+        PendingMessages owned = redisTemplate.opsForStream()
+                .pending(stream.getKey(), consumer, Range.unbounded(), 1);
+        if (owned.isEmpty()) {
+            redisTemplate.opsForStream().deleteConsumer(stream.getKey(), consumer);
+            log.info("Deleted consumer {} on {}", consumerName, stream.getKey());
+        }
+    }
+
+    // XTRIM MINID: drop the acked entries before the oldest pending one (or all delivered ones when none is pending)
+    private void trimAcked(JobStream stream) {
+        PendingMessagesSummary summary = redisTemplate.opsForStream().pending(stream.getKey(), CONSUMER_GROUP);
+        String minId;
+        if (summary.getTotalPendingMessages() > 0) {
+            minId = summary.minMessageId();
+        } else {
+            minId = redisTemplate.opsForStream().groups(stream.getKey()).stream()
+                    .filter(group -> CONSUMER_GROUP.equals(group.groupName()))
+                    .map(StreamInfo.XInfoGroup::lastDeliveredId)
+                    .findFirst()
+                    .orElse(null);
+        }
+        if (minId == null || minId.equals("0-0")) {
+            return;
+        }
+        byte[] rawKey = stream.getKey().getBytes(StandardCharsets.UTF_8);
+        byte[] rawMinId = minId.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.execute("XTRIM", rawKey, "MINID".getBytes(StandardCharsets.UTF_8), rawMinId));
+    }
+
+    private void deadLetter(JobStream stream, PendingMessage message) {
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+                .range(stream.getKey(), Range.closed(message.getIdAsString(), message.getIdAsString()));
+        Object payload = records.isEmpty() ? null : records.get(0).getValue().get(FIELD_PAYLOAD);
+
+        redisTemplate.opsForStream().add(StreamRecords.string(Map.of(
+                FIELD_PAYLOAD, payload != null ? payload.toString() : "",
+                "sourceId", message.getIdAsString(),
+                "deliveries", String.valueOf(message.getTotalDeliveryCount()),
+                "deadAt", Instant.now().toString()
+        )).withStreamKey(stream.getDeadLetterKey()));
+        redisTemplate.opsForStream().acknowledge(stream.getKey(), CONSUMER_GROUP, message.getId());
+        log.error("Job {} on {} dead-lettered after {} deliveries",
+                message.getIdAsString(), stream.getKey(), message.getTotalDeliveryCount());
+        DeadLetterHandler deadLetterHandler = deadLetterHandlers.get(stream);
+        if (deadLetterHandler != null && payload != null) {
+            try {
+                deadLetterHandler.onDeadLetter(payload.toString());
+            } catch (Exception e) {
+                log.error("Dead-letter callback failed for job {}", message.getIdAsString(), e);
+            }
+        }
+    }
+
+    // runs on the poll thread: executeJob blocks while max-jobs are running, which is the back-pressure towards Redis
+    private void dispatch(JobStream stream, RecordId id, String payload, boolean redelivered) {
+        // tracked before waiting for a slot, so the heartbeat also covers jobs queued behind executeJob
+        inFlight(stream).add(id);
+        try {
+            aiJobExecutor.executeJob(job(stream, id, payload, redelivered));
+        } catch (RejectedExecutionException e) {
+            inFlight(stream).remove(id);
+            log.warn("Executor shut down, job {} on {} left pending for redelivery", id, stream.getKey());
+        }
+    }
+
+    // runs on the scheduler thread, never blocks: false when no job slot is free
+    private boolean tryDispatch(JobStream stream, RecordId id, String payload) {
+        inFlight(stream).add(id);
+        try {
+            if (aiJobExecutor.tryExecuteJob(job(stream, id, payload, true))) {
+                return true;
+            }
+            log.debug("No free job slot, reclaimed job {} on {} left pending", id, stream.getKey());
+        } catch (RejectedExecutionException e) {
+            log.warn("Executor shut down, job {} on {} left pending for redelivery", id, stream.getKey());
+        }
+        inFlight(stream).remove(id);
+        return false;
+    }
+
+    private Runnable job(JobStream stream, RecordId id, String payload, boolean redelivered) {
+        JobHandler handler = handlers.get(stream);
+        return () -> {
+            try {
+                handler.handle(payload, redelivered);
+                redisTemplate.opsForStream().acknowledge(stream.getKey(), CONSUMER_GROUP, id);
+            } catch (Exception e) {
+                log.warn("Job {} on {} failed, left pending for redelivery", id, stream.getKey(), e);
+            } finally {
+                inFlight(stream).remove(id);
+            }
+        };
+    }
+
+    private Set<RecordId> inFlight(JobStream stream) {
+        return inFlight.computeIfAbsent(stream, key -> ConcurrentHashMap.newKeySet());
+    }
+
+    private void ensureGroup(JobStream stream) {
+        byte[] rawKey = stream.getKey().getBytes(StandardCharsets.UTF_8);
+        try {
+            // MKSTREAM so the group exists before the first job is published
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(rawKey, CONSUMER_GROUP, ReadOffset.from("0"), true));
+            log.info("Created consumer group {} on {}", CONSUMER_GROUP, stream.getKey());
+        } catch (RedisSystemException e) {
+            String message = e.getMostSpecificCause().getMessage();
+            if (message == null || !message.contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+}
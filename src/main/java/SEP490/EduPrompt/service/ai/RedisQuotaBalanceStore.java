@@ -0,0 +1,274 @@
+package SEP490.EduPrompt.service.ai;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Shared quota balances as one Redis hash per user, changed by Lua scripts so check and decrement are one step
+ * - Fields: t/s/o remaining tokens, tests, optimizations; tl/sl/ol their limits; r period end in epoch ms
+ * - Every script refreshes the TTL, a user idle for longer is seeded again from user_quota
+ * - Holds live next to the balance (quota:holds:{user}, field hold id = "tokens,tests,optimizations", same TTL)
+ *   and in one deadline ZSET, so a hold of a crashed node is given back by whichever node sweeps after its
+ *   deadline; closing a hold removes it first, so settle, release and the sweep give it back at most once
+ */
+@Component
+public class RedisQuotaBalanceStore implements QuotaBalanceStore {
+
+    private static final String KEY_PREFIX = "quota:balance:";
+    private static final String HOLDS_PREFIX = "quota:holds:";
+    static final String HOLD_DEADLINES_KEY = "quota:hold_deadlines";
+
+    // all scripts reply {granted, rolledOver, t, s, o, tl, sl, ol, r, movedTokens, movedTests, movedOptimizations}
+    private static final RedisScript<List> SEED = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              redis.call('HSET', KEYS[1], 't', ARGV[1], 's', ARGV[2], 'o', ARGV[3],
+                'tl', ARGV[4], 'sl', ARGV[5], 'ol', ARGV[6], 'r', ARGV[7])
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[8])
+            local v = redis.call('HMGET', KEYS[1], 't', 's', 'o', 'tl', 'sl', 'ol', 'r')
+            return {0, 0, tonumber(v[1]), tonumber(v[2]), tonumber(v[3]), tonumber(v[4]), tonumber(v[5]),
+              tonumber(v[6]), tonumber(v[7]), 0, 0, 0}
+            """, List.class);
+
+    // KEYS: balance, holds, deadlines; a hold passes ARGV[7] hold id, ARGV[8] deadline ms, ARGV[9] deadline member
+    private static final RedisScript<List> TAKE = new DefaultRedisScript<>("""
+            local v = redis.call('HMGET', KEYS[1], 't', 's', 'o', 'tl', 'sl', 'ol', 'r')
+            if not v[1] then
+              return nil
+            end
+            local t, s, o, r = tonumber(v[1]), tonumber(v[2]), tonumber(v[3]), tonumber(v[7])
+            local rolled = 0
+            if r > 0 and tonumber(ARGV[4]) > r then
+              t, s, o, r = tonumber(v[4]), tonumber(v[5]), tonumber(v[6]), tonumber(ARGV[5])
+              rolled = 1
+            end
+            local nt, ns, no = tonumber(ARGV[1]), tonumber(ARGV[2]), tonumber(ARGV[3])
+            local granted = 0
+            if t >= nt and s >= ns and o >= no then
+              t, s, o = t - nt, s - ns, o - no
+              granted = 1
+            else
+              nt, ns, no = 0, 0, 0
+            end
+            if granted == 1 or rolled == 1 then
+              redis.call('HSET', KEYS[1], 't', t, 's', s, 'o', o, 'r', r)
+            end
+            if granted == 1 and ARGV[7] then
+              redis.call('HSET', KEYS[2], ARGV[7], nt .. ',' .. ns .. ',' .. no)
+              redis.call('ZADD', KEYS[3], ARGV[8], ARGV[9])
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[6])
+            redis.call('PEXPIRE', KEYS[2], ARGV[6])
+            return {granted, rolled, t, s, o, tonumber(v[4]), tonumber(v[5]), tonumber(v[6]), r, nt, ns, no}
+            """, List.class);
+
+    private static final RedisScript<List> GIVE = new DefaultRedisScript<>("""
+            local v = redis.call('HMGET', KEYS[1], 't', 's', 'o', 'tl', 'sl', 'ol', 'r')
+            if not v[1] then
+              return nil
+            end
+            local t, s, o = tonumber(v[1]), tonumber(v[2]), tonumber(v[3])
+            local gt = math.max(t, math.min(t + tonumber(ARGV[1]), tonumber(v[4]))) - t
+            local gs = math.max(s, math.min(s + tonumber(ARGV[2]), tonumber(v[5]))) - s
+            local go = math.max(o, math.min(o + tonumber(ARGV[3]), tonumber(v[6]))) - o
+            t, s, o = t + gt, s + gs, o + go
+            redis.call('HSET', KEYS[1], 't', t, 's', s, 'o', o)
+            redis.call('PEXPIRE', KEYS[1], ARGV[4])
+            redis.call('PEXPIRE', KEYS[2], ARGV[4])
+            return {0, 0, t, s, o, tonumber(v[4]), tonumber(v[5]), tonumber(v[6]), tonumber(v[7]), gt, gs, go}
+            """, List.class);
+
+    // KEYS: balance, holds, deadlines; ARGV: hold id, charged tokens, 1 to keep the actions, ttl, deadline member
+    // nil when the hold is already closed, {1} when it was closed but the balance itself has expired
+    private static final RedisScript<List> CLOSE_HOLD = new DefaultRedisScript<>("""
+            redis.call('ZREM', KEYS[3], ARGV[5])
+            local h = redis.call('HGET', KEYS[2], ARGV[1])
+            if not h then
+              return nil
+            end
+            redis.call('HDEL', KEYS[2], ARGV[1])
+            local v = redis.call('HMGET', KEYS[1], 't', 's', 'o', 'tl', 'sl', 'ol', 'r')
+            if not v[1] then
+              return {1}
+            end
+            local ht, hs, ho = string.match(h, '(%d+),(%d+),(%d+)')
+            ht, hs, ho = tonumber(ht), tonumber(hs), tonumber(ho)
+            local bt, bs, bo = ht - math.min(tonumber(ARGV[2]), ht), 0, 0
+            if ARGV[3] == '0' then
+              bs, bo = hs, ho
+            end
+            local t, s, o = tonumber(v[1]), tonumber(v[2]), tonumber(v[3])
+            local gt = math.max(t, math.min(t + bt, tonumber(v[4]))) - t
+            local gs = math.max(s, math.min(s + bs, tonumber(v[5]))) - s
+            local go = math.max(o, math.min(o + bo, tonumber(v[6]))) - o
+            t, s, o = t + gt, s + gs, o + go
+            redis.call('HSET', KEYS[1], 't', t, 's', s, 'o', o)
+            redis.call('PEXPIRE', KEYS[1], ARGV[4])
+            redis.call('PEXPIRE', KEYS[2], ARGV[4])
+            return {1, 0, t, s, o, tonumber(v[4]), tonumber(v[5]), tonumber(v[6]), tonumber(v[7]), gt, gs, go}
+            """, List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final long ttlMs;
+
+    public RedisQuotaBalanceStore(RedisTemplate<String, String> redisTemplate,
+                                  @Value("${quota.ledger.shared-balance-ttl-minutes:60}") long ttlMinutes) {
+        this.redisTemplate = redisTemplate;
+        this.ttlMs = ttlMinutes * 60_000;
+    }
+
+    @Override
+    public Balance seed(UUID userId, Balance balance) {
+        List<?> reply = redisTemplate.execute(SEED, List.of(key(userId)),
+                String.valueOf(balance.tokens()),
+                String.valueOf(balance.tests()),
+                String.valueOf(balance.optimizations()),
+                String.valueOf(balance.tokenLimit()),
+                String.valueOf(balance.testLimit()),
+                String.valueOf(balance.optimizationLimit()),
+                String.valueOf(balance.resetDate() != null ? balance.resetDate().toEpochMilli() : 0),
+                String.valueOf(ttlMs));
+        return toResult(reply).balance();
+    }
+
+    @Override
+    public Result take(UUID userId, int tokens, int tests, int optimizations, Instant now, Instant nextResetDate) {
+        return toResult(redisTemplate.execute(TAKE, keys(userId),
+                String.valueOf(tokens),
+                String.valueOf(tests),
+                String.valueOf(optimizations),
+                String.valueOf(now.toEpochMilli()),
+                String.valueOf(nextResetDate.toEpochMilli()),
+                String.valueOf(ttlMs)));
+    }
+
+    @Override
+    public Result hold(UUID userId, UUID holdId, int tokens, int tests, int optimizations, Instant now,
+                       Instant nextResetDate, Instant expiresAt) {
+        return toResult(redisTemplate.execute(TAKE, keys(userId),
+                String.valueOf(tokens),
+                String.valueOf(tests),
+                String.valueOf(optimizations),
+                String.valueOf(now.toEpochMilli()),
+                String.valueOf(nextResetDate.toEpochMilli()),
+                String.valueOf(ttlMs),
+                holdId.toString(),
+                String.valueOf(expiresAt.toEpochMilli()),
+                deadlineMember(userId, holdId)));
+    }
+
+    @Override
+    public Result settleHold(UUID userId, UUID holdId, int chargedTokens) {
+        return closeHold(userId, holdId, chargedTokens, true);
+    }
+
+    @Override
+    public Result releaseHold(UUID userId, UUID holdId) {
+        return closeHold(userId, holdId, 0, false);
+    }
+
+    @Override
+    public int releaseExpiredHolds(Instant now, int limit) {
+        Set<String> due = redisTemplate.opsForZSet()
+                .rangeByScore(HOLD_DEADLINES_KEY, 0, now.toEpochMilli(), 0, limit);
+        if (due == null) {
+            return 0;
+        }
+        int released = 0;
+        for (String member : due) {
+            int separator = member.indexOf('|');
+            if (closeHold(UUID.fromString(member.substring(0, separator)),
+                    UUID.fromString(member.substring(separator + 1)), 0, false) != null) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public Result give(UUID userId, int tokens, int tests, int optimizations) {
+        return toResult(redisTemplate.execute(GIVE, keys(userId),
+                String.valueOf(tokens),
+                String.valueOf(tests),
+                String.valueOf(optimizations),
+                String.valueOf(ttlMs)));
+    }
+
+    @Override
+    public Optional<Balance> get(UUID userId) {
+        List<Object> values = redisTemplate.opsForHash()
+                .multiGet(key(userId), List.of("t", "s", "o", "tl", "sl", "ol", "r"));
+        if (values.getFirst() == null) {
+            return Optional.empty();
+        }
+        long[] fields = new long[values.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = Long.parseLong((String) values.get(i));
+        }
+        return Optional.of(toBalance(fields, 0));
+    }
+
+    @Override
+    public void remove(UUID userId) {
+        redisTemplate.delete(key(userId));
+    }
+
+    private Result closeHold(UUID userId, UUID holdId, int chargedTokens, boolean keepActions) {
+        return toResult(redisTemplate.execute(CLOSE_HOLD, keys(userId),
+                holdId.toString(),
+                String.valueOf(Math.max(0, chargedTokens)),
+                keepActions ? "1" : "0",
+                String.valueOf(ttlMs),
+                deadlineMember(userId, holdId)));
+    }
+
+    private static String key(UUID userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    private static List<String> keys(UUID userId) {
+        return List.of(key(userId), HOLDS_PREFIX + userId, HOLD_DEADLINES_KEY);
+    }
+
+    private static String deadlineMember(UUID userId, UUID holdId) {
+        return userId + "|" + holdId;
+    }
+
+    private static Result toResult(List<?> reply) {
+        if (reply == null || reply.isEmpty()) {
+            return null;
+        }
+        if (reply.size() == 1) {
+            // hold closed, nothing to give back into an expired balance
+            return new Result(true, false, null, 0, 0, 0);
+        }
+        long[] fields = new long[reply.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = ((Number) reply.get(i)).longValue();
+        }
+        return new Result(fields[0] == 1, fields[1] == 1, toBalance(fields, 2),
+                (int) fields[9], (int) fields[10], (int) fields[11]);
+    }
+
+    // t, s, o, tl, sl, ol, r starting at offset
+    private static Balance toBalance(long[] fields, int offset) {
+        long resetMillis = fields[offset + 6];
+        return new Balance(
+                (int) fields[offset],
+                (int) fields[offset + 1],
+                (int) fields[offset + 2],
+                (int) fields[offset + 3],
+                (int) fields[offset + 4],
+                (int) fields[offset + 5],
+                resetMillis > 0 ? Instant.ofEpochMilli(resetMillis) : null);
+    }
+}
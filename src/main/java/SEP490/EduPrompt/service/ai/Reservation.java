@@ -0,0 +1,90 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.enums.QuotaType;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Quota held for one AI call
+ * - commit(actual) charges what the model really used and gives the rest back in one step
+ * - release() gives everything back (call failed / cancelled)
+ * - Held quota is never written to the DB, unsettled reservations are released once they expire
+ */
+public class Reservation implements AutoCloseable {
+
+    private enum State {HELD, COMMITTED, RELEASED}
+
+    @Getter
+    private final UUID id = UUID.randomUUID();
+    @Getter
+    private final Instant expiresAt;
+
+    private final QuotaLedger.Charge charge;
+    private final boolean logUsage;
+    private final QuotaServiceImpl owner;
+    private final AtomicReference<State> state = new AtomicReference<>(State.HELD);
+
+    Reservation(QuotaServiceImpl owner, QuotaLedger.Charge charge, boolean logUsage, Instant expiresAt) {
+        this.owner = owner;
+        this.charge = charge;
+        this.logUsage = logUsage;
+        this.expiresAt = expiresAt;
+    }
+
+    public UUID getUserId() {
+        return charge.userId();
+    }
+
+    public QuotaType getQuotaType() {
+        return charge.quotaType();
+    }
+
+    public int getReservedTokens() {
+        return charge.tokens();
+    }
+
+    public boolean isOpen() {
+        return state.get() == State.HELD;
+    }
+
+    /**
+     * Charge the tokens actually used (capped at the reserved amount), no-op once committed
+     */
+    public void commit(int actualTokens) {
+        if (state.compareAndSet(State.HELD, State.COMMITTED)) {
+            owner.commitReservation(this, actualTokens);
+        } else if (state.compareAndSet(State.RELEASED, State.COMMITTED)) {
+            // expired before the call finished, the hold is gone so charge it as a plain spend
+            owner.commitExpiredReservation(this, actualTokens);
+        }
+    }
+
+    /**
+     * Give the whole reservation back, no-op once committed or released
+     */
+    public void release() {
+        if (state.compareAndSet(State.HELD, State.RELEASED)) {
+            owner.releaseReservation(this);
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    boolean isExpired(Instant now) {
+        return now.isAfter(expiresAt);
+    }
+
+    QuotaLedger.Charge charge() {
+        return charge;
+    }
+
+    boolean logUsage() {
+        return logUsage;
+    }
+}
@@ -0,0 +1,467 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.exception.auth.ResourceNotFoundException;
+import SEP490.EduPrompt.model.SchoolSubscription;
+import SEP490.EduPrompt.repo.SchoolSubscriptionRepository;
+import SEP490.EduPrompt.repo.SchoolTokenLeaseRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sharded school token pool
+ * - Each school pool is split into N in-memory shards, a teacher always hits the same shard
+ * - Shards lease tokens from school_subscriptions in chunks, so the row is touched once per chunk
+ * - An exhausted shard leases a new chunk, then steals from sibling shards when the school row is empty
+ * - Tokens held by this node are recorded in school_token_leases (crash recovery + aggregated read view)
+ * - Tokens held by open reservations stay in the lease row until settled, so a crash gives them back
+ * - Every loaded pool is a new generation, holds carry theirs so a settle after a release cannot credit twice
+ */
+@Service
+@Slf4j
+public class SchoolTokenPool {
+
+    private final SchoolSubscriptionRepository schoolSubscriptionRepository;
+    private final SchoolTokenLeaseRepository leaseRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final long NOT_TAKEN = -1;
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<UUID, Pool> pools = new ConcurrentHashMap<>();
+
+    @Value("${quota.school-pool.shards:8}")
+    private int shardCount = 8;
+
+    @Value("${quota.school-pool.lease-chunk:5000}")
+    private int leaseChunk = 5000;
+
+    @Value("${quota.school-pool.idle-release-minutes:30}")
+    private long idleReleaseMinutes = 30;
+
+    @Value("${quota.school-pool.lease-expiry-minutes:10}")
+    private long leaseExpiryMinutes = 10;
+
+    public SchoolTokenPool(SchoolSubscriptionRepository schoolSubscriptionRepository,
+                           SchoolTokenLeaseRepository leaseRepository,
+                           TransactionTemplate transactionTemplate) {
+        this.schoolSubscriptionRepository = schoolSubscriptionRepository;
+        this.leaseRepository = leaseRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Take tokens for a teacher, false when the whole school pool cannot cover them
+     */
+    public boolean take(UUID schoolSubscriptionId, UUID userId, int tokens) {
+        return takeFrom(schoolSubscriptionId, userId, tokens, false) != NOT_TAKEN;
+    }
+
+    /**
+     * Take tokens for an open reservation, they count as leased until settle
+     *
+     * @return the generation of the pool the hold was taken from, to be passed to settle; -1 when the whole
+     * school pool cannot cover the tokens
+     */
+    public long hold(UUID schoolSubscriptionId, UUID userId, int tokens) {
+        return takeFrom(schoolSubscriptionId, userId, tokens, true);
+    }
+
+    /**
+     * Close a hold: the charged part is spent, the rest goes back to the teacher's shard
+     * - A hold of an older generation went back to the school row when its pool was released, so nothing is
+     *   given back; only the charged part is still owed and is taken from the current pool
+     */
+    public void settle(UUID schoolSubscriptionId, UUID userId, long generation, int heldTokens, int chargedTokens) {
+        Pool pool = loadPool(schoolSubscriptionId);
+        pool.lock.lock();
+        try {
+            if (!pool.released && pool.generation == generation) {
+                pool.held.updateAndGet(current -> Math.max(0, current - heldTokens));
+                Shard shard = pool.shardFor(userId);
+                synchronized (shard) {
+                    shard.tokens += Math.max(0, heldTokens - chargedTokens);
+                }
+                pool.dirty = true;
+                return;
+            }
+        } finally {
+            pool.lock.unlock();
+        }
+
+        if (chargedTokens > 0 && !take(schoolSubscriptionId, userId, chargedTokens)) {
+            log.warn("School pool {} drained after its release, {} tokens of a stale hold not charged",
+                    schoolSubscriptionId, chargedTokens);
+        }
+    }
+
+    /**
+     * Give tokens back to the teacher's shard
+     */
+    public void give(UUID schoolSubscriptionId, UUID userId, int tokens) {
+        if (tokens <= 0) {
+            return;
+        }
+        Pool pool = loadPool(schoolSubscriptionId);
+        pool.lock.lock();
+        try {
+            if (!pool.released) {
+                Shard shard = pool.shardFor(userId);
+                synchronized (shard) {
+                    shard.tokens += tokens;
+                }
+                pool.dirty = true;
+                return;
+            }
+        } finally {
+            pool.lock.unlock();
+        }
+        give(schoolSubscriptionId, userId, tokens);
+    }
+
+    /**
+     * Tokens this node can still hand out plus the unleased part it last saw
+     */
+    public long available(UUID schoolSubscriptionId) {
+        Pool pool = loadPool(schoolSubscriptionId);
+        return pool.localTokens() + pool.unleasedRemaining;
+    }
+
+    /**
+     * Aggregated remaining per subscription: unleased row value + leases held by other nodes + local shards
+     */
+    public Map<UUID, Integer> aggregateRemaining(Collection<SchoolSubscription> subscriptions) {
+        Map<UUID, Integer> result = new HashMap<>();
+        if (subscriptions.isEmpty()) {
+            return result;
+        }
+
+        List<UUID> ids = subscriptions.stream().map(SchoolSubscription::getId).toList();
+        Map<UUID, Long> leasedElsewhere = new HashMap<>();
+        for (Object[] row : leaseRepository.sumLeasedTokensExcludingNode(ids, nodeId)) {
+            leasedElsewhere.put((UUID) row[0], ((Number) row[1]).longValue());
+        }
+
+        for (SchoolSubscription sub : subscriptions) {
+            Pool pool = pools.get(sub.getId());
+            long total = sub.getSchoolTokenRemaining()
+                    + leasedElsewhere.getOrDefault(sub.getId(), 0L)
+                    + (pool != null ? pool.localTokens() : 0L);
+            result.put(sub.getId(), (int) total);
+        }
+        return result;
+    }
+
+    public int aggregateRemaining(SchoolSubscription subscription) {
+        return aggregateRemaining(List.of(subscription)).get(subscription.getId());
+    }
+
+    /**
+     * Record what each dirty pool still holds
+     */
+    @Scheduled(fixedDelayString = "${quota.ledger.flush-interval-ms:2000}")
+    public void flush() {
+        for (Pool pool : pools.values()) {
+            if (pool.dirty) {
+                writeLease(pool);
+            }
+        }
+    }
+
+    /**
+     * Heartbeat own leases, release idle pools and reclaim leases of dead nodes
+     */
+    @Scheduled(fixedDelayString = "${quota.ledger.reconcile-interval-ms:60000}", initialDelay = 60000)
+    public void reconcile() {
+        long idleCutoff = System.currentTimeMillis() - idleReleaseMinutes * 60_000;
+        for (Pool pool : new ArrayList<>(pools.values())) {
+            if (!releaseIfIdle(pool, idleCutoff)) {
+                writeLease(pool);
+            }
+        }
+
+        try {
+            Instant cutoff = Instant.now().minus(leaseExpiryMinutes, ChronoUnit.MINUTES);
+            int reclaimed = leaseRepository.reclaimExpiredLeases(nodeId, cutoff);
+            if (reclaimed > 0) {
+                log.warn("Reclaimed expired school token leases for {} subscriptions", reclaimed);
+            }
+        } catch (Exception e) {
+            log.error("Failed to reclaim expired school token leases", e);
+        }
+
+        if (!pools.isEmpty()) {
+            for (SchoolSubscription sub : schoolSubscriptionRepository.findAllById(new ArrayList<>(pools.keySet()))) {
+                Pool pool = pools.get(sub.getId());
+                if (pool != null) {
+                    pool.unleasedRemaining = sub.getSchoolTokenRemaining();
+                }
+            }
+        }
+    }
+
+    /**
+     * Hand every leased token back so the pool is exact after shutdown
+     */
+    @PreDestroy
+    public void releaseAll() {
+        log.info("Releasing {} school token pools before shutdown", pools.size());
+        for (Pool pool : new ArrayList<>(pools.values())) {
+            release(pool);
+        }
+    }
+
+    private long takeFrom(UUID schoolSubscriptionId, UUID userId, int tokens, boolean hold) {
+        Pool pool = loadPool(schoolSubscriptionId);
+        pool.lastAccess = System.currentTimeMillis();
+        Shard shard = pool.shardFor(userId);
+
+        // fast path: only this teacher's shard is locked
+        if (takeFromShard(pool, shard, tokens, hold)) {
+            return pool.generation;
+        }
+
+        // slow path: refill the shard, serialized per school; a ReentrantLock so the lease query does not
+        // pin a virtual thread's carrier
+        pool.lock.lock();
+        try {
+            if (!pool.released) {
+                long missing;
+                synchronized (shard) {
+                    missing = tokens - shard.tokens;
+                }
+                if (missing > 0) {
+                    missing -= lease(pool, shard, Math.max(leaseChunk, missing));
+                }
+                if (missing > 0) {
+                    rebalance(pool, shard, missing);
+                }
+                return takeFromShard(pool, shard, tokens, hold) ? pool.generation : NOT_TAKEN;
+            }
+        } finally {
+            pool.lock.unlock();
+        }
+        return takeFrom(schoolSubscriptionId, userId, tokens, hold);
+    }
+
+    // the hold is counted in the same critical section as the take, so a release draining this shard sees it
+    private static boolean takeFromShard(Pool pool, Shard shard, int tokens, boolean hold) {
+        synchronized (shard) {
+            if (pool.released || shard.tokens < tokens) {
+                return false;
+            }
+            shard.tokens -= tokens;
+            if (hold) {
+                pool.held.addAndGet(tokens);
+            }
+            pool.dirty = true;
+            return true;
+        }
+    }
+
+    // caller holds the pool lock
+    private long lease(Pool pool, Shard shard, long wanted) {
+        try {
+            Integer granted = transactionTemplate.execute(status -> {
+                Integer amount = schoolSubscriptionRepository.leaseTokens(pool.id, (int) wanted);
+                if (amount != null && amount > 0) {
+                    leaseRepository.upsertLease(pool.id, nodeId, (int) (pool.leasedTokens() + amount));
+                }
+                return amount;
+            });
+            if (granted == null || granted <= 0) {
+                pool.unleasedRemaining = 0;
+                return 0;
+            }
+            // credit only after the lease is committed
+            synchronized (shard) {
+                shard.tokens += granted;
+            }
+            pool.unleasedRemaining = Math.max(0, pool.unleasedRemaining - granted);
+            log.debug("Leased {} school tokens for subscription {} on node {}", granted, pool.id, nodeId);
+            return granted;
+        } catch (Exception e) {
+            log.error("Failed to lease school tokens for subscription: {}", pool.id, e);
+            return 0;
+        }
+    }
+
+    // caller holds the pool lock; move tokens from the richest siblings into the exhausted shard
+    private long rebalance(Pool pool, Shard target, long missing) {
+        long moved = 0;
+        while (moved < missing) {
+            Shard richest = null;
+            long richestTokens = 0;
+            for (Shard candidate : pool.shards) {
+                if (candidate == target) {
+                    continue;
+                }
+                long candidateTokens;
+                synchronized (candidate) {
+                    candidateTokens = candidate.tokens;
+                }
+                if (candidateTokens > richestTokens) {
+                    richest = candidate;
+                    richestTokens = candidateTokens;
+                }
+            }
+            if (richest == null) {
+                break;
+            }
+
+            long stolen;
+            synchronized (richest) {
+                stolen = Math.min(richest.tokens, missing - moved);
+                richest.tokens -= stolen;
+            }
+            synchronized (target) {
+                target.tokens += stolen;
+            }
+            moved += stolen;
+        }
+        return moved;
+    }
+
+    private void writeLease(Pool pool) {
+        pool.lock.lock();
+        try {
+            pool.dirty = false;
+            try {
+                leaseRepository.upsertLease(pool.id, nodeId, (int) pool.leasedTokens());
+            } catch (Exception e) {
+                pool.dirty = true;
+                log.error("Failed to record school token lease for subscription: {}", pool.id, e);
+            }
+        } finally {
+            pool.lock.unlock();
+        }
+    }
+
+    // re-checked under the pool lock; a hold slipping in after the check is settled as a stale hold
+    private boolean releaseIfIdle(Pool pool, long idleCutoff) {
+        pool.lock.lock();
+        try {
+            if (pool.lastAccess >= idleCutoff || pool.held.get() != 0) {
+                return false;
+            }
+            release(pool);
+            return pool.released;
+        } finally {
+            pool.lock.unlock();
+        }
+    }
+
+    private void release(Pool pool) {
+        pool.lock.lock();
+        try {
+            // takes fail from here on and reload a new generation; holds already taken are in held once
+            // their shard is drained
+            pool.released = true;
+            long drained = pool.drain();
+            // unsettled holds go back with the rest, their settle only charges what was actually spent
+            long heldTokens = pool.held.getAndSet(0);
+            long tokens = drained + heldTokens;
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (tokens > 0) {
+                        schoolSubscriptionRepository.applyLedgerDelta(pool.id, (int) -tokens);
+                    }
+                    leaseRepository.deleteLease(pool.id, nodeId);
+                });
+                pools.remove(pool.id);
+                log.debug("Released {} leased tokens of subscription {}", tokens, pool.id);
+            } catch (Exception e) {
+                log.error("Failed to release school token lease for subscription: {}", pool.id, e);
+                synchronized (pool.shards[0]) {
+                    pool.shards[0].tokens += drained;
+                }
+                pool.held.addAndGet(heldTokens);
+                pool.dirty = true;
+                pool.released = false;
+            }
+        } finally {
+            pool.lock.unlock();
+        }
+    }
+
+    private Pool loadPool(UUID schoolSubscriptionId) {
+        Pool pool = pools.get(schoolSubscriptionId);
+        if (pool != null) {
+            return pool;
+        }
+        SchoolSubscription schoolSub = schoolSubscriptionRepository.findById(schoolSubscriptionId)
+                .orElseThrow(() -> new ResourceNotFoundException("School subscription not found"));
+        Pool loaded = new Pool(schoolSubscriptionId, shardCount, schoolSub.getSchoolTokenRemaining());
+        Pool existing = pools.putIfAbsent(schoolSubscriptionId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    // guarded by its own monitor
+    private static final class Shard {
+        long tokens;
+    }
+
+    private static final class Pool {
+        final UUID id;
+        final long generation = GENERATIONS.incrementAndGet();
+        // serializes refills and release, the shards keep their own monitors
+        final ReentrantLock lock = new ReentrantLock();
+        final Shard[] shards;
+        volatile long unleasedRemaining;
+        volatile boolean dirty;
+        // set once the pool is handed back and removed, holders must reload
+        volatile boolean released;
+        volatile long lastAccess = System.currentTimeMillis();
+        // taken by open reservations, still counted in the lease row
+        final AtomicLong held = new AtomicLong();
+
+        Pool(UUID id, int shardCount, long unleasedRemaining) {
+            this.id = id;
+            this.shards = new Shard[Math.max(1, shardCount)];
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new Shard();
+            }
+            this.unleasedRemaining = unleasedRemaining;
+        }
+
+        Shard shardFor(UUID userId) {
+            return shards[(userId.hashCode() & 0x7fffffff) % shards.length];
+        }
+
+        long localTokens() {
+            long total = 0;
+            for (Shard shard : shards) {
+                synchronized (shard) {
+                    total += shard.tokens;
+                }
+            }
+            return total;
+        }
+
+        long leasedTokens() {
+            return localTokens() + held.get();
+        }
+
+        long drain() {
+            long total = 0;
+            for (Shard shard : shards) {
+                synchronized (shard) {
+                    total += shard.tokens;
+                    shard.tokens = 0;
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.model.TeacherTokenUsageLog;
+import SEP490.EduPrompt.repo.TeacherTokenUsageDailyRepository;
+import SEP490.EduPrompt.repo.TeacherTokenUsageLogRepository;
+import SEP490.EduPrompt.repo.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Batched TeacherTokenUsageLog writer
+ * - Callers only enqueue, the INSERT never runs on the quota path
+ * - Bounded buffer, flushed as one JDBC batch when it reaches batch-size or every flush-interval-ms
+ * - A full buffer flushes on the caller thread instead of dropping entries
+ * - The per teacher/day rollup is bumped in the same transaction, so it always matches the log
+ * - Drained on shutdown
+ */
+@Component
+@Slf4j
+public class UsageLogWriter {
+
+    private final TeacherTokenUsageLogRepository usageLogRepository;
+    private final TeacherTokenUsageDailyRepository usageDailyRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor usageLogExecutor;
+
+    private final BlockingQueue<UsageEntry> buffer;
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Value("${quota.usage-log.batch-size:200}")
+    private int batchSize = 200;
+
+    public UsageLogWriter(TeacherTokenUsageLogRepository usageLogRepository,
+                          TeacherTokenUsageDailyRepository usageDailyRepository,
+                          UserRepository userRepository,
+                          TransactionTemplate transactionTemplate,
+                          @Qualifier("usageLogExecutor") Executor usageLogExecutor,
+                          @Value("${quota.usage-log.capacity:10000}") int capacity) {
+        this.usageLogRepository = usageLogRepository;
+        this.usageDailyRepository = usageDailyRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.usageLogExecutor = usageLogExecutor;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Queue one usage row, usedAt is taken now so batching does not shift the timestamp
+     */
+    public void record(UUID userId, UUID schoolSubscriptionId, UUID subscriptionTierId, int tokensUsed) {
+        UsageEntry entry = new UsageEntry(userId, schoolSubscriptionId, subscriptionTierId, tokensUsed, Instant.now());
+        if (!buffer.offer(entry)) {
+            // back-pressure: make room on this thread rather than lose usage rows
+            log.warn("Usage log buffer full, flushing on caller thread");
+            flush();
+            if (!buffer.offer(entry) && !saveBatch(List.of(entry))) {
+                log.error("Dropped usage log of user {}", userId);
+            }
+            return;
+        }
+        if (buffer.size() >= batchSize) {
+            usageLogExecutor.execute(this::flush);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${quota.usage-log.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<UsageEntry> batch = new ArrayList<>(batchSize);
+            while (buffer.drainTo(batch, batchSize) > 0) {
+                if (!saveBatch(batch)) {
+                    // keep what fits for the next flush, stop hammering a failing DB
+                    int lost = 0;
+                    for (UsageEntry entry : batch) {
+                        if (!buffer.offer(entry)) {
+                            lost++;
+                        }
+                    }
+                    if (lost > 0) {
+                        log.error("Dropped {} usage logs, buffer full while DB unavailable", lost);
+                    }
+                    return;
+                }
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void drainOnShutdown() {
+        log.info("Flushing {} buffered usage logs before shutdown", buffer.size());
+        flush();
+    }
+
+    int pending() {
+        return buffer.size();
+    }
+
+    private boolean saveBatch(List<UsageEntry> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<TeacherTokenUsageLog> logs = new ArrayList<>(batch.size());
+                for (UsageEntry entry : batch) {
+                    logs.add(TeacherTokenUsageLog.builder()
+                            .user(userRepository.getReferenceById(entry.userId()))
+                            .schoolSubscriptionId(entry.schoolSubscriptionId())
+                            .subscriptionTierId(entry.subscriptionTierId())
+                            .tokensUsed(entry.tokensUsed())
+                            .usedAt(entry.usedAt())
+                            .build());
+                }
+                usageLogRepository.saveAll(logs);
+                addToDailyRollup(batch);
+            });
+            log.debug("Wrote {} usage logs", batch.size());
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to write {} usage logs", batch.size(), e);
+            return false;
+        }
+    }
+
+    // one upsert per school teacher/day in the batch, individual usage has no school dashboard
+    private void addToDailyRollup(List<UsageEntry> batch) {
+        Map<DailyKey, long[]> totals = new HashMap<>();
+        for (UsageEntry entry : batch) {
+            if (entry.schoolSubscriptionId() == null) {
+                continue;
+            }
+            DailyKey key = new DailyKey(entry.schoolSubscriptionId(), entry.userId(),
+                    LocalDate.ofInstant(entry.usedAt(), ZoneOffset.UTC));
+            long[] total = totals.computeIfAbsent(key, k -> new long[2]);
+            total[0] += entry.tokensUsed();
+            total[1]++;
+        }
+        totals.forEach((key, total) -> usageDailyRepository.addUsage(
+                key.schoolSubscriptionId(), key.userId(), key.usageDate(), total[0], (int) total[1]));
+    }
+
+    private record DailyKey(UUID schoolSubscriptionId, UUID userId, LocalDate usageDate) {
+    }
+
+    private record UsageEntry(
+            UUID userId,
+            UUID schoolSubscriptionId,
+            UUID subscriptionTierId,
+            int tokensUsed,
+            Instant usedAt
+    ) {
+    }
+}
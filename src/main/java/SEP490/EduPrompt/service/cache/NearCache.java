@@ -0,0 +1,155 @@
+package SEP490.EduPrompt.service.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Two-tier cache for JSON results kept in Redis (prompt_score:, opt:)
+ * - Tier 1 is a size and TTL bounded in-JVM cache of already deserialized objects, a hit costs no network
+ *   hop and no ObjectMapper call
+ * - Tier 2 is Redis, shared by every node and still the source of truth
+ * - put / evict publish the key on a pub/sub channel and every other node drops its local copy;
+ *   the local TTL bounds staleness if a message is lost
+ * - Redis failures are logged and treated as a miss, callers fall back to computing the value
+ * - Cached objects are shared between callers and must not be mutated
+ */
+@Component
+@Slf4j
+public class NearCache {
+
+    public static final String INVALIDATION_CHANNEL = "cache:near:invalidate";
+    private static final char SEPARATOR = '|';
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, Object> local;
+
+    // messages carry the sender so a node does not evict what it has just written
+    private final String nodeId = UUID.randomUUID().toString();
+    private RedisMessageListenerContainer listenerContainer;
+
+    public NearCache(RedisTemplate<String, String> redisTemplate,
+                     RedisConnectionFactory connectionFactory,
+                     ObjectMapper objectMapper,
+                     MeterRegistry meterRegistry,
+                     @Value("${cache.near.max-size:10000}") long maxSize,
+                     @Value("${cache.near.ttl-minutes:10}") long ttlMinutes) {
+        this.redisTemplate = redisTemplate;
+        this.connectionFactory = connectionFactory;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        // cache.gets{result=hit|miss}, cache.evictions, cache.size ... tagged cache=near
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "near");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATION_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (listenerContainer != null) {
+            listenerContainer.stop();
+        }
+    }
+
+    /**
+     * @return the cached value from this JVM or Redis, null on a miss or when Redis is unreachable
+     */
+    public <T> T get(String key, Class<T> type) {
+        Object cached = local.getIfPresent(key);
+        if (type.isInstance(cached)) {
+            return type.cast(cached);
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(key);
+            if (json == null) {
+                meterRegistry.counter("cache.near.remote", "region", region(key), "result", "miss").increment();
+                return null;
+            }
+            T value = objectMapper.readValue(json, type);
+            local.put(key, value);
+            meterRegistry.counter("cache.near.remote", "region", region(key), "result", "hit").increment();
+            return value;
+        } catch (Exception e) {
+            log.warn("Cache read failed for {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Write through to Redis and keep the object locally, other nodes drop their stale copy
+     */
+    public void put(String key, Object value, Duration ttl) {
+        local.put(key, value);
+        try {
+            redisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(value), ttl);
+            publishInvalidation(key);
+        } catch (Exception e) {
+            log.warn("Cache write failed for {}", key, e);
+        }
+    }
+
+    public void evict(String key) {
+        local.invalidate(key);
+        try {
+            redisTemplate.delete(key);
+            publishInvalidation(key);
+        } catch (Exception e) {
+            log.warn("Cache evict failed for {}", key, e);
+        }
+    }
+
+    void onInvalidation(String message) {
+        int separator = message.indexOf(SEPARATOR);
+        if (separator < 0 || nodeId.equals(message.substring(0, separator))) {
+            return;
+        }
+        local.invalidate(message.substring(separator + 1));
+    }
+
+    long localSize() {
+        local.cleanUp();
+        return local.estimatedSize();
+    }
+
+    private void publishInvalidation(String key) {
+        redisTemplate.convertAndSend(INVALIDATION_CHANNEL, nodeId + SEPARATOR + key);
+    }
+
+    private static String region(String key) {
+        int prefixEnd = key.indexOf(':');
+        return prefixEnd > 0 ? key.substring(0, prefixEnd) : "none";
+    }
+}
@@ -0,0 +1,230 @@
+package SEP490.EduPrompt.service.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent computations of the same cache key, so a burst of identical requests costs one AI call
+ * - Local: the first caller of a key in this JVM computes, later callers wait on its future
+ * - Cluster: that caller first takes a Redis lease on the key; a node that loses the lease polls the
+ *   near cache until the lease holder has written the result
+ * - A lease outlives a dead holder by at most lease-ms, after which a waiting node takes over
+ * - A leader that was cancelled or interrupted hands no failure to its waiters, they elect a new leader
+ * - Redis being down degrades to local coalescing only
+ * - A value the caller marks as not cacheable (e.g. a degraded result) is handed to the current waiters but
+ *   never stored, so the next request computes it again
+ */
+@Component
+@Slf4j
+public class SingleFlight {
+
+    private static final String LEASE_PREFIX = "lease:";
+
+    private final NearCache nearCache;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${cache.single-flight.lease-ms:90000}")
+    private long leaseMs = 90000;
+
+    @Value("${cache.single-flight.poll-ms:250}")
+    private long pollMs = 250;
+
+    public SingleFlight(NearCache nearCache, RedisTemplate<String, String> redisTemplate, MeterRegistry meterRegistry) {
+        this.nearCache = nearCache;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param shared true when the value was computed by another caller (or found in the cache meanwhile),
+     *               i.e. this caller spent nothing on it
+     */
+    public record Flight<T>(T value, boolean shared) {
+    }
+
+    /**
+     * Cached value of the key, or the result of one compute shared by every concurrent caller of the key.
+     * The computed value is written to the near cache with the given TTL
+     */
+    public <T> Flight<T> load(String key, Class<T> type, Duration ttl, Supplier<T> compute) {
+        return load(key, type, ttl, compute, value -> true);
+    }
+
+    /**
+     * Same as load, but a computed value failing cacheable is returned without being written to the cache
+     */
+    public <T> Flight<T> load(String key, Class<T> type, Duration ttl, Supplier<T> compute,
+                              Predicate<? super T> cacheable) {
+        T cached = nearCache.get(key, type);
+        if (cached != null) {
+            return new Flight<>(cached, true);
+        }
+
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            return awaitLocalLeader(key, type, ttl, compute, cacheable, leader);
+        }
+        Flight<T> flight;
+        try {
+            flight = loadClusterWide(key, type, ttl, compute, cacheable);
+        } catch (RuntimeException | Error e) {
+            // out of the map first, so a waiter woken by the cancel elects a new leader
+            inFlight.remove(key, mine);
+            if (abandoned(e)) {
+                mine.cancel(false);
+            } else {
+                mine.completeExceptionally(e);
+            }
+            throw e;
+        }
+        inFlight.remove(key, mine);
+        mine.complete(flight.value());
+        return flight;
+    }
+
+    private <T> Flight<T> awaitLocalLeader(String key, Class<T> type, Duration ttl, Supplier<T> compute,
+                                           Predicate<? super T> cacheable, CompletableFuture<Object> leader) {
+        try {
+            T value = type.cast(leader.get(leaseMs, TimeUnit.MILLISECONDS));
+            record(key, "local_shared");
+            return new Flight<>(value, true);
+        } catch (CancellationException e) {
+            // the leader was cancelled, that says nothing about this caller's request
+            log.debug("Leader of {} was cancelled, electing a new one", key);
+            return load(key, type, ttl, compute, cacheable);
+        } catch (ExecutionException e) {
+            // same failure as the leader, the caller reacts like the leader's caller did
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Shared computation failed for " + key, e.getCause());
+        } catch (TimeoutException e) {
+            log.warn("Waited {} ms for in-flight {}, computing it again", leaseMs, key);
+            return computeAndCache(key, ttl, compute, cacheable, "fallback");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for " + key, e);
+        }
+    }
+
+    private <T> Flight<T> loadClusterWide(String key, Class<T> type, Duration ttl, Supplier<T> compute,
+                                          Predicate<? super T> cacheable) {
+        String leaseKey = LEASE_PREFIX + key;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMs);
+        while (true) {
+            Boolean acquired;
+            try {
+                acquired = redisTemplate.opsForValue().setIfAbsent(leaseKey, nodeId, Duration.ofMillis(leaseMs));
+            } catch (Exception e) {
+                log.warn("Lease for {} unavailable, coalescing on this node only", key, e);
+                return computeAndCache(key, ttl, compute, cacheable, "leader");
+            }
+            if (Boolean.TRUE.equals(acquired)) {
+                try {
+                    // a node may have finished between our cache miss and taking the lease
+                    T cached = nearCache.get(key, type);
+                    if (cached != null) {
+                        return new Flight<>(cached, true);
+                    }
+                    return computeAndCache(key, ttl, compute, cacheable, "leader");
+                } finally {
+                    releaseLease(leaseKey);
+                }
+            }
+
+            // another node is computing it: wait for its result, or for its lease to go away
+            while (System.nanoTime() < deadline) {
+                sleep(pollMs);
+                T value = nearCache.get(key, type);
+                if (value != null) {
+                    record(key, "cluster_shared");
+                    return new Flight<>(value, true);
+                }
+                Boolean leased;
+                try {
+                    leased = redisTemplate.hasKey(leaseKey);
+                } catch (Exception e) {
+                    log.warn("Lease for {} unavailable while waiting, computing it here", key, e);
+                    return computeAndCache(key, ttl, compute, cacheable, "fallback");
+                }
+                if (!Boolean.TRUE.equals(leased)) {
+                    break;
+                }
+            }
+            if (System.nanoTime() >= deadline) {
+                log.warn("Lease holder of {} took over {} ms, computing it here", key, leaseMs);
+                return computeAndCache(key, ttl, compute, cacheable, "fallback");
+            }
+            // lease released without a result (holder failed), try to become the leader
+        }
+    }
+
+    private <T> Flight<T> computeAndCache(String key, Duration ttl, Supplier<T> compute,
+                                          Predicate<? super T> cacheable, String outcome) {
+        T value = compute.get();
+        record(key, outcome);
+        if (value != null && cacheable.test(value)) {
+            nearCache.put(key, value, ttl);
+        } else if (value != null) {
+            record(key, "not_stored");
+        }
+        return new Flight<>(value, false);
+    }
+
+    private void releaseLease(String leaseKey) {
+        try {
+            // only our own lease, an expired one may already belong to another node
+            if (nodeId.equals(redisTemplate.opsForValue().get(leaseKey))) {
+                redisTemplate.delete(leaseKey);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to release lease {}, it expires on its own", leaseKey, e);
+        }
+    }
+
+    /**
+     * The leader stopped because its own caller gave up (stage cancelled, thread interrupted), not because
+     * the computation itself failed
+     */
+    private static boolean abandoned(Throwable error) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof InterruptedException || e instanceof CancellationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void record(String key, String outcome) {
+        int prefixEnd = key.indexOf(':');
+        meterRegistry.counter("cache.single_flight",
+                "region", prefixEnd > 0 ? key.substring(0, prefixEnd) : "none",
+                "outcome", outcome).increment();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a shared result", e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package SEP490.EduPrompt.service.prompt;
 
+import SEP490.EduPrompt.dto.response.curriculum.CurriculumContext;
 import SEP490.EduPrompt.dto.response.prompt.PromptScoreResult;
 
 import java.util.UUID;
@@ -7,6 +8,11 @@ import java.util.UUID;
 public interface PromptScoringService {
     PromptScoreResult scorePrompt(String promptText, UUID lessonId);
 
+    /**
+     * Same as scorePrompt, with the curriculum context the caller already detected for this text
+     */
+    PromptScoreResult scorePrompt(String promptText, UUID lessonId, CurriculumContext detectedContext);
+
     void savePromptScore(UUID promptId, UUID versionId, PromptScoreResult scoreResult);
 
     void savePromptScoreAsync(UUID promptId, UUID versionId, PromptScoreResult scoreResult);
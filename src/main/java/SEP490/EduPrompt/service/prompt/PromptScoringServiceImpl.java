@@ -1,5 +1,6 @@
 package SEP490.EduPrompt.service.prompt;
 
+import SEP490.EduPrompt.dto.response.curriculum.AiDimensionScores;
 import SEP490.EduPrompt.dto.response.curriculum.CurriculumContext;
 import SEP490.EduPrompt.dto.response.curriculum.CurriculumContextDetail;
 import SEP490.EduPrompt.dto.response.curriculum.DimensionScore;
@@ -13,12 +14,14 @@ import SEP490.EduPrompt.repo.PromptRepository;
 import SEP490.EduPrompt.repo.PromptScoreRepository;
 import SEP490.EduPrompt.repo.PromptVersionRepository;
 import SEP490.EduPrompt.service.ai.AiClientServiceImpl;
+import SEP490.EduPrompt.service.ai.AiJobExecutor;
 import SEP490.EduPrompt.service.ai.QuotaService;
+import SEP490.EduPrompt.service.cache.SingleFlight;
 import SEP490.EduPrompt.service.curriculum.CurriculumMatchingService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
@@ -28,15 +31,22 @@ import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.*;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class PromptScoringServiceImpl implements PromptScoringService {
 
+    // AiJobExecutor pool of the dimension fan-out, its permits are ai.executor.pools.scoring.limit
+    private static final String SCORING_POOL = "scoring";
+    // issue of a dimension that could not be scored (error, timeout, cancelled, provider rejection)
+    private static final String SCORE_FAILURE_ISSUE = "Failed to score this dimension: ";
+
     // Scoring weights
     private static final double INSTRUCTION_CLARITY_WEIGHT = 0.15;
     private static final double CONTEXT_COMPLETENESS_WEIGHT = 0.20;
@@ -50,57 +60,88 @@ public class PromptScoringServiceImpl implements PromptScoringService {
     private final PromptRepository promptRepository;
     private final PromptVersionRepository promptVersionRepository;
     private final QuotaService quotaService;
-    private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
+    private final RuleBasedPreScorer preScorer;
+    private final SingleFlight singleFlight;
+    private final AiJobExecutor aiJobExecutor;
+    private final MeterRegistry meterRegistry;
+
+    // one structured call for all AI dimension scores, per-dimension calls only for what it could not score
+    @Value("${scoring.combined:true}")
+    private boolean combinedScoring = true;
+
+    // each dimension call, interrupted when exceeded
+    @Value("${scoring.timeout.dimension-ms:30000}")
+    private long dimensionTimeoutMs = 30000;
+
+    // whole fan-out, unfinished dimensions are cancelled once it passes
+    @Value("${scoring.timeout.overall-ms:45000}")
+    private long overallTimeoutMs = 45000;
+
+    // part of the content hash, bump it when the scoring model or rubric changes so older scores are not reused
+    @Value("${scoring.version:1}")
+    private String scorerVersion = "1";
+
+    // stored scores older than this are scored again even if the content is unchanged
+    @Value("${scoring.reuse-max-age-days:30}")
+    private long reuseMaxAgeDays = 30;
 
     @Override
     public PromptScoreResult scorePrompt(String promptText, UUID lessonId) {
+        return scorePrompt(promptText, lessonId, null);
+    }
+
+    @Override
+    public PromptScoreResult scorePrompt(String promptText, UUID lessonId, CurriculumContext detectedContext) {
         log.info("Starting prompt scoring process");
 
-        String cacheKey = "prompt_score:" + hashString(promptText + (lessonId != null ? lessonId : ""));
-        try {
-            String cached = redisTemplate.opsForValue().get(cacheKey);
-            if (cached != null) {
-                log.info("Cache hit for prompt score");
-                return objectMapper.readValue(cached, PromptScoreResult.class);
-            }
-        } catch (Exception e) {
-            log.warn("Cache read failed", e);
+        String cacheKey = "prompt_score:" + contentHash(promptText, lessonId);
+        // cached results come from the near cache, concurrent identical requests share one scoring run
+        // a result with a failed dimension is returned but not cached, the next request scores it again
+        SingleFlight.Flight<PromptScoreResult> flight = singleFlight.load(cacheKey, PromptScoreResult.class,
+                Duration.ofHours(24), () -> computeScore(promptText, lessonId, detectedContext),
+                result -> !hasFailedDimension(result));
+        if (flight.shared()) {
+            log.info("Prompt score served from cache or a concurrent identical request");
         }
+        return flight.value();
+    }
 
-        CurriculumContext detectedContext = curriculumService.detectContext(promptText);
+    private PromptScoreResult computeScore(String promptText, UUID lessonId, CurriculumContext knownContext) {
+        CurriculumContext detectedContext = knownContext != null
+                ? knownContext
+                : curriculumService.detectContext(promptText);
 
         UUID finalLessonId = resolveLessonId(promptText, lessonId, detectedContext);
-
-        // batch request for 6 dimension
-        CompletableFuture<DimensionScore> instructionFuture = CompletableFuture
-                .supplyAsync(() -> scoreInstructionClarity(promptText))
-                .exceptionally(ex -> handleScoreFailure("Instruction Clarity", ex));
-        CompletableFuture<DimensionScore> contextFuture = CompletableFuture
-                .supplyAsync(() -> scoreContextCompleteness(promptText, detectedContext))
-                .exceptionally(ex -> handleScoreFailure("Context Completeness", ex));
-        CompletableFuture<DimensionScore> outputFuture = CompletableFuture
-                .supplyAsync(() -> scoreOutputSpecification(promptText))
-                .exceptionally(ex -> handleScoreFailure("Output Specification", ex));
-        CompletableFuture<DimensionScore> constraintFuture = CompletableFuture
-                .supplyAsync(() -> scoreConstraintStrength(promptText))
-                .exceptionally(ex -> handleScoreFailure("Constraint Strength", ex));
-        CompletableFuture<DimensionScore> alignmentFuture = CompletableFuture
-                .supplyAsync(() -> scoreCurriculumAlignment(promptText, finalLessonId))
-                .exceptionally(ex -> handleScoreFailure("Curriculum Alignment", ex));
-        CompletableFuture<DimensionScore> pedagogicalFuture = CompletableFuture
-                .supplyAsync(() -> scorePedagogicalQuality(promptText))
-                .exceptionally(ex -> handleScoreFailure("Pedagogical Quality", ex));
-
-        CompletableFuture.allOf(instructionFuture, contextFuture, outputFuture, constraintFuture, alignmentFuture,
-                pedagogicalFuture).join();
-
-        DimensionScore instructionClarity = instructionFuture.join();
-        DimensionScore contextCompleteness = contextFuture.join();
-        DimensionScore outputSpecification = outputFuture.join();
-        DimensionScore constraintStrength = constraintFuture.join();
-        DimensionScore curriculumAlignment = alignmentFuture.join();
-        DimensionScore pedagogicalQuality = pedagogicalFuture.join();
+        CurriculumContextDetail lessonDetail = loadLessonDetail(finalLessonId);
+
+        // clearly good / bad dimensions are scored locally, only borderline ones go to the AI
+        AiDimensionScores local = preScorer.preScore(promptText, detectedContext, lessonDetail);
+        AiDimensionScores known = combinedScoring && !local.isComplete(lessonDetail != null)
+                ? local.orElse(scoreAllDimensions(promptText, lessonDetail))
+                : local;
+
+        // batch request for 6 dimension, each one only calls the AI when neither source gave it a score
+        Map<String, CompletableFuture<DimensionScore>> futures = new LinkedHashMap<>();
+        futures.put("Instruction Clarity", scoreAsync(() ->
+                scoreInstructionClarity(promptText, known.instructionClarity())));
+        futures.put("Context Completeness", scoreAsync(() ->
+                scoreContextCompleteness(promptText, detectedContext, known.contextCompleteness())));
+        futures.put("Output Specification", scoreAsync(() ->
+                scoreOutputSpecification(promptText, known.outputSpecification())));
+        futures.put("Constraint Strength", scoreAsync(() ->
+                scoreConstraintStrength(promptText, known.constraintStrength())));
+        futures.put("Curriculum Alignment", scoreAsync(() ->
+                scoreCurriculumAlignment(promptText, finalLessonId, known.curriculumAlignment())));
+        futures.put("Pedagogical Quality", scoreAsync(() ->
+                scorePedagogicalQuality(promptText, known.pedagogicalQuality())));
+        Map<String, DimensionScore> scores = awaitDimensions(futures);
+
+        DimensionScore instructionClarity = scores.get("Instruction Clarity");
+        DimensionScore contextCompleteness = scores.get("Context Completeness");
+        DimensionScore outputSpecification = scores.get("Output Specification");
+        DimensionScore constraintStrength = scores.get("Constraint Strength");
+        DimensionScore curriculumAlignment = scores.get("Curriculum Alignment");
+        DimensionScore pedagogicalQuality = scores.get("Pedagogical Quality");
 
         double overallScore = calculateOverallScore(
                 instructionClarity, contextCompleteness, outputSpecification,
@@ -112,7 +153,7 @@ public class PromptScoringServiceImpl implements PromptScoringService {
 
         log.info("Scoring completed. Overall score: {}", overallScore);
 
-        PromptScoreResult result = PromptScoreResult.builder()
+        return PromptScoreResult.builder()
                 .overallScore(overallScore)
                 .instructionClarity(instructionClarity)
                 .contextCompleteness(contextCompleteness)
@@ -123,14 +164,78 @@ public class PromptScoringServiceImpl implements PromptScoringService {
                 .weaknesses(weaknesses)
                 .detectedContext(detectedContext)
                 .build();
+    }
 
+    private CompletableFuture<DimensionScore> scoreAsync(Callable<DimensionScore> scorer) {
+        return aiJobExecutor.callInPoolAsync(SCORING_POOL, Duration.ofMillis(dimensionTimeoutMs), scorer);
+    }
+
+    /**
+     * Wait for every dimension until the overall deadline; whatever is still running then is cancelled
+     * (interrupting its AI call) and counts as a failed dimension, like a dimension that timed out on its own
+     */
+    private Map<String, DimensionScore> awaitDimensions(Map<String, CompletableFuture<DimensionScore>> futures) {
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                    .get(overallTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Scoring passed its {} ms deadline, cancelling unfinished dimensions", overallTimeoutMs);
+        } catch (ExecutionException e) {
+            // failed dimensions are handled one by one below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<String, DimensionScore> scores = new LinkedHashMap<>();
+        futures.forEach((dimension, future) -> {
+            if (!future.isDone()) {
+                future.cancel(true);
+                meterRegistry.counter("scoring.dimension.cancelled", "dimension", metricTag(dimension)).increment();
+                scores.put(dimension, handleScoreFailure(dimension,
+                        new TimeoutException("scoring deadline of " + overallTimeoutMs + " ms exceeded")));
+                return;
+            }
+            try {
+                scores.put(dimension, future.join());
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                scores.put(dimension, handleScoreFailure(dimension, cause instanceof TimeoutException
+                        ? new TimeoutException("timed out after " + dimensionTimeoutMs + " ms")
+                        : cause));
+            }
+        });
+        return scores;
+    }
+
+    // "Output Specification" -> output_specification
+    private static String metricTag(String dimension) {
+        return dimension.toLowerCase(Locale.ROOT).replace(' ', '_');
+    }
+
+    /**
+     * One AI call for all dimensions; a failure only means every dimension falls back to its own call
+     */
+    private AiDimensionScores scoreAllDimensions(String promptText, CurriculumContextDetail lessonDetail) {
         try {
-            redisTemplate.opsForValue().set(cacheKey, objectMapper.writeValueAsString(result), Duration.ofHours(24));
+            String contextString = lessonDetail != null ? buildCurriculumContextString(lessonDetail) : null;
+            return geminiService.scoreAllDimensions(promptText, contextString);
         } catch (Exception e) {
-            log.warn("Cache write failed", e);
+            log.warn("Combined scoring unavailable, scoring dimensions one by one: {}", e.getMessage());
+            return AiDimensionScores.EMPTY;
         }
+    }
 
-        return result;
+    private CurriculumContextDetail loadLessonDetail(UUID lessonId) {
+        if (lessonId == null) {
+            return null;
+        }
+        try {
+            return curriculumService.getContextDetail(lessonId);
+        } catch (Exception e) {
+            // curriculum alignment then fails on its own, like before
+            log.warn("Could not load lesson {} for scoring: {}", lessonId, e.getMessage());
+            return null;
+        }
     }
 
     private UUID resolveLessonId(String promptText, UUID lessonId, CurriculumContext detectedContext) {
@@ -148,7 +253,7 @@ public class PromptScoringServiceImpl implements PromptScoringService {
         return lessonId;
     }
 
-    private DimensionScore scoreInstructionClarity(String promptText) {
+    private DimensionScore scoreInstructionClarity(String promptText, Double combinedAiScore) {
         log.debug("Scoring instruction clarity");
 
         double ruleBasedScore = 0.0;
@@ -190,7 +295,9 @@ public class PromptScoringServiceImpl implements PromptScoringService {
             issues.add("Contains ambiguous language: " + ambiguousCount + " instances");
         }
 
-        double aiScore = geminiService.scoreInstructionClarity(promptText);
+        double aiScore = combinedAiScore != null
+                ? combinedAiScore
+                : geminiService.scoreInstructionClarity(promptText);
         double totalScore = ruleBasedScore + aiScore;
 
         return DimensionScore.builder()
@@ -207,7 +314,8 @@ public class PromptScoringServiceImpl implements PromptScoringService {
                 .build();
     }
 
-    private DimensionScore scoreContextCompleteness(String promptText, CurriculumContext context) {
+    private DimensionScore scoreContextCompleteness(String promptText, CurriculumContext context,
+                                                    Double combinedAiScore) {
         log.debug("Scoring context completeness");
 
         double ruleBasedScore = 0.0;
@@ -258,7 +366,9 @@ public class PromptScoringServiceImpl implements PromptScoringService {
             ruleBasedScore += 10;
         }
 
-        double aiScore = geminiService.scoreContextCompleteness(promptText);
+        double aiScore = combinedAiScore != null
+                ? combinedAiScore
+                : geminiService.scoreContextCompleteness(promptText);
         double totalScore = ruleBasedScore + aiScore;
 
         return DimensionScore.builder()
@@ -274,7 +384,7 @@ public class PromptScoringServiceImpl implements PromptScoringService {
 
     }
 
-    private DimensionScore scoreOutputSpecification(String promptText) {
+    private DimensionScore scoreOutputSpecification(String promptText, Double combinedAiScore) {
         log.debug("Scoring output specification");
 
         double ruleBasedScore = 0.0;
@@ -303,7 +413,9 @@ public class PromptScoringServiceImpl implements PromptScoringService {
             issues.add("Expected length or detail level not specified");
         }
 
-        double aiScore = geminiService.scoreOutputSpecification(promptText);
+        double aiScore = combinedAiScore != null
+                ? combinedAiScore
+                : geminiService.scoreOutputSpecification(promptText);
         double totalScore = ruleBasedScore + aiScore;
 
         return DimensionScore.builder()
@@ -321,7 +433,7 @@ public class PromptScoringServiceImpl implements PromptScoringService {
 
     }
 
-    private DimensionScore scoreConstraintStrength(String promptText) {
+    private DimensionScore scoreConstraintStrength(String promptText, Double combinedAiScore) {
         log.debug("Scoring constraint strength");
 
         double ruleBasedScore = 0.0;
@@ -351,7 +463,9 @@ public class PromptScoringServiceImpl implements PromptScoringService {
             issues.add("No constraints or prohibitions defined");
         }
 
-        double aiScore = geminiService.scoreConstraintStrength(promptText);
+        double aiScore = combinedAiScore != null
+                ? combinedAiScore
+                : geminiService.scoreConstraintStrength(promptText);
         double totalScore = ruleBasedScore + aiScore;
 
         return DimensionScore.builder()
@@ -369,7 +483,7 @@ public class PromptScoringServiceImpl implements PromptScoringService {
 
     }
 
-    private DimensionScore scoreCurriculumAlignment(String promptText, UUID lessonId) {
+    private DimensionScore scoreCurriculumAlignment(String promptText, UUID lessonId, Double combinedAiScore) {
         log.debug("Scoring curriculum alignment");
 
         if (lessonId == null) {
@@ -385,9 +499,14 @@ public class PromptScoringServiceImpl implements PromptScoringService {
                     .build();
         }
 
-        CurriculumContextDetail curriculumContext = curriculumService.getContextDetail(lessonId);
-        String contextString = buildCurriculumContextString(curriculumContext);
-        double aiScore = geminiService.scoreCurriculumAlignment(promptText, contextString);
+        double aiScore;
+        if (combinedAiScore != null) {
+            aiScore = combinedAiScore;
+        } else {
+            CurriculumContextDetail curriculumContext = curriculumService.getContextDetail(lessonId);
+            String contextString = buildCurriculumContextString(curriculumContext);
+            aiScore = geminiService.scoreCurriculumAlignment(promptText, contextString);
+        }
 
         List<String> issues = new ArrayList<>();
         if (aiScore < 50) {
@@ -409,7 +528,7 @@ public class PromptScoringServiceImpl implements PromptScoringService {
 
     }
 
-    private DimensionScore scorePedagogicalQuality(String promptText) {
+    private DimensionScore scorePedagogicalQuality(String promptText, Double combinedAiScore) {
         log.debug("Scoring pedagogical quality");
 
         double ruleBasedScore = 0.0;
@@ -431,7 +550,9 @@ public class PromptScoringServiceImpl implements PromptScoringService {
             issues.add("No assessment component included");
         }
 
-        double aiScore = geminiService.scorePedagogicalQuality(promptText);
+        double aiScore = combinedAiScore != null
+                ? combinedAiScore
+                : geminiService.scorePedagogicalQuality(promptText);
         double totalScore = ruleBasedScore + aiScore;
 
         return DimensionScore.builder()
@@ -506,12 +627,26 @@ public class PromptScoringServiceImpl implements PromptScoringService {
     }
 
     @Override
-    @Async
+    @Async("aiTaskExecutor")
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void scoreAndSaveAsync(UUID promptId, UUID versionId, String promptText, UUID lessonId) {
         try {
+            String contentHash = contentHash(promptText, lessonId);
+            // unchanged instruction/context of the same prompt (e.g. a version that only flips metadata),
+            // scored recently by the current scorer: copy the stored score
+            Optional<PromptScore> previous = promptScoreRepository
+                    .findFirstByPromptIdAndContentHashAndCreatedAtAfterOrderByCreatedAtDesc(
+                            promptId, contentHash, Instant.now().minus(Duration.ofDays(reuseMaxAgeDays)));
+            if (previous.isPresent()) {
+                copyPromptScore(promptId, versionId, previous.get());
+                meterRegistry.counter("scoring.reused").increment();
+                log.info("Reused stored score for unchanged content of prompt: {}", promptId);
+                return;
+            }
             PromptScoreResult result = scorePrompt(promptText, lessonId);
-            doSavePromptScore(promptId, versionId, result);
+            // a degraded score is stored without the hash, so the next version with this content scores again
+            promptScoreRepository.save(buildPromptScore(promptId, versionId, result,
+                    hasFailedDimension(result) ? null : contentHash));
         } catch (Exception e) {
             log.error("Failed to score and save async for prompt: {}", promptId, e);
         }
@@ -535,20 +670,18 @@ public class PromptScoringServiceImpl implements PromptScoringService {
     }
 
     private void doSavePromptScore(UUID promptId, UUID versionId, PromptScoreResult scoreResult) {
+        promptScoreRepository.save(buildPromptScore(promptId, versionId, scoreResult, null));
+    }
+
+    private PromptScore buildPromptScore(UUID promptId, UUID versionId, PromptScoreResult scoreResult,
+                                         String contentHash) {
         Prompt prompt = promptRepository.findById(promptId)
                 .orElseThrow(() -> new ResourceNotFoundException("prompt not found with id: " + promptId));
-
-        PromptVersion version = null;
-        if (versionId != null) {
-            version = promptVersionRepository.findByPromptIdOrderByVersionNumberDesc(promptId).stream()
-                    .filter(v -> v.getId().equals(versionId))
-                    .findFirst()
-                    .orElse(null);
-        }
+        PromptVersion version = findVersion(promptId, versionId);
 
         Map<String, Object> weaknessesMap = new HashMap<>(scoreResult.weaknesses());
 
-        PromptScore score = PromptScore.builder()
+        return PromptScore.builder()
                 .prompt(prompt)
                 .promptId(promptId)
                 .version(version)
@@ -562,11 +695,49 @@ public class PromptScoringServiceImpl implements PromptScoringService {
                 .pedagogicalQualityScore(BigDecimal.valueOf(scoreResult.pedagogicalQuality().score()))
                 .detectedWeaknesses(weaknessesMap)
                 .detectedContext(convertContextToMap(scoreResult.detectedContext()))
+                .contentHash(contentHash)
+                .build();
+    }
+
+    private void copyPromptScore(UUID promptId, UUID versionId, PromptScore source) {
+        Prompt prompt = promptRepository.findById(promptId)
+                .orElseThrow(() -> new ResourceNotFoundException("prompt not found with id: " + promptId));
+
+        PromptScore score = PromptScore.builder()
+                .prompt(prompt)
+                .promptId(promptId)
+                .version(findVersion(promptId, versionId))
+                .versionId(versionId)
+                .overallScore(source.getOverallScore())
+                .instructionClarityScore(source.getInstructionClarityScore())
+                .contextCompletenessScore(source.getContextCompletenessScore())
+                .outputSpecificationScore(source.getOutputSpecificationScore())
+                .constraintStrengthScore(source.getConstraintStrengthScore())
+                .curriculumAlignmentScore(source.getCurriculumAlignmentScore())
+                .pedagogicalQualityScore(source.getPedagogicalQualityScore())
+                .detectedWeaknesses(source.getDetectedWeaknesses() != null
+                        ? new HashMap<>(source.getDetectedWeaknesses()) : null)
+                .detectedContext(source.getDetectedContext() != null
+                        ? new HashMap<>(source.getDetectedContext()) : null)
+                .contentHash(source.getContentHash())
                 .build();
 
         promptScoreRepository.save(score);
     }
 
+    private PromptVersion findVersion(UUID promptId, UUID versionId) {
+        if (versionId == null) {
+            return null;
+        }
+        return promptVersionRepository.findById(versionId)
+                .filter(v -> promptId.equals(v.getPromptId()))
+                .orElse(null);
+    }
+
+    private String contentHash(String promptText, UUID lessonId) {
+        return hashString(scorerVersion + "|" + promptText + (lessonId != null ? lessonId : ""));
+    }
+
     private Map<String, Object> convertContextToMap(CurriculumContext context) {
         Map<String, Object> map = new HashMap<>();
         if (context.getSubject() != null)
@@ -597,6 +768,19 @@ public class PromptScoringServiceImpl implements PromptScoringService {
         }
     }
 
+    /**
+     * A dimension errored, timed out, was cancelled or rejected by the provider, so its 0 is not a real score
+     * (a missing lesson is a real answer and does not count)
+     */
+    private static boolean hasFailedDimension(PromptScoreResult result) {
+        return Stream.of(result.instructionClarity(), result.contextCompleteness(), result.outputSpecification(),
+                        result.constraintStrength(), result.curriculumAlignment(), result.pedagogicalQuality())
+                .anyMatch(dimension -> dimension != null
+                        && Boolean.FALSE.equals(dimension.isSuccess())
+                        && dimension.issues() != null
+                        && dimension.issues().stream().anyMatch(issue -> issue.startsWith(SCORE_FAILURE_ISSUE)));
+    }
+
     private DimensionScore handleScoreFailure(String dimensionName, Throwable ex) {
         log.error("Failed to score dimension: {}", dimensionName, ex);
         return DimensionScore.builder()
@@ -605,7 +789,7 @@ public class PromptScoringServiceImpl implements PromptScoringService {
                 .maxScore(100.0)
                 .ruleBasedScore(0.0)
                 .aiAssistedScore(0.0)
-                .issues(List.of("Failed to score this dimension: " + ex.getMessage()))
+                .issues(List.of(SCORE_FAILURE_ISSUE + ex.getMessage()))
                 .suggestions(List.of("Try again later"))
                 .isSuccess(false)
                 .build();
@@ -0,0 +1,231 @@
+package SEP490.EduPrompt.service.prompt;
+
+import SEP490.EduPrompt.dto.response.curriculum.AiDimensionScores;
+import SEP490.EduPrompt.dto.response.curriculum.CurriculumContext;
+import SEP490.EduPrompt.dto.response.curriculum.CurriculumContextDetail;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Local estimate of the AI-assisted part of each scoring dimension
+ * - One lower-cased copy of the prompt, one pass for line structure, precompiled patterns for the rest
+ * - Each dimension gets a signal in [0, 1] (share of its checks that pass); confidence is how far the signal
+ *   is from 0.5, and only dimensions at or above confidence-threshold are answered locally
+ * - Borderline dimensions stay null and are escalated to Gemini
+ * - Prompts shorter than min-length are confidently bad on every dimension
+ */
+@Component
+@Slf4j
+public class RuleBasedPreScorer {
+
+    // same ranges as the AI scoring prompts
+    private static final double INSTRUCTION_CLARITY_AI_MAX = 40;
+    private static final double CONTEXT_COMPLETENESS_AI_MAX = 30;
+    private static final double OUTPUT_SPECIFICATION_AI_MAX = 50;
+    private static final double CONSTRAINT_STRENGTH_AI_MAX = 60;
+    private static final double CURRICULUM_ALIGNMENT_AI_MAX = 100;
+    private static final double PEDAGOGICAL_QUALITY_AI_MAX = 80;
+
+    private static final Pattern ROLE = Pattern.compile("bạn là|you are|act as|role:|vai trò:");
+    private static final Pattern TASK = Pattern.compile("tạo|thiết kế|viết|phát triển|create|design|write|develop|generate");
+    private static final Pattern VAGUE = Pattern.compile(
+            "giúp tôi|help me|làm cái gì đó|something|stuff|things|có thể|maybe|probably");
+    private static final Pattern TOPIC = Pattern.compile("bài|chương|topic|lesson");
+    private static final Pattern AUDIENCE = Pattern.compile("học sinh|students|lớp|class");
+    private static final Pattern DURATION = Pattern.compile("\\d+\\s*(phút|tiết|minutes|periods)");
+    private static final Pattern OBJECTIVE = Pattern.compile("mục tiêu|objectives|học sinh có thể|students will");
+    private static final Pattern FORMAT = Pattern.compile(
+            "format|định dạng|dạng bảng|bảng|table|json|markdown|cấu trúc|structure");
+    private static final Pattern SECTIONS = Pattern.compile("\\d+\\s*(phần|sections|parts|bước|steps|câu|questions)");
+    private static final Pattern LENGTH = Pattern.compile("\\d+\\s*(từ|words|slides|trang|pages)|chi tiết|detailed");
+    private static final Pattern PROHIBITION = Pattern.compile("không được|tránh|don't|avoid|do not");
+    private static final Pattern SCOPE = Pattern.compile("chỉ |only|trong phạm vi|within|giới hạn|limit");
+    private static final Pattern ACCURACY = Pattern.compile(
+            "sgk|sách giáo khoa|chính xác|accurate|nguồn|source|chương trình|curriculum");
+    private static final Pattern ACTIVITY = Pattern.compile("hoạt động|activity|bài tập|exercise|thực hành|practice");
+    private static final Pattern ASSESSMENT = Pattern.compile(
+            "đánh giá|assessment|kiểm tra|quiz|test|câu hỏi|questions");
+    private static final Pattern METHOD = Pattern.compile(
+            "nhóm|group|thảo luận|discussion|phân hóa|differentiat|bloom|vận dụng|apply|khám phá|discovery");
+
+    private final Counter[] localHits = new Counter[Dimension.values().length];
+    private final Counter[] escalations = new Counter[Dimension.values().length];
+
+    @Value("${scoring.prescore.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${scoring.prescore.confidence-threshold:0.75}")
+    private double confidenceThreshold = 0.75;
+
+    @Value("${scoring.prescore.min-length:40}")
+    private int minLength = 40;
+
+    public RuleBasedPreScorer(MeterRegistry meterRegistry) {
+        for (Dimension dimension : Dimension.values()) {
+            localHits[dimension.ordinal()] = Counter.builder("scoring.prescore")
+                    .tag("dimension", dimension.tag)
+                    .tag("outcome", "local")
+                    .description("Dimensions scored locally without an AI call")
+                    .register(meterRegistry);
+            escalations[dimension.ordinal()] = Counter.builder("scoring.prescore")
+                    .tag("dimension", dimension.tag)
+                    .tag("outcome", "escalated")
+                    .description("Borderline dimensions sent to the AI")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * @param lesson lesson the prompt is scored against, null when unknown (curriculum alignment stays null)
+     * @return confident AI-part estimates, null for every dimension that needs the AI
+     */
+    public AiDimensionScores preScore(String promptText, CurriculumContext detectedContext,
+                                      CurriculumContextDetail lesson) {
+        if (!enabled) {
+            return AiDimensionScores.EMPTY;
+        }
+        String text = promptText.toLowerCase(Locale.ROOT);
+        boolean tooShort = text.strip().length() < minLength;
+        int listItems = countListItems(text);
+
+        AiDimensionScores scores = AiDimensionScores.builder()
+                .instructionClarity(estimate(Dimension.INSTRUCTION_CLARITY, tooShort, INSTRUCTION_CLARITY_AI_MAX,
+                        ROLE.matcher(text).find(),
+                        TASK.matcher(text).find(),
+                        !VAGUE.matcher(text).find(),
+                        text.length() > 80))
+                .contextCompleteness(estimate(Dimension.CONTEXT_COMPLETENESS, tooShort, CONTEXT_COMPLETENESS_AI_MAX,
+                        detectedContext != null && detectedContext.getSubject() != null,
+                        detectedContext != null && detectedContext.getGradeLevel() != null,
+                        TOPIC.matcher(text).find(),
+                        AUDIENCE.matcher(text).find(),
+                        DURATION.matcher(text).find(),
+                        OBJECTIVE.matcher(text).find()))
+                .outputSpecification(estimate(Dimension.OUTPUT_SPECIFICATION, tooShort, OUTPUT_SPECIFICATION_AI_MAX,
+                        FORMAT.matcher(text).find(),
+                        listItems >= 3 || SECTIONS.matcher(text).find(),
+                        LENGTH.matcher(text).find()))
+                .constraintStrength(estimate(Dimension.CONSTRAINT_STRENGTH, tooShort, CONSTRAINT_STRENGTH_AI_MAX,
+                        PROHIBITION.matcher(text).find(),
+                        SCOPE.matcher(text).find(),
+                        ACCURACY.matcher(text).find()))
+                .curriculumAlignment(lesson == null ? null
+                        : estimateCurriculum(tooShort, text, detectedContext, lesson))
+                .pedagogicalQuality(estimate(Dimension.PEDAGOGICAL_QUALITY, tooShort, PEDAGOGICAL_QUALITY_AI_MAX,
+                        ACTIVITY.matcher(text).find(),
+                        ASSESSMENT.matcher(text).find(),
+                        OBJECTIVE.matcher(text).find(),
+                        METHOD.matcher(text).find()))
+                .build();
+        log.debug("Pre-scored prompt locally: {}", scores);
+        return scores;
+    }
+
+    /**
+     * Wrong subject or grade is a confident miss; the lesson name appearing in the prompt on top of a matching
+     * subject and grade is a confident hit
+     */
+    private Double estimateCurriculum(boolean tooShort, String text, CurriculumContext detectedContext,
+                                      CurriculumContextDetail lesson) {
+        boolean subjectKnown = detectedContext != null && detectedContext.getSubject() != null
+                && lesson.subjectName() != null;
+        boolean gradeKnown = detectedContext != null && detectedContext.getGradeLevel() != null
+                && lesson.gradeLevel() != null;
+        boolean subjectMatches = subjectKnown
+                && lesson.subjectName().toLowerCase(Locale.ROOT)
+                .contains(detectedContext.getSubject().toLowerCase(Locale.ROOT));
+        boolean gradeMatches = gradeKnown && detectedContext.getGradeLevel().equals(lesson.gradeLevel());
+        if ((subjectKnown && !subjectMatches) || (gradeKnown && !gradeMatches)) {
+            return estimate(Dimension.CURRICULUM_ALIGNMENT, true, CURRICULUM_ALIGNMENT_AI_MAX);
+        }
+        return estimate(Dimension.CURRICULUM_ALIGNMENT, tooShort, CURRICULUM_ALIGNMENT_AI_MAX,
+                subjectMatches,
+                gradeMatches,
+                mentionsLesson(text, lesson.lessonName(), detectedContext != null
+                        ? detectedContext.getDetectedKeywords()
+                        : null));
+    }
+
+    private static boolean mentionsLesson(String text, String lessonName, List<String> keywords) {
+        if (lessonName == null) {
+            return false;
+        }
+        String name = lessonName.toLowerCase(Locale.ROOT);
+        if (text.contains(name)) {
+            return true;
+        }
+        if (keywords == null) {
+            return false;
+        }
+        int hits = 0;
+        for (String keyword : keywords) {
+            if (name.contains(keyword) && ++hits >= 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return AI-part estimate, or null when the checks are too mixed to be confident
+     */
+    private Double estimate(Dimension dimension, boolean forceBad, double aiMax, boolean... checks) {
+        double signal = 0;
+        if (!forceBad) {
+            int passed = 0;
+            for (boolean check : checks) {
+                if (check) {
+                    passed++;
+                }
+            }
+            signal = (double) passed / checks.length;
+        }
+        double confidence = Math.abs(signal - 0.5) * 2;
+        if (confidence < confidenceThreshold) {
+            escalations[dimension.ordinal()].increment();
+            return null;
+        }
+        localHits[dimension.ordinal()].increment();
+        // keep local scores off the extremes, a rule pass never earns full or zero AI points
+        return aiMax * (0.1 + 0.8 * signal);
+    }
+
+    private static int countListItems(String text) {
+        int items = 0;
+        boolean lineStart = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                lineStart = true;
+            } else if (lineStart && !Character.isWhitespace(c)) {
+                if (c == '-' || c == '*' || c == '•' || Character.isDigit(c)) {
+                    items++;
+                }
+                lineStart = false;
+            }
+        }
+        return items;
+    }
+
+    private enum Dimension {
+        INSTRUCTION_CLARITY("instruction_clarity"),
+        CONTEXT_COMPLETENESS("context_completeness"),
+        OUTPUT_SPECIFICATION("output_specification"),
+        CONSTRAINT_STRENGTH("constraint_strength"),
+        CURRICULUM_ALIGNMENT("curriculum_alignment"),
+        PEDAGOGICAL_QUALITY("pedagogical_quality");
+
+        private final String tag;
+
+        Dimension(String tag) {
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package SEP490.EduPrompt.service.search;
+
+import SEP490.EduPrompt.dto.response.search.IndexingJobResponse;
+
+import java.util.UUID;
+
+public interface BulkIndexingService {
+
+    /**
+     * Start indexing every non-private prompt not yet uploaded, in the background
+     * Resumes from the checkpoint of a cancelled job or of one whose node stopped heart-beating,
+     * returns the job already running here or on another node
+     */
+    IndexingJobResponse start();
+
+    /**
+     * Progress of a bulk indexing job
+     */
+    IndexingJobResponse getJob(UUID jobId);
+
+    /**
+     * Progress of the most recent bulk indexing job
+     */
+    IndexingJobResponse getLatestJob();
+
+    /**
+     * Stop a running job after the uploads in flight, it can be resumed later with start
+     */
+    IndexingJobResponse cancel(UUID jobId);
+}
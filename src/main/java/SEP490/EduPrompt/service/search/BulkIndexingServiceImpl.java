@@ -0,0 +1,441 @@
+package SEP490.EduPrompt.service.search;
+
+import SEP490.EduPrompt.dto.response.search.IndexingJobResponse;
+import SEP490.EduPrompt.dto.response.search.IndexingResult;
+import SEP490.EduPrompt.enums.IndexStatus;
+import SEP490.EduPrompt.enums.IndexingJobStatus;
+import SEP490.EduPrompt.exception.auth.ResourceNotFoundException;
+import SEP490.EduPrompt.exception.generic.InvalidActionException;
+import SEP490.EduPrompt.model.IndexingJob;
+import SEP490.EduPrompt.repo.IndexingJobRepository;
+import SEP490.EduPrompt.repo.PromptRepository;
+import SEP490.EduPrompt.service.ai.AiJobExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk upload of pending non-private prompts to Gemini file search
+ * - Uploads run in parallel within the "indexing" pool of the AI executor, paced by a token bucket
+ *   sized to the Gemini upload quota instead of a fixed sleep between uploads
+ * - upload-timeout applies to each attempt; retry backoff and token waits happen outside the pool
+ * - Each prompt is indexed with its own short transactions (PromptIndexingService.indexPrompt),
+ *   no transaction or connection is held across uploads
+ * - Prompts are read in id order one page at a time; after each page the counters and the last id are saved
+ *   as a checkpoint, so a job stopped by a restart or a cancel resumes where it left off
+ * - The job loop runs on a thread of its own, not in an AI job slot, so hours of indexing do not take
+ *   capacity from prompt tests and optimizations
+ * - One job runs in the cluster (unique RUNNING row); its node heart-beats it and another node takes it over
+ *   only once the heartbeat is older than heartbeat-stale-seconds. The token bucket is per node, with a single
+ *   job the bulk uploads stay at uploads-per-minute cluster-wide
+ */
+@Slf4j
+@Service
+public class BulkIndexingServiceImpl implements BulkIndexingService {
+
+    // AiJobExecutor pool of the parallel uploaders, its permits are ai.executor.pools.indexing.limit
+    static final String POOL = "indexing";
+    private static final UUID FIRST_ID = new UUID(0, 0);
+    private static final int HEARTBEATS_PER_STALE_PERIOD = 5;
+
+    private final PromptRepository promptRepository;
+    private final IndexingJobRepository indexingJobRepository;
+    private final PromptIndexingService promptIndexingService;
+    private final AiJobExecutor aiJobExecutor;
+    private final MeterRegistry meterRegistry;
+    private final TokenBucket uploadRate;
+    private final int concurrency;
+    private final int pageSize;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final Duration uploadTimeout;
+    private final Duration heartbeatStale;
+    private final Duration heartbeatInterval;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ExecutorService workers =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("bulk-indexing-", 0).factory());
+
+    private RunningJob running;
+
+    public BulkIndexingServiceImpl(PromptRepository promptRepository,
+                                   IndexingJobRepository indexingJobRepository,
+                                   PromptIndexingService promptIndexingService,
+                                   AiJobExecutor aiJobExecutor,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${ai.executor.pools.indexing.limit:8}") int concurrency,
+                                   @Value("${search.bulk-indexing.uploads-per-minute:60}") int uploadsPerMinute,
+                                   @Value("${search.bulk-indexing.burst:10}") int burst,
+                                   @Value("${search.bulk-indexing.page-size:100}") int pageSize,
+                                   @Value("${search.bulk-indexing.max-attempts:3}") int maxAttempts,
+                                   @Value("${search.bulk-indexing.retry-backoff-ms:2000}") long retryBackoffMs,
+                                   @Value("${search.bulk-indexing.upload-timeout-seconds:60}") long uploadTimeoutSeconds,
+                                   @Value("${search.bulk-indexing.heartbeat-stale-seconds:300}") long heartbeatStaleSeconds) {
+        this.promptRepository = promptRepository;
+        this.indexingJobRepository = indexingJobRepository;
+        this.promptIndexingService = promptIndexingService;
+        this.aiJobExecutor = aiJobExecutor;
+        this.meterRegistry = meterRegistry;
+        this.uploadRate = new TokenBucket(uploadsPerMinute, burst);
+        this.concurrency = concurrency;
+        this.pageSize = pageSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        this.uploadTimeout = Duration.ofSeconds(uploadTimeoutSeconds);
+        this.heartbeatStale = Duration.ofSeconds(heartbeatStaleSeconds);
+        this.heartbeatInterval = heartbeatStale.dividedBy(HEARTBEATS_PER_STALE_PERIOD);
+    }
+
+    @Override
+    public synchronized IndexingJobResponse start() {
+        if (running != null) {
+            return running.toResponse();
+        }
+
+        Instant now = Instant.now();
+        IndexingJob latest = indexingJobRepository.findFirstByOrderByCreatedAtDesc().orElse(null);
+        IndexingJob job;
+        if (latest != null && (IndexingJobStatus.RUNNING.name().equals(latest.getStatus())
+                || IndexingJobStatus.CANCELLED.name().equals(latest.getStatus()))) {
+            if (indexingJobRepository.claim(latest.getId(), nodeId, now, now.minus(heartbeatStale)) == 0) {
+                // running on another node that is still heart-beating
+                return toResponse(latest);
+            }
+            job = indexingJobRepository.findById(latest.getId())
+                    .orElseThrow(() -> new ResourceNotFoundException("indexing job not found"));
+            log.info("Resuming bulk indexing job {} after prompt {}", job.getId(), job.getCheckpointPromptId());
+        } else {
+            try {
+                job = indexingJobRepository.save(IndexingJob.builder()
+                        .status(IndexingJobStatus.RUNNING.name())
+                        .total((int) promptRepository.countUploadPendingAfter(FIRST_ID))
+                        .succeeded(0)
+                        .failed(0)
+                        .skipped(0)
+                        .ownerNodeId(nodeId)
+                        .heartbeatAt(now)
+                        .build());
+            } catch (DataIntegrityViolationException e) {
+                // another node started one meanwhile
+                return indexingJobRepository.findFirstByStatusOrderByCreatedAtDesc(IndexingJobStatus.RUNNING.name())
+                        .map(BulkIndexingServiceImpl::toResponse)
+                        .orElseThrow(() -> e);
+            }
+            log.info("Starting bulk indexing job for {} prompts", job.getTotal());
+        }
+
+        RunningJob runningJob = new RunningJob(job);
+        running = runningJob;
+        try {
+            workers.execute(() -> run(runningJob));
+        } catch (RuntimeException e) {
+            running = null;
+            throw e;
+        }
+        return runningJob.toResponse();
+    }
+
+    @Override
+    public synchronized IndexingJobResponse getJob(UUID jobId) {
+        if (running != null && running.job.getId().equals(jobId)) {
+            return running.toResponse();
+        }
+        return indexingJobRepository.findById(jobId)
+                .map(BulkIndexingServiceImpl::toResponse)
+                .orElseThrow(() -> new ResourceNotFoundException("indexing job not found"));
+    }
+
+    @Override
+    public synchronized IndexingJobResponse getLatestJob() {
+        if (running != null) {
+            return running.toResponse();
+        }
+        return indexingJobRepository.findFirstByOrderByCreatedAtDesc()
+                .map(BulkIndexingServiceImpl::toResponse)
+                .orElseThrow(() -> new ResourceNotFoundException("no indexing job found"));
+    }
+
+    @Override
+    public synchronized IndexingJobResponse cancel(UUID jobId) {
+        if (running != null && running.job.getId().equals(jobId)) {
+            running.cancelled = true;
+            log.info("Cancelling bulk indexing job {}", jobId);
+            return running.toResponse();
+        }
+        IndexingJob job = indexingJobRepository.findById(jobId)
+                .orElseThrow(() -> new ResourceNotFoundException("indexing job not found"));
+        if (!IndexingJobStatus.RUNNING.name().equals(job.getStatus())) {
+            throw new InvalidActionException("Indexing job is not running");
+        }
+        // running on another node (it stops at its next heartbeat) or left behind by a stopped one
+        job.setStatus(IndexingJobStatus.CANCELLED.name());
+        job.setFinishedAt(Instant.now());
+        return toResponse(indexingJobRepository.save(job));
+    }
+
+    private void run(RunningJob job) {
+        UUID cursor = job.job.getCheckpointPromptId() != null ? job.job.getCheckpointPromptId() : FIRST_ID;
+        IndexingJobStatus outcome = IndexingJobStatus.COMPLETED;
+        String errorMessage = null;
+        try {
+            while (!job.cancelled) {
+                List<UUID> page = promptRepository.findUploadPendingIdsAfter(cursor, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                if (!indexPage(job, page)) {
+                    break;
+                }
+                cursor = page.getLast();
+                if (!checkpoint(job, cursor)) {
+                    break;
+                }
+            }
+            if (job.cancelled) {
+                outcome = IndexingJobStatus.CANCELLED;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = IndexingJobStatus.CANCELLED;
+        } catch (RuntimeException e) {
+            log.error("Bulk indexing job {} failed", job.job.getId(), e);
+            outcome = IndexingJobStatus.FAILED;
+            errorMessage = e.getMessage();
+        } finally {
+            finish(job, outcome, errorMessage);
+        }
+    }
+
+    /**
+     * Upload one page with at most concurrency uploads in flight
+     *
+     * @return false when the job was cancelled before the whole page was submitted (no checkpoint for it)
+     */
+    private boolean indexPage(RunningJob job, List<UUID> page) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        List<CompletableFuture<Void>> uploads = new ArrayList<>(page.size());
+        boolean submittedAll = true;
+        try {
+            for (UUID promptId : page) {
+                if (job.cancelled || !heartbeatIfDue(job)) {
+                    submittedAll = false;
+                    break;
+                }
+                inFlight.acquire();
+                try {
+                    uploadRate.acquire();
+                } catch (InterruptedException e) {
+                    inFlight.release();
+                    throw e;
+                }
+                uploads.add(CompletableFuture.supplyAsync(() -> indexWithRetry(promptId), workers)
+                        .handle((result, error) -> {
+                            inFlight.release();
+                            job.record(promptId, result, error);
+                            meterRegistry.counter("indexing.bulk.prompts", "outcome", outcome(result, error))
+                                    .increment();
+                            return null;
+                        }));
+            }
+        } finally {
+            // uploads already started finish and count, also when the job stops
+            CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)).join();
+        }
+        return submittedAll;
+    }
+
+    /**
+     * Retries of a failed upload back off exponentially with jitter and each takes a token of its own;
+     * backoff and token waits hold no pool permit and do not count toward the upload timeout
+     */
+    private IndexingResult indexWithRetry(UUID promptId) {
+        try {
+            IndexingResult result = attempt(promptId);
+            for (int attempt = 2; attempt <= maxAttempts
+                    && IndexStatus.FAILED.name().equalsIgnoreCase(result.status()); attempt++) {
+                log.warn("Indexing attempt {}/{} failed for prompt {}: {}",
+                        attempt - 1, maxAttempts, promptId, result.errorMessage());
+                long backoff = retryBackoffMs << (attempt - 2);
+                Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+                uploadRate.acquire();
+                result = attempt(promptId);
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    // one upload within the pool limit, a timed out attempt is retried like a failed one
+    private IndexingResult attempt(UUID promptId) {
+        try {
+            return aiJobExecutor.callInPool(POOL, uploadTimeout, () -> promptIndexingService.indexPrompt(promptId));
+        } catch (TimeoutException e) {
+            return IndexingResult.builder()
+                    .promptId(promptId)
+                    .status(IndexStatus.FAILED.name())
+                    .errorMessage("Upload timed out after " + uploadTimeout.toSeconds() + "s")
+                    .build();
+        }
+    }
+
+    /**
+     * @return false when another node cancelled or took over the job, this node then stops without saving
+     */
+    private boolean heartbeatIfDue(RunningJob job) {
+        Instant now = Instant.now();
+        if (Duration.between(job.heartbeatAt, now).compareTo(heartbeatInterval) < 0) {
+            return true;
+        }
+        if (indexingJobRepository.heartbeat(job.job.getId(), nodeId, now) == 0) {
+            lost(job);
+            return false;
+        }
+        job.heartbeatAt = now;
+        return true;
+    }
+
+    private void lost(RunningJob job) {
+        log.warn("Bulk indexing job {} was cancelled or taken over by another node, stopping here", job.job.getId());
+        job.cancelled = true;
+        job.lost = true;
+    }
+
+    private boolean checkpoint(RunningJob job, UUID cursor) {
+        Instant now = Instant.now();
+        synchronized (this) {
+            job.copyCountsToJob();
+            if (indexingJobRepository.checkpoint(job.job.getId(), nodeId, cursor, job.job.getSucceeded(),
+                    job.job.getFailed(), job.job.getSkipped(), now) == 0) {
+                lost(job);
+                return false;
+            }
+            job.job.setCheckpointPromptId(cursor);
+            job.job.setHeartbeatAt(now);
+            job.job.setUpdatedAt(now);
+            job.heartbeatAt = now;
+        }
+        log.info("Bulk indexing job {}: {}/{} processed", job.job.getId(), job.processed(), job.job.getTotal());
+        return true;
+    }
+
+    private void finish(RunningJob job, IndexingJobStatus outcome, String errorMessage) {
+        synchronized (this) {
+            Instant now = Instant.now();
+            job.copyCountsToJob();
+            try {
+                if (!job.lost && indexingJobRepository.finish(job.job.getId(), nodeId, outcome.name(),
+                        job.job.getSucceeded(), job.job.getFailed(), job.job.getSkipped(), errorMessage, now) == 0) {
+                    lost(job);
+                }
+            } catch (RuntimeException e) {
+                // the last checkpoint stays, the job is resumed from it by the next start
+                log.error("Failed to save bulk indexing job {}", job.job.getId(), e);
+            }
+            job.job.setStatus(outcome.name());
+            job.job.setErrorMessage(errorMessage);
+            job.job.setFinishedAt(now);
+            job.job.setUpdatedAt(now);
+            running = null;
+        }
+        log.info("Bulk indexing job {} {}: {} succeeded, {} failed, {} skipped", job.job.getId(), outcome,
+                job.succeeded.get(), job.failed.get(), job.skipped.get());
+    }
+
+    private static String outcome(IndexingResult result, Throwable error) {
+        return error == null && result != null ? result.status().toLowerCase() : "error";
+    }
+
+    private static IndexingJobResponse toResponse(IndexingJob job) {
+        return IndexingJobResponse.builder()
+                .jobId(job.getId())
+                .status(job.getStatus())
+                .total(job.getTotal())
+                .processed(job.getSucceeded() + job.getFailed() + job.getSkipped())
+                .succeeded(job.getSucceeded())
+                .failed(job.getFailed())
+                .skipped(job.getSkipped())
+                .createdAt(job.getCreatedAt())
+                .updatedAt(job.getUpdatedAt())
+                .finishedAt(job.getFinishedAt())
+                .errorMessage(job.getErrorMessage())
+                .build();
+    }
+
+    /**
+     * Live counters of the job running on this node, ahead of the last checkpoint
+     */
+    private static final class RunningJob {
+        private IndexingJob job;
+        private final AtomicInteger succeeded;
+        private final AtomicInteger failed;
+        private final AtomicInteger skipped;
+        private volatile boolean cancelled;
+        // cancelled or taken over elsewhere, the row is no longer this node's to write
+        private volatile boolean lost;
+        private volatile Instant heartbeatAt;
+
+        private RunningJob(IndexingJob job) {
+            this.job = job;
+            this.heartbeatAt = job.getHeartbeatAt() != null ? job.getHeartbeatAt() : Instant.now();
+            this.succeeded = new AtomicInteger(job.getSucceeded());
+            this.failed = new AtomicInteger(job.getFailed());
+            this.skipped = new AtomicInteger(job.getSkipped());
+        }
+
+        private void record(UUID promptId, IndexingResult result, Throwable error) {
+            if (error != null || result == null) {
+                log.error("Bulk indexing failed for prompt {}", promptId, error);
+                failed.incrementAndGet();
+            } else if (IndexStatus.INDEXED.name().equalsIgnoreCase(result.status())) {
+                succeeded.incrementAndGet();
+            } else if (IndexStatus.FAILED.name().equalsIgnoreCase(result.status())) {
+                failed.incrementAndGet();
+            } else {
+                skipped.incrementAndGet();
+            }
+        }
+
+        private int processed() {
+            return succeeded.get() + failed.get() + skipped.get();
+        }
+
+        private void copyCountsToJob() {
+            job.setSucceeded(succeeded.get());
+            job.setFailed(failed.get());
+            job.setSkipped(skipped.get());
+        }
+
+        private IndexingJobResponse toResponse() {
+            return IndexingJobResponse.builder()
+                    .jobId(job.getId())
+                    .status(cancelled ? IndexingJobStatus.CANCELLED.name() : IndexingJobStatus.RUNNING.name())
+                    .total(job.getTotal())
+                    .processed(processed())
+                    .succeeded(succeeded.get())
+                    .failed(failed.get())
+                    .skipped(skipped.get())
+                    .createdAt(job.getCreatedAt())
+                    .updatedAt(job.getUpdatedAt())
+                    .finishedAt(null)
+                    .errorMessage(null)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package SEP490.EduPrompt.service.search;
+
+/**
+ * Turns text into fixed-size vectors for the local prompt vector index
+ */
+public interface EmbeddingProvider {
+
+    /**
+     * Identifies the vector space, vectors stored under another model are not comparable and get re-embedded
+     */
+    String model();
+
+    int dimensions();
+
+    /**
+     * Embed an indexed prompt
+     */
+    float[] embedDocument(String text);
+
+    /**
+     * Embed a search query (some models embed queries and documents differently)
+     */
+    float[] embedQuery(String text);
+}
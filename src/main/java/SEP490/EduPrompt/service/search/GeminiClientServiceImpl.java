@@ -15,9 +15,11 @@ import com.google.genai.Client;
 import com.google.genai.Pager;
 import com.google.genai.errors.ClientException;
 import com.google.genai.types.*;
+import jakarta.persistence.criteria.Predicate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
@@ -288,53 +290,8 @@ public class GeminiClientServiceImpl implements GeminiClientService {
 
                 if (candidate.groundingMetadata().isPresent() &&
                         candidate.groundingMetadata().get().groundingChunks().isPresent()) {
-
-                    int rank = 0; // tracking rank
-
-                    for (com.google.genai.types.GroundingChunk chunk : candidate.groundingMetadata().get()
-                            .groundingChunks().get()) {
-
-                        if (chunk.retrievedContext().isPresent()) {
-                            String documentTitle = chunk.retrievedContext().get().title().orElse(null);
-                            String text = chunk.retrievedContext().get().text().orElse(null);
-
-                            if (text != null) {
-                                Optional<Prompt> promptOpt = Optional.empty();
-                                // extract embedded prompt id from response
-                                Matcher matcher = PROMPT_ID_PATTERN.matcher(text);
-                                if (matcher.find()) {
-                                    try {
-                                        UUID extractedId = UUID.fromString(matcher.group(1));
-                                        promptOpt = promptRepository.findById(extractedId);
-                                    } catch (IllegalArgumentException e) {
-                                        log.warn("Found invalid UUID in text content: {}", matcher.group(1));
-                                    }
-                                }
-
-                                // fallback to check document title
-                                if (promptOpt.isEmpty() && documentTitle != null) {
-                                    String documentNameWithTitle = fileSearchStoreId + "/documents/" + documentTitle;
-                                    promptOpt = promptRepository.findByGeminiFileIdStartingWith(documentNameWithTitle);
-                                }
-
-                                if (promptOpt.isPresent()) {
-                                    Prompt prompt = promptOpt.get();
-                                    // rank-based scoring, might need a better strategy for ranking
-                                    Double score = Math.max(0.1, 0.99 - (rank * 0.03));
-
-                                    chunks.add(GroundingChunk.builder()
-                                            .documentId(prompt.getGeminiFileId())
-                                            .text(text)
-                                            .confidenceScore(score)
-                                            .build());
-                                } else {
-                                    log.warn("Could not map Chunk to DB Prompt. Title: '{}'",
-                                            documentTitle);
-                                }
-                            }
-                            rank++;
-                        }
-                    }
+                    chunks = mapGroundingChunks(fileSearchStoreId,
+                            candidate.groundingMetadata().get().groundingChunks().get());
                 }
             }
 
@@ -351,6 +308,100 @@ public class GeminiClientServiceImpl implements GeminiClientService {
         }
     }
 
+    /**
+     * Map grounding chunks to prompts with at most two queries however many chunks there are: one IN query for the
+     * prompt ids embedded in the chunk text, one for the chunks only identified by their document title
+     */
+    List<GroundingChunk> mapGroundingChunks(String fileSearchStoreId,
+                                            List<com.google.genai.types.GroundingChunk> groundingChunks) {
+        // collect what every chunk points at before touching the database
+        List<ChunkReference> references = new ArrayList<>();
+        int rank = 0; // tracking rank
+        for (com.google.genai.types.GroundingChunk chunk : groundingChunks) {
+            if (chunk.retrievedContext().isPresent()) {
+                String documentTitle = chunk.retrievedContext().get().title().orElse(null);
+                String text = chunk.retrievedContext().get().text().orElse(null);
+                if (text != null) {
+                    references.add(new ChunkReference(rank, text, extractPromptId(text), documentTitle,
+                            documentTitle != null ? fileSearchStoreId + "/documents/" + documentTitle : null));
+                }
+            }
+            rank++;
+        }
+
+        Map<UUID, Prompt> promptsById = new HashMap<>();
+        Set<UUID> promptIds = new HashSet<>();
+        references.forEach(reference -> {
+            if (reference.promptId() != null) {
+                promptIds.add(reference.promptId());
+            }
+        });
+        if (!promptIds.isEmpty()) {
+            promptRepository.findAllById(promptIds).forEach(prompt -> promptsById.put(prompt.getId(), prompt));
+        }
+
+        // fallback to check document title
+        Set<String> documentPrefixes = new HashSet<>();
+        references.forEach(reference -> {
+            if (!promptsById.containsKey(reference.promptId()) && reference.documentPrefix() != null) {
+                documentPrefixes.add(reference.documentPrefix());
+            }
+        });
+        List<Prompt> promptsByDocument = documentPrefixes.isEmpty()
+                ? List.of()
+                : promptRepository.findAll(geminiFileIdStartingWithAny(documentPrefixes));
+
+        List<GroundingChunk> chunks = new ArrayList<>();
+        for (ChunkReference reference : references) {
+            Prompt prompt = promptsById.get(reference.promptId());
+            if (prompt == null && reference.documentPrefix() != null) {
+                prompt = promptsByDocument.stream()
+                        .filter(candidate -> candidate.getGeminiFileId().startsWith(reference.documentPrefix()))
+                        .findFirst()
+                        .orElse(null);
+            }
+
+            if (prompt != null) {
+                // rank-based scoring, might need a better strategy for ranking
+                Double score = Math.max(0.1, 0.99 - (reference.rank() * 0.03));
+
+                chunks.add(GroundingChunk.builder()
+                        .documentId(prompt.getGeminiFileId())
+                        .promptId(prompt.getId())
+                        .text(reference.text())
+                        .confidenceScore(score)
+                        .build());
+            } else {
+                log.warn("Could not map Chunk to DB Prompt. Title: '{}'", reference.documentTitle());
+            }
+        }
+        return chunks;
+    }
+
+    private UUID extractPromptId(String text) {
+        // extract embedded prompt id from response
+        Matcher matcher = PROMPT_ID_PATTERN.matcher(text);
+        if (matcher.find()) {
+            try {
+                return UUID.fromString(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                log.warn("Found invalid UUID in text content: {}", matcher.group(1));
+            }
+        }
+        return null;
+    }
+
+    // one statement: gemini_file_id LIKE 'a%' OR gemini_file_id LIKE 'b%' ...
+    private static Specification<Prompt> geminiFileIdStartingWithAny(Collection<String> prefixes) {
+        return (root, query, cb) -> cb.or(prefixes.stream()
+                .map(prefix -> cb.like(root.get("geminiFileId"),
+                        prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%", '\\'))
+                .toArray(Predicate[]::new));
+    }
+
+    private record ChunkReference(int rank, String text, UUID promptId, String documentTitle, String documentPrefix) {
+    }
+
     private String buildPromptContent(Prompt prompt) {
         StringBuilder content = new StringBuilder();
 
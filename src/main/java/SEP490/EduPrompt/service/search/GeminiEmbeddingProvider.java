@@ -0,0 +1,70 @@
+package SEP490.EduPrompt.service.search;
+
+import SEP490.EduPrompt.exception.client.GeminiApiException;
+import com.google.genai.Client;
+import com.google.genai.errors.ClientException;
+import com.google.genai.types.EmbedContentConfig;
+import com.google.genai.types.EmbedContentResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Slf4j
+@Component
+public class GeminiEmbeddingProvider implements EmbeddingProvider {
+
+    private final Client genAiClient;
+    private final String model;
+    private final int dimensions;
+
+    public GeminiEmbeddingProvider(Client genAiClient,
+                                   @Value("${search.embedding.model:gemini-embedding-001}") String model,
+                                   @Value("${search.embedding.dimensions:768}") int dimensions) {
+        this.genAiClient = genAiClient;
+        this.model = model;
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public String model() {
+        return model + "/" + dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public float[] embedDocument(String text) {
+        return embed(text, "RETRIEVAL_DOCUMENT");
+    }
+
+    @Override
+    public float[] embedQuery(String text) {
+        return embed(text, "RETRIEVAL_QUERY");
+    }
+
+    private float[] embed(String text, String taskType) {
+        try {
+            EmbedContentResponse response = genAiClient.models.embedContent(model, text, EmbedContentConfig.builder()
+                    .taskType(taskType)
+                    .outputDimensionality(dimensions)
+                    .build());
+            List<Float> values = response.embeddings()
+                    .filter(embeddings -> !embeddings.isEmpty())
+                    .flatMap(embeddings -> embeddings.getFirst().values())
+                    .orElseThrow(() -> new GeminiApiException("Gemini returned no embedding"));
+            float[] vector = new float[values.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = values.get(i);
+            }
+            return vector;
+        } catch (ClientException e) {
+            log.error("Error embedding text: {}", e.getMessage(), e);
+            throw new GeminiApiException("Failed to embed text: " + e.getMessage(), e);
+        }
+    }
+}
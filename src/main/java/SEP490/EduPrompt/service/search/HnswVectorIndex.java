@@ -0,0 +1,458 @@
+package SEP490.EduPrompt.service.search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory HNSW graph (hierarchical navigable small world) for approximate cosine top-k over embeddings
+ * - Vectors are normalized on insert and stored back to back in one float[], distance is 1 - dot product
+ * - Links are int arrays per node and layer (count in slot 0), candidates are longs packing distance bits and
+ *   node, so nothing is boxed on the search path
+ * - Writers take the write lock, searches share the read lock; indexing is rare next to searching
+ * - Removing or replacing a key tombstones its node: it still routes searches but is never returned,
+ *   compacted() rebuilds the graph without tombstones
+ */
+public final class HnswVectorIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_LEVEL = 16;
+
+    private final int dimensions;
+    // links per node on the upper layers, twice as many on layer 0
+    private final int m;
+    private final int efConstruction;
+    private final long seed;
+    private final double levelFactor;
+    private final Random random;
+    private final Map<UUID, Integer> nodes = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private float[] vectors;
+    // [node][layer] -> {count, neighbour...}
+    private int[][][] links;
+    private UUID[] keys;
+    private boolean[] deleted;
+    private int count;
+    private int tombstones;
+    private int entryPoint = -1;
+    private int topLayer = -1;
+
+    public HnswVectorIndex(int dimensions, int m, int efConstruction, long seed) {
+        if (dimensions <= 0 || m < 2 || efConstruction < m) {
+            throw new IllegalArgumentException("Invalid HNSW parameters: dimensions=" + dimensions + ", m=" + m
+                    + ", efConstruction=" + efConstruction);
+        }
+        this.dimensions = dimensions;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.seed = seed;
+        this.levelFactor = 1 / Math.log(m);
+        this.random = new Random(seed);
+        this.vectors = new float[INITIAL_CAPACITY * dimensions];
+        this.links = new int[INITIAL_CAPACITY][][];
+        this.keys = new UUID[INITIAL_CAPACITY];
+        this.deleted = new boolean[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param score cosine similarity to the query, -1 to 1
+     */
+    public record Hit(UUID key, float score) {
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Adds the vector under key, replacing the key's previous vector
+     */
+    public void upsert(UUID key, float[] vector) {
+        float[] query = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            Integer previous = nodes.get(key);
+            if (previous != null) {
+                deleted[previous] = true;
+                tombstones++;
+            }
+            int node = add(key, query);
+            nodes.put(key, node);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return whether the key was indexed
+     */
+    public boolean remove(UUID key) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodes.remove(key);
+            if (node == null) {
+                return false;
+            }
+            deleted[node] = true;
+            tombstones++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param ef candidate list width on layer 0, higher finds the true neighbours more often at some latency
+     * @return up to k live keys, most similar first
+     */
+    public List<Hit> search(float[] vector, int k, int ef) {
+        float[] query = normalize(vector);
+        lock.readLock().lock();
+        try {
+            if (nodes.isEmpty() || k <= 0) {
+                return List.of();
+            }
+            int entry = entryPoint;
+            for (int layer = topLayer; layer > 0; layer--) {
+                entry = closest(query, entry, layer);
+            }
+            // tombstones take places in the candidate list, widen it by their share
+            int width = (int) Math.min(count, (long) Math.max(ef, k) * count / nodes.size());
+            long[] found = searchLayer(query, entry, width, 0);
+            Hit[] hits = new Hit[Math.min(k, found.length)];
+            int size = 0;
+            for (int i = 0; i < found.length && size < hits.length; i++) {
+                int node = node(found[i]);
+                if (!deleted[node]) {
+                    hits[size++] = new Hit(keys[node], 1 - distance(found[i]));
+                }
+            }
+            return List.of(Arrays.copyOf(hits, size));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of live keys
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(UUID key) {
+        lock.readLock().lock();
+        try {
+            return nodes.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int tombstones() {
+        lock.readLock().lock();
+        try {
+            return tombstones;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a new index with the live keys only
+     */
+    public HnswVectorIndex compacted() {
+        HnswVectorIndex compacted = new HnswVectorIndex(dimensions, m, efConstruction, seed);
+        lock.readLock().lock();
+        try {
+            for (int node = 0; node < count; node++) {
+                if (!deleted[node]) {
+                    compacted.upsert(keys[node], Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return compacted;
+    }
+
+    private int add(UUID key, float[] query) {
+        ensureCapacity();
+        int node = count++;
+        System.arraycopy(query, 0, vectors, node * dimensions, dimensions);
+        keys[node] = key;
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        for (int layer = 0; layer <= level; layer++) {
+            links[node][layer] = new int[maxLinks(layer) + 1];
+        }
+        if (entryPoint < 0) {
+            entryPoint = node;
+            topLayer = level;
+            return node;
+        }
+        int entry = entryPoint;
+        for (int layer = topLayer; layer > level; layer--) {
+            entry = closest(query, entry, layer);
+        }
+        for (int layer = Math.min(level, topLayer); layer >= 0; layer--) {
+            long[] candidates = searchLayer(query, entry, efConstruction, layer);
+            for (int neighbour : selectNeighbours(candidates, m)) {
+                links[node][layer][++links[node][layer][0]] = neighbour;
+                link(neighbour, node, layer);
+            }
+            entry = node(candidates[0]);
+        }
+        if (level > topLayer) {
+            entryPoint = node;
+            topLayer = level;
+        }
+        return node;
+    }
+
+    // greedy walk to the node closest to the query on one layer
+    private int closest(float[] query, int entry, int layer) {
+        int best = entry;
+        float bestDistance = distance(query, best);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[best][layer];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float distance = distance(query, neighbours[i]);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    // best-first search of one layer, returns up to ef candidates nearest first
+    private long[] searchLayer(float[] query, int entry, int ef, int layer) {
+        BitSet visited = new BitSet(count);
+        LongHeap candidates = new LongHeap(false);
+        LongHeap results = new LongHeap(true);
+        long start = pack(distance(query, entry), entry);
+        candidates.push(start);
+        results.push(start);
+        visited.set(entry);
+        while (!candidates.isEmpty()) {
+            long candidate = candidates.pop();
+            if (candidate > results.peek()) {
+                break;
+            }
+            int[] neighbours = links[node(candidate)][layer];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                long packed = pack(distance(query, neighbour), neighbour);
+                if (results.size() < ef || packed < results.peek()) {
+                    candidates.push(packed);
+                    results.push(packed);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results.sorted();
+    }
+
+    // keeps a candidate only when it is closer to the base than to every neighbour already kept, so links spread
+    // in different directions instead of all pointing into one cluster
+    private int[] selectNeighbours(long[] candidates, int max) {
+        int[] selected = new int[max];
+        int size = 0;
+        for (int i = 0; i < candidates.length && size < max; i++) {
+            int node = node(candidates[i]);
+            float distance = distance(candidates[i]);
+            boolean keep = true;
+            for (int j = 0; j < size && keep; j++) {
+                keep = distance(node, selected[j]) >= distance;
+            }
+            if (keep) {
+                selected[size++] = node;
+            }
+        }
+        return Arrays.copyOf(selected, size);
+    }
+
+    private void link(int from, int to, int layer) {
+        int[] neighbours = links[from][layer];
+        int max = neighbours.length - 1;
+        if (neighbours[0] < max) {
+            neighbours[++neighbours[0]] = to;
+            return;
+        }
+        long[] candidates = new long[max + 1];
+        for (int i = 0; i < max; i++) {
+            candidates[i] = pack(distance(from, neighbours[i + 1]), neighbours[i + 1]);
+        }
+        candidates[max] = pack(distance(from, to), to);
+        Arrays.sort(candidates);
+        int[] kept = selectNeighbours(candidates, max);
+        neighbours[0] = kept.length;
+        System.arraycopy(kept, 0, neighbours, 1, kept.length);
+    }
+
+    private int maxLinks(int layer) {
+        return layer == 0 ? 2 * m : m;
+    }
+
+    private int randomLevel() {
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelFactor));
+    }
+
+    private void ensureCapacity() {
+        if (count < keys.length) {
+            return;
+        }
+        int capacity = keys.length * 2;
+        vectors = Arrays.copyOf(vectors, capacity * dimensions);
+        links = Arrays.copyOf(links, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+    }
+
+    private float distance(float[] query, int node) {
+        int offset = node * dimensions;
+        float dot = 0;
+        for (int i = 0; i < dimensions; i++) {
+            dot += query[i] * vectors[offset + i];
+        }
+        return Math.max(0f, 1 - dot);
+    }
+
+    private float distance(int a, int b) {
+        int offsetA = a * dimensions;
+        int offsetB = b * dimensions;
+        float dot = 0;
+        for (int i = 0; i < dimensions; i++) {
+            dot += vectors[offsetA + i] * vectors[offsetB + i];
+        }
+        return Math.max(0f, 1 - dot);
+    }
+
+    private float[] normalize(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected a " + dimensions + "-dimensional vector, got " + vector.length);
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            throw new IllegalArgumentException("Cannot index a zero vector");
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        float[] normalized = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    // distances are >= 0, whose float bits order like the floats, so packed longs order by distance then node
+    private static long pack(float distance, int node) {
+        return ((long) Float.floatToIntBits(distance) << 32) | node;
+    }
+
+    private static int node(long packed) {
+        return (int) packed;
+    }
+
+    private static float distance(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    /**
+     * Binary heap of primitive longs, smallest or largest on top
+     */
+    private static final class LongHeap {
+
+        private final boolean max;
+        private long[] heap = new long[64];
+        private int size;
+
+        private LongHeap(boolean max) {
+            this.max = max;
+        }
+
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!above(value, heap[parent])) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && above(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!above(heap[child], last)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            if (size > 0) {
+                heap[i] = last;
+            }
+            return top;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long[] sorted() {
+            long[] values = Arrays.copyOf(heap, size);
+            Arrays.sort(values);
+            return values;
+        }
+
+        private boolean above(long a, long b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package SEP490.EduPrompt.service.search;
+
+import SEP490.EduPrompt.model.Prompt;
+import SEP490.EduPrompt.repo.PromptRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Embeds the public prompts already indexed in Gemini file search that have no embedding yet, so the local
+ * vector index holds every prompt file search does before search switches over to it
+ * - Runs once per embedding model for the cluster: one node holds the lock and embeds, the others wait for the
+ *   done flag; embedded prompts reach the other nodes through the vector index sync channel
+ * - Prompts are read in id order one page at a time, prompts already in the index are skipped
+ * - A prompt failing to embed leaves the flag unset, the next round retries; until the flag is seen
+ *   PromptVectorIndex.isSearchable stays false and search keeps using Gemini file search
+ */
+@Slf4j
+@Component
+public class PromptEmbeddingBackfill {
+
+    static final String DONE_KEY_PREFIX = "search:vector:backfilled:";
+    static final String LOCK_KEY = "lock:search:vector:backfill";
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    private final PromptRepository promptRepository;
+    private final PromptVectorIndex promptVectorIndex;
+    private final EmbeddingProvider embeddingProvider;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int pageSize;
+    private final Duration lockTtl;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public PromptEmbeddingBackfill(PromptRepository promptRepository,
+                                   PromptVectorIndex promptVectorIndex,
+                                   EmbeddingProvider embeddingProvider,
+                                   RedisTemplate<String, String> redisTemplate,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${search.vector.backfill.page-size:100}") int pageSize,
+                                   @Value("${search.vector.backfill.lock-minutes:10}") long lockMinutes) {
+        this.promptRepository = promptRepository;
+        this.promptVectorIndex = promptVectorIndex;
+        this.embeddingProvider = embeddingProvider;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.pageSize = pageSize;
+        this.lockTtl = Duration.ofMinutes(lockMinutes);
+    }
+
+    /**
+     * No-op once this node's index is backfilled; otherwise adopts the cluster's done flag or runs the backfill
+     */
+    @Scheduled(fixedDelayString = "${search.vector.backfill.interval-ms:60000}", initialDelay = 15000)
+    public void backfillIfNeeded() {
+        if (promptVectorIndex.isBackfilled() || !promptVectorIndex.isLoaded()) {
+            return;
+        }
+        try {
+            String doneKey = DONE_KEY_PREFIX + embeddingProvider.model();
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(doneKey))) {
+                promptVectorIndex.markBackfilled();
+                log.info("Embedding backfill of {} already done, search answers from the vector index",
+                        embeddingProvider.model());
+                return;
+            }
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, nodeId, lockTtl);
+            if (!Boolean.TRUE.equals(locked)) {
+                // another node is backfilling, its prompts arrive through the sync channel
+                return;
+            }
+            try {
+                if (backfill()) {
+                    redisTemplate.opsForValue().set(doneKey, Instant.now().toString());
+                    promptVectorIndex.markBackfilled();
+                }
+            } finally {
+                redisTemplate.delete(LOCK_KEY);
+            }
+        } catch (Exception e) {
+            log.error("Embedding backfill failed, search stays on Gemini file search", e);
+        }
+    }
+
+    /**
+     * @return true when every indexed public prompt is in the vector index
+     */
+    boolean backfill() {
+        long start = System.currentTimeMillis();
+        int embedded = 0;
+        int failed = 0;
+        UUID afterId = FIRST_ID;
+        while (true) {
+            List<UUID> ids = promptRepository.findIndexedPublicIdsAfter(afterId, pageSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            for (Prompt prompt : promptRepository.findAllById(ids)) {
+                if (promptVectorIndex.contains(prompt.getId())) {
+                    continue;
+                }
+                try {
+                    promptVectorIndex.index(prompt);
+                    embedded++;
+                } catch (Exception e) {
+                    failed++;
+                    meterRegistry.counter("search.vector.backfill", "outcome", "failed").increment();
+                    log.warn("Failed to embed prompt {} during backfill: {}", prompt.getId(), e.getMessage());
+                }
+            }
+            afterId = ids.getLast();
+            // a long backfill keeps the lock for as long as it makes progress
+            redisTemplate.expire(LOCK_KEY, lockTtl);
+        }
+        meterRegistry.counter("search.vector.backfill", "outcome", "embedded").increment(embedded);
+        log.info("Embedding backfill embedded {} prompts ({} failed) in {}ms",
+                embedded, failed, System.currentTimeMillis() - start);
+        return failed == 0;
+    }
+}
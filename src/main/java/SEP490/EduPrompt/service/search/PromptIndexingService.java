@@ -2,14 +2,13 @@ package SEP490.EduPrompt.service.search;
 
 import SEP490.EduPrompt.dto.response.search.IndexingResult;
 
-import java.util.List;
 import java.util.UUID;
 
 public interface PromptIndexingService {
 
     /**
      * Index a single prompt to Gemini File Search
-     * Called when prompt is created or updated
+     * Called when prompt is created or updated, and per prompt by BulkIndexingService
      */
     IndexingResult indexPrompt(UUID promptId);
 
@@ -18,12 +17,6 @@ public interface PromptIndexingService {
      */
     IndexingResult reindexPrompt(UUID promptId);
 
-    /**
-     * Batch index all unindexed prompts
-     * Used for initial setup or bulk operations
-     */
-    List<IndexingResult> indexAllPendingPrompts();
-
     /**
      * Remove prompt from Gemini File Search
      * Called when prompt is deleted or made private
@@ -14,10 +14,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 @Slf4j
@@ -25,24 +24,26 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class PromptIndexingServiceImpl implements PromptIndexingService {
 
-    private static final int BATCH_DELAY_MS = 1000;
-    private static final int MAX_RETRIES = 3;
     private final PromptRepository promptRepository;
     private final GeminiClientService geminiClientService;
+    private final PromptVectorIndex promptVectorIndex;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${gemini.file-search-store}")
     private String fileSearchStoreName;
 
     @Override
-    @Transactional
     public IndexingResult indexPrompt(UUID promptId) {
         log.info("Starting indexing for prompt: {}", promptId);
 
-        Prompt prompt = promptRepository.findById(promptId)
-                .orElseThrow(() -> new ResourceNotFoundException("prompt not found"));
+        // read and written in short transactions of their own, no connection is held during the upload
+        Prompt prompt = transactionTemplate.execute(status -> promptRepository.findById(promptId)
+                .orElseThrow(() -> new ResourceNotFoundException("prompt not found")));
 
         // Validate prompt is indexable
         IndexingResult validationResult = validatePromptForIndexing(prompt);
+        // made private, deleted or emptied prompts leave the local index
+        updateVectorIndex(prompt, validationResult == null);
         if (validationResult != null) {
             return validationResult;
         }
@@ -52,11 +53,9 @@ public class PromptIndexingServiceImpl implements PromptIndexingService {
             FileUploadResponse uploadResponse = geminiClientService.uploadToFileSearchStore(fileSearchStoreName, prompt);
 
             // Update prompt with file ID
-            prompt.setGeminiFileId(uploadResponse.operationId()); //it should be document id, yet since the response from gemini is async, the document id within that time will be null, i've tested this
+            //it should be document id, yet since the response from gemini is async, the document id within that time will be null, i've tested this
             // check this id format to verify its status , using polling method to check
-            prompt.setLastIndexedAt(Instant.now());
-            prompt.setIndexingStatus(IndexStatus.PENDING.name());
-            promptRepository.save(prompt);
+            saveIndexingState(prompt, uploadResponse.operationId(), IndexStatus.PENDING, Instant.now());
 
             log.info("Successfully indexed prompt: {} with file ID: {}",
                     promptId, uploadResponse.documentId());
@@ -70,8 +69,7 @@ public class PromptIndexingServiceImpl implements PromptIndexingService {
         } catch (GeminiApiException e) {
             log.error("Gemini API error indexing prompt: {}", promptId, e);
 
-            prompt.setIndexingStatus(IndexStatus.FAILED.name());
-            promptRepository.save(prompt);
+            saveIndexingState(prompt, prompt.getGeminiFileId(), IndexStatus.FAILED, prompt.getLastIndexedAt());
 
             return IndexingResult.builder()
                     .promptId(promptId)
@@ -82,8 +80,7 @@ public class PromptIndexingServiceImpl implements PromptIndexingService {
         } catch (ClientException e) {
             log.error("Unexpected error indexing prompt: {}", promptId, e);
 
-            prompt.setIndexingStatus(IndexStatus.FAILED.name());
-            promptRepository.save(prompt);
+            saveIndexingState(prompt, prompt.getGeminiFileId(), IndexStatus.FAILED, prompt.getLastIndexedAt());
 
             return IndexingResult.builder()
                     .promptId(promptId)
@@ -119,67 +116,13 @@ public class PromptIndexingServiceImpl implements PromptIndexingService {
         return indexPrompt(promptId);
     }
 
-    @Override
-    @Transactional
-    public List<IndexingResult> indexAllPendingPrompts() {
-        log.info("Starting batch indexing of pending prompts");
-
-        List<Prompt> pendingPrompts = promptRepository.findByIndexingStatusAndIsDeleted(
-                IndexStatus.PENDING.name(),
-                false);
-
-        log.info("Found {} prompts to index", pendingPrompts.size());
-
-        List<IndexingResult> results = new ArrayList<>();
-        int successCount = 0;
-        int failedCount = 0;
-        int skippedCount = 0;
-
-        for (Prompt prompt : pendingPrompts) {
-            // Only index non-private prompts
-            if (!Visibility.PRIVATE.name().equalsIgnoreCase(prompt.getVisibility())) {
-                IndexingResult result = indexPromptWithRetry(prompt.getId());
-                results.add(result);
-
-                if (IndexStatus.INDEXED.name().equalsIgnoreCase(result.status())) {
-                    successCount++;
-                } else if (IndexStatus.FAILED.name().equalsIgnoreCase(result.status())) {
-                    failedCount++;
-                } else {
-                    skippedCount++;
-                }
-
-                // Add delay to avoid rate limiting
-                if (results.size() < pendingPrompts.size()) {
-                    try {
-                        Thread.sleep(BATCH_DELAY_MS);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        log.warn("Batch indexing interrupted");
-                        break;
-                    }
-                }
-            } else {
-                results.add(IndexingResult.builder()
-                        .promptId(prompt.getId())
-                        .status(IndexStatus.SKIPPED.name())
-                        .errorMessage("Private prompts are not indexed")
-                        .build());
-                skippedCount++;
-            }
-        }
-
-        log.info("Batch indexing complete. Total: {}, Success: {}, Failed: {}, Skipped: {}",
-                results.size(), successCount, failedCount, skippedCount);
-
-        return results;
-    }
-
     @Override
     @Transactional
     public void removeFromIndex(UUID promptId) {
         log.info("Removing prompt {} from index", promptId);
 
+        promptVectorIndex.remove(promptId);
+
         Prompt prompt = promptRepository.findById(promptId)
                 .orElseThrow(() -> new ResourceNotFoundException("prompt not found"));
 
@@ -239,41 +182,27 @@ public class PromptIndexingServiceImpl implements PromptIndexingService {
         return null;
     }
 
+    private void saveIndexingState(Prompt prompt, String geminiFileId, IndexStatus status, Instant lastIndexedAt) {
+        transactionTemplate.executeWithoutResult(tx -> promptRepository.updateIndexingState(
+                prompt.getId(), geminiFileId, status.name(), lastIndexedAt));
+        prompt.setGeminiFileId(geminiFileId);
+        prompt.setIndexingStatus(status.name());
+        prompt.setLastIndexedAt(lastIndexedAt);
+    }
+
     /**
-     * Index prompt with retry logic
+     * Keep the vector index, and with it the search result cache, in step with the prompt,
+     * a failure here does not block the file search upload
      */
-    private IndexingResult indexPromptWithRetry(UUID promptId) {
-        IndexingResult lastResult = null;
-
-        for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
-            try {
-                //should use transaction template here
-                lastResult = indexPrompt(promptId);
-
-                if (IndexStatus.INDEXED.name().equalsIgnoreCase(lastResult.status())) {
-                    return lastResult;
-                }
-
-                log.warn("Indexing attempt {}/{} failed for prompt {}",
-                        attempt, MAX_RETRIES, promptId);
-
-                if (attempt < MAX_RETRIES) {
-                    Thread.sleep(2000 * attempt);
-                }
-
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            } catch (Exception e) {
-                log.error("Error in retry attempt {}/{} for prompt {}: {}",
-                        attempt, MAX_RETRIES, promptId, e.getMessage());
+    private void updateVectorIndex(Prompt prompt, boolean indexable) {
+        try {
+            if (indexable && Visibility.PUBLIC.name().equalsIgnoreCase(prompt.getVisibility())) {
+                promptVectorIndex.index(prompt);
+            } else {
+                promptVectorIndex.remove(prompt.getId());
             }
+        } catch (RuntimeException e) {
+            log.error("Failed to update vector index for prompt: {}", prompt.getId(), e);
         }
-
-        return lastResult != null ? lastResult : IndexingResult.builder()
-                .promptId(promptId)
-                .status(IndexStatus.FAILED.name())
-                .errorMessage("Failed after " + MAX_RETRIES + " retries")
-                .build();
     }
 }
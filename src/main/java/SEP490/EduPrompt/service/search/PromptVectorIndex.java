@@ -0,0 +1,331 @@
+package SEP490.EduPrompt.service.search;
+
+import SEP490.EduPrompt.model.Prompt;
+import SEP490.EduPrompt.model.PromptEmbedding;
+import SEP490.EduPrompt.repo.PromptEmbeddingRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Local approximate nearest-neighbour index of public prompt embeddings
+ * - Populated by the indexing pipeline; embeddings are stored in prompt_embeddings and loaded at startup,
+ *   unchanged prompt text is never re-embedded
+ * - Prompts indexed in file search before the local index existed are embedded by PromptEmbeddingBackfill;
+ *   search only answers from here once that backfill has finished, until then it stays on Gemini file search
+ * - Answers top-k from memory, a search costs one query embedding instead of a Gemini generation
+ * - Rebuilt without tombstones once removed or replaced entries outnumber half the live ones
+ * - Every node holds its own copy: index / remove publish the prompt id on a pub/sub channel once committed
+ *   and the other nodes apply the change from prompt_embeddings; a node that misses a message catches up on
+ *   the prompt's next change or its next start
+ * - Each change starts a new search result cache generation; the message carries it and a node moves to it
+ *   only after applying the change, so no node caches results of the new generation from the old index
+ */
+@Slf4j
+@Component
+public class PromptVectorIndex {
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private static final long GRAPH_SEED = 42;
+    public static final String SYNC_CHANNEL = "search:vector:sync";
+    private static final char SEPARATOR = '|';
+    private static final String INDEXED = "index";
+    private static final String REMOVED = "remove";
+
+    private final EmbeddingProvider embeddingProvider;
+    private final PromptEmbeddingRepository promptEmbeddingRepository;
+    private final MeterRegistry meterRegistry;
+    private final SearchResultCache searchResultCache;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private volatile HnswVectorIndex index;
+    private volatile boolean loaded;
+    private volatile boolean backfilled;
+
+    // messages carry the sender so a node does not apply its own change twice
+    private final String nodeId = UUID.randomUUID().toString();
+    private RedisMessageListenerContainer listenerContainer;
+
+    public PromptVectorIndex(EmbeddingProvider embeddingProvider,
+                             PromptEmbeddingRepository promptEmbeddingRepository,
+                             MeterRegistry meterRegistry,
+                             SearchResultCache searchResultCache,
+                             RedisTemplate<String, String> redisTemplate,
+                             RedisConnectionFactory connectionFactory,
+                             @Value("${search.vector.m:16}") int m,
+                             @Value("${search.vector.ef-construction:100}") int efConstruction,
+                             @Value("${search.vector.ef-search:64}") int efSearch) {
+        this.embeddingProvider = embeddingProvider;
+        this.promptEmbeddingRepository = promptEmbeddingRepository;
+        this.meterRegistry = meterRegistry;
+        this.searchResultCache = searchResultCache;
+        this.redisTemplate = redisTemplate;
+        this.connectionFactory = connectionFactory;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.index = newIndex();
+        Gauge.builder("search.vector.size", this, PromptVectorIndex::size)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        // subscribe first, a change committed while loading is applied at worst twice but not lost
+        subscribe();
+        long start = System.currentTimeMillis();
+        String model = embeddingProvider.model();
+        Slice<PromptEmbedding> page = promptEmbeddingRepository.findByModel(model, PageRequest.of(0, LOAD_PAGE_SIZE));
+        while (true) {
+            // prompts indexed meanwhile go into the same graph
+            synchronized (this) {
+                for (PromptEmbedding embedding : page) {
+                    if (embedding.getDimensions() == embeddingProvider.dimensions()) {
+                        index.upsert(embedding.getPromptId(), decode(embedding.getVector()));
+                    }
+                }
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+            page = promptEmbeddingRepository.findByModel(model, page.nextPageable());
+        }
+        loaded = true;
+        log.info("Loaded {} prompt embeddings ({}) into the vector index in {}ms",
+                size(), model, System.currentTimeMillis() - start);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (listenerContainer != null) {
+            listenerContainer.stop();
+        }
+    }
+
+    /**
+     * Embed the prompt (unless its text is unchanged since the stored embedding) and add or replace it
+     */
+    public void index(Prompt prompt) {
+        String text = embeddingText(prompt);
+        String contentHash = DigestUtils.sha256Hex(text);
+        String model = embeddingProvider.model();
+        Optional<PromptEmbedding> stored = promptEmbeddingRepository.findById(prompt.getId())
+                .filter(embedding -> model.equals(embedding.getModel())
+                        && contentHash.equals(embedding.getContentHash()));
+        float[] vector;
+        if (stored.isPresent()) {
+            meterRegistry.counter("search.vector.embedding", "outcome", "reused").increment();
+            if (index.contains(prompt.getId())) {
+                // same text and model, already in the graph here and on the other nodes
+                return;
+            }
+            vector = decode(stored.get().getVector());
+        } else {
+            vector = embeddingProvider.embedDocument(text);
+            promptEmbeddingRepository.save(PromptEmbedding.builder()
+                    .promptId(prompt.getId())
+                    .model(model)
+                    .dimensions(vector.length)
+                    .vector(encode(vector))
+                    .contentHash(contentHash)
+                    .updatedAt(Instant.now())
+                    .build());
+            meterRegistry.counter("search.vector.embedding", "outcome", "embedded").increment();
+        }
+        upsertLocally(prompt.getId(), vector);
+        publishAfterCommit(INDEXED, prompt.getId());
+    }
+
+    public void remove(UUID promptId) {
+        boolean indexed = removeLocally(promptId);
+        promptEmbeddingRepository.deleteById(promptId);
+        if (indexed) {
+            publishAfterCommit(REMOVED, promptId);
+        }
+    }
+
+    /**
+     * @return up to k indexed prompts most similar to the query, nearest first
+     */
+    public List<HnswVectorIndex.Hit> search(String query, int k) {
+        HnswVectorIndex current = index;
+        if (current.size() == 0) {
+            return List.of();
+        }
+        float[] vector = embeddingProvider.embedQuery(query);
+        return Timer.builder("search.vector.query")
+                .register(meterRegistry)
+                .record(() -> current.search(vector, k, efSearch));
+    }
+
+    /**
+     * @return number of indexed prompts
+     */
+    public int size() {
+        return index.size();
+    }
+
+    public boolean contains(UUID promptId) {
+        return index.contains(promptId);
+    }
+
+    /**
+     * @return true once the stored embeddings are loaded on this node
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean isBackfilled() {
+        return backfilled;
+    }
+
+    /**
+     * Every indexed public prompt has an embedding, search may answer from this index instead of Gemini
+     */
+    void markBackfilled() {
+        backfilled = true;
+    }
+
+    /**
+     * @return true when search can answer from this index: backfill finished and at least one prompt indexed
+     */
+    public boolean isSearchable() {
+        return backfilled && index.size() > 0;
+    }
+
+    void onSync(String message) {
+        String[] parts = message.split("\\|", 4);
+        if (parts.length != 4 || nodeId.equals(parts[0])) {
+            return;
+        }
+        UUID promptId = UUID.fromString(parts[2]);
+        if (REMOVED.equals(parts[1])) {
+            removeLocally(promptId);
+        } else {
+            promptEmbeddingRepository.findById(promptId)
+                    .filter(embedding -> embeddingProvider.model().equals(embedding.getModel())
+                            && embedding.getDimensions() == embeddingProvider.dimensions())
+                    .ifPresent(embedding -> upsertLocally(promptId, decode(embedding.getVector())));
+        }
+        searchResultCache.advance(Long.parseLong(parts[3]));
+    }
+
+    private synchronized void upsertLocally(UUID promptId, float[] vector) {
+        index.upsert(promptId, vector);
+        compactIfNeeded();
+    }
+
+    private synchronized boolean removeLocally(UUID promptId) {
+        boolean removed = index.remove(promptId);
+        compactIfNeeded();
+        return removed;
+    }
+
+    private void subscribe() {
+        if (listenerContainer != null) {
+            return;
+        }
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onSync(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(SYNC_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    // other nodes read the embedding row, so they must not hear of it before it is committed
+    private void publishAfterCommit(String change, UUID promptId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(change, promptId);
+                }
+            });
+        } else {
+            publish(change, promptId);
+        }
+    }
+
+    private void publish(String change, UUID promptId) {
+        // cached searches may rank the prompt by its old text or visibility
+        long generation = searchResultCache.invalidate();
+        try {
+            redisTemplate.convertAndSend(SYNC_CHANNEL,
+                    nodeId + SEPARATOR + change + SEPARATOR + promptId + SEPARATOR + generation);
+        } catch (Exception e) {
+            log.warn("Failed to publish vector index {} of prompt {}", change, promptId, e);
+        }
+    }
+
+    // callers hold the monitor, so no write lands in the graph being replaced; searches keep using it meanwhile
+    private void compactIfNeeded() {
+        if (index.tombstones() > Math.max(LOAD_PAGE_SIZE, index.size() / 2)) {
+            index = index.compacted();
+            log.info("Compacted the vector index to {} prompts", index.size());
+        }
+    }
+
+    private HnswVectorIndex newIndex() {
+        return new HnswVectorIndex(embeddingProvider.dimensions(), m, efConstruction, GRAPH_SEED);
+    }
+
+    /**
+     * The prompt fields a teacher searches by, the same the Gemini file search document holds
+     */
+    static String embeddingText(Prompt prompt) {
+        StringBuilder text = new StringBuilder();
+        appendField(text, "Title", prompt.getTitle());
+        appendField(text, "Description", prompt.getDescription());
+        appendField(text, "Instruction", prompt.getInstruction());
+        appendField(text, "Context", prompt.getContext());
+        appendField(text, "Output Format", prompt.getOutputFormat());
+        return text.toString().trim();
+    }
+
+    private static void appendField(StringBuilder text, String label, String value) {
+        if (value != null && !value.isBlank()) {
+            text.append(label).append(": ").append(value).append("\n\n");
+        }
+    }
+
+    static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    static float[] decode(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
@@ -0,0 +1,140 @@
+package SEP490.EduPrompt.service.search;
+
+import SEP490.EduPrompt.service.cache.NearCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Search results by query, kept as prompt ids and scores only and hydrated by the caller
+ * - Keys carry the index generation, a shared Redis counter bumped by the vector index whenever a prompt enters,
+ *   changes in or leaves it; results of an older generation are never read again and expire with their TTL
+ * - Each node keeps the generation in memory: the vector index sync message carries the new value and is applied
+ *   after the index change, Redis is only read again every generation-refresh-seconds in case a message was lost
+ * - Stored in the near cache, a repeated query on the same node costs no network hop
+ * - Redis failures bypass the cache while the generation is unknown, callers search as if it were a miss
+ */
+@Slf4j
+@Component
+public class SearchResultCache {
+
+    static final String GENERATION_KEY = "search:index_generation";
+    private static final String KEY_PREFIX = "search:";
+
+    private final NearCache nearCache;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final long refreshMs;
+
+    // -1 until first read from Redis
+    private final AtomicLong generation = new AtomicLong(-1);
+    private volatile long generationReadAt;
+
+    public SearchResultCache(NearCache nearCache,
+                             RedisTemplate<String, String> redisTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${search.cache.enabled:true}") boolean enabled,
+                             @Value("${search.cache.ttl-minutes:10}") long ttlMinutes,
+                             @Value("${search.cache.generation-refresh-seconds:30}") long refreshSeconds) {
+        this.nearCache = nearCache;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.refreshMs = TimeUnit.SECONDS.toMillis(refreshSeconds);
+    }
+
+    /**
+     * @return the cache key of the query in the current index generation, null when caching is off or
+     * the generation cannot be read
+     */
+    public String key(String query, int limit, String scope) {
+        if (!enabled) {
+            return null;
+        }
+        long current = generation.get();
+        if (current < 0 || System.currentTimeMillis() - generationReadAt > refreshMs) {
+            try {
+                String stored = redisTemplate.opsForValue().get(GENERATION_KEY);
+                current = advance(stored != null ? Long.parseLong(stored) : 0);
+                generationReadAt = System.currentTimeMillis();
+            } catch (Exception e) {
+                if (current < 0) {
+                    log.warn("Search index generation unavailable, searching without the result cache", e);
+                    return null;
+                }
+                // keep the known generation, the sync messages still advance it
+            }
+        }
+        String fingerprint = normalize(query) + '|' + limit + '|' + scope;
+        return KEY_PREFIX + current + ':' + DigestUtils.sha256Hex(fingerprint);
+    }
+
+    /**
+     * @return the ranked prompts cached under the key, null on a miss
+     */
+    public List<Entry> get(String key) {
+        CachedResults cached = nearCache.get(key, CachedResults.class);
+        meterRegistry.counter("search.cache", "result", cached != null ? "hit" : "miss").increment();
+        return cached != null ? cached.entries() : null;
+    }
+
+    public void put(String key, List<Entry> entries) {
+        nearCache.put(key, new CachedResults(entries), ttl);
+    }
+
+    /**
+     * Start a new generation, this node stops serving the results cached so far; the caller hands the
+     * generation to the other nodes
+     *
+     * @return the new generation, 0 when it could not be bumped
+     */
+    public long invalidate() {
+        try {
+            Long next = redisTemplate.opsForValue().increment(GENERATION_KEY);
+            return next != null ? advance(next) : 0;
+        } catch (Exception e) {
+            // cached results stay until their TTL runs out
+            log.error("Failed to bump the search index generation", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Move to a generation started on another node, an older one is ignored
+     *
+     * @return the generation now in use
+     */
+    public long advance(long next) {
+        return generation.accumulateAndGet(next, Math::max);
+    }
+
+    /**
+     * Case, accent composition and spacing do not make a different query
+     */
+    static String normalize(String query) {
+        return Normalizer.normalize(query, Normalizer.Form.NFC)
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+
+    public record Entry(UUID promptId, double score) {
+    }
+
+    public record CachedResults(List<Entry> entries) {
+    }
+}
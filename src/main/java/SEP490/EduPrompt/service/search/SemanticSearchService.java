@@ -12,6 +12,15 @@ public interface SemanticSearchService {
      */
     SemanticSearchResponse search(SemanticSearchRequest request);
 
+    /**
+     * Hybrid search: full-text matches fused with semantic matches by reciprocal rank
+     * - the semantic tier gets a latency budget, past it the lexical ranking is returned alone
+     *
+     * @param request Search request with query and context
+     * @return Search results with fused relevance scores
+     */
+    SemanticSearchResponse hybridSearch(SemanticSearchRequest request);
+
     //might plan to count for search quota if user using semantic search (2 type of searching)
 //    /**
 //     * Get search quota remaining for user
@@ -4,20 +4,31 @@ import SEP490.EduPrompt.dto.request.search.SemanticSearchRequest;
 import SEP490.EduPrompt.dto.response.search.GroundingChunk;
 import SEP490.EduPrompt.dto.response.search.SearchResultItem;
 import SEP490.EduPrompt.dto.response.search.SemanticSearchResponse;
+import SEP490.EduPrompt.enums.Visibility;
 import SEP490.EduPrompt.exception.auth.ResourceNotFoundException;
+import SEP490.EduPrompt.exception.client.GeminiApiException;
 import SEP490.EduPrompt.model.Prompt;
 import SEP490.EduPrompt.model.SemanticSearchLog;
 import SEP490.EduPrompt.model.User;
 import SEP490.EduPrompt.repo.PromptRepository;
 import SEP490.EduPrompt.repo.SemanticSearchLogRepository;
 import SEP490.EduPrompt.repo.UserRepository;
+import SEP490.EduPrompt.service.ai.AiJobExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.text.Normalizer;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -27,12 +38,27 @@ public class SemanticSearchServiceImpl implements SemanticSearchService {
 
     private static final int DEFAULT_LIMIT = 10;
     private static final int MAX_LIMIT = 20;
+    private static final int MAX_LEXICAL_TERMS = 16;
+    // AiJobExecutor pool of the semantic tier, its permits are ai.executor.pools.search.limit
+    private static final String SEMANTIC_TIER = "search";
     private final GeminiClientService geminiClientService;
     private final PromptRepository promptRepository;
     private final SemanticSearchLogRepository semanticSearchLogRepository;
     private final UserRepository userRepository;
+    private final PromptVectorIndex promptVectorIndex;
+    private final AiJobExecutor aiJobExecutor;
+    private final MeterRegistry meterRegistry;
+    private final SearchResultCache searchResultCache;
     @Value("${gemini.file-search-store}")
     private String fileSearchStoreName;
+    @Value("${search.rerank.enabled:false}")
+    private boolean rerankEnabled;
+    @Value("${search.rerank.weight:0.5}")
+    private double rerankWeight;
+    @Value("${search.hybrid.semantic-budget-ms:400}")
+    private long semanticBudgetMs;
+    @Value("${search.hybrid.rrf-k:60}")
+    private int rrfK;
 
     @Override
     @Transactional(readOnly = true)
@@ -46,17 +72,33 @@ public class SemanticSearchServiceImpl implements SemanticSearchService {
 
         int limit = determineLimit(request.limit());
 
-        List<GroundingChunk> chunks = geminiClientService.searchDocuments(
-                fileSearchStoreName,
-                enrichedQuery,
-                limit * 2);
-
-        Map<String, List<GroundingChunk>> chunksByDocument = chunks.stream()
-                .collect(Collectors.groupingBy(GroundingChunk::documentId));
-
+        // results are public prompts for every caller, the scope only separates future per-user searches
+        String cacheKey = searchResultCache.key(enrichedQuery, limit, Visibility.PUBLIC.name());
+        List<SearchResultCache.Entry> cached = cacheKey != null ? searchResultCache.get(cacheKey) : null;
+
+        List<SearchResultItem> results;
+        if (cached != null) {
+            results = hydrateCachedResults(cached, request.userId(), request.username());
+        } else if (promptVectorIndex.isSearchable()) {
+            results = searchVectorIndex(enrichedQuery, limit, request.userId(), request.username());
+        } else {
+            // local index empty or its embedding backfill not finished yet, fall back to Gemini file search
+            List<GroundingChunk> chunks = geminiClientService.searchDocuments(
+                    fileSearchStoreName,
+                    enrichedQuery,
+                    limit * 2);
+
+            Map<UUID, List<GroundingChunk>> chunksByPrompt = chunks.stream()
+                    .collect(Collectors.groupingBy(GroundingChunk::promptId));
+
+            results = buildSearchResults(chunksByPrompt, limit, request.userId(), request.username());
+        }
+        if (cached == null && cacheKey != null) {
+            searchResultCache.put(cacheKey, results.stream()
+                    .map(item -> new SearchResultCache.Entry(item.promptId(), item.relevanceScore()))
+                    .toList());
+        }
         long executionTime = System.currentTimeMillis() - startTime;
-        List<SearchResultItem> results = buildSearchResults(chunksByDocument, limit, request.userId(),
-                request.username());
 
         logSearch(request, results.size(), executionTime);
 
@@ -70,9 +112,176 @@ public class SemanticSearchServiceImpl implements SemanticSearchService {
                 .totalFound(results.size())
                 .searchId(searchId)
                 .executionTimeMs((int) executionTime)
+                .mode("semantic")
                 .build();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public SemanticSearchResponse hybridSearch(SemanticSearchRequest request) {
+        long startTime = System.currentTimeMillis();
+
+        log.info("Hybrid search request from user {} with query: {}",
+                request.userId(), request.query());
+
+        String enrichedQuery = enrichQuery(request);
+        int limit = determineLimit(request.limit());
+        int depth = limit * 2;
+
+        // semantic tier (query embedding + HNSW) runs beside the full-text query
+        CompletableFuture<List<HnswVectorIndex.Hit>> semantic = promptVectorIndex.isSearchable()
+                ? aiJobExecutor.callInPoolAsync(SEMANTIC_TIER, Duration.ofMillis(semanticBudgetMs),
+                () -> promptVectorIndex.search(enrichedQuery, depth))
+                : null;
+
+        String terms = lexicalTerms(enrichedQuery);
+        List<UUID> lexicalRanking = terms.isEmpty()
+                ? List.of()
+                : promptRepository.searchByText(terms, depth).stream()
+                .map(PromptRepository.LexicalMatchProjection::getPromptId)
+                .toList();
+
+        List<UUID> semanticRanking = awaitSemantic(semantic, startTime);
+        String mode = semanticRanking != null ? "hybrid" : "lexical";
+        List<List<UUID>> rankings = semanticRanking != null
+                ? List.of(lexicalRanking, semanticRanking)
+                : List.of(lexicalRanking);
+
+        List<SearchResultItem> results = buildFusedResults(rankings, limit, request.userId(), request.username());
+        long executionTime = System.currentTimeMillis() - startTime;
+
+        logSearch(request, results.size(), executionTime);
+
+        String searchId = UUID.randomUUID().toString();
+
+        log.info("Hybrid search {} ({}) completed in {}ms, found {} results",
+                searchId, mode, executionTime, results.size());
+
+        return SemanticSearchResponse.builder()
+                .results(results)
+                .totalFound(results.size())
+                .searchId(searchId)
+                .executionTimeMs((int) executionTime)
+                .mode(mode)
+                .build();
+    }
+
+    /**
+     * Semantic ranking if it arrives within the budget, null when the tier is slow, failing or not backfilled yet
+     */
+    private List<UUID> awaitSemantic(CompletableFuture<List<HnswVectorIndex.Hit>> semantic, long startTime) {
+        if (semantic == null) {
+            meterRegistry.counter("search.hybrid.semantic", "outcome", "empty").increment();
+            return null;
+        }
+        long remaining = Math.max(0, semanticBudgetMs - (System.currentTimeMillis() - startTime));
+        try {
+            List<UUID> ranking = semantic.get(remaining, TimeUnit.MILLISECONDS).stream()
+                    .map(HnswVectorIndex.Hit::key)
+                    .toList();
+            meterRegistry.counter("search.hybrid.semantic", "outcome", "answered").increment();
+            return ranking;
+        } catch (TimeoutException e) {
+            // frees the search permit instead of finishing an embedding nobody waits for
+            semantic.cancel(true);
+            meterRegistry.counter("search.hybrid.semantic", "outcome", "timeout").increment();
+            log.warn("Semantic tier missed the {}ms budget, answering with full-text matches only", semanticBudgetMs);
+            return null;
+        } catch (ExecutionException e) {
+            meterRegistry.counter("search.hybrid.semantic", "outcome", "error").increment();
+            log.warn("Semantic tier failed, answering with full-text matches only: {}", e.getCause().getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            semantic.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Build search results from the fused rankings, one IN query for all ranked prompts
+     */
+    private List<SearchResultItem> buildFusedResults(List<List<UUID>> rankings, int limit,
+                                                     UUID userId, String userName) {
+        Map<UUID, Double> scores = fuseRankings(rankings, rrfK);
+        Map<UUID, Prompt> prompts = promptRepository.findAllById(scores.keySet()).stream()
+                .collect(Collectors.toMap(Prompt::getId, Function.identity()));
+
+        List<SearchResultItem> results = new ArrayList<>();
+        for (Map.Entry<UUID, Double> entry : scores.entrySet()) {
+            Prompt prompt = prompts.get(entry.getKey());
+            // the vector index may lag a visibility change
+            if (prompt == null || prompt.getIsDeleted()
+                    || !Visibility.PUBLIC.name().equalsIgnoreCase(prompt.getVisibility())) {
+                continue;
+            }
+            int matchedTiers = (int) rankings.stream().filter(ranking -> ranking.contains(prompt.getId())).count();
+            String snippet = prompt.getDescription() != null && !prompt.getDescription().isBlank()
+                    ? prompt.getDescription()
+                    : Objects.requireNonNullElse(prompt.getInstruction(), "");
+            results.add(buildResultItem(prompt, entry.getValue(), snippet, matchedTiers, userId, userName));
+        }
+
+        results.sort(Comparator.comparing(SearchResultItem::relevanceScore).reversed());
+        return results.size() > limit ? results.subList(0, limit) : results;
+    }
+
+    /**
+     * Reciprocal-rank fusion: each ranking adds 1 / (k + rank) to the prompts it holds
+     * - scores are divided by the best possible sum, so a prompt ranked first everywhere scores 1
+     */
+    static Map<UUID, Double> fuseRankings(List<List<UUID>> rankings, int k) {
+        Map<UUID, Double> scores = new LinkedHashMap<>();
+        for (List<UUID> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                scores.merge(ranking.get(rank), 1.0 / (k + rank + 1), Double::sum);
+            }
+        }
+        double best = rankings.size() / (double) (k + 1);
+        scores.replaceAll((promptId, score) -> score / best);
+        return scores;
+    }
+
+    /**
+     * to_tsquery expression matching any word of the query; words are letters and digits only,
+     * so user input never reaches the tsquery syntax
+     */
+    static String lexicalTerms(String query) {
+        // composed form, decomposed Vietnamese marks are not letters and would split words
+        String composed = Normalizer.normalize(query, Normalizer.Form.NFC);
+        return Arrays.stream(composed.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(term -> !term.isEmpty())
+                .distinct()
+                .limit(MAX_LEXICAL_TERMS)
+                .collect(Collectors.joining(" | "));
+    }
+
+    /**
+     * Cached ids and scores back to results, one IN query; prompts made private or deleted since are dropped
+     */
+    private List<SearchResultItem> hydrateCachedResults(List<SearchResultCache.Entry> entries,
+                                                        UUID userId, String userName) {
+        Map<UUID, Prompt> prompts = promptRepository.findAllById(entries.stream()
+                        .map(SearchResultCache.Entry::promptId)
+                        .toList())
+                .stream()
+                .collect(Collectors.toMap(Prompt::getId, Function.identity()));
+
+        List<SearchResultItem> results = new ArrayList<>();
+        for (SearchResultCache.Entry entry : entries) {
+            Prompt prompt = prompts.get(entry.promptId());
+            if (prompt == null || prompt.getIsDeleted()
+                    || !Visibility.PUBLIC.name().equalsIgnoreCase(prompt.getVisibility())) {
+                continue;
+            }
+            String snippet = prompt.getDescription() != null && !prompt.getDescription().isBlank()
+                    ? prompt.getDescription()
+                    : Objects.requireNonNullElse(prompt.getInstruction(), "");
+            results.add(buildResultItem(prompt, entry.score(), snippet, 1, userId, userName));
+        }
+        return results;
+    }
+
     /**
      * Enrich query with context (tags, visibility filters)
      */
@@ -111,30 +320,85 @@ public class SemanticSearchServiceImpl implements SemanticSearchService {
         return Math.min(requestedLimit, MAX_LIMIT);
     }
 
+    /**
+     * Top-k from the local vector index, optionally re-ranked with Gemini file search grounding
+     */
+    private List<SearchResultItem> searchVectorIndex(String query, int limit, UUID userId, String userName) {
+        List<HnswVectorIndex.Hit> hits = promptVectorIndex.search(query, limit * 2);
+
+        Map<UUID, Prompt> prompts = promptRepository.findAllById(hits.stream().map(HnswVectorIndex.Hit::key).toList())
+                .stream()
+                .collect(Collectors.toMap(Prompt::getId, Function.identity()));
+        Map<UUID, GroundingChunk> grounding = rerankEnabled ? groundingByPrompt(query, limit) : Map.of();
+
+        List<SearchResultItem> results = new ArrayList<>();
+        for (HnswVectorIndex.Hit hit : hits) {
+            Prompt prompt = prompts.get(hit.key());
+            // visibility may have changed since indexing
+            if (prompt == null || prompt.getIsDeleted()
+                    || !Visibility.PUBLIC.name().equalsIgnoreCase(prompt.getVisibility())) {
+                continue;
+            }
+
+            double score = Math.max(0.0, hit.score());
+            String snippet = prompt.getDescription() != null && !prompt.getDescription().isBlank()
+                    ? prompt.getDescription()
+                    : Objects.requireNonNullElse(prompt.getInstruction(), "");
+            int chunkCount = 1;
+            if (rerankEnabled) {
+                GroundingChunk chunk = grounding.get(prompt.getId());
+                score = (1 - rerankWeight) * score + rerankWeight * (chunk != null ? chunk.confidenceScore() : 0.0);
+                if (chunk != null) {
+                    snippet = chunk.text();
+                    chunkCount++;
+                }
+            }
+
+            results.add(buildResultItem(prompt, score, snippet, chunkCount, userId, userName));
+        }
+
+        results.sort(Comparator.comparing(SearchResultItem::relevanceScore).reversed());
+        return results.size() > limit ? results.subList(0, limit) : results;
+    }
+
+    /**
+     * Best grounding chunk per prompt from Gemini file search, empty when the re-ranker is unavailable
+     */
+    private Map<UUID, GroundingChunk> groundingByPrompt(String query, int limit) {
+        try {
+            return geminiClientService.searchDocuments(fileSearchStoreName, query, limit * 2).stream()
+                    .collect(Collectors.toMap(GroundingChunk::promptId, Function.identity(),
+                            (a, b) -> a.confidenceScore() >= b.confidenceScore() ? a : b));
+        } catch (GeminiApiException e) {
+            log.warn("Gemini re-ranking failed, keeping vector order: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
     /**
      * Build search results from grounding chunks
      */
     private List<SearchResultItem> buildSearchResults(
-            Map<String, List<GroundingChunk>> chunksByDocument,
+            Map<UUID, List<GroundingChunk>> chunksByPrompt,
             int limit,
             UUID userId,
             String userName) {
 
         List<SearchResultItem> results = new ArrayList<>();
 
-        for (Map.Entry<String, List<GroundingChunk>> entry : chunksByDocument.entrySet()) {
-            String documentId = entry.getKey();
+        // one IN query for all matched prompts
+        Map<UUID, Prompt> prompts = promptRepository.findAllById(chunksByPrompt.keySet()).stream()
+                .collect(Collectors.toMap(Prompt::getId, Function.identity()));
+
+        for (Map.Entry<UUID, List<GroundingChunk>> entry : chunksByPrompt.entrySet()) {
             List<GroundingChunk> chunks = entry.getValue();
 
-            // format: fileSearchStores/{store}/documents/{doc}
-            Optional<Prompt> promptOpt = promptRepository.findByGeminiFileIdStartingWith(documentId);
-            if (promptOpt.isPresent() && promptOpt.get().getIsDeleted()) {
-                log.info("Prompt {} not found or deleted, skipping", promptOpt.get().getId());
+            Prompt prompt = prompts.get(entry.getKey());
+            if (prompt == null || prompt.getIsDeleted()) {
+                log.info("Prompt {} not found or deleted, skipping", entry.getKey());
                 continue;
             }
 
-            Prompt prompt = promptOpt.orElseThrow();
-
             // Calculate aggregate score (max score from all chunks)
             Double maxScore = chunks.stream()
                     .map(GroundingChunk::confidenceScore)
@@ -147,21 +411,7 @@ public class SemanticSearchServiceImpl implements SemanticSearchService {
                     .map(GroundingChunk::text)
                     .orElse("");
 
-            // Build reasoning
-            String reasoning = buildReasoning(prompt, maxScore, chunks.size());
-
-            results.add(SearchResultItem.builder()
-                    .promptId(prompt.getId())
-                    .title(prompt.getTitle())
-                    .description(prompt.getDescription())
-                    .relevanceScore(maxScore)
-                    .matchedSnippet(truncateSnippet(bestSnippet, 200))
-                    .reasoning(reasoning)
-                    .visibility(prompt.getVisibility())
-                    .createdBy(userId)
-                    .createdByName(userName)
-                    .averageRating(4 + Math.random()) // wait for prompt rating service to implement
-                    .build());
+            results.add(buildResultItem(prompt, maxScore, bestSnippet, chunks.size(), userId, userName));
         }
 
         // Sort by relevance score (descending)
@@ -175,6 +425,22 @@ public class SemanticSearchServiceImpl implements SemanticSearchService {
         return results;
     }
 
+    private SearchResultItem buildResultItem(Prompt prompt, Double score, String snippet, int chunkCount,
+                                             UUID userId, String userName) {
+        return SearchResultItem.builder()
+                .promptId(prompt.getId())
+                .title(prompt.getTitle())
+                .description(prompt.getDescription())
+                .relevanceScore(score)
+                .matchedSnippet(truncateSnippet(snippet, 200))
+                .reasoning(buildReasoning(prompt, score, chunkCount))
+                .visibility(prompt.getVisibility())
+                .createdBy(userId)
+                .createdByName(userName)
+                .averageRating(4 + Math.random()) // wait for prompt rating service to implement
+                .build();
+    }
+
     /**
      * Build reasoning text for why this prompt matched
      */
@@ -0,0 +1,58 @@
+package SEP490.EduPrompt.service.search;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limiter
+ * - Refills continuously at the configured rate and holds at most capacity tokens, so an idle period
+ *   allows a burst of capacity calls and the long-run rate never exceeds the quota
+ * - A caller reserves its token first and then sleeps outside the lock, concurrent callers queue up
+ *   one refill interval apart instead of waking together
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(int permitsPerMinute, int capacity) {
+        this(permitsPerMinute, capacity, System::nanoTime);
+    }
+
+    TokenBucket(int permitsPerMinute, int capacity, LongSupplier nanoClock) {
+        if (permitsPerMinute <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = permitsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Block until a token is available
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Take a token, possibly one not refilled yet
+     *
+     * @return nanoseconds until the taken token is actually available, 0 when it already is
+     */
+    synchronized long reserve() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+}
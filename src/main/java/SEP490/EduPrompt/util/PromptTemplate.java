@@ -0,0 +1,100 @@
+package SEP490.EduPrompt.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * AI prompt text with {{name}} slots, parsed once into interned literal fragments and slot indexes
+ * - render sizes its buffer from the fragments and values up front, no format string is parsed per call
+ * - Platform threads reuse a thread-local buffer, so a render allocates only the resulting String; virtual
+ *   threads (one per task) get an exactly sized builder instead of a buffer that would die with them
+ * - Slots are declared when compiling, a template using an undeclared slot or missing a declared one fails
+ *   at class initialization instead of sending a broken prompt
+ * - null values render as "null", like String.format
+ */
+public final class PromptTemplate {
+
+    private static final Pattern SLOT = Pattern.compile("\\{\\{(\\w+)}}");
+    // buffers grown past this by a huge prompt are not kept
+    private static final int MAX_RETAINED_CAPACITY = 32 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+    // fragments[i] comes before slot i, the last fragment after the last slot
+    private final String[] fragments;
+    private final int[] slots;
+    private final int arity;
+    private final int literalLength;
+
+    private PromptTemplate(String[] fragments, int[] slots, int arity) {
+        this.fragments = fragments;
+        this.slots = slots;
+        this.arity = arity;
+        int length = 0;
+        for (String fragment : fragments) {
+            length += fragment.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * @param slotNames names of the slots, in the order render takes their values
+     */
+    public static PromptTemplate compile(String source, String... slotNames) {
+        List<String> names = List.of(slotNames);
+        List<String> fragments = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        Set<String> used = new HashSet<>();
+        Matcher matcher = SLOT.matcher(source);
+        int last = 0;
+        while (matcher.find()) {
+            int index = names.indexOf(matcher.group(1));
+            if (index < 0) {
+                throw new IllegalArgumentException("Undeclared slot {{" + matcher.group(1) + "}} in prompt template");
+            }
+            fragments.add(source.substring(last, matcher.start()).intern());
+            slots.add(index);
+            used.add(matcher.group(1));
+            last = matcher.end();
+        }
+        fragments.add(source.substring(last).intern());
+        if (used.size() != names.size()) {
+            throw new IllegalArgumentException("Prompt template never uses slots " + names.stream()
+                    .filter(name -> !used.contains(name)).toList());
+        }
+        return new PromptTemplate(fragments.toArray(new String[0]),
+                slots.stream().mapToInt(Integer::intValue).toArray(), names.size());
+    }
+
+    /**
+     * @param values one per declared slot, in declaration order
+     */
+    public String render(String... values) {
+        if (values.length != arity) {
+            throw new IllegalArgumentException("Prompt template takes " + arity + " values, got " + values.length);
+        }
+        int length = literalLength;
+        for (int slot : slots) {
+            length += values[slot] != null ? values[slot].length() : 4;
+        }
+        StringBuilder buffer = buffer(length);
+        for (int i = 0; i < slots.length; i++) {
+            buffer.append(fragments[i]).append(values[slots[i]]);
+        }
+        buffer.append(fragments[slots.length]);
+        return buffer.toString();
+    }
+
+    private static StringBuilder buffer(int length) {
+        if (Thread.currentThread().isVirtual() || length > MAX_RETAINED_CAPACITY) {
+            return new StringBuilder(length);
+        }
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        buffer.ensureCapacity(length);
+        return buffer;
+    }
+}
@@ -0,0 +1,126 @@
+package SEP490.EduPrompt.util;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Text normalization and MinHash fingerprints for near-duplicate detection
+ * - normalize: NFC, lower case, punctuation to spaces, whitespace collapsed
+ * - minHash: signature over word bigrams (single words for one-word texts); the share of equal positions
+ *   of two signatures estimates the Jaccard similarity of their bigram sets
+ */
+public class TextFingerprintUtil {
+
+    public static final int SIGNATURE_SIZE = 64;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final long[] SEEDS_A = new long[SIGNATURE_SIZE];
+    private static final long[] SEEDS_B = new long[SIGNATURE_SIZE];
+
+    static {
+        // fixed seed: signatures must be comparable across nodes and restarts
+        SplittableRandom random = new SplittableRandom(0x5EED_F1A6L);
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            SEEDS_A[i] = random.nextLong() | 1;
+            SEEDS_B[i] = random.nextLong();
+        }
+    }
+
+    private TextFingerprintUtil() {
+    }
+
+    public static String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        return NON_WORD.matcher(normalized).replaceAll(" ").strip();
+    }
+
+    /**
+     * @param normalized output of normalize
+     */
+    public static long[] minHash(String normalized) {
+        long[] signature = new long[SIGNATURE_SIZE];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        String[] words = normalized.isEmpty() ? new String[0] : normalized.split(" ");
+        if (words.length == 1) {
+            add(signature, hash64(words[0]));
+        }
+        for (int i = 0; i + 1 < words.length; i++) {
+            add(signature, hash64(words[i] + ' ' + words[i + 1]));
+        }
+        return signature;
+    }
+
+    /**
+     * Estimated Jaccard similarity, 0..1
+     */
+    public static double similarity(long[] a, long[] b) {
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIGNATURE_SIZE;
+    }
+
+    /**
+     * Hash of rows [band * rows, band * rows + rows) of the signature, the LSH bucket of that band
+     */
+    public static long bandHash(long[] signature, int band, int rows) {
+        long hash = 1125899906842597L;
+        for (int i = band * rows; i < band * rows + rows; i++) {
+            hash = 31 * hash + signature[i];
+        }
+        return hash;
+    }
+
+    public static String encode(long[] signature) {
+        StringBuilder encoded = new StringBuilder(SIGNATURE_SIZE * 17);
+        for (long value : signature) {
+            if (!encoded.isEmpty()) {
+                encoded.append(',');
+            }
+            encoded.append(Long.toHexString(value));
+        }
+        return encoded.toString();
+    }
+
+    public static long[] decode(String encoded) {
+        String[] parts = encoded.split(",");
+        long[] signature = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            signature[i] = Long.parseUnsignedLong(parts[i], 16);
+        }
+        return signature;
+    }
+
+    private static void add(long[] signature, long shingleHash) {
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            long value = mix(shingleHash * SEEDS_A[i] + SEEDS_B[i]);
+            if (value < signature[i]) {
+                signature[i] = value;
+            }
+        }
+    }
+
+    // FNV-1a over UTF-8, String.hashCode is only 32 bits
+    private static long hash64(String shingle) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : shingle.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
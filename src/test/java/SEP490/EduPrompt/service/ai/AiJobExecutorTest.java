@@ -0,0 +1,265 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.exception.client.AiProviderException;
+import SEP490.EduPrompt.exception.client.TooManyRequestsException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiJobExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AiJobExecutor aiJobExecutor;
+    private AiProviderGuard providerGuard;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai.limiter.providers.openai.max-limit", "2");
+        aiJobExecutor = new AiJobExecutor(meterRegistry, environment, 4);
+        providerGuard = new AiProviderGuard(meterRegistry, environment);
+        ReflectionTestUtils.setField(providerGuard, "initialLimit", 2);
+        ReflectionTestUtils.setField(providerGuard, "maxLimit", 1);
+        ReflectionTestUtils.setField(providerGuard, "queueWaitMs", 5000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiJobExecutor.shutdown();
+    }
+
+    //================================================================//
+    //====================PROVIDER LIMIT==============================//
+    @Test
+    void call_ManyConcurrentCallers_GuardLimitIsTheOnlyProviderLimit() throws Exception {
+        // Arrange
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService callers = Executors.newFixedThreadPool(10);
+
+        // Act
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(callers.submit(() -> aiJobExecutor.call("openai", Duration.ofSeconds(10), () ->
+                    providerGuard.call("openai", () -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        sleep(20);
+                        running.decrementAndGet();
+                        return "ok";
+                    }))));
+        }
+        for (Future<String> future : futures) {
+            assertEquals("ok", future.get(30, TimeUnit.SECONDS));
+        }
+        callers.shutdown();
+
+        // Assert: the provider's guard ceiling bounds the calls, nobody waited in the executor
+        assertEquals(2, maxRunning.get());
+        assertEquals(0.0, gauge("ai.provider.queued", "openai"));
+        assertEquals(10, meterRegistry.get("ai.provider.call")
+                .tag("provider", "openai").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void call_Timeout_InterruptsCallAndFreesPermit() throws Exception {
+        // Arrange
+        CountDownLatch interrupted = new CountDownLatch(2);
+        Callable<String> hanging = () -> {
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "late";
+        };
+
+        // Act: two calls get stuck, then time out
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        Future<?> first = callers.submit(() -> aiJobExecutor.call("openai", Duration.ofMillis(100), hanging));
+        Future<?> second = callers.submit(() -> aiJobExecutor.call("openai", Duration.ofMillis(100), hanging));
+
+        // Assert
+        ExecutionException firstError = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, firstError.getCause());
+        assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals("ok", aiJobExecutor.call("openai", Duration.ofSeconds(5), () -> "ok"));
+        callers.shutdown();
+    }
+
+    @Test
+    void call_ProviderSaturated_GuardRejectsWithoutExecutorQueue() throws Exception {
+        // Arrange: gemini falls back to the guard's max-limit of 1, taken by a blocked call
+        ReflectionTestUtils.setField(providerGuard, "queueWaitMs", 50L);
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<String> blocking = () -> providerGuard.call("gemini", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        });
+        ExecutorService callers = Executors.newFixedThreadPool(1);
+        Future<String> running = callers.submit(() -> aiJobExecutor.call("gemini", Duration.ofSeconds(10), blocking));
+        while (gauge("ai.limiter.in_flight", "gemini") < 1) {
+            Thread.sleep(10);
+        }
+
+        // Act + Assert: the saturated provider fails fast, other providers are unaffected
+        assertThrows(AiProviderException.class, () -> aiJobExecutor.call("gemini", Duration.ofSeconds(10),
+                () -> providerGuard.call("gemini", () -> "never")));
+        assertEquals("ok", aiJobExecutor.call("openai", Duration.ofSeconds(5),
+                () -> providerGuard.call("openai", () -> "ok")));
+        release.countDown();
+        assertEquals("done", running.get(5, TimeUnit.SECONDS));
+        callers.shutdown();
+    }
+
+    @Test
+    void callInPool_PoolQueueFull_RejectsWithTooManyRequests() throws Exception {
+        // Arrange: the scoring pool has one permit and one waiting slot, both taken
+        ReflectionTestUtils.setField(aiJobExecutor, "defaultPoolLimit", 1);
+        ReflectionTestUtils.setField(aiJobExecutor, "maxQueuedPerPool", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<String> blocking = () -> {
+            release.await();
+            return "done";
+        };
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        Future<String> running = callers.submit(() ->
+                aiJobExecutor.callInPool("scoring", Duration.ofSeconds(10), blocking));
+        Future<String> waiting = callers.submit(() ->
+                aiJobExecutor.callInPool("scoring", Duration.ofSeconds(10), blocking));
+        while (gauge("ai.pool.in_flight", "pool", "scoring") < 1 || gauge("ai.pool.queued", "pool", "scoring") < 1) {
+            Thread.sleep(10);
+        }
+
+        // Act + Assert: the full pool fails fast, a provider of the same name is not limited by it
+        TooManyRequestsException error = assertThrows(TooManyRequestsException.class,
+                () -> aiJobExecutor.callInPool("scoring", Duration.ofSeconds(10), () -> "never"));
+        assertEquals("ok", aiJobExecutor.call("scoring", Duration.ofSeconds(5), () -> "ok"));
+        release.countDown();
+        assertEquals("done", running.get(5, TimeUnit.SECONDS));
+        assertEquals("done", waiting.get(5, TimeUnit.SECONDS));
+        assertFalse(error.getMessage().contains("provider"));
+        assertEquals(1, meterRegistry.get("ai.pool.call")
+                .tag("pool", "scoring").tag("outcome", "rejected").timer().count());
+        callers.shutdown();
+    }
+
+    @Test
+    void callAsync_Cancelled_InterruptsCallAndFreesPermit() throws Exception {
+        // Arrange: two openai calls that would run for a minute
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch interrupted = new CountDownLatch(2);
+        Callable<String> hanging = () -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "late";
+        };
+        CompletableFuture<String> first = aiJobExecutor.callAsync("openai", Duration.ofSeconds(60), hanging);
+        CompletableFuture<String> second = aiJobExecutor.callAsync("openai", Duration.ofSeconds(60), hanging);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Act
+        first.cancel(true);
+        second.cancel(true);
+
+        // Assert
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals("ok", aiJobExecutor.call("openai", Duration.ofSeconds(5), () -> "ok"));
+    }
+
+    //================================================================//
+    //====================JOB BACK-PRESSURE===========================//
+    @Test
+    void executeJob_AllSlotsBusy_BlocksCaller() throws Exception {
+        // Arrange: fill the 4 job slots
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            aiJobExecutor.executeJob(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        // Act
+        CountDownLatch fifthStarted = new CountDownLatch(1);
+        Thread poller = Thread.ofPlatform().start(() -> aiJobExecutor.executeJob(fifthStarted::countDown));
+
+        // Assert
+        assertFalse(fifthStarted.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1.0, meterRegistry.get("ai.jobs.waiting").gauge().value());
+        release.countDown();
+        assertTrue(fifthStarted.await(5, TimeUnit.SECONDS));
+        poller.join(5_000);
+    }
+
+    @Test
+    void tryExecuteJob_AllSlotsBusy_ReturnsFalseWithoutBlocking() throws Exception {
+        // Arrange: fill the 4 job slots
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(aiJobExecutor.tryExecuteJob(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        // Act
+        AtomicInteger ran = new AtomicInteger();
+        boolean accepted = aiJobExecutor.tryExecuteJob(ran::incrementAndGet);
+
+        // Assert
+        assertFalse(accepted);
+        assertFalse(aiJobExecutor.hasFreeJobSlot());
+        release.countDown();
+        CountDownLatch started = new CountDownLatch(1);
+        aiJobExecutor.executeJob(started::countDown);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(0, ran.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private double gauge(String name, String provider) {
+        return gauge(name, "provider", provider);
+    }
+
+    private double gauge(String name, String tag, String value) {
+        Gauge gauge = meterRegistry.find(name).tag(tag, value).gauge();
+        return gauge == null ? 0 : gauge.value();
+    }
+}
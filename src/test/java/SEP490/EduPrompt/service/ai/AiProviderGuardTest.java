@@ -0,0 +1,175 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.exception.client.AiProviderException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiProviderGuardTest {
+
+    private static final String PROVIDER = "gemini";
+
+    private SimpleMeterRegistry meterRegistry;
+    private AiProviderGuard providerGuard;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        providerGuard = new AiProviderGuard(meterRegistry, new MockEnvironment());
+        ReflectionTestUtils.setField(providerGuard, "initialLimit", 4);
+        ReflectionTestUtils.setField(providerGuard, "maxLimit", 8);
+        ReflectionTestUtils.setField(providerGuard, "queueWaitMs", 50L);
+        ReflectionTestUtils.setField(providerGuard, "failureThreshold", 3);
+        ReflectionTestUtils.setField(providerGuard, "openDurationMs", 100L);
+    }
+
+    //================================================================//
+    //====================ADAPTIVE LIMIT==============================//
+    @Test
+    void call_OverloadThenSuccesses_CutsLimitThenGrowsItBack() throws Exception {
+        // Act: one 429-like failure halves the limit
+        assertThrows(RuntimeException.class, () -> providerGuard.call(PROVIDER, AiProviderGuardTest::timeout));
+        int afterOverload = providerGuard.currentLimit(PROVIDER);
+
+        // concurrent successes keep the limit saturated, so it grows again
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        for (int round = 0; round < 20; round++) {
+            CountDownLatch allIn = new CountDownLatch(2);
+            Future<?> a = callers.submit(() -> providerGuard.call(PROVIDER, () -> holdUntil(allIn)));
+            Future<?> b = callers.submit(() -> providerGuard.call(PROVIDER, () -> holdUntil(allIn)));
+            a.get(5, TimeUnit.SECONDS);
+            b.get(5, TimeUnit.SECONDS);
+        }
+        callers.shutdown();
+
+        // Assert
+        assertEquals(2, afterOverload);
+        assertTrue(providerGuard.currentLimit(PROVIDER) > afterOverload);
+        assertTrue(providerGuard.currentLimit(PROVIDER) <= 8);
+    }
+
+    @Test
+    void callStreaming_LongStreamWithFastFirstChunk_NotSlow() {
+        // Arrange
+        ReflectionTestUtils.setField(providerGuard, "latencyThresholdMs", 20L);
+
+        // Act: first chunk right away, the rest of the answer takes longer than the threshold
+        String streamed = providerGuard.callStreaming(PROVIDER, firstChunk -> {
+            firstChunk.run();
+            sleep(60);
+            return "ok";
+        });
+        int afterStream = providerGuard.currentLimit(PROVIDER);
+        providerGuard.call(PROVIDER, () -> {
+            sleep(60);
+            return "ok";
+        });
+
+        // Assert: only the plain call counted as slow
+        assertEquals("ok", streamed);
+        assertEquals(4, afterStream);
+        assertEquals(2, providerGuard.currentLimit(PROVIDER));
+    }
+
+    @Test
+    void call_LimitReached_WaitsThenFailsFast() throws Exception {
+        // Arrange: 4 calls hold every permit
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            callers.submit(() -> providerGuard.call(PROVIDER, () -> {
+                started.incrementAndGet();
+                await(release);
+                return "ok";
+            }));
+        }
+        while (started.get() < 4) {
+            Thread.sleep(5);
+        }
+
+        // Act + Assert
+        assertThrows(AiProviderException.class, () -> providerGuard.call(PROVIDER, () -> "late"));
+        assertEquals(1.0, meterRegistry.get("ai.limiter.rejected")
+                .tag("provider", PROVIDER).tag("reason", "queue_timeout").counter().count());
+        release.countDown();
+        callers.shutdown();
+        assertTrue(callers.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals("ok", providerGuard.call(PROVIDER, () -> "ok"));
+    }
+
+    //================================================================//
+    //====================CIRCUIT BREAKER=============================//
+    @Test
+    void call_ConsecutiveOverloads_OpensBreakerAndProbeClosesIt() throws Exception {
+        // Arrange
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RuntimeException.class, () -> providerGuard.call(PROVIDER, () -> {
+                upstreamCalls.incrementAndGet();
+                return timeout();
+            }));
+        }
+
+        // Act + Assert: open, upstream not called
+        assertEquals(AiProviderGuard.BreakerState.OPEN, providerGuard.breakerState(PROVIDER));
+        assertThrows(AiProviderException.class, () -> providerGuard.call(PROVIDER, () -> {
+            upstreamCalls.incrementAndGet();
+            return "ok";
+        }));
+        assertEquals(3, upstreamCalls.get());
+
+        // after open-duration a successful probe closes it
+        Thread.sleep(150);
+        assertEquals("ok", providerGuard.call(PROVIDER, () -> "ok"));
+        assertEquals(AiProviderGuard.BreakerState.CLOSED, providerGuard.breakerState(PROVIDER));
+    }
+
+    @Test
+    void call_ClientError_DoesNotTripBreaker() {
+        // Act
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IllegalArgumentException.class, () -> providerGuard.call(PROVIDER, () -> {
+                throw new IllegalArgumentException("bad request");
+            }));
+        }
+
+        // Assert
+        assertEquals(AiProviderGuard.BreakerState.CLOSED, providerGuard.breakerState(PROVIDER));
+        assertEquals(4, providerGuard.currentLimit(PROVIDER));
+    }
+
+    private static String timeout() {
+        throw new RuntimeException("read timed out", new SocketTimeoutException());
+    }
+
+    private static String holdUntil(CountDownLatch allIn) {
+        allIn.countDown();
+        await(allIn);
+        return "ok";
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
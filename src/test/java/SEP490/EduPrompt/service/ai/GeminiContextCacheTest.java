@@ -0,0 +1,204 @@
+package SEP490.EduPrompt.service.ai;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeminiContextCacheTest {
+
+    private static final String MODEL = "gemini-test";
+    private static final String RUBRIC = "Đánh giá mức độ rõ ràng của chỉ dẫn cho giáo viên Toán lớp 10. ".repeat(80);
+    private static final GeminiContextCache.Prefix PREFIX = new GeminiContextCache.Prefix(RUBRIC, null, true);
+
+    private final List<String> created = new ArrayList<>();
+    private MutableClock clock;
+    private SimpleMeterRegistry meterRegistry;
+    private GeminiContextCache contextCache;
+    private boolean failing;
+    private final CountDownLatch creating = new CountDownLatch(1);
+    private volatile CountDownLatch release;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2026-01-01T08:00:00Z"));
+        meterRegistry = new SimpleMeterRegistry();
+        contextCache = new GeminiContextCache(null, meterRegistry);
+        // stands in for the Gemini caches API
+        GeminiContextCache.Backend backend = (model, prefix, ttl) -> {
+            CountDownLatch blockedUntil = release;
+            if (blockedUntil != null) {
+                creating.countDown();
+                blockedUntil.await(5, TimeUnit.SECONDS);
+            }
+            if (failing) {
+                throw new IllegalStateException("Gemini unavailable");
+            }
+            synchronized (created) {
+                String name = "cachedContents/" + (created.size() + 1);
+                created.add(name);
+                return name;
+            }
+        };
+        ReflectionTestUtils.setField(contextCache, "backend", backend);
+        ReflectionTestUtils.setField(contextCache, "clock", clock);
+    }
+
+    //================================================================//
+    //====================CREATION AND REUSE==========================//
+    @Test
+    void lookup_SamePrefix_CreatedOnceThenReused() {
+        // Act
+        Optional<String> first = contextCache.lookup(MODEL, PREFIX);
+        Optional<String> second = contextCache.lookup(MODEL, new GeminiContextCache.Prefix(RUBRIC, null, true));
+
+        // Assert
+        assertEquals(Optional.of("cachedContents/1"), first);
+        assertEquals(first, second);
+        assertEquals(1, created.size());
+        assertEquals(1.0, count("created"));
+        assertEquals(1.0, count("hit"));
+    }
+
+    @Test
+    void lookup_OtherModelOrPrefix_SeparateCaches() {
+        // Act
+        contextCache.lookup(MODEL, PREFIX);
+        contextCache.lookup("gemini-other", PREFIX);
+        contextCache.lookup(MODEL, new GeminiContextCache.Prefix(RUBRIC, null, false));
+
+        // Assert
+        assertEquals(3, created.size());
+    }
+
+    @Test
+    void lookup_SmallPrefix_SentInline() {
+        // Act
+        Optional<String> name = contextCache.lookup(MODEL, new GeminiContextCache.Prefix("Bạn là giáo viên.", null, true));
+
+        // Assert
+        assertTrue(name.isEmpty());
+        assertTrue(created.isEmpty());
+        assertEquals(1.0, count("skipped"));
+    }
+
+    @Test
+    void lookup_Disabled_SentInline() {
+        // Arrange
+        ReflectionTestUtils.setField(contextCache, "enabled", false);
+
+        // Act + Assert
+        assertTrue(contextCache.lookup(MODEL, PREFIX).isEmpty());
+        assertTrue(created.isEmpty());
+    }
+
+    @Test
+    void lookup_WhileCreating_OtherCallersSendInlineWithoutWaiting() throws Exception {
+        // Arrange: the first caller is stuck in the create call
+        CountDownLatch slowCreate = new CountDownLatch(1);
+        release = slowCreate;
+        CompletableFuture<Optional<String>> first =
+                CompletableFuture.supplyAsync(() -> contextCache.lookup(MODEL, PREFIX));
+        assertTrue(creating.await(5, TimeUnit.SECONDS));
+
+        // Act
+        Optional<String> sameKey = contextCache.lookup(MODEL, PREFIX);
+        release = null;
+        Optional<String> otherKey = contextCache.lookup("gemini-other", PREFIX);
+
+        // Assert
+        assertTrue(sameKey.isEmpty());
+        assertTrue(otherKey.isPresent());
+        assertFalse(first.isDone());
+        slowCreate.countDown();
+        assertEquals(Optional.of("cachedContents/2"), first.get(5, TimeUnit.SECONDS));
+        assertEquals(2, created.size());
+        assertEquals(1.0, count("pending"));
+    }
+
+    //================================================================//
+    //====================EXPIRY======================================//
+    @Test
+    void lookup_AfterRefreshTime_Recreated() {
+        // Arrange: 60 min TTL, refreshed 5 min before it ends
+        contextCache.lookup(MODEL, PREFIX);
+
+        // Act
+        clock.advance(Duration.ofMinutes(54));
+        Optional<String> beforeRefresh = contextCache.lookup(MODEL, PREFIX);
+        clock.advance(Duration.ofMinutes(1));
+        Optional<String> afterRefresh = contextCache.lookup(MODEL, PREFIX);
+
+        // Assert
+        assertEquals(Optional.of("cachedContents/1"), beforeRefresh);
+        assertEquals(Optional.of("cachedContents/2"), afterRefresh);
+        assertEquals(2.0, count("created"));
+    }
+
+    @Test
+    void lookup_CreationFails_InlineUntilRetryAfter() {
+        // Arrange
+        failing = true;
+        assertTrue(contextCache.lookup(MODEL, PREFIX).isEmpty());
+        failing = false;
+
+        // Act
+        clock.advance(Duration.ofMinutes(29));
+        Optional<String> duringBackoff = contextCache.lookup(MODEL, PREFIX);
+        clock.advance(Duration.ofMinutes(1));
+        Optional<String> afterBackoff = contextCache.lookup(MODEL, PREFIX);
+
+        // Assert
+        assertTrue(duringBackoff.isEmpty());
+        assertEquals(Optional.of("cachedContents/1"), afterBackoff);
+        assertEquals(1.0, count("failed"));
+        assertEquals(0.0, count("hit"));
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.find("ai.context_cache").tag("outcome", outcome).counters().stream()
+                .mapToDouble(counter -> counter.count()).sum();
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.util.TextFingerprintUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OptimizationDedupIndexTest {
+
+    private static final String SCOPE = "scope-hash";
+    private static final Duration TTL = Duration.ofHours(24);
+    private static final String PROMPT = "Bạn là giáo viên Toán. Hãy tạo một giáo án chi tiết về phương trình bậc hai "
+            + "cho học sinh lớp 10, gồm phần khởi động, hình thành kiến thức, luyện tập và vận dụng, "
+            + "kèm theo năm câu hỏi trắc nghiệm để kiểm tra cuối tiết.";
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    // in-memory stand-in for the Redis keys the index uses
+    private final Map<String, String> values = new HashMap<>();
+    private final Map<String, Set<String>> sets = new HashMap<>();
+    private SimpleMeterRegistry meterRegistry;
+    private OptimizationDedupIndex dedupIndex;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        dedupIndex = new OptimizationDedupIndex(redisTemplate, meterRegistry);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        lenient().doAnswer(invocation -> values.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(valueOperations).set(anyString(), anyString(), any(Duration.class));
+        lenient().when(valueOperations.multiGet(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(0);
+            return keys.stream().map(values::get).toList();
+        });
+        lenient().doAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+            Set<String> members = sets.computeIfAbsent((String) arguments[0], k -> new HashSet<>());
+            for (int i = 1; i < arguments.length; i++) {
+                if (arguments[i] instanceof String[] array) {
+                    members.addAll(Arrays.asList(array));
+                } else {
+                    members.add((String) arguments[i]);
+                }
+            }
+            return 1L;
+        }).when(setOperations).add(anyString(), any(String[].class));
+        lenient().when(setOperations.members(anyString()))
+                .thenAnswer(invocation -> sets.get(invocation.<String>getArgument(0)));
+    }
+
+    //================================================================//
+    //====================NORMALIZATION===============================//
+    @Test
+    void normalize_WhitespaceCaseAndPunctuationVariants_SameText() {
+        // Act
+        String a = TextFingerprintUtil.normalize("Tạo  bài tập,  phương trình bậc hai!");
+        String b = TextFingerprintUtil.normalize("tạo bài tập phương trình bậc hai\n");
+
+        // Assert
+        assertEquals(a, b);
+    }
+
+    //================================================================//
+    //====================NEAR-DUPLICATE LOOKUP=======================//
+    @Test
+    void findSimilar_OneWordChanged_ReturnsIndexedKey() {
+        // Arrange
+        dedupIndex.index(SCOPE, TextFingerprintUtil.normalize(PROMPT), "opt:original", TTL);
+        String edited = PROMPT.replace("chi tiết", "đầy đủ");
+
+        // Act
+        String found = dedupIndex.findSimilar(SCOPE, TextFingerprintUtil.normalize(edited));
+
+        // Assert
+        assertEquals("opt:original", found);
+        assertEquals(1.0, meterRegistry.get("optimization.near_duplicate").tag("outcome", "hit").counter().count());
+    }
+
+    @Test
+    void findSimilar_UnrelatedPrompt_ReturnsNull() {
+        // Arrange
+        dedupIndex.index(SCOPE, TextFingerprintUtil.normalize(PROMPT), "opt:original", TTL);
+
+        // Act
+        String found = dedupIndex.findSimilar(SCOPE, TextFingerprintUtil.normalize(
+                "Viết một bài văn nghị luận về tác phẩm Chí Phèo cho học sinh lớp 11 với dàn ý ba phần."));
+
+        // Assert
+        assertNull(found);
+    }
+
+    @Test
+    void findSimilar_DifferentNumbers_NeverReused() {
+        // Arrange
+        dedupIndex.index(SCOPE, TextFingerprintUtil.normalize(PROMPT), "opt:original", TTL);
+
+        // Act
+        String found = dedupIndex.findSimilar(SCOPE, TextFingerprintUtil.normalize(PROMPT.replace("lớp 10", "lớp 11")));
+
+        // Assert
+        assertNull(found);
+    }
+
+    @Test
+    void findSimilar_OtherScope_ReturnsNull() {
+        // Arrange
+        dedupIndex.index(SCOPE, TextFingerprintUtil.normalize(PROMPT), "opt:original", TTL);
+
+        // Act + Assert
+        assertNull(dedupIndex.findSimilar("other-mode", TextFingerprintUtil.normalize(PROMPT)));
+    }
+
+    @Test
+    void findSimilar_CandidateOfOtherScopeInSameBucket_NotReturned() {
+        // Arrange: another scope's entry sits in this scope's buckets (a bucket key collision)
+        dedupIndex.index(SCOPE, TextFingerprintUtil.normalize(PROMPT), "opt:original", TTL);
+        String otherScope = values.get("opt:sig:opt:original").replaceFirst("^[^|]*", "other-scope-hash");
+        values.put("opt:sig:opt:other", otherScope);
+        sets.values().forEach(members -> members.add("opt:other"));
+        values.remove("opt:sig:opt:original");
+
+        // Act
+        String found = dedupIndex.findSimilar(SCOPE, TextFingerprintUtil.normalize(PROMPT));
+
+        // Assert
+        assertNull(found);
+    }
+
+    @Test
+    void findSimilar_ThresholdAboveSimilarity_ReturnsNull() {
+        // Arrange
+        ReflectionTestUtils.setField(dedupIndex, "similarityThreshold", 0.99);
+        dedupIndex.index(SCOPE, TextFingerprintUtil.normalize(PROMPT), "opt:original", TTL);
+
+        // Act
+        String found = dedupIndex.findSimilar(SCOPE, TextFingerprintUtil.normalize(
+                PROMPT.replace("chi tiết", "đầy đủ")));
+
+        // Assert
+        assertNull(found);
+        verify(valueOperations).multiGet(anyCollection());
+    }
+}
@@ -0,0 +1,241 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.dto.request.prompt.OptimizationRequest;
+import SEP490.EduPrompt.dto.response.curriculum.CurriculumContext;
+import SEP490.EduPrompt.dto.response.curriculum.CurriculumContextDetail;
+import SEP490.EduPrompt.dto.response.curriculum.DimensionScore;
+import SEP490.EduPrompt.dto.response.prompt.OptimizationResponse;
+import SEP490.EduPrompt.dto.response.prompt.PromptScoreResult;
+import SEP490.EduPrompt.enums.OptimizationMode;
+import SEP490.EduPrompt.enums.QuotaType;
+import SEP490.EduPrompt.exception.client.AiProviderException;
+import SEP490.EduPrompt.service.cache.NearCache;
+import SEP490.EduPrompt.service.cache.SingleFlight;
+import SEP490.EduPrompt.service.curriculum.CurriculumMatchingService;
+import SEP490.EduPrompt.service.prompt.PromptScoringService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PromptOptimizationServiceImplTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final UUID LESSON_ID = UUID.randomUUID();
+    private static final String PROMPT = "Tạo bài tập về phương trình bậc hai cho lớp 10";
+    private static final String OPTIMIZED = "Bạn là giáo viên Toán. Tạo 5 bài tập về phương trình bậc hai cho lớp 10, "
+            + "trình bày dạng bảng.";
+
+    @Mock
+    private QuotaService quotaService;
+
+    @Mock
+    private PromptScoringService scoringService;
+
+    @Mock
+    private CurriculumMatchingService curriculumService;
+
+    @Mock
+    private AiClientService geminiService;
+
+    @Mock
+    private SingleFlight singleFlight;
+
+    @Mock
+    private NearCache nearCache;
+
+    @Mock
+    private OptimizationDedupIndex dedupIndex;
+
+    @Mock
+    private Reservation reservation;
+
+    private SimpleMeterRegistry meterRegistry;
+    private AiJobExecutor aiJobExecutor;
+    private PromptOptimizationServiceImpl optimizationService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        aiJobExecutor = new AiJobExecutor(meterRegistry, new MockEnvironment(), 32);
+        optimizationService = new PromptOptimizationServiceImpl(quotaService, scoringService, curriculumService,
+                geminiService, null, null, null, null, null, null, null, null, null, singleFlight, nearCache,
+                dedupIndex, aiJobExecutor, meterRegistry);
+        // no cached result, every request computes
+        lenient().when(singleFlight.load(anyString(), eq(OptimizationResponse.class), any(Duration.class), any()))
+                .thenAnswer(invocation -> new SingleFlight.Flight<>(
+                        invocation.<Supplier<OptimizationResponse>>getArgument(3).get(), false));
+        lenient().when(quotaService.reserve(eq(USER_ID), eq(QuotaType.OPTIMIZATION), anyInt(), eq(true)))
+                .thenReturn(reservation);
+        lenient().when(curriculumService.getContextDetail(LESSON_ID)).thenReturn(new CurriculumContextDetail(
+                LESSON_ID, "Phương trình bậc hai", "Công thức nghiệm", 2, "Phương trình", 3, 1, 10, "Toán"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiJobExecutor.shutdown();
+    }
+
+    //================================================================//
+    //====================PIPELINE====================================//
+    @Test
+    void optimize_OriginalScoringOverlapsOptimizeBranch_SharesDetectedContext() {
+        // Arrange: the original scoring only finishes once the optimize call is running, so a sequential
+        // pipeline would never see them overlap
+        CurriculumContext detected = CurriculumContext.builder().subject("Toán").gradeLevel(10).build();
+        when(curriculumService.detectContext(PROMPT)).thenReturn(detected);
+        CountDownLatch optimizeStarted = new CountDownLatch(1);
+        AtomicBoolean overlapped = new AtomicBoolean();
+        when(scoringService.scorePrompt(eq(PROMPT), eq(LESSON_ID), any())).thenAnswer(invocation -> {
+            overlapped.set(optimizeStarted.await(5, TimeUnit.SECONDS));
+            return score(40.0);
+        });
+        when(scoringService.scorePrompt(OPTIMIZED, LESSON_ID)).thenReturn(score(75.0));
+        when(geminiService.optimizePrompt(eq(PROMPT), any(), contains("Phương trình bậc hai"), any(), any()))
+                .thenAnswer(invocation -> {
+                    optimizeStarted.countDown();
+                    return OPTIMIZED;
+                });
+
+        // Act
+        OptimizationResponse response = optimizationService.optimize(USER_ID, request());
+
+        // Assert
+        assertTrue(overlapped.get());
+        assertEquals(OPTIMIZED, response.optimizedPrompt());
+        assertEquals(35.0, response.improvement(), 0.001);
+        assertTrue(response.stageLatencyMs().keySet().containsAll(
+                List.of("detect_context", "original_score", "curriculum", "optimize", "optimized_score", "total")));
+        // one detection, handed to the original scoring instead of it detecting again
+        verify(curriculumService).detectContext(PROMPT);
+        verify(scoringService).scorePrompt(PROMPT, LESSON_ID, detected);
+        assertEquals(1, meterRegistry.get("optimization.stage").tag("stage", "optimize").timer().count());
+        verify(reservation).commit(AiClientService.DEFAULT_MAX_TOKEN);
+        verify(reservation, never()).release();
+    }
+
+    @Test
+    void optimize_OptimizeStageFails_DetachesFromOriginalScoringAndReleases() throws Exception {
+        // Arrange: the original scoring may be the single-flight leader of other requests, it runs until released
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch scoringFinished = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        when(scoringService.scorePrompt(eq(PROMPT), eq(LESSON_ID), any())).thenAnswer(invocation -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            scoringFinished.countDown();
+            return score(40.0);
+        });
+        when(geminiService.optimizePrompt(anyString(), any(), anyString(), any(), any()))
+                .thenThrow(new AiProviderException("Gemini unavailable"));
+
+        // Act
+        AiProviderException error = assertThrows(AiProviderException.class,
+                () -> optimizationService.optimize(USER_ID, request()));
+
+        // Assert: failed without waiting for the scoring, which then completes uninterrupted
+        assertEquals("Gemini unavailable", error.getMessage());
+        assertEquals(1, scoringFinished.getCount());
+        release.countDown();
+        assertTrue(scoringFinished.await(5, TimeUnit.SECONDS));
+        assertFalse(interrupted.get());
+        verify(scoringService, never()).scorePrompt(eq(OPTIMIZED), any());
+        verify(reservation).release();
+        verify(reservation, never()).commit(anyInt());
+    }
+
+    @Test
+    void optimize_SharedResult_BreakdownOnlyHasCache() {
+        // Arrange
+        OptimizationResponse stored = OptimizationResponse.builder()
+                .optimizedPrompt(OPTIMIZED)
+                .stageLatencyMs(Map.of("total", 900L))
+                .build();
+        when(singleFlight.load(anyString(), eq(OptimizationResponse.class), any(Duration.class), any()))
+                .thenReturn(new SingleFlight.Flight<>(stored, true));
+
+        // Act
+        OptimizationResponse response = optimizationService.optimize(USER_ID, request());
+
+        // Assert
+        assertEquals(OPTIMIZED, response.optimizedPrompt());
+        assertEquals(Map.of("cache", response.stageLatencyMs().get("cache")), response.stageLatencyMs());
+        verifyNoInteractions(scoringService, geminiService);
+        verify(reservation).release();
+        verify(reservation, never()).commit(anyInt());
+    }
+
+    @Test
+    void optimize_SharedResultOfDifferentlyFormattedPrompt_ReturnsCallersText() {
+        // Arrange: the same normalized key was first computed for another spelling of the prompt
+        OptimizationResponse stored = OptimizationResponse.builder()
+                .originalPrompt("TẠO bài tập về phương trình bậc hai, cho lớp 10!")
+                .optimizedPrompt(OPTIMIZED)
+                .build();
+        when(singleFlight.load(anyString(), eq(OptimizationResponse.class), any(Duration.class), any()))
+                .thenReturn(new SingleFlight.Flight<>(stored, true));
+
+        // Act
+        OptimizationResponse response = optimizationService.optimize(USER_ID, request());
+
+        // Assert
+        assertEquals(PROMPT, response.originalPrompt());
+        assertEquals(OPTIMIZED, response.optimizedPrompt());
+    }
+
+    @Test
+    void optimize_NearDuplicateReused_ReleasesReservation() {
+        // Arrange: no exact match, but a cached result of an almost identical prompt
+        OptimizationResponse similar = OptimizationResponse.builder().optimizedPrompt(OPTIMIZED).build();
+        when(dedupIndex.findSimilar(anyString(), anyString())).thenReturn("opt:similar");
+        when(nearCache.get("opt:similar", OptimizationResponse.class)).thenReturn(similar);
+
+        // Act
+        OptimizationResponse response = optimizationService.optimize(USER_ID, request());
+
+        // Assert
+        assertEquals(OPTIMIZED, response.optimizedPrompt());
+        verifyNoInteractions(scoringService, geminiService);
+        verify(reservation).release();
+        verify(reservation, never()).commit(anyInt());
+    }
+
+    private static OptimizationRequest request() {
+        return new OptimizationRequest(null, PROMPT, null, LESSON_ID, OptimizationMode.values()[0], null);
+    }
+
+    private static PromptScoreResult score(double overall) {
+        DimensionScore dimension = DimensionScore.builder().score(overall).maxScore(100.0).isSuccess(true).build();
+        return PromptScoreResult.builder()
+                .overallScore(overall)
+                .instructionClarity(dimension)
+                .contextCompleteness(dimension)
+                .outputSpecification(dimension)
+                .constraintStrength(dimension)
+                .curriculumAlignment(dimension)
+                .pedagogicalQuality(dimension)
+                .weaknesses(Map.of())
+                .build();
+    }
+}
@@ -0,0 +1,362 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.dto.request.prompt.PromptTestBatchRequest;
+import SEP490.EduPrompt.dto.request.prompt.PromptTestRequest;
+import SEP490.EduPrompt.dto.response.prompt.ClientPromptResponse;
+import SEP490.EduPrompt.dto.response.prompt.PromptTestBatchResponse;
+import SEP490.EduPrompt.enums.AiModel;
+import SEP490.EduPrompt.enums.QueueStatus;
+import SEP490.EduPrompt.enums.QuotaType;
+import SEP490.EduPrompt.exception.client.AiProviderException;
+import SEP490.EduPrompt.exception.client.TooManyRequestsException;
+import SEP490.EduPrompt.model.Prompt;
+import SEP490.EduPrompt.model.PromptUsage;
+import SEP490.EduPrompt.repo.PromptRepository;
+import SEP490.EduPrompt.repo.PromptUsageRepository;
+import SEP490.EduPrompt.repo.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PromptTestingServiceImplTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final UUID PROMPT_ID = UUID.randomUUID();
+    private static final String IDEMPOTENCY_KEY = "key-1";
+    private static final String LOCK_KEY = "lock:" + PromptTestingServiceImpl.IDEMPOTENCY_KEY_PREFIX + IDEMPOTENCY_KEY;
+
+    @Mock
+    private QuotaService quotaService;
+
+    @Mock
+    private PromptRepository promptRepository;
+
+    @Mock
+    private PromptUsageRepository usageRepository;
+
+    @Mock
+    private AiClientService aiClientService;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PromptUsageService promptUsageService;
+
+    @Mock
+    private RedisJobQueue jobQueue;
+
+    @Mock
+    private Reservation reservation;
+
+    private final Prompt prompt = Prompt.builder().id(PROMPT_ID).build();
+    private AiJobExecutor aiJobExecutor;
+    private PromptTestingServiceImpl testingService;
+
+    @BeforeEach
+    void setUp() {
+        // one job slot, so a single running job saturates the executor
+        aiJobExecutor = new AiJobExecutor(new SimpleMeterRegistry(), new MockEnvironment(), 1);
+        testingService = new PromptTestingServiceImpl(quotaService, promptRepository, usageRepository,
+                aiClientService, redisTemplate, new ObjectMapper().findAndRegisterModules(), userRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), promptUsageService, jobQueue,
+                aiJobExecutor);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        lenient().when(usageRepository.findByIdempotencyKey(anyString())).thenReturn(Optional.empty());
+        lenient().when(promptRepository.findById(PROMPT_ID)).thenReturn(Optional.of(prompt));
+        lenient().when(quotaService.reserve(eq(USER_ID), eq(QuotaType.TEST), anyInt(), eq(true)))
+                .thenReturn(reservation);
+        lenient().when(usageRepository.findByBatchIdOrderByCreatedAtAsc(any())).thenReturn(List.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiJobExecutor.shutdown();
+    }
+
+    //================================================================//
+    //====================STREAMING TEST==============================//
+    @Test
+    void testPromptStream_NoFreeJobSlot_TooManyRequestsAndReservationReleased() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        assertTrue(aiJobExecutor.tryExecuteJob(() -> {
+            running.countDown();
+            awaitQuietly(release);
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        try {
+            // Act + Assert
+            assertThrows(TooManyRequestsException.class,
+                    () -> testingService.testPromptStream(USER_ID, request(), IDEMPOTENCY_KEY));
+            verify(reservation).release();
+            verify(reservation, never()).commit(anyInt());
+            verify(redisTemplate).delete(LOCK_KEY);
+            verifyNoInteractions(aiClientService);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testPromptStream_ProviderFailsMidStream_ReservationReleasedAndNothingSaved() {
+        // Arrange
+        when(aiClientService.streamTestPrompt(eq(prompt), eq(AiModel.GPT_4O_MINI), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    invocation.<Consumer<String>>getArgument(6).accept("partial");
+                    throw new AiProviderException("connection reset");
+                });
+
+        // Act
+        testingService.testPromptStream(USER_ID, request(), IDEMPOTENCY_KEY);
+
+        // Assert
+        verify(reservation, timeout(5000)).release();
+        verify(redisTemplate, timeout(5000)).delete(LOCK_KEY);
+        verify(reservation, never()).commit(anyInt());
+        verifyNoInteractions(promptUsageService);
+    }
+
+    @Test
+    void testPromptStream_LastChunkReportsUsage_CommitsThatUsage() {
+        // Arrange
+        when(aiClientService.streamTestPrompt(eq(prompt), eq(AiModel.GPT_4O_MINI), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    Consumer<String> onChunk = invocation.getArgument(6);
+                    onChunk.accept("Hello ");
+                    onChunk.accept("world");
+                    // usage arrives with the last chunk
+                    return response("Hello world", 137);
+                });
+        when(promptUsageService.saveUsage(eq(USER_ID), eq(prompt), any(), any(), anyInt(), anyLong(),
+                eq(IDEMPOTENCY_KEY))).thenReturn(savedUsage(137));
+
+        // Act
+        testingService.testPromptStream(USER_ID, request(), IDEMPOTENCY_KEY);
+
+        // Assert
+        verify(reservation, timeout(5000)).commit(137);
+        verify(promptUsageService, timeout(5000)).saveUsage(eq(USER_ID), eq(prompt), any(), any(), eq(137),
+                anyLong(), eq(IDEMPOTENCY_KEY));
+        verify(redisTemplate, timeout(5000)).delete(LOCK_KEY);
+        verify(reservation, never()).release();
+    }
+
+    @Test
+    void testPromptStream_ProviderReportsNoUsage_ChargesReservedTokens() {
+        // Arrange
+        when(reservation.getReservedTokens()).thenReturn(500);
+        when(aiClientService.streamTestPrompt(eq(prompt), eq(AiModel.GPT_4O_MINI), any(), any(), any(), any(), any()))
+                .thenReturn(response("Hello world", null));
+        when(promptUsageService.saveUsage(eq(USER_ID), eq(prompt), any(), any(), anyInt(), anyLong(),
+                eq(IDEMPOTENCY_KEY))).thenReturn(savedUsage(500));
+
+        // Act
+        testingService.testPromptStream(USER_ID, request(), IDEMPOTENCY_KEY);
+
+        // Assert
+        verify(reservation, timeout(5000)).commit(500);
+        verify(reservation, never()).release();
+    }
+
+    //================================================================//
+    //====================MULTI-MODEL TEST============================//
+    @Test
+    void testPromptAcrossModels_EveryModelAnswers_OneReservationPerModelEachCommittedWithItsUsage() {
+        // Arrange
+        Reservation gptReservation = mock(Reservation.class);
+        Reservation geminiReservation = mock(Reservation.class);
+        when(quotaService.reserve(USER_ID, QuotaType.TEST, 500, true))
+                .thenReturn(gptReservation, geminiReservation);
+        when(aiClientService.testPrompt(eq(prompt), eq(AiModel.GPT_4O_MINI), any(), any(), any(), any()))
+                .thenReturn(response("gpt answer", 120));
+        when(aiClientService.testPrompt(eq(prompt), eq(AiModel.GEMINI_2_5_FLASH), any(), any(), any(), any()))
+                .thenReturn(response("gemini answer", 80));
+        stubBatchSave();
+
+        // Act
+        PromptTestBatchResponse response = testingService.testPromptAcrossModels(USER_ID,
+                batchRequest(AiModel.GPT_4O_MINI, AiModel.GEMINI_2_5_FLASH, AiModel.GPT_4O_MINI), IDEMPOTENCY_KEY);
+
+        // Assert
+        verify(quotaService, times(2)).reserve(USER_ID, QuotaType.TEST, 500, true);
+        verify(gptReservation).commit(120);
+        verify(geminiReservation).commit(80);
+        verify(gptReservation, never()).release();
+        verify(geminiReservation, never()).release();
+        assertEquals(2, response.results().size());
+        assertEquals(200, response.totalTokensUsed());
+    }
+
+    @Test
+    void testPromptAcrossModels_OneModelFails_ItsReservationReleasedAndRowFailed() {
+        // Arrange
+        Reservation gptReservation = mock(Reservation.class);
+        Reservation geminiReservation = mock(Reservation.class);
+        when(quotaService.reserve(USER_ID, QuotaType.TEST, 500, true))
+                .thenReturn(gptReservation, geminiReservation);
+        when(aiClientService.testPrompt(eq(prompt), eq(AiModel.GPT_4O_MINI), any(), any(), any(), any()))
+                .thenReturn(response("gpt answer", 120));
+        when(aiClientService.testPrompt(eq(prompt), eq(AiModel.GEMINI_2_5_FLASH), any(), any(), any(), any()))
+                .thenThrow(new AiProviderException("quota exceeded upstream"));
+        List<PromptUsage> saved = stubBatchSave();
+
+        // Act
+        PromptTestBatchResponse response = testingService.testPromptAcrossModels(USER_ID,
+                batchRequest(AiModel.GPT_4O_MINI, AiModel.GEMINI_2_5_FLASH), IDEMPOTENCY_KEY);
+
+        // Assert
+        verify(gptReservation).commit(120);
+        verify(geminiReservation).release();
+        verify(geminiReservation, never()).commit(anyInt());
+        assertEquals(QueueStatus.COMPLETED.name(), saved.get(0).getStatus());
+        assertEquals(QueueStatus.FAILED.name(), saved.get(1).getStatus());
+        assertTrue(saved.get(1).getErrorMessage().contains("quota exceeded upstream"));
+        assertEquals(0, saved.get(1).getTokensUsed());
+        assertEquals(120, response.totalTokensUsed());
+    }
+
+    @Test
+    void testPromptAcrossModels_EveryModelFails_AllReleasedAndNothingSaved() {
+        // Arrange
+        when(aiClientService.testPrompt(eq(prompt), any(), any(), any(), any(), any()))
+                .thenThrow(new AiProviderException("provider down"));
+
+        // Act + Assert
+        assertThrows(AiProviderException.class, () -> testingService.testPromptAcrossModels(USER_ID,
+                batchRequest(AiModel.GPT_4O_MINI, AiModel.GEMINI_2_5_FLASH), IDEMPOTENCY_KEY));
+        verify(reservation, times(2)).release();
+        verify(reservation, never()).commit(anyInt());
+        verify(usageRepository, never()).saveAll(anyList());
+        verify(redisTemplate).delete(startsWith(PromptTestingServiceImpl.BATCH_LOCK_PREFIX));
+    }
+
+    @Test
+    void testPromptAcrossModels_RowsOfOneBatch_ShareTheBatchId() {
+        // Arrange
+        when(aiClientService.testPrompt(eq(prompt), any(), any(), any(), any(), any()))
+                .thenReturn(response("answer", 50));
+        List<PromptUsage> saved = stubBatchSave();
+
+        // Act
+        PromptTestBatchResponse response = testingService.testPromptAcrossModels(USER_ID,
+                batchRequest(AiModel.GPT_4O_MINI, AiModel.GEMINI_2_5_FLASH, AiModel.CLAUDE_3_5_SONNET),
+                IDEMPOTENCY_KEY);
+
+        // Assert
+        assertEquals(3, saved.size());
+        assertTrue(saved.stream().allMatch(usage -> response.batchId().equals(usage.getBatchId())));
+        assertEquals(3, saved.stream().map(PromptUsage::getIdempotencyKey).distinct().count());
+        assertTrue(saved.stream().allMatch(usage -> usage.getIdempotencyKey().startsWith(response.batchId() + ":")));
+    }
+
+    @Test
+    void testPromptAcrossModels_RetryWithSameKey_ReturnsStoredRowsWithoutReserving() {
+        // Arrange
+        UUID batchId = UUID.nameUUIDFromBytes((USER_ID + ":" + IDEMPOTENCY_KEY).getBytes(StandardCharsets.UTF_8));
+        PromptUsage stored = savedUsage(90);
+        stored.setBatchId(batchId);
+        when(usageRepository.findByBatchIdOrderByCreatedAtAsc(batchId)).thenReturn(List.of(stored));
+
+        // Act
+        PromptTestBatchResponse response = testingService.testPromptAcrossModels(USER_ID,
+                batchRequest(AiModel.GPT_4O_MINI), IDEMPOTENCY_KEY);
+
+        // Assert
+        assertEquals(batchId, response.batchId());
+        assertEquals(90, response.totalTokensUsed());
+        verifyNoInteractions(quotaService, aiClientService);
+    }
+
+    //================================================================//
+    //====================HELPERS=====================================//
+    private PromptTestRequest request() {
+        return PromptTestRequest.builder()
+                .promptId(PROMPT_ID)
+                .aiModel(AiModel.GPT_4O_MINI)
+                .inputText("input")
+                .temperature(0.7)
+                .maxTokens(500)
+                .topP(1.0)
+                .build();
+    }
+
+    private PromptTestBatchRequest batchRequest(AiModel... models) {
+        return PromptTestBatchRequest.builder()
+                .promptId(PROMPT_ID)
+                .aiModels(List.of(models))
+                .inputText("input")
+                .temperature(0.7)
+                .maxTokens(500)
+                .topP(1.0)
+                .build();
+    }
+
+    // saveAll hands back the rows it was given, in order, and keeps them for the asserts
+    private List<PromptUsage> stubBatchSave() {
+        List<PromptUsage> saved = new ArrayList<>();
+        when(usageRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<PromptUsage> usages = invocation.getArgument(0);
+            saved.addAll(usages);
+            return usages;
+        });
+        return saved;
+    }
+
+    private ClientPromptResponse response(String content, Integer totalTokens) {
+        return ClientPromptResponse.builder().content(content).totalTokens(totalTokens).build();
+    }
+
+    private PromptUsage savedUsage(int tokensUsed) {
+        return PromptUsage.builder()
+                .id(UUID.randomUUID())
+                .promptId(PROMPT_ID)
+                .aiModel(AiModel.GPT_4O_MINI.getName())
+                .output("Hello world")
+                .tokensUsed(tokensUsed)
+                .status(QueueStatus.COMPLETED.name())
+                .build();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
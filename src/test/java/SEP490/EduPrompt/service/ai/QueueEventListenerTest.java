@@ -0,0 +1,208 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.dto.response.prompt.ClientPromptResponse;
+import SEP490.EduPrompt.enums.AiModel;
+import SEP490.EduPrompt.enums.JobStream;
+import SEP490.EduPrompt.enums.QueueStatus;
+import SEP490.EduPrompt.enums.QuotaType;
+import SEP490.EduPrompt.model.Prompt;
+import SEP490.EduPrompt.model.PromptUsage;
+import SEP490.EduPrompt.repo.*;
+import com.cloudinary.Cloudinary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QueueEventListenerTest {
+
+    private static final UUID USAGE_ID = UUID.randomUUID();
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final UUID PROMPT_ID = UUID.randomUUID();
+
+    @Mock
+    private OptimizationQueueRepository queueRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PromptUsageRepository usageRepository;
+
+    @Mock
+    private PromptRepository promptRepository;
+
+    @Mock
+    private AiSuggestionLogRepository suggestionRepository;
+
+    @Mock
+    private AiClientService aiClientService;
+
+    @Mock
+    private QuotaService quotaService;
+
+    @Mock
+    private Cloudinary cloudinary;
+
+    @Mock
+    private AttachmentRepository attachmentRepository;
+
+    @Mock
+    private RedisJobQueue jobQueue;
+
+    @Mock
+    private Reservation reservation;
+
+    private AiJobExecutor aiJobExecutor;
+    private QueueEventListener queueEventListener;
+
+    @BeforeEach
+    void setUp() {
+        aiJobExecutor = new AiJobExecutor(new SimpleMeterRegistry(), new MockEnvironment(), 4);
+        queueEventListener = new QueueEventListener(queueRepository, userRepository, usageRepository,
+                promptRepository, suggestionRepository, aiClientService, quotaService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), new ObjectMapper(), cloudinary,
+                attachmentRepository, jobQueue, aiJobExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiJobExecutor.shutdown();
+    }
+
+    //================================================================//
+    //====================LEASE (isClaimable)=========================//
+    @Test
+    void onTestQueued_RedeliveredWhileRowLeasedByLiveWorker_ThrowsSoJobStaysPending() {
+        // Arrange
+        PromptUsage usage = usage(QueueStatus.PROCESSING, Instant.now());
+        when(usageRepository.findById(USAGE_ID)).thenReturn(Optional.of(usage));
+
+        // Act + Assert
+        assertThrows(IllegalStateException.class, () -> queueEventListener.onTestQueued(USAGE_ID.toString(), true));
+        verify(usageRepository, never()).saveAndFlush(any());
+        verifyNoInteractions(quotaService, aiClientService);
+        assertEquals(QueueStatus.PROCESSING.name(), usage.getStatus());
+    }
+
+    @Test
+    void onTestQueued_RedeliveredAfterLeaseExpired_TakenOverAndCompleted() {
+        // Arrange
+        Instant staleUpdate = Instant.now().minus(JobStream.TEST.getVisibilityTimeout()).minusSeconds(1);
+        PromptUsage usage = usage(QueueStatus.PROCESSING, staleUpdate);
+        stubSuccessfulRun(usage);
+
+        // Act
+        queueEventListener.onTestQueued(USAGE_ID.toString(), true);
+
+        // Assert
+        verify(usageRepository).saveAndFlush(usage);
+        verify(reservation).commit(42);
+        assertEquals(QueueStatus.COMPLETED.name(), usage.getStatus());
+        assertEquals("answer", usage.getOutput());
+    }
+
+    @Test
+    void onTestQueued_FirstDeliveryFindsProcessingRow_SkippedAndAcked() {
+        // Arrange
+        PromptUsage usage = usage(QueueStatus.PROCESSING, Instant.now().minusSeconds(3600));
+        when(usageRepository.findById(USAGE_ID)).thenReturn(Optional.of(usage));
+
+        // Act
+        assertDoesNotThrow(() -> queueEventListener.onTestQueued(USAGE_ID.toString(), false));
+
+        // Assert
+        verify(usageRepository, never()).saveAndFlush(any());
+        verifyNoInteractions(quotaService, aiClientService);
+    }
+
+    @Test
+    void onTestQueued_RedeliveredCompletedRow_SkippedAndAcked() {
+        // Arrange
+        PromptUsage usage = usage(QueueStatus.COMPLETED, Instant.now());
+        when(usageRepository.findById(USAGE_ID)).thenReturn(Optional.of(usage));
+
+        // Act
+        assertDoesNotThrow(() -> queueEventListener.onTestQueued(USAGE_ID.toString(), true));
+
+        // Assert
+        verifyNoInteractions(quotaService, aiClientService);
+    }
+
+    //================================================================//
+    //====================PROCESSING==================================//
+    @Test
+    void onTestQueued_PendingRow_ProcessedAndCompleted() {
+        // Arrange
+        PromptUsage usage = usage(QueueStatus.PENDING, Instant.now());
+        stubSuccessfulRun(usage);
+
+        // Act
+        queueEventListener.onTestQueued(USAGE_ID.toString(), false);
+
+        // Assert
+        verify(quotaService).reserve(USER_ID, QuotaType.TEST, 100, true);
+        verify(reservation).commit(42);
+        verify(reservation, never()).release();
+        assertEquals(QueueStatus.COMPLETED.name(), usage.getStatus());
+        assertEquals(42, usage.getTokensUsed());
+    }
+
+    @Test
+    void onTestQueued_AiCallFails_ReservationReleasedAndRowFailedWithoutThrowing() {
+        // Arrange
+        PromptUsage usage = usage(QueueStatus.PENDING, Instant.now());
+        when(usageRepository.findById(USAGE_ID)).thenReturn(Optional.of(usage));
+        when(promptRepository.findById(PROMPT_ID)).thenReturn(Optional.of(Prompt.builder().id(PROMPT_ID).build()));
+        when(quotaService.reserve(USER_ID, QuotaType.TEST, 100, true)).thenReturn(reservation);
+        when(aiClientService.testPrompt(any(), eq(AiModel.GPT_4O_MINI), any(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("provider down"));
+
+        // Act
+        assertDoesNotThrow(() -> queueEventListener.onTestQueued(USAGE_ID.toString(), false));
+
+        // Assert
+        verify(reservation).release();
+        verify(reservation, never()).commit(anyInt());
+        assertEquals(QueueStatus.FAILED.name(), usage.getStatus());
+    }
+
+    //================================================================//
+    //====================HELPERS=====================================//
+    private void stubSuccessfulRun(PromptUsage usage) {
+        when(usageRepository.findById(USAGE_ID)).thenReturn(Optional.of(usage));
+        when(promptRepository.findById(PROMPT_ID)).thenReturn(Optional.of(Prompt.builder().id(PROMPT_ID).build()));
+        when(quotaService.reserve(USER_ID, QuotaType.TEST, 100, true)).thenReturn(reservation);
+        when(aiClientService.testPrompt(any(), eq(AiModel.GPT_4O_MINI), any(), any(), any(), any()))
+                .thenReturn(ClientPromptResponse.builder().content("answer").totalTokens(42).build());
+    }
+
+    private PromptUsage usage(QueueStatus status, Instant updatedAt) {
+        return PromptUsage.builder()
+                .id(USAGE_ID)
+                .userId(USER_ID)
+                .promptId(PROMPT_ID)
+                .aiModel(AiModel.GPT_4O_MINI.getName())
+                .inputText("input")
+                .maxTokens(100)
+                .status(status.name())
+                .updatedAt(updatedAt)
+                .build();
+    }
+}
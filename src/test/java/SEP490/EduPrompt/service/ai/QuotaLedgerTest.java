@@ -0,0 +1,506 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.enums.QuotaType;
+import SEP490.EduPrompt.exception.client.QuotaExceededException;
+import SEP490.EduPrompt.model.UserQuota;
+import SEP490.EduPrompt.repo.UserQuotaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QuotaLedgerTest {
+
+    private static final int THREADS = 32;
+    private static final int ATTEMPTS_PER_THREAD = 200;
+    private static final int TOKENS_PER_CALL = 7;
+
+    @Mock
+    private UserQuotaRepository userQuotaRepository;
+
+    @Mock
+    private SchoolTokenPool schoolTokenPool;
+
+    // stands in for the Redis balances every node shares
+    private final InMemoryBalanceStore balanceStore = new InMemoryBalanceStore();
+
+    private QuotaLedger quotaLedger;
+    private UUID userId;
+    private UUID schoolSubscriptionId;
+
+    @BeforeEach
+    void setUp() {
+        userId = UUID.randomUUID();
+        schoolSubscriptionId = UUID.randomUUID();
+        quotaLedger = new QuotaLedger(userQuotaRepository, schoolTokenPool, balanceStore);
+    }
+
+    //================================================================//
+    //====================CONCURRENCY (NO OVER-SPEND)=================//
+    @Test
+    void reserve_ConcurrentIndividual_NeverOverSpends() throws Exception {
+        // Arrange: 10_000 tokens, 5_000 test actions, far more attempts than the token pool allows
+        when(userQuotaRepository.findByUserId(userId))
+                .thenReturn(Optional.of(individualQuota(10_000, 5_000)));
+
+        // Act
+        int granted = hammer(() -> quotaLedger.reserve(userId, QuotaType.TEST, TOKENS_PER_CALL));
+
+        // Assert: token pool is the binding limit and every granted call is accounted for
+        assertEquals(10_000 / TOKENS_PER_CALL, granted);
+        QuotaLedger.Snapshot snapshot = quotaLedger.snapshot(userId).orElseThrow();
+        assertEquals(10_000 - granted * TOKENS_PER_CALL, snapshot.individualTokenRemaining());
+        assertEquals(5_000 - granted, snapshot.testingQuotaRemaining());
+        assertTrue(snapshot.individualTokenRemaining() >= 0);
+
+        // write-behind carries exactly the granted spend
+        quotaLedger.flush();
+        verify(userQuotaRepository).applyLedgerDelta(userId, granted * TOKENS_PER_CALL, granted, 0);
+    }
+
+    @Test
+    void reserve_TwoNodesSharingTheStore_NeverOverSpend() throws Exception {
+        // Arrange: two ledgers (two nodes) loaded from the same row
+        when(userQuotaRepository.findByUserId(userId))
+                .thenReturn(Optional.of(individualQuota(10_000, 5_000)));
+        QuotaLedger otherNode = new QuotaLedger(userQuotaRepository, schoolTokenPool, balanceStore);
+
+        // Act: both nodes drain the user at the same time
+        AtomicInteger turn = new AtomicInteger();
+        int granted = hammer(() -> (turn.getAndIncrement() % 2 == 0 ? quotaLedger : otherNode)
+                .reserve(userId, QuotaType.TEST, TOKENS_PER_CALL));
+
+        // Assert: the two nodes together grant what one balance allows, not twice as much
+        assertEquals(10_000 / TOKENS_PER_CALL, granted);
+        assertEquals(10_000 - granted * TOKENS_PER_CALL,
+                otherNode.snapshot(userId).orElseThrow().individualTokenRemaining());
+
+        // each node writes behind only its own spend, together exactly the granted spend
+        quotaLedger.flush();
+        otherNode.flush();
+        int[] written = new int[2];
+        for (var invocation : mockingDetails(userQuotaRepository).getInvocations()) {
+            if (invocation.getMethod().getName().equals("applyLedgerDelta")) {
+                written[0] += invocation.<Integer>getArgument(1);
+                written[1] += invocation.<Integer>getArgument(2);
+            }
+        }
+        assertEquals(granted * TOKENS_PER_CALL, written[0]);
+        assertEquals(granted, written[1]);
+    }
+
+    @Test
+    void reserve_SharedStoreDown_FallsBackToCachedBalance() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(1_000, 5)));
+        balanceStore.down = true;
+
+        // Act
+        quotaLedger.reserve(userId, QuotaType.TEST, 600);
+
+        // Assert: the node still enforces the limit on its own
+        assertThrows(QuotaExceededException.class, () -> quotaLedger.reserve(userId, QuotaType.TEST, 600));
+        assertEquals(400, quotaLedger.snapshot(userId).orElseThrow().individualTokenRemaining());
+    }
+
+    @Test
+    void evict_DropsSharedBalance() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(1_000, 5)));
+        quotaLedger.reserve(userId, QuotaType.TEST, 600);
+
+        // Act: subscription sync rebuilt the row
+        quotaLedger.evict(userId);
+        quotaLedger.reserve(userId, QuotaType.TEST, 600);
+
+        // Assert: re-seeded from the rebuilt row
+        assertEquals(400, quotaLedger.snapshot(userId).orElseThrow().individualTokenRemaining());
+    }
+
+    //================================================================//
+    //====================HOLD / SETTLE===============================//
+    @Test
+    void hold_CrashBeforeSettle_NothingWrittenBehind() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(1_000, 5)));
+
+        // Act
+        quotaLedger.hold(userId, QuotaType.TEST, 400, inFiveMinutes());
+        quotaLedger.flush();
+
+        // Assert: the hold is visible locally but never reaches the DB
+        assertEquals(600, quotaLedger.snapshot(userId).orElseThrow().individualTokenRemaining());
+        assertEquals(4, quotaLedger.snapshot(userId).orElseThrow().testingQuotaRemaining());
+        verify(userQuotaRepository, never()).applyLedgerDelta(eq(userId), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void settle_ChargesActualOnlyInOneWrite() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(1_000, 5)));
+
+        // Act
+        QuotaLedger.Charge charge = quotaLedger.hold(userId, QuotaType.TEST, 400, inFiveMinutes());
+        quotaLedger.settle(charge, 150);
+        quotaLedger.flush();
+
+        // Assert
+        verify(userQuotaRepository).applyLedgerDelta(userId, 150, 1, 0);
+        assertEquals(850, quotaLedger.snapshot(userId).orElseThrow().individualTokenRemaining());
+    }
+
+    @Test
+    void cancel_GivesTokensAndActionBack() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(1_000, 5)));
+
+        // Act
+        QuotaLedger.Charge charge = quotaLedger.hold(userId, QuotaType.TEST, 400, inFiveMinutes());
+        quotaLedger.cancel(charge);
+        quotaLedger.flush();
+
+        // Assert
+        QuotaLedger.Snapshot snapshot = quotaLedger.snapshot(userId).orElseThrow();
+        assertEquals(1_000, snapshot.individualTokenRemaining());
+        assertEquals(5, snapshot.testingQuotaRemaining());
+        verify(userQuotaRepository, never()).applyLedgerDelta(eq(userId), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void releaseExpiredHolds_NodeCrashedBeforeSettle_OtherNodeGivesHoldBack() {
+        // Arrange: a node holds and dies; the hold is past its deadline
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(1_000, 5)));
+        QuotaLedger crashedNode = new QuotaLedger(userQuotaRepository, schoolTokenPool, balanceStore);
+        crashedNode.hold(userId, QuotaType.TEST, 400, Instant.now().minusSeconds(1));
+        quotaLedger.hold(userId, QuotaType.TEST, 100, inFiveMinutes());
+
+        // Act
+        quotaLedger.releaseExpiredHolds();
+
+        // Assert: only the expired hold went back, the live one stays taken
+        QuotaBalanceStore.Balance shared = balanceStore.get(userId).orElseThrow();
+        assertEquals(900, shared.tokens());
+        assertEquals(4, shared.tests());
+    }
+
+    @Test
+    void settle_HoldAlreadySwept_ChargedAsPlainTake() {
+        // Arrange: the call outlived its hold and the sweep gave it back
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(1_000, 5)));
+        QuotaLedger.Charge charge = quotaLedger.hold(userId, QuotaType.TEST, 400, Instant.now().minusSeconds(1));
+        quotaLedger.releaseExpiredHolds();
+
+        // Act
+        quotaLedger.settle(charge, 150);
+        quotaLedger.flush();
+
+        // Assert: charged once, not given back a second time
+        verify(userQuotaRepository).applyLedgerDelta(userId, 150, 1, 0);
+        assertEquals(850, balanceStore.get(userId).orElseThrow().tokens());
+        assertEquals(4, balanceStore.get(userId).orElseThrow().tests());
+    }
+
+    //================================================================//
+    //====================SCHOOL POOL=================================//
+    @Test
+    void reserve_SchoolUser_SpendsSchoolPoolOnly() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(schoolQuota(userId)));
+        when(schoolTokenPool.take(schoolSubscriptionId, userId, 300)).thenReturn(true);
+
+        // Act
+        QuotaLedger.Charge charge = quotaLedger.reserve(userId, QuotaType.OPTIMIZATION, 300);
+        quotaLedger.refundTokens(userId, 100);
+        quotaLedger.flush();
+
+        // Assert: no action limit, nothing written to the teacher's own quota
+        assertEquals(schoolSubscriptionId, charge.schoolSubscriptionId());
+        verify(schoolTokenPool).give(schoolSubscriptionId, userId, 100);
+        verify(userQuotaRepository, never()).applyLedgerDelta(eq(userId), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void reserve_SchoolPoolExhausted_Throws() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(schoolQuota(userId)));
+        when(schoolTokenPool.take(schoolSubscriptionId, userId, 300)).thenReturn(false);
+        when(schoolTokenPool.available(schoolSubscriptionId)).thenReturn(120L);
+
+        // Act & Assert
+        assertThrows(QuotaExceededException.class,
+                () -> quotaLedger.reserve(userId, QuotaType.OPTIMIZATION, 300));
+    }
+
+    //================================================================//
+    //====================REFUND / WRITE-BEHIND=======================//
+    @Test
+    void refund_NetsAgainstPendingDelta() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(1_000, 5)));
+
+        // Act: reserve 500, use 120, refund the rest
+        quotaLedger.reserve(userId, QuotaType.TEST, 500);
+        quotaLedger.refundTokens(userId, 380);
+        quotaLedger.flush();
+
+        // Assert: one UPDATE with the net spend only
+        verify(userQuotaRepository).applyLedgerDelta(userId, 120, 1, 0);
+        assertEquals(880, quotaLedger.snapshot(userId).orElseThrow().individualTokenRemaining());
+    }
+
+    @Test
+    void refund_CappedAtIndividualLimit() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(1_000, 5)));
+
+        // Act
+        quotaLedger.reserve(userId, QuotaType.TEST, 100);
+        quotaLedger.refundTokens(userId, 10_000);
+        quotaLedger.refundAction(userId, QuotaType.TEST);
+
+        // Assert
+        QuotaLedger.Snapshot snapshot = quotaLedger.snapshot(userId).orElseThrow();
+        assertEquals(1_000, snapshot.individualTokenRemaining());
+        assertEquals(5, snapshot.testingQuotaRemaining());
+        quotaLedger.flush();
+        verify(userQuotaRepository, never()).applyLedgerDelta(eq(userId), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void flush_FailureKeepsDeltaForNextFlush() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(1_000, 5)));
+        when(userQuotaRepository.applyLedgerDelta(userId, 100, 1, 0))
+                .thenThrow(new RuntimeException("db down"))
+                .thenReturn(1);
+
+        // Act
+        quotaLedger.reserve(userId, QuotaType.TEST, 100);
+        quotaLedger.flush();
+        quotaLedger.flush();
+
+        // Assert: retried with the same delta, nothing lost
+        verify(userQuotaRepository, times(2)).applyLedgerDelta(userId, 100, 1, 0);
+    }
+
+    @Test
+    void reserve_ExpiredPeriod_ResetsAndFlushesWithReset() {
+        // Arrange
+        UserQuota quota = individualQuota(1_000, 5);
+        quota.setIndividualTokenRemaining(0);
+        quota.setTestingQuotaRemaining(0);
+        quota.setQuotaResetDate(Instant.now().minus(1, ChronoUnit.HOURS));
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(quota));
+
+        // Act
+        quotaLedger.reserve(userId, QuotaType.TEST, 200);
+        quotaLedger.flush();
+
+        // Assert
+        verify(userQuotaRepository).resetAndApplyLedgerDelta(eq(userId), eq(200), eq(1), eq(0), any(Instant.class));
+        assertEquals(800, quotaLedger.snapshot(userId).orElseThrow().individualTokenRemaining());
+    }
+
+    @Test
+    void reserve_InsufficientTokens_ThrowsAndTakesNothing() {
+        // Arrange
+        when(userQuotaRepository.findByUserId(userId)).thenReturn(Optional.of(individualQuota(100, 5)));
+
+        // Act & Assert
+        assertThrows(QuotaExceededException.class, () -> quotaLedger.reserve(userId, QuotaType.TEST, 101));
+        assertEquals(100, quotaLedger.snapshot(userId).orElseThrow().individualTokenRemaining());
+        quotaLedger.flush();
+        verifyNoInteractions(schoolTokenPool);
+    }
+
+    private int hammer(Runnable reserve) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger granted = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    try {
+                        reserve.run();
+                        granted.incrementAndGet();
+                    } catch (QuotaExceededException ignored) {
+                        // expected once the pool is drained
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        return granted.get();
+    }
+
+    private UserQuota individualQuota(int tokens, int tests) {
+        return UserQuota.builder()
+                .userId(userId)
+                .subscriptionTierId(UUID.randomUUID().toString())
+                .individualTokenLimit(tokens)
+                .individualTokenRemaining(tokens)
+                .testingQuotaLimit(tests)
+                .testingQuotaRemaining(tests)
+                .optimizationQuotaLimit(0)
+                .optimizationQuotaRemaining(0)
+                .quotaResetDate(Instant.now().plus(1, ChronoUnit.DAYS))
+                .build();
+    }
+
+    private UserQuota schoolQuota(UUID teacherId) {
+        return UserQuota.builder()
+                .userId(teacherId)
+                .schoolSubscriptionId(schoolSubscriptionId.toString())
+                .individualTokenLimit(0)
+                .individualTokenRemaining(0)
+                .testingQuotaLimit(0)
+                .testingQuotaRemaining(0)
+                .optimizationQuotaLimit(0)
+                .optimizationQuotaRemaining(0)
+                .quotaResetDate(Instant.now().plus(1, ChronoUnit.DAYS))
+                .build();
+    }
+
+    /**
+     * Same semantics as the Lua scripts of RedisQuotaBalanceStore
+     */
+    private static Instant inFiveMinutes() {
+        return Instant.now().plus(5, ChronoUnit.MINUTES);
+    }
+
+    private static class InMemoryBalanceStore implements QuotaBalanceStore {
+
+        private final Map<UUID, Balance> balances = new HashMap<>();
+        private final Map<UUID, Hold> holds = new HashMap<>();
+        volatile boolean down;
+
+        private record Hold(UUID userId, int tokens, int tests, int optimizations, Instant expiresAt) {
+        }
+
+        @Override
+        public synchronized Balance seed(UUID userId, Balance balance) {
+            checkUp();
+            return balances.computeIfAbsent(userId, id -> balance);
+        }
+
+        @Override
+        public synchronized Result take(UUID userId, int tokens, int tests, int optimizations, Instant now,
+                                        Instant nextResetDate) {
+            checkUp();
+            Balance current = balances.get(userId);
+            if (current == null) {
+                return null;
+            }
+            boolean rolledOver = current.resetDate() != null && now.isAfter(current.resetDate());
+            if (rolledOver) {
+                current = new Balance(current.tokenLimit(), current.testLimit(), current.optimizationLimit(),
+                        current.tokenLimit(), current.testLimit(), current.optimizationLimit(), nextResetDate);
+            }
+            boolean granted = current.tokens() >= tokens && current.tests() >= tests
+                    && current.optimizations() >= optimizations;
+            if (granted) {
+                current = new Balance(current.tokens() - tokens, current.tests() - tests,
+                        current.optimizations() - optimizations, current.tokenLimit(), current.testLimit(),
+                        current.optimizationLimit(), current.resetDate());
+            }
+            balances.put(userId, current);
+            return granted
+                    ? new Result(true, rolledOver, current, tokens, tests, optimizations)
+                    : new Result(false, rolledOver, current, 0, 0, 0);
+        }
+
+        @Override
+        public synchronized Result hold(UUID userId, UUID holdId, int tokens, int tests, int optimizations,
+                                        Instant now, Instant nextResetDate, Instant expiresAt) {
+            Result result = take(userId, tokens, tests, optimizations, now, nextResetDate);
+            if (result != null && result.granted()) {
+                holds.put(holdId, new Hold(userId, tokens, tests, optimizations, expiresAt));
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized Result settleHold(UUID userId, UUID holdId, int chargedTokens) {
+            checkUp();
+            Hold hold = holds.remove(holdId);
+            return hold == null ? null
+                    : give(userId, hold.tokens() - Math.min(Math.max(0, chargedTokens), hold.tokens()), 0, 0);
+        }
+
+        @Override
+        public synchronized Result releaseHold(UUID userId, UUID holdId) {
+            checkUp();
+            Hold hold = holds.remove(holdId);
+            return hold == null ? null : give(userId, hold.tokens(), hold.tests(), hold.optimizations());
+        }
+
+        @Override
+        public synchronized int releaseExpiredHolds(Instant now, int limit) {
+            checkUp();
+            List<UUID> due = holds.entrySet().stream()
+                    .filter(entry -> !entry.getValue().expiresAt().isAfter(now))
+                    .map(Map.Entry::getKey)
+                    .limit(limit)
+                    .toList();
+            due.forEach(holdId -> releaseHold(holds.get(holdId).userId(), holdId));
+            return due.size();
+        }
+
+        @Override
+        public synchronized Result give(UUID userId, int tokens, int tests, int optimizations) {
+            checkUp();
+            Balance current = balances.get(userId);
+            if (current == null) {
+                return null;
+            }
+            int givenTokens = Math.max(0, Math.min(current.tokens() + tokens, current.tokenLimit()) - current.tokens());
+            int givenTests = Math.max(0, Math.min(current.tests() + tests, current.testLimit()) - current.tests());
+            int givenOptimizations = Math.max(0, Math.min(current.optimizations() + optimizations,
+                    current.optimizationLimit()) - current.optimizations());
+            current = new Balance(current.tokens() + givenTokens, current.tests() + givenTests,
+                    current.optimizations() + givenOptimizations, current.tokenLimit(), current.testLimit(),
+                    current.optimizationLimit(), current.resetDate());
+            balances.put(userId, current);
+            return new Result(false, false, current, givenTokens, givenTests, givenOptimizations);
+        }
+
+        @Override
+        public synchronized Optional<Balance> get(UUID userId) {
+            checkUp();
+            return Optional.ofNullable(balances.get(userId));
+        }
+
+        @Override
+        public synchronized void remove(UUID userId) {
+            checkUp();
+            balances.remove(userId);
+        }
+
+        private void checkUp() {
+            if (down) {
+                throw new IllegalStateException("redis down");
+            }
+        }
+    }
+}
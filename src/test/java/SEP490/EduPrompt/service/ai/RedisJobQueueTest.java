@@ -0,0 +1,314 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.enums.JobStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RedisJobQueueTest {
+
+    private static final String KEY = JobStream.TEST.getKey();
+    private static final String GROUP = RedisJobQueue.CONSUMER_GROUP;
+    private static final Duration STALE = JobStream.TEST.getVisibilityTimeout().plusSeconds(1);
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private RedisConnectionFactory connectionFactory;
+
+    @Mock
+    private StreamOperations<String, Object, Object> streamOperations;
+
+    private AiJobExecutor aiJobExecutor;
+    private RedisJobQueue jobQueue;
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+    private final List<String> deadLettered = new CopyOnWriteArrayList<>();
+    private CountDownLatch handlerStarted;
+    private CountDownLatch releaseHandler;
+
+    @BeforeEach
+    void setUp() {
+        aiJobExecutor = new AiJobExecutor(new SimpleMeterRegistry(), new MockEnvironment(), 4);
+        jobQueue = new RedisJobQueue(redisTemplate, connectionFactory, aiJobExecutor);
+        handlerStarted = new CountDownLatch(1);
+        releaseHandler = new CountDownLatch(0);
+        jobQueue.register(JobStream.TEST, (payload, redelivered) -> {
+            handled.add(payload + (redelivered ? ":redelivered" : ""));
+            handlerStarted.countDown();
+            releaseHandler.await(5, TimeUnit.SECONDS);
+            if (payload.startsWith("fail")) {
+                throw new IllegalStateException("handler failed");
+            }
+        }, deadLettered::add);
+
+        lenient().when(redisTemplate.opsForStream()).thenReturn(streamOperations);
+        // no other consumers and nothing left to trim unless a test says otherwise
+        StreamInfo.XInfoConsumers consumers = mock(StreamInfo.XInfoConsumers.class);
+        lenient().when(consumers.stream()).thenAnswer(invocation -> Stream.empty());
+        lenient().when(streamOperations.consumers(KEY, GROUP)).thenReturn(consumers);
+        lenient().when(streamOperations.pending(KEY, GROUP))
+                .thenReturn(new PendingMessagesSummary(GROUP, 0, Range.unbounded(), Map.of()));
+        StreamInfo.XInfoGroups groups = mock(StreamInfo.XInfoGroups.class);
+        lenient().when(groups.stream()).thenAnswer(invocation -> Stream.empty());
+        lenient().when(streamOperations.groups(KEY)).thenReturn(groups);
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiJobExecutor.shutdown();
+    }
+
+    //================================================================//
+    //====================RECLAIM=====================================//
+    @Test
+    void reclaimStaleJobs_IdleLongerThanVisibilityTimeout_ClaimedHandledAndAcked() throws Exception {
+        // Arrange
+        RecordId id = RecordId.of("1-0");
+        stubPendingPages(page(pending(id, STALE, 1)));
+        stubClaim(id, "job-1");
+
+        // Act
+        jobQueue.reclaimStaleJobs();
+
+        // Assert
+        assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+        verify(streamOperations, timeout(5000)).acknowledge(KEY, GROUP, id);
+        assertEquals(List.of("job-1:redelivered"), handled);
+    }
+
+    @Test
+    void reclaimStaleJobs_HandlerThrows_JobLeftPending() throws Exception {
+        // Arrange
+        RecordId id = RecordId.of("1-0");
+        stubPendingPages(page(pending(id, STALE, 1)));
+        stubClaim(id, "fail-1");
+
+        // Act
+        jobQueue.reclaimStaleJobs();
+
+        // Assert
+        assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+        verify(streamOperations, after(300).never()).acknowledge(anyString(), anyString(), any(RecordId[].class));
+    }
+
+    @Test
+    void reclaimStaleJobs_IdleWithinVisibilityTimeout_NotClaimed() {
+        // Arrange
+        stubPendingPages(page(pending(RecordId.of("1-0"), Duration.ofSeconds(5), 1)));
+
+        // Act
+        jobQueue.reclaimStaleJobs();
+
+        // Assert
+        verify(streamOperations, never()).claim(anyString(), anyString(), anyString(), any(Duration.class),
+                any(RecordId[].class));
+        assertTrue(handled.isEmpty());
+    }
+
+    @Test
+    void reclaimStaleJobs_StaleJobBehindFullPageOfFreshOnes_ReachedOnNextPage() throws Exception {
+        // Arrange
+        List<PendingMessage> fresh = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            fresh.add(pending(RecordId.of("1000-" + i), Duration.ofSeconds(5), 1));
+        }
+        RecordId staleId = RecordId.of("2000-0");
+        stubPendingPages(page(fresh.toArray(PendingMessage[]::new)), page(pending(staleId, STALE, 1)));
+        stubClaim(staleId, "job-2");
+
+        // Act
+        jobQueue.reclaimStaleJobs();
+
+        // Assert
+        assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+        ArgumentCaptor<Range> ranges = ArgumentCaptor.forClass(Range.class);
+        verify(streamOperations, times(2)).pending(eq(KEY), eq(GROUP), ranges.capture(), eq(100L));
+        Range.Bound<?> nextPageStart = ranges.getAllValues().get(1).getLowerBound();
+        assertEquals("1000-100", nextPageStart.getValue().orElseThrow());
+        assertTrue(nextPageStart.isInclusive());
+        verify(streamOperations, timeout(5000)).acknowledge(KEY, GROUP, staleId);
+    }
+
+    //================================================================//
+    //====================DEAD LETTER=================================//
+    @Test
+    void reclaimStaleJobs_MaxDeliveriesReached_DeadLetteredAckedAndCallbackRun() {
+        // Arrange
+        RecordId id = RecordId.of("1-0");
+        stubPendingPages(page(pending(id, STALE, 3)));
+        when(streamOperations.range(eq(KEY), any(Range.class)))
+                .thenReturn(List.of(record(id, "job-3")));
+
+        // Act
+        jobQueue.reclaimStaleJobs();
+
+        // Assert
+        ArgumentCaptor<MapRecord> deadRecord = ArgumentCaptor.forClass(MapRecord.class);
+        verify(streamOperations).add(deadRecord.capture());
+        assertEquals(JobStream.TEST.getDeadLetterKey(), deadRecord.getValue().getStream());
+        assertEquals("job-3", deadRecord.getValue().getValue().get("payload"));
+        assertEquals("3", deadRecord.getValue().getValue().get("deliveries"));
+        verify(streamOperations).acknowledge(KEY, GROUP, id);
+        verify(streamOperations, never()).claim(anyString(), anyString(), anyString(), any(Duration.class),
+                any(RecordId[].class));
+        assertEquals(List.of("job-3"), deadLettered);
+        assertTrue(handled.isEmpty());
+    }
+
+    //================================================================//
+    //====================HEARTBEAT===================================//
+    @Test
+    void heartbeat_JobStillOwned_KeptAlive() throws Exception {
+        // Arrange
+        RecordId id = startBlockingJob();
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(id.getValue()));
+
+        // Act
+        jobQueue.heartbeat();
+        jobQueue.heartbeat();
+
+        // Assert
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), eq(List.of(KEY)),
+                eq(GROUP), eq(consumerName()), eq(id.getValue()));
+        releaseHandler.countDown();
+    }
+
+    @Test
+    void heartbeat_JobReclaimedByOtherNode_NotClaimedBack() throws Exception {
+        // Arrange
+        startBlockingJob();
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of());
+
+        // Act
+        jobQueue.heartbeat();
+        jobQueue.heartbeat();
+
+        // Assert
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+        releaseHandler.countDown();
+    }
+
+    //================================================================//
+    //====================CONSUMERS===================================//
+    @Test
+    void stop_NoPendingJobs_ConsumerDeleted() {
+        // Arrange
+        when(streamOperations.pending(eq(KEY), any(Consumer.class), any(Range.class), eq(1L)))
+                .thenReturn(new PendingMessages(GROUP, List.of()));
+
+        // Act
+        jobQueue.stop();
+
+        // Assert
+        verify(streamOperations).deleteConsumer(KEY, Consumer.from(GROUP, consumerName()));
+    }
+
+    @Test
+    void stop_PendingJobsLeft_ConsumerKept() {
+        // Arrange
+        when(streamOperations.pending(eq(KEY), any(Consumer.class), any(Range.class), eq(1L)))
+                .thenReturn(page(pending(RecordId.of("1-0"), Duration.ZERO, 1)));
+
+        // Act
+        jobQueue.stop();
+
+        // Assert
+        verify(streamOperations, never()).deleteConsumer(anyString(), any(Consumer.class));
+    }
+
+    @Test
+    void reclaimStaleJobs_IdleConsumersOfDeadNodes_OnlyEmptyOnesDeleted() {
+        // Arrange
+        stubPendingPages(page());
+        long longIdle = Duration.ofHours(2).toMillis();
+        StreamInfo.XInfoConsumer deadEmpty = consumer("node-dead", 0, longIdle);
+        StreamInfo.XInfoConsumer deadOwning = consumer("node-owning", 2, longIdle);
+        StreamInfo.XInfoConsumer recent = consumer("node-recent", 0, 1000);
+        StreamInfo.XInfoConsumer self = consumer(consumerName(), 0, longIdle);
+        StreamInfo.XInfoConsumers consumers = mock(StreamInfo.XInfoConsumers.class);
+        when(consumers.stream()).thenAnswer(invocation -> Stream.of(deadEmpty, deadOwning, recent, self));
+        when(streamOperations.consumers(KEY, GROUP)).thenReturn(consumers);
+
+        // Act
+        jobQueue.reclaimStaleJobs();
+
+        // Assert
+        verify(streamOperations).deleteConsumer(KEY, Consumer.from(GROUP, "node-dead"));
+        verify(streamOperations, times(1)).deleteConsumer(anyString(), any(Consumer.class));
+    }
+
+    //================================================================//
+    //====================HELPERS=====================================//
+    private RecordId startBlockingJob() throws InterruptedException {
+        releaseHandler = new CountDownLatch(1);
+        RecordId id = RecordId.of("1-0");
+        stubPendingPages(page(pending(id, STALE, 1)));
+        stubClaim(id, "job-long");
+        jobQueue.reclaimStaleJobs();
+        assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+        return id;
+    }
+
+    private void stubPendingPages(PendingMessages first, PendingMessages... rest) {
+        when(streamOperations.pending(eq(KEY), eq(GROUP), any(Range.class), eq(100L))).thenReturn(first, rest);
+    }
+
+    private void stubClaim(RecordId id, String payload) {
+        when(streamOperations.claim(eq(KEY), eq(GROUP), anyString(), any(Duration.class), any(RecordId[].class)))
+                .thenReturn(List.of(record(id, payload)));
+    }
+
+    private PendingMessages page(PendingMessage... messages) {
+        return new PendingMessages(GROUP, List.of(messages));
+    }
+
+    private PendingMessage pending(RecordId id, Duration idle, long deliveries) {
+        return new PendingMessage(id, Consumer.from(GROUP, "node-other"), idle, deliveries);
+    }
+
+    private MapRecord<String, Object, Object> record(RecordId id, String payload) {
+        return MapRecord.<String, Object, Object>create(KEY, Map.of("payload", payload)).withId(id);
+    }
+
+    private StreamInfo.XInfoConsumer consumer(String name, long pendingCount, long idleMs) {
+        StreamInfo.XInfoConsumer consumer = mock(StreamInfo.XInfoConsumer.class);
+        lenient().when(consumer.consumerName()).thenReturn(name);
+        lenient().when(consumer.pendingCount()).thenReturn(pendingCount);
+        lenient().when(consumer.idleTimeMs()).thenReturn(idleMs);
+        return consumer;
+    }
+
+    private String consumerName() {
+        return (String) ReflectionTestUtils.getField(jobQueue, "consumerName");
+    }
+}
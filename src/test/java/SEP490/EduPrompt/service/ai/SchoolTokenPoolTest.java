@@ -0,0 +1,205 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.model.SchoolSubscription;
+import SEP490.EduPrompt.repo.SchoolSubscriptionRepository;
+import SEP490.EduPrompt.repo.SchoolTokenLeaseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SchoolTokenPoolTest {
+
+    private static final int THREADS = 32;
+    private static final int ATTEMPTS_PER_THREAD = 200;
+    private static final int TOKENS_PER_CALL = 7;
+
+    @Mock
+    private SchoolSubscriptionRepository schoolSubscriptionRepository;
+
+    @Mock
+    private SchoolTokenLeaseRepository leaseRepository;
+
+    private SchoolTokenPool schoolTokenPool;
+
+    private UUID schoolSubscriptionId;
+    // unleased tokens of the school row, mutated by the mocked lease/release queries
+    private AtomicInteger schoolRow;
+
+    @BeforeEach
+    void setUp() {
+        schoolTokenPool = new SchoolTokenPool(schoolSubscriptionRepository, leaseRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        schoolSubscriptionId = UUID.randomUUID();
+        schoolRow = new AtomicInteger();
+    }
+
+    //================================================================//
+    //====================CONCURRENCY (NO OVER-SPEND)=================//
+    @Test
+    void take_ConcurrentTeachers_NeverOverSpends() throws Exception {
+        // Arrange: small lease chunk so shards run dry and have to lease / steal repeatedly
+        ReflectionTestUtils.setField(schoolTokenPool, "leaseChunk", 300);
+        stubSchoolRow(5_000);
+        List<UUID> teachers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            teachers.add(UUID.randomUUID());
+        }
+
+        // Act
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger granted = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (UUID teacherId : teachers) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    if (schoolTokenPool.take(schoolSubscriptionId, teacherId, TOKENS_PER_CALL)) {
+                        granted.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Assert: every token of the school is spendable, never more
+        assertEquals(5_000 / TOKENS_PER_CALL, granted.get());
+
+        // shutdown hands the leftovers back to the school row
+        schoolTokenPool.releaseAll();
+        assertEquals(5_000 - granted.get() * TOKENS_PER_CALL, schoolRow.get());
+        verify(leaseRepository).deleteLease(eq(schoolSubscriptionId), anyString());
+    }
+
+    //================================================================//
+    //====================HOLD / SETTLE===============================//
+    @Test
+    void settle_HoldOfReleasedPool_ChargesOnlyWhatWasSpent() {
+        // Arrange: a hold is open when the pool is handed back (idle release / shutdown)
+        ReflectionTestUtils.setField(schoolTokenPool, "leaseChunk", 1_000);
+        stubSchoolRow(10_000);
+        UUID teacherId = UUID.randomUUID();
+        long generation = schoolTokenPool.hold(schoolSubscriptionId, teacherId, 400);
+        schoolTokenPool.releaseAll();
+
+        // Act: the hold settles against the reloaded pool
+        schoolTokenPool.settle(schoolSubscriptionId, teacherId, generation, 400, 150);
+        schoolTokenPool.releaseAll();
+
+        // Assert: the release already gave the hold back, only the spent 150 leave the school
+        assertTrue(generation > 0);
+        assertEquals(10_000 - 150, schoolRow.get());
+    }
+
+    @Test
+    void settle_CurrentGeneration_GivesUnusedBack() {
+        // Arrange
+        ReflectionTestUtils.setField(schoolTokenPool, "leaseChunk", 1_000);
+        stubSchoolRow(10_000);
+        UUID teacherId = UUID.randomUUID();
+        long generation = schoolTokenPool.hold(schoolSubscriptionId, teacherId, 400);
+
+        // Act
+        schoolTokenPool.settle(schoolSubscriptionId, teacherId, generation, 400, 150);
+        schoolTokenPool.releaseAll();
+
+        // Assert
+        assertEquals(10_000 - 150, schoolRow.get());
+    }
+
+    //================================================================//
+    //====================REBALANCE / AGGREGATE=======================//
+    @Test
+    void take_ShardEmptyAndSchoolRowEmpty_StealsFromSiblingShard() {
+        // Arrange: one chunk covers the whole school, the first teacher's shard gets all of it
+        ReflectionTestUtils.setField(schoolTokenPool, "shardCount", 2);
+        ReflectionTestUtils.setField(schoolTokenPool, "leaseChunk", 1_000);
+        stubSchoolRow(1_000);
+        UUID[] teachers = teachersOnDifferentShards(2);
+
+        // Act
+        assertTrue(schoolTokenPool.take(schoolSubscriptionId, teachers[0], 100));
+        boolean secondGranted = schoolTokenPool.take(schoolSubscriptionId, teachers[1], 900);
+        boolean thirdGranted = schoolTokenPool.take(schoolSubscriptionId, teachers[1], 1);
+
+        // Assert
+        assertTrue(secondGranted);
+        assertFalse(thirdGranted);
+        assertEquals(0, schoolTokenPool.available(schoolSubscriptionId));
+    }
+
+    @Test
+    void aggregateRemaining_AddsLeasesOfOtherNodesAndLocalShards() {
+        // Arrange
+        ReflectionTestUtils.setField(schoolTokenPool, "leaseChunk", 1_000);
+        stubSchoolRow(10_000);
+        schoolTokenPool.take(schoolSubscriptionId, UUID.randomUUID(), 400);
+        when(leaseRepository.sumLeasedTokensExcludingNode(anyCollection(), anyString()))
+                .thenReturn(List.<Object[]>of(new Object[]{schoolSubscriptionId, 2_000L}));
+        SchoolSubscription row = SchoolSubscription.builder()
+                .id(schoolSubscriptionId)
+                .schoolTokenPool(10_000)
+                .schoolTokenRemaining(schoolRow.get() - 2_000)
+                .build();
+
+        // Act
+        int remaining = schoolTokenPool.aggregateRemaining(row);
+
+        // Assert: 10_000 - 400 spent, wherever the rest currently sits
+        assertEquals(9_600, remaining);
+    }
+
+    private void stubSchoolRow(int tokens) {
+        schoolRow.set(tokens);
+        when(schoolSubscriptionRepository.findById(schoolSubscriptionId))
+                .thenAnswer(inv -> Optional.of(SchoolSubscription.builder()
+                        .id(schoolSubscriptionId)
+                        .schoolTokenPool(tokens)
+                        .schoolTokenRemaining(schoolRow.get())
+                        .build()));
+        when(schoolSubscriptionRepository.leaseTokens(eq(schoolSubscriptionId), anyInt()))
+                .thenAnswer(inv -> {
+                    int wanted = inv.getArgument(1);
+                    int before = schoolRow.getAndUpdate(current -> current - Math.min(current, wanted));
+                    return Math.min(before, wanted);
+                });
+        lenient().when(schoolSubscriptionRepository.applyLedgerDelta(eq(schoolSubscriptionId), anyInt()))
+                .thenAnswer(inv -> {
+                    schoolRow.addAndGet(-(int) inv.getArgument(1));
+                    return 1;
+                });
+    }
+
+    private UUID[] teachersOnDifferentShards(int shards) {
+        UUID[] teachers = new UUID[shards];
+        int found = 0;
+        while (found < shards) {
+            UUID candidate = UUID.randomUUID();
+            int shard = (candidate.hashCode() & 0x7fffffff) % shards;
+            if (teachers[shard] == null) {
+                teachers[shard] = candidate;
+                found++;
+            }
+        }
+        return teachers;
+    }
+}
@@ -0,0 +1,124 @@
+package SEP490.EduPrompt.service.ai;
+
+import SEP490.EduPrompt.model.TeacherTokenUsageLog;
+import SEP490.EduPrompt.repo.TeacherTokenUsageDailyRepository;
+import SEP490.EduPrompt.repo.TeacherTokenUsageLogRepository;
+import SEP490.EduPrompt.repo.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UsageLogWriterTest {
+
+    @Mock
+    private TeacherTokenUsageLogRepository usageLogRepository;
+
+    @Mock
+    private TeacherTokenUsageDailyRepository usageDailyRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private Executor usageLogExecutor;
+
+    private UsageLogWriter usageLogWriter;
+
+    @BeforeEach
+    void setUp() {
+        usageLogWriter = new UsageLogWriter(usageLogRepository, usageDailyRepository, userRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), usageLogExecutor, 100);
+        ReflectionTestUtils.setField(usageLogWriter, "batchSize", 10);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_WritesBufferedEntriesInBatches() {
+        // Arrange
+        UUID userId = UUID.randomUUID();
+        for (int i = 0; i < 25; i++) {
+            usageLogWriter.record(userId, null, UUID.randomUUID(), 100);
+        }
+
+        // Act
+        usageLogWriter.flush();
+
+        // Assert: 3 saveAll calls (10 + 10 + 5), nothing inserted on the record path
+        ArgumentCaptor<List<TeacherTokenUsageLog>> captor = ArgumentCaptor.forClass(List.class);
+        verify(usageLogRepository, times(3)).saveAll(captor.capture());
+        assertEquals(List.of(10, 10, 5), captor.getAllValues().stream().map(List::size).toList());
+        assertNotNull(captor.getValue().get(0).getUsedAt());
+        assertEquals(0, usageLogWriter.pending());
+    }
+
+    @Test
+    void flush_SchoolUsage_RolledUpPerTeacherAndDay() {
+        // Arrange: two teachers of one school plus an individual user
+        UUID schoolSubscriptionId = UUID.randomUUID();
+        UUID teacherA = UUID.randomUUID();
+        UUID teacherB = UUID.randomUUID();
+        usageLogWriter.record(teacherA, schoolSubscriptionId, null, 100);
+        usageLogWriter.record(teacherA, schoolSubscriptionId, null, 250);
+        usageLogWriter.record(teacherB, schoolSubscriptionId, null, 40);
+        usageLogWriter.record(UUID.randomUUID(), null, UUID.randomUUID(), 999);
+
+        // Act
+        usageLogWriter.flush();
+
+        // Assert: one upsert per teacher, individual usage is not rolled up
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        verify(usageDailyRepository).addUsage(schoolSubscriptionId, teacherA, today, 350L, 2);
+        verify(usageDailyRepository).addUsage(schoolSubscriptionId, teacherB, today, 40L, 1);
+        verifyNoMoreInteractions(usageDailyRepository);
+    }
+
+    @Test
+    void record_BatchSizeReached_TriggersBackgroundFlush() {
+        // Act
+        for (int i = 0; i < 10; i++) {
+            usageLogWriter.record(UUID.randomUUID(), UUID.randomUUID(), null, 50);
+        }
+
+        // Assert
+        verify(usageLogExecutor).execute(any(Runnable.class));
+        verifyNoInteractions(usageLogRepository);
+    }
+
+    @Test
+    void flush_DbFailure_KeepsEntriesForNextFlush() {
+        // Arrange
+        when(usageLogRepository.saveAll(anyList()))
+                .thenThrow(new RuntimeException("db down"))
+                .thenReturn(List.of());
+        for (int i = 0; i < 5; i++) {
+            usageLogWriter.record(UUID.randomUUID(), null, UUID.randomUUID(), 10);
+        }
+
+        // Act
+        usageLogWriter.flush();
+        int pendingAfterFailure = usageLogWriter.pending();
+        usageLogWriter.flush();
+
+        // Assert
+        assertEquals(5, pendingAfterFailure);
+        assertEquals(0, usageLogWriter.pending());
+        verify(usageLogRepository, times(2)).saveAll(anyList());
+    }
+}
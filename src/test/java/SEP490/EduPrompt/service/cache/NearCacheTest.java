@@ -0,0 +1,115 @@
+package SEP490.EduPrompt.service.cache;
+
+import SEP490.EduPrompt.dto.response.curriculum.AiDimensionScores;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NearCacheTest {
+
+    private static final String KEY = "prompt_score:abc";
+    private static final AiDimensionScores VALUE = AiDimensionScores.builder().instructionClarity(30.0).build();
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private SimpleMeterRegistry meterRegistry;
+    private NearCache nearCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        nearCache = new NearCache(redisTemplate, null, objectMapper, meterRegistry, 100, 10);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    //================================================================//
+    //====================READ PATH===================================//
+    @Test
+    void get_RedisHitThenRepeat_SecondReadServedLocally() throws Exception {
+        // Arrange
+        when(valueOperations.get(KEY)).thenReturn(objectMapper.writeValueAsString(VALUE));
+
+        // Act
+        AiDimensionScores first = nearCache.get(KEY, AiDimensionScores.class);
+        AiDimensionScores second = nearCache.get(KEY, AiDimensionScores.class);
+
+        // Assert
+        assertEquals(VALUE, first);
+        assertSame(first, second);
+        verify(valueOperations, times(1)).get(KEY);
+        assertEquals(1.0, meterRegistry.get("cache.near.remote")
+                .tag("region", "prompt_score").tag("result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "near").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void get_RedisDown_ReturnsNullInsteadOfThrowing() {
+        // Arrange
+        when(valueOperations.get(KEY)).thenThrow(new RedisConnectionFailureException("down"));
+
+        // Act + Assert
+        assertNull(nearCache.get(KEY, AiDimensionScores.class));
+    }
+
+    //================================================================//
+    //====================WRITE + INVALIDATION========================//
+    @Test
+    void put_WritesRedisAndPublishesKey_ServedLocallyAfterwards() {
+        // Act
+        nearCache.put(KEY, VALUE, Duration.ofHours(24));
+        AiDimensionScores cached = nearCache.get(KEY, AiDimensionScores.class);
+
+        // Assert
+        assertSame(VALUE, cached);
+        verify(valueOperations).set(eq(KEY), anyString(), eq(Duration.ofHours(24)));
+        verify(valueOperations, never()).get(anyString());
+        verify(redisTemplate).convertAndSend(eq(NearCache.INVALIDATION_CHANNEL), endsWith("|" + KEY));
+    }
+
+    @Test
+    void onInvalidation_OtherNodeWrote_DropsLocalCopy() {
+        // Arrange
+        nearCache.put(KEY, VALUE, Duration.ofHours(24));
+
+        // Act
+        nearCache.onInvalidation("other-node|" + KEY);
+
+        // Assert
+        assertEquals(0, nearCache.localSize());
+    }
+
+    @Test
+    void onInvalidation_OwnMessage_KeepsLocalCopy() {
+        // Arrange
+        nearCache.put(KEY, VALUE, Duration.ofHours(24));
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(NearCache.INVALIDATION_CHANNEL), message.capture());
+
+        // Act
+        nearCache.onInvalidation(message.getValue());
+
+        // Assert
+        assertEquals(1, nearCache.localSize());
+    }
+}
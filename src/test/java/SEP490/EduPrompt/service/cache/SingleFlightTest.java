@@ -0,0 +1,223 @@
+package SEP490.EduPrompt.service.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SingleFlightTest {
+
+    private static final String KEY = "prompt_score:abc";
+    private static final Duration TTL = Duration.ofHours(24);
+
+    @Mock
+    private NearCache nearCache;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SingleFlight singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight(nearCache, redisTemplate, meterRegistry);
+        ReflectionTestUtils.setField(singleFlight, "pollMs", 10L);
+        ReflectionTestUtils.setField(singleFlight, "leaseMs", 5000L);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    //================================================================//
+    //====================LOCAL COALESCING============================//
+    @Test
+    void load_ConcurrentIdenticalCalls_ComputeOnce() throws Exception {
+        // Arrange
+        when(valueOperations.setIfAbsent(eq("lease:" + KEY), anyString(), any(Duration.class))).thenReturn(true);
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+
+        // Act
+        List<Future<SingleFlight.Flight<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(callers.submit(() -> singleFlight.load(KEY, String.class, TTL, () -> {
+                computations.incrementAndGet();
+                await(release);
+                return "score";
+            })));
+        }
+        Thread.sleep(100);
+        release.countDown();
+        int shared = 0;
+        for (Future<SingleFlight.Flight<String>> future : futures) {
+            SingleFlight.Flight<String> flight = future.get(5, TimeUnit.SECONDS);
+            assertEquals("score", flight.value());
+            shared += flight.shared() ? 1 : 0;
+        }
+        callers.shutdown();
+
+        // Assert
+        assertEquals(1, computations.get());
+        assertEquals(7, shared);
+        verify(nearCache).put(KEY, "score", TTL);
+    }
+
+    @Test
+    void load_LeaderFails_WaitersGetSameFailure() throws Exception {
+        // Arrange
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        Future<?> leader = callers.submit(() -> singleFlight.load(KEY, String.class, TTL, () -> {
+            await(release);
+            throw new IllegalStateException("AI down");
+        }));
+        Thread.sleep(50);
+        Future<?> waiter = callers.submit(() -> singleFlight.load(KEY, String.class, TTL, () -> "never"));
+        Thread.sleep(50);
+
+        // Act
+        release.countDown();
+
+        // Assert
+        ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        ExecutionException waiterError = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertEquals("AI down", leaderError.getCause().getMessage());
+        assertEquals("AI down", waiterError.getCause().getMessage());
+        callers.shutdown();
+    }
+
+    @Test
+    void load_LeaderCancelled_WaiterComputesInstead() throws Exception {
+        // Arrange: the leader's caller gives up while a waiter is queued behind it
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        Future<?> leader = callers.submit(() -> singleFlight.load(KEY, String.class, TTL, () -> {
+            leaderStarted.countDown();
+            await(new CountDownLatch(1));
+            throw new IllegalStateException("AI call interrupted");
+        }));
+        await(leaderStarted);
+        Future<SingleFlight.Flight<String>> waiter =
+                callers.submit(() -> singleFlight.load(KEY, String.class, TTL, () -> "waiter score"));
+        Thread.sleep(50);
+
+        // Act
+        leader.cancel(true);
+
+        // Assert
+        SingleFlight.Flight<String> flight = waiter.get(5, TimeUnit.SECONDS);
+        assertEquals("waiter score", flight.value());
+        assertFalse(flight.shared());
+        callers.shutdown();
+    }
+
+    //================================================================//
+    //====================CLUSTER LEASE===============================//
+    @Test
+    void load_OtherNodeHoldsLease_WaitsForItsResult() {
+        // Arrange: miss, lease taken elsewhere, result shows up on the third poll
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+        when(redisTemplate.hasKey("lease:" + KEY)).thenReturn(true);
+        when(nearCache.get(KEY, String.class)).thenReturn(null, null, null, "remote score");
+
+        // Act
+        SingleFlight.Flight<String> flight = singleFlight.load(KEY, String.class, TTL, () -> fail("must not compute"));
+
+        // Assert
+        assertEquals("remote score", flight.value());
+        assertTrue(flight.shared());
+        assertEquals(1.0, meterRegistry.get("cache.single_flight")
+                .tag("region", "prompt_score").tag("outcome", "cluster_shared").counter().count());
+    }
+
+    @Test
+    void load_LeaseHolderDiesWithoutResult_TakesOver() {
+        // Arrange
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false, true);
+        when(redisTemplate.hasKey("lease:" + KEY)).thenReturn(false);
+
+        // Act
+        SingleFlight.Flight<String> flight = singleFlight.load(KEY, String.class, TTL, () -> "local score");
+
+        // Assert
+        assertEquals("local score", flight.value());
+        assertFalse(flight.shared());
+        verify(valueOperations, times(2)).setIfAbsent(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void load_RedisDownWhileWaiting_ComputesLocally() {
+        // Arrange
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+        when(redisTemplate.hasKey("lease:" + KEY)).thenThrow(new RuntimeException("connection reset"));
+
+        // Act
+        SingleFlight.Flight<String> flight = singleFlight.load(KEY, String.class, TTL, () -> "local score");
+
+        // Assert
+        assertEquals("local score", flight.value());
+        assertFalse(flight.shared());
+        verify(nearCache).put(KEY, "local score", TTL);
+    }
+
+    @Test
+    void load_RedisDown_StillComputes() {
+        // Arrange
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenThrow(new RuntimeException("connection refused"));
+
+        // Act
+        SingleFlight.Flight<String> flight = singleFlight.load(KEY, String.class, TTL, () -> "score");
+
+        // Assert
+        assertEquals("score", flight.value());
+        assertFalse(flight.shared());
+    }
+
+    //================================================================//
+    //====================NOT CACHEABLE===============================//
+    @Test
+    void load_ValueNotCacheable_ReturnedButNotStored() {
+        // Arrange
+        when(valueOperations.setIfAbsent(eq("lease:" + KEY), anyString(), any(Duration.class))).thenReturn(true);
+
+        // Act
+        SingleFlight.Flight<String> flight = singleFlight.load(KEY, String.class, TTL, () -> "degraded score",
+                value -> !value.startsWith("degraded"));
+
+        // Assert
+        assertEquals("degraded score", flight.value());
+        verify(nearCache, never()).put(anyString(), any(), any(Duration.class));
+        assertEquals(1.0, meterRegistry.get("cache.single_flight").tag("outcome", "not_stored").counter().count());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
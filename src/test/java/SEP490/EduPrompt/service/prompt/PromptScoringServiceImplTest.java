@@ -0,0 +1,498 @@
+package SEP490.EduPrompt.service.prompt;
+
+import SEP490.EduPrompt.dto.response.curriculum.AiDimensionScores;
+import SEP490.EduPrompt.dto.response.curriculum.CurriculumContext;
+import SEP490.EduPrompt.dto.response.curriculum.CurriculumContextDetail;
+import SEP490.EduPrompt.dto.response.prompt.PromptScoreResult;
+import SEP490.EduPrompt.exception.client.AiProviderException;
+import SEP490.EduPrompt.model.Prompt;
+import SEP490.EduPrompt.model.PromptScore;
+import SEP490.EduPrompt.model.PromptVersion;
+import SEP490.EduPrompt.repo.PromptRepository;
+import SEP490.EduPrompt.repo.PromptScoreRepository;
+import SEP490.EduPrompt.repo.PromptVersionRepository;
+import SEP490.EduPrompt.service.ai.AiClientServiceImpl;
+import SEP490.EduPrompt.service.ai.AiJobExecutor;
+import SEP490.EduPrompt.service.cache.NearCache;
+import SEP490.EduPrompt.service.cache.SingleFlight;
+import SEP490.EduPrompt.service.curriculum.CurriculumMatchingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PromptScoringServiceImplTest {
+
+    private static final UUID LESSON_ID = UUID.randomUUID();
+    private static final String PROMPT = "Bạn là giáo viên Toán. Tạo bài tập về phương trình bậc hai cho học sinh lớp 10, "
+            + "trình bày dạng bảng, không được dùng kiến thức ngoài SGK.";
+
+    @Mock
+    private CurriculumMatchingService curriculumService;
+
+    @Mock
+    private AiClientServiceImpl geminiService;
+
+    @Mock
+    private PromptScoreRepository promptScoreRepository;
+
+    @Mock
+    private PromptRepository promptRepository;
+
+    @Mock
+    private PromptVersionRepository promptVersionRepository;
+
+    @Mock
+    private NearCache nearCache;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private SimpleMeterRegistry meterRegistry;
+    private AiJobExecutor aiJobExecutor;
+    private RuleBasedPreScorer preScorer;
+    private PromptScoringServiceImpl promptScoringService;
+
+    // what the stubbed AI "received": number of calls and characters of prompt / curriculum text sent
+    private final AtomicInteger aiCalls = new AtomicInteger();
+    private final AtomicLong aiInputChars = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        preScorer = new RuleBasedPreScorer(new SimpleMeterRegistry());
+        // AI paths are tested with the pre-scorer off, it has its own tests below
+        ReflectionTestUtils.setField(preScorer, "enabled", false);
+        // nothing cached and every lease granted, so each call scores
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        SingleFlight singleFlight = new SingleFlight(nearCache, redisTemplate, new SimpleMeterRegistry());
+        meterRegistry = new SimpleMeterRegistry();
+        aiJobExecutor = new AiJobExecutor(meterRegistry, new MockEnvironment(), 32);
+        promptScoringService = new PromptScoringServiceImpl(curriculumService, geminiService, promptScoreRepository,
+                promptRepository, promptVersionRepository, null, preScorer, singleFlight, aiJobExecutor, meterRegistry);
+        lenient().when(curriculumService.detectContext(anyString())).thenReturn(CurriculumContext.builder()
+                .subject("Toán")
+                .gradeLevel(10)
+                .build());
+        lenient().when(curriculumService.getContextDetail(LESSON_ID)).thenReturn(CurriculumContextDetail.builder()
+                .lessonId(LESSON_ID)
+                .subjectName("Toán")
+                .gradeLevel(10)
+                .semester(1)
+                .chapterNumber(3)
+                .chapterName("Phương trình và hệ phương trình")
+                .lessonNumber(2)
+                .lessonName("Phương trình bậc hai")
+                .lessonContent("Định nghĩa, công thức nghiệm, định lý Vi-ét và ứng dụng.")
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiJobExecutor.shutdown();
+    }
+
+    //================================================================//
+    //====================COMBINED SCORING============================//
+    @Test
+    void scorePrompt_CombinedMode_SingleAiCallScoresEveryDimension() {
+        // Arrange
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenReturn(fullScores());
+
+        // Act
+        PromptScoreResult result = promptScoringService.scorePrompt(PROMPT, LESSON_ID);
+
+        // Assert
+        verify(geminiService).scoreAllDimensions(eq(PROMPT), contains("Phương trình bậc hai"));
+        verify(geminiService, never()).scoreInstructionClarity(anyString());
+        verify(geminiService, never()).scoreContextCompleteness(anyString());
+        verify(geminiService, never()).scoreOutputSpecification(anyString());
+        verify(geminiService, never()).scoreConstraintStrength(anyString());
+        verify(geminiService, never()).scoreCurriculumAlignment(anyString(), anyString());
+        verify(geminiService, never()).scorePedagogicalQuality(anyString());
+        assertEquals(30.0, result.instructionClarity().aiAssistedScore());
+        assertEquals(80.0, result.curriculumAlignment().score());
+        assertTrue(result.overallScore() > 0);
+    }
+
+    @Test
+    void scorePrompt_CombinedFieldInvalid_FallsBackForThatDimensionOnly() {
+        // Arrange: the model gave no valid constraint strength score
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenReturn(AiDimensionScores.builder()
+                .instructionClarity(30.0)
+                .contextCompleteness(20.0)
+                .outputSpecification(40.0)
+                .curriculumAlignment(80.0)
+                .pedagogicalQuality(60.0)
+                .build());
+        when(geminiService.scoreConstraintStrength(PROMPT)).thenReturn(45.0);
+
+        // Act
+        PromptScoreResult result = promptScoringService.scorePrompt(PROMPT, LESSON_ID);
+
+        // Assert
+        verify(geminiService).scoreConstraintStrength(PROMPT);
+        verify(geminiService, never()).scoreInstructionClarity(anyString());
+        verify(geminiService, never()).scoreCurriculumAlignment(anyString(), anyString());
+        assertEquals(45.0, result.constraintStrength().aiAssistedScore());
+        assertTrue(result.constraintStrength().isSuccess());
+    }
+
+    @Test
+    void scorePrompt_CombinedCallFails_ScoresEveryDimensionSeparately() {
+        // Arrange
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenThrow(new RuntimeException("timeout"));
+        stubPerDimensionCalls(0);
+
+        // Act
+        PromptScoreResult result = promptScoringService.scorePrompt(PROMPT, LESSON_ID);
+
+        // Assert
+        verify(geminiService).scoreInstructionClarity(PROMPT);
+        verify(geminiService).scoreCurriculumAlignment(eq(PROMPT), anyString());
+        assertEquals(6, aiCalls.get());
+        assertTrue(result.pedagogicalQuality().isSuccess());
+    }
+
+    @Test
+    void scorePrompt_ProviderRejectsDimension_DimensionFailedInsteadOfZero() {
+        // Arrange
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenThrow(new RuntimeException("timeout"));
+        stubPerDimensionCalls(0);
+        when(geminiService.scorePedagogicalQuality(anyString()))
+                .thenThrow(new AiProviderException("AI provider gemini is busy, try again later"));
+
+        // Act
+        PromptScoreResult result = promptScoringService.scorePrompt(PROMPT, LESSON_ID);
+
+        // Assert
+        assertFalse(result.pedagogicalQuality().isSuccess());
+        assertTrue(result.pedagogicalQuality().issues().getFirst().contains("busy"));
+        assertTrue(result.instructionClarity().isSuccess());
+    }
+
+    //================================================================//
+    //====================TIMEOUTS AND CANCELLATION===================//
+    @Test
+    void scorePrompt_OneDimensionHangs_OnlyThatDimensionFails() {
+        // Arrange
+        ReflectionTestUtils.setField(promptScoringService, "dimensionTimeoutMs", 200L);
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenThrow(new RuntimeException("timeout"));
+        stubPerDimensionCalls(0);
+        when(geminiService.scorePedagogicalQuality(anyString())).thenAnswer(simulatedCall(60.0, 60_000));
+
+        // Act
+        PromptScoreResult result = promptScoringService.scorePrompt(PROMPT, LESSON_ID);
+
+        // Assert
+        assertFalse(result.pedagogicalQuality().isSuccess());
+        assertTrue(result.pedagogicalQuality().issues().getFirst().contains("timed out"));
+        assertTrue(result.instructionClarity().isSuccess());
+        assertTrue(result.curriculumAlignment().isSuccess());
+        assertEquals(1, meterRegistry.get("ai.pool.call")
+                .tag("pool", "scoring").tag("outcome", "timeout").timer().count());
+    }
+
+    @Test
+    void scorePrompt_OverallDeadlinePassed_CancelsAndInterruptsUnfinishedDimensions() throws Exception {
+        // Arrange: two dimensions would outlive the overall deadline
+        ReflectionTestUtils.setField(promptScoringService, "overallTimeoutMs", 200L);
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenThrow(new RuntimeException("timeout"));
+        stubPerDimensionCalls(0);
+        CountDownLatch interrupted = new CountDownLatch(2);
+        Answer<Double> hanging = invocation -> {
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return 50.0;
+        };
+        when(geminiService.scoreOutputSpecification(anyString())).thenAnswer(hanging);
+        when(geminiService.scoreConstraintStrength(anyString())).thenAnswer(hanging);
+
+        // Act
+        PromptScoreResult result = promptScoringService.scorePrompt(PROMPT, LESSON_ID);
+
+        // Assert
+        assertFalse(result.outputSpecification().isSuccess());
+        assertFalse(result.constraintStrength().isSuccess());
+        assertTrue(result.contextCompleteness().isSuccess());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1.0, meterRegistry.get("scoring.dimension.cancelled")
+                .tag("dimension", "output_specification").counter().count());
+    }
+
+    @Test
+    void scorePrompt_DimensionFailed_ResultNotCached() {
+        // Arrange
+        ReflectionTestUtils.setField(promptScoringService, "dimensionTimeoutMs", 200L);
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenThrow(new RuntimeException("timeout"));
+        stubPerDimensionCalls(0);
+        when(geminiService.scorePedagogicalQuality(anyString())).thenAnswer(simulatedCall(60.0, 60_000));
+
+        // Act
+        PromptScoreResult result = promptScoringService.scorePrompt(PROMPT, LESSON_ID);
+
+        // Assert: the caller still gets the partial result, but a later request scores again
+        assertFalse(result.pedagogicalQuality().isSuccess());
+        verify(nearCache, never()).put(anyString(), any(), any(Duration.class));
+    }
+
+    @Test
+    void scorePrompt_NoLessonOnly_ResultCached() {
+        // Arrange: a missing lesson is a final answer, not a failure
+        when(curriculumService.detectContext(anyString())).thenReturn(CurriculumContext.builder().build());
+        when(geminiService.scoreAllDimensions(eq(PROMPT), isNull())).thenReturn(fullScores());
+
+        // Act
+        PromptScoreResult result = promptScoringService.scorePrompt(PROMPT, null);
+
+        // Assert
+        assertFalse(result.curriculumAlignment().isSuccess());
+        verify(nearCache).put(anyString(), eq(result), eq(Duration.ofHours(24)));
+    }
+
+    //================================================================//
+    //====================RULE-BASED PRE-SCORE========================//
+    @Test
+    void scorePrompt_ObviouslyWeakPrompt_NoAiCall() {
+        // Arrange
+        ReflectionTestUtils.setField(preScorer, "enabled", true);
+
+        // Act
+        PromptScoreResult result = promptScoringService.scorePrompt("viết gì đó về toán", LESSON_ID);
+
+        // Assert
+        verifyNoInteractions(geminiService);
+        assertTrue(result.overallScore() < 30);
+    }
+
+    @Test
+    void scorePrompt_BorderlineDimensions_OnlyThoseComeFromAi() {
+        // Arrange
+        ReflectionTestUtils.setField(preScorer, "enabled", true);
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenReturn(fullScores());
+
+        // Act
+        PromptScoreResult result = promptScoringService.scorePrompt(PROMPT, LESSON_ID);
+
+        // Assert: role, task, no vague wording and length all pass, so clarity stays local
+        verify(geminiService).scoreAllDimensions(eq(PROMPT), anyString());
+        assertEquals(36.0, result.instructionClarity().aiAssistedScore(), 0.001);
+        assertEquals(40.0, result.outputSpecification().aiAssistedScore(), 0.001);
+    }
+
+    //================================================================//
+    //====================STORED SCORE REUSE==========================//
+    @Test
+    void scoreAndSaveAsync_UnchangedContent_CopiesStoredScoreWithoutAi() {
+        // Arrange: an earlier version with the same text and lesson was already scored
+        UUID promptId = UUID.randomUUID();
+        UUID versionId = UUID.randomUUID();
+        PromptScore stored = PromptScore.builder()
+                .overallScore(BigDecimal.valueOf(72.5))
+                .instructionClarityScore(BigDecimal.valueOf(80))
+                .curriculumAlignmentScore(BigDecimal.valueOf(90))
+                .detectedWeaknesses(Map.of("weakness", "thiếu ví dụ"))
+                .contentHash("stored-hash")
+                .build();
+        when(promptScoreRepository.findFirstByPromptIdAndContentHashAndCreatedAtAfterOrderByCreatedAtDesc(
+                eq(promptId), anyString(), any(Instant.class))).thenReturn(Optional.of(stored));
+        stubPromptAndVersion(promptId, versionId);
+
+        // Act
+        promptScoringService.scoreAndSaveAsync(promptId, versionId, PROMPT, LESSON_ID);
+
+        // Assert
+        ArgumentCaptor<PromptScore> saved = ArgumentCaptor.forClass(PromptScore.class);
+        verify(promptScoreRepository).save(saved.capture());
+        assertEquals(versionId, saved.getValue().getVersionId());
+        assertEquals(promptId, saved.getValue().getPromptId());
+        assertEquals(BigDecimal.valueOf(72.5), saved.getValue().getOverallScore());
+        assertEquals(BigDecimal.valueOf(90), saved.getValue().getCurriculumAlignmentScore());
+        assertEquals("thiếu ví dụ", saved.getValue().getDetectedWeaknesses().get("weakness"));
+        verifyNoInteractions(geminiService, curriculumService, nearCache);
+        assertEquals(1.0, meterRegistry.get("scoring.reused").counter().count());
+    }
+
+    @Test
+    void scoreAndSaveAsync_NewContent_ScoresAndStoresContentHash() {
+        // Arrange
+        UUID promptId = UUID.randomUUID();
+        UUID versionId = UUID.randomUUID();
+        when(promptScoreRepository.findFirstByPromptIdAndContentHashAndCreatedAtAfterOrderByCreatedAtDesc(
+                eq(promptId), anyString(), any(Instant.class))).thenReturn(Optional.empty());
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenReturn(fullScores());
+        stubPromptAndVersion(promptId, versionId);
+
+        // Act
+        promptScoringService.scoreAndSaveAsync(promptId, versionId, PROMPT, LESSON_ID);
+
+        // Assert: hash looked up is the one stored, version read by id rather than the whole history
+        ArgumentCaptor<String> lookedUp = ArgumentCaptor.forClass(String.class);
+        verify(promptScoreRepository).findFirstByPromptIdAndContentHashAndCreatedAtAfterOrderByCreatedAtDesc(
+                eq(promptId), lookedUp.capture(), any(Instant.class));
+        ArgumentCaptor<PromptScore> saved = ArgumentCaptor.forClass(PromptScore.class);
+        verify(promptScoreRepository).save(saved.capture());
+        assertEquals(lookedUp.getValue(), saved.getValue().getContentHash());
+        assertEquals(64, saved.getValue().getContentHash().length());
+        assertNotNull(saved.getValue().getVersion());
+        verify(promptVersionRepository).findById(versionId);
+        verify(promptVersionRepository, never()).findByPromptIdOrderByVersionNumberDesc(any());
+        verify(geminiService).scoreAllDimensions(eq(PROMPT), anyString());
+    }
+
+    @Test
+    void scoreAndSaveAsync_DimensionFailed_StoredWithoutContentHash() {
+        // Arrange
+        UUID promptId = UUID.randomUUID();
+        UUID versionId = UUID.randomUUID();
+        when(promptScoreRepository.findFirstByPromptIdAndContentHashAndCreatedAtAfterOrderByCreatedAtDesc(
+                eq(promptId), anyString(), any(Instant.class))).thenReturn(Optional.empty());
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenThrow(new RuntimeException("timeout"));
+        stubPerDimensionCalls(0);
+        when(geminiService.scorePedagogicalQuality(anyString()))
+                .thenThrow(new AiProviderException("AI provider gemini is unavailable, try again later"));
+        stubPromptAndVersion(promptId, versionId);
+
+        // Act
+        promptScoringService.scoreAndSaveAsync(promptId, versionId, PROMPT, LESSON_ID);
+
+        // Assert: saved for this version, but never found again by a content hash lookup
+        ArgumentCaptor<PromptScore> saved = ArgumentCaptor.forClass(PromptScore.class);
+        verify(promptScoreRepository).save(saved.capture());
+        assertEquals(versionId, saved.getValue().getVersionId());
+        assertNull(saved.getValue().getContentHash());
+    }
+
+    @Test
+    void scoreAndSaveAsync_ScorerVersionChanged_LooksUpDifferentHashWithinMaxAge() {
+        // Arrange
+        UUID promptId = UUID.randomUUID();
+        UUID versionId = UUID.randomUUID();
+        when(geminiService.scoreAllDimensions(eq(PROMPT), anyString())).thenReturn(fullScores());
+        stubPromptAndVersion(promptId, versionId);
+
+        // Act
+        promptScoringService.scoreAndSaveAsync(promptId, versionId, PROMPT, LESSON_ID);
+        ReflectionTestUtils.setField(promptScoringService, "scorerVersion", "2");
+        promptScoringService.scoreAndSaveAsync(promptId, versionId, PROMPT, LESSON_ID);
+
+        // Assert: same text, but a score of the old scorer is never looked up, nor one older than 30 days
+        ArgumentCaptor<String> hashes = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Instant> createdAfter = ArgumentCaptor.forClass(Instant.class);
+        verify(promptScoreRepository, times(2)).findFirstByPromptIdAndContentHashAndCreatedAtAfterOrderByCreatedAtDesc(
+                eq(promptId), hashes.capture(), createdAfter.capture());
+        assertNotEquals(hashes.getAllValues().get(0), hashes.getAllValues().get(1));
+        assertFalse(createdAfter.getValue().isAfter(Instant.now().minus(Duration.ofDays(30))));
+        assertTrue(createdAfter.getValue().isAfter(Instant.now().minus(Duration.ofDays(31))));
+    }
+
+    private void stubPromptAndVersion(UUID promptId, UUID versionId) {
+        when(promptRepository.findById(promptId)).thenReturn(Optional.of(Prompt.builder().id(promptId).build()));
+        when(promptVersionRepository.findById(versionId)).thenReturn(Optional.of(PromptVersion.builder()
+                .id(versionId)
+                .promptId(promptId)
+                .build()));
+    }
+
+    //================================================================//
+    //====================COMBINED VS PER DIMENSION==================//
+    @Test
+    void scorePrompt_CombinedVsPerDimension_FewerCallsLessInputSameScores() {
+        // Arrange
+        stubPerDimensionCalls(0);
+        when(geminiService.scoreAllDimensions(anyString(), anyString())).thenAnswer(simulatedCall(fullScores(), 0));
+        int runs = 10;
+
+        // Act
+        ReflectionTestUtils.setField(promptScoringService, "combinedScoring", false);
+        Measurement perDimension = measure(runs);
+        ReflectionTestUtils.setField(promptScoringService, "combinedScoring", true);
+        Measurement combined = measure(runs);
+
+        // Assert
+        assertEquals(6 * runs, perDimension.calls);
+        assertEquals(runs, combined.calls);
+        // the prompt (and curriculum context) go over the wire once instead of once per dimension
+        assertTrue(combined.inputChars * 2 < perDimension.inputChars);
+        assertEquals(perDimension.overallScore, combined.overallScore, 0.001);
+    }
+
+    private Measurement measure(int runs) {
+        aiCalls.set(0);
+        aiInputChars.set(0);
+        double overallScore = 0;
+        for (int i = 0; i < runs; i++) {
+            overallScore = promptScoringService.scorePrompt(PROMPT, LESSON_ID).overallScore();
+        }
+        return new Measurement(aiCalls.get(), aiInputChars.get(), overallScore);
+    }
+
+    private void stubPerDimensionCalls(long latencyMs) {
+        lenient().when(geminiService.scoreInstructionClarity(anyString())).thenAnswer(simulatedCall(30.0, latencyMs));
+        lenient().when(geminiService.scoreContextCompleteness(anyString())).thenAnswer(simulatedCall(20.0, latencyMs));
+        lenient().when(geminiService.scoreOutputSpecification(anyString())).thenAnswer(simulatedCall(40.0, latencyMs));
+        lenient().when(geminiService.scoreConstraintStrength(anyString())).thenAnswer(simulatedCall(50.0, latencyMs));
+        lenient().when(geminiService.scoreCurriculumAlignment(anyString(), anyString()))
+                .thenAnswer(simulatedCall(80.0, latencyMs));
+        lenient().when(geminiService.scorePedagogicalQuality(anyString())).thenAnswer(simulatedCall(60.0, latencyMs));
+    }
+
+    private <T> Answer<T> simulatedCall(T score, long latencyMs) {
+        return invocation -> {
+            aiCalls.incrementAndGet();
+            for (Object argument : invocation.getArguments()) {
+                if (argument instanceof String text) {
+                    aiInputChars.addAndGet(text.length());
+                }
+            }
+            Thread.sleep(latencyMs);
+            return score;
+        };
+    }
+
+    private static AiDimensionScores fullScores() {
+        return AiDimensionScores.builder()
+                .instructionClarity(30.0)
+                .contextCompleteness(20.0)
+                .outputSpecification(40.0)
+                .constraintStrength(50.0)
+                .curriculumAlignment(80.0)
+                .pedagogicalQuality(60.0)
+                .build();
+    }
+
+    private record Measurement(int calls, long inputChars, double overallScore) {
+    }
+}
@@ -0,0 +1,141 @@
+package SEP490.EduPrompt.service.prompt;
+
+import SEP490.EduPrompt.dto.response.curriculum.AiDimensionScores;
+import SEP490.EduPrompt.dto.response.curriculum.CurriculumContext;
+import SEP490.EduPrompt.dto.response.curriculum.CurriculumContextDetail;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleBasedPreScorerTest {
+
+    private static final CurriculumContextDetail LESSON = CurriculumContextDetail.builder()
+            .subjectName("Toán")
+            .gradeLevel(10)
+            .lessonName("Phương trình bậc hai")
+            .build();
+
+    private SimpleMeterRegistry meterRegistry;
+    private RuleBasedPreScorer preScorer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        preScorer = new RuleBasedPreScorer(meterRegistry);
+    }
+
+    //================================================================//
+    //====================CONFIDENT CASES=============================//
+    @Test
+    void preScore_TooShortPrompt_EveryDimensionLocalAndLow() {
+        // Act
+        AiDimensionScores scores = preScorer.preScore("giúp tôi làm bài", context("Toán", 10), LESSON);
+
+        // Assert
+        assertTrue(scores.isComplete(true));
+        assertEquals(4.0, scores.instructionClarity(), 0.001);
+        assertEquals(10.0, scores.curriculumAlignment(), 0.001);
+        assertEquals(6.0, counter("local"));
+        assertEquals(0.0, counter("escalated"));
+    }
+
+    @Test
+    void preScore_WellSpecifiedPrompt_EveryDimensionLocalAndHigh() {
+        // Arrange
+        String prompt = """
+                Bạn là giáo viên Toán lớp 10. Tạo giáo án 45 phút cho bài Phương trình bậc hai.
+                Mục tiêu: học sinh giải được phương trình bằng công thức nghiệm.
+                Định dạng: bảng markdown gồm 4 phần, khoảng 800 từ:
+                - Khởi động: hoạt động thảo luận nhóm
+                - Hình thành kiến thức
+                - Luyện tập: bài tập vận dụng
+                - Kiểm tra: 5 câu hỏi trắc nghiệm
+                Chỉ dùng kiến thức trong SGK, không được đưa nội dung ngoài chương trình.
+                """;
+
+        // Act
+        AiDimensionScores scores = preScorer.preScore(prompt, context("Toán", 10), LESSON);
+
+        // Assert
+        assertTrue(scores.isComplete(true));
+        assertEquals(36.0, scores.instructionClarity(), 0.001);
+        assertEquals(45.0, scores.outputSpecification(), 0.001);
+        assertEquals(90.0, scores.curriculumAlignment(), 0.001);
+        assertEquals(72.0, scores.pedagogicalQuality(), 0.001);
+    }
+
+    @Test
+    void preScore_WrongGradeForLesson_CurriculumConfidentlyLow() {
+        // Act
+        AiDimensionScores scores = preScorer.preScore(
+                "Bạn là giáo viên. Tạo 10 câu hỏi về phương trình bậc hai cho học sinh lớp 12.",
+                context("Toán", 12), LESSON);
+
+        // Assert
+        assertEquals(10.0, scores.curriculumAlignment(), 0.001);
+    }
+
+    //================================================================//
+    //====================ESCALATION==================================//
+    @Test
+    void preScore_BorderlinePrompt_EscalatesMixedDimensions() {
+        // Act: has a format but no structure or length, a prohibition but no scope or source
+        AiDimensionScores scores = preScorer.preScore(
+                "Bạn là giáo viên. Tạo đề kiểm tra dạng bảng về hàm số cho học sinh, tránh câu đánh đố.",
+                context("Toán", null), null);
+
+        // Assert
+        assertNull(scores.outputSpecification());
+        assertNull(scores.constraintStrength());
+        assertNull(scores.curriculumAlignment());
+        assertFalse(scores.isComplete(false));
+        assertTrue(counter("escalated") >= 2);
+    }
+
+    @Test
+    void preScore_HigherThreshold_EscalatesMore() {
+        // Arrange
+        String prompt = "Bạn là giáo viên. Tạo đề kiểm tra dạng bảng về hàm số cho học sinh, tránh câu đánh đố.";
+        AiDimensionScores lenient = preScorer.preScore(prompt, context("Toán", null), null);
+        ReflectionTestUtils.setField(preScorer, "confidenceThreshold", 1.01);
+
+        // Act
+        AiDimensionScores strict = preScorer.preScore(prompt, context("Toán", null), null);
+
+        // Assert
+        assertNotNull(lenient.instructionClarity());
+        assertEquals(AiDimensionScores.EMPTY, strict);
+    }
+
+    @Test
+    void preScore_Disabled_NothingLocal() {
+        // Arrange
+        ReflectionTestUtils.setField(preScorer, "enabled", false);
+
+        // Act
+        AiDimensionScores scores = preScorer.preScore("giúp tôi", context(null, null), LESSON);
+
+        // Assert
+        assertEquals(AiDimensionScores.EMPTY, scores);
+        assertEquals(0.0, counter("local"));
+    }
+
+    private static CurriculumContext context(String subject, Integer gradeLevel) {
+        return CurriculumContext.builder()
+                .subject(subject)
+                .gradeLevel(gradeLevel)
+                .detectedKeywords(List.of())
+                .build();
+    }
+
+    private double counter(String outcome) {
+        return meterRegistry.find("scoring.prescore").tag("outcome", outcome).counters().stream()
+                .mapToDouble(c -> c.count())
+                .sum();
+    }
+}
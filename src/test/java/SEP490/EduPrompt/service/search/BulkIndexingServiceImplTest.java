@@ -0,0 +1,411 @@
+package SEP490.EduPrompt.service.search;
+
+import SEP490.EduPrompt.dto.response.search.IndexingJobResponse;
+import SEP490.EduPrompt.dto.response.search.IndexingResult;
+import SEP490.EduPrompt.enums.IndexStatus;
+import SEP490.EduPrompt.enums.IndexingJobStatus;
+import SEP490.EduPrompt.model.IndexingJob;
+import SEP490.EduPrompt.repo.IndexingJobRepository;
+import SEP490.EduPrompt.repo.PromptRepository;
+import SEP490.EduPrompt.service.ai.AiJobExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkIndexingServiceImplTest {
+
+    private static final int PROMPTS = 250;
+    private static final int CONCURRENCY = 8;
+    private static final int PAGE_SIZE = 40;
+    private static final long UPLOAD_MS = 20;
+
+    @Mock
+    private PromptRepository promptRepository;
+
+    @Mock
+    private IndexingJobRepository indexingJobRepository;
+
+    @Mock
+    private PromptIndexingService promptIndexingService;
+
+    // in-memory stand-ins for the pending prompts (in id order) and the indexing_jobs table
+    private final List<UUID> pending = new ArrayList<>();
+    private final Set<UUID> uploaded = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, IndexingJob> jobs = new LinkedHashMap<>();
+    private final Map<UUID, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AiJobExecutor aiJobExecutor;
+    private BulkIndexingServiceImpl bulkIndexingService;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < PROMPTS; i++) {
+            pending.add(UUID.randomUUID());
+        }
+        lenient().when(promptRepository.countUploadPendingAfter(any(UUID.class)))
+                .thenAnswer(invocation -> (long) pendingAfter(invocation.getArgument(0), Integer.MAX_VALUE).size());
+        lenient().when(promptRepository.findUploadPendingIdsAfter(any(UUID.class), anyInt()))
+                .thenAnswer(invocation -> pendingAfter(invocation.getArgument(0), invocation.getArgument(1)));
+        lenient().when(indexingJobRepository.save(any(IndexingJob.class))).thenAnswer(invocation -> {
+            IndexingJob job = invocation.getArgument(0);
+            synchronized (jobs) {
+                if (job.getId() == null) {
+                    job.setId(UUID.randomUUID());
+                    job.setCreatedAt(Instant.now());
+                }
+                job.setUpdatedAt(Instant.now());
+                jobs.put(job.getId(), copy(job));
+            }
+            return job;
+        });
+        lenient().when(indexingJobRepository.findById(any(UUID.class))).thenAnswer(invocation -> {
+            synchronized (jobs) {
+                return Optional.ofNullable(jobs.get(invocation.<UUID>getArgument(0))).map(this::copy);
+            }
+        });
+        lenient().when(indexingJobRepository.findFirstByOrderByCreatedAtDesc()).thenAnswer(invocation -> {
+            synchronized (jobs) {
+                return jobs.values().stream().reduce((first, second) -> second).map(this::copy);
+            }
+        });
+        lenient().when(indexingJobRepository.claim(any(UUID.class), anyString(), any(Instant.class), any(Instant.class)))
+                .thenAnswer(invocation -> {
+                    synchronized (jobs) {
+                        IndexingJob job = jobs.get(invocation.<UUID>getArgument(0));
+                        String nodeId = invocation.getArgument(1);
+                        Instant staleBefore = invocation.getArgument(3);
+                        boolean claimable = IndexingJobStatus.CANCELLED.name().equals(job.getStatus())
+                                || IndexingJobStatus.RUNNING.name().equals(job.getStatus())
+                                && (nodeId.equals(job.getOwnerNodeId()) || job.getHeartbeatAt() == null
+                                || job.getHeartbeatAt().isBefore(staleBefore));
+                        if (!claimable) {
+                            return 0;
+                        }
+                        job.setStatus(IndexingJobStatus.RUNNING.name());
+                        job.setOwnerNodeId(nodeId);
+                        job.setHeartbeatAt(invocation.getArgument(2));
+                        job.setFinishedAt(null);
+                        return 1;
+                    }
+                });
+        lenient().when(indexingJobRepository.heartbeat(any(UUID.class), anyString(), any(Instant.class)))
+                .thenAnswer(invocation -> {
+                    synchronized (jobs) {
+                        IndexingJob job = ownedRunningJob(invocation.getArgument(0), invocation.getArgument(1));
+                        if (job == null) {
+                            return 0;
+                        }
+                        job.setHeartbeatAt(invocation.getArgument(2));
+                        return 1;
+                    }
+                });
+        lenient().when(indexingJobRepository.checkpoint(any(UUID.class), anyString(), any(UUID.class),
+                anyInt(), anyInt(), anyInt(), any(Instant.class))).thenAnswer(invocation -> {
+                    synchronized (jobs) {
+                        IndexingJob job = ownedRunningJob(invocation.getArgument(0), invocation.getArgument(1));
+                        if (job == null) {
+                            return 0;
+                        }
+                        job.setCheckpointPromptId(invocation.getArgument(2));
+                        job.setSucceeded(invocation.getArgument(3));
+                        job.setFailed(invocation.getArgument(4));
+                        job.setSkipped(invocation.getArgument(5));
+                        job.setHeartbeatAt(invocation.getArgument(6));
+                        return 1;
+                    }
+                });
+        lenient().when(indexingJobRepository.finish(any(UUID.class), anyString(), anyString(),
+                anyInt(), anyInt(), anyInt(), any(), any(Instant.class))).thenAnswer(invocation -> {
+                    synchronized (jobs) {
+                        IndexingJob job = ownedRunningJob(invocation.getArgument(0), invocation.getArgument(1));
+                        if (job == null) {
+                            return 0;
+                        }
+                        job.setStatus(invocation.getArgument(2));
+                        job.setSucceeded(invocation.getArgument(3));
+                        job.setFailed(invocation.getArgument(4));
+                        job.setSkipped(invocation.getArgument(5));
+                        job.setErrorMessage(invocation.getArgument(6));
+                        job.setFinishedAt(invocation.getArgument(7));
+                        return 1;
+                    }
+                });
+        lenient().when(promptIndexingService.indexPrompt(any(UUID.class)))
+                .thenAnswer(invocation -> upload(invocation.getArgument(0), IndexStatus.INDEXED));
+
+        aiJobExecutor = new AiJobExecutor(meterRegistry, new MockEnvironment()
+                .withProperty("ai.executor.pools.indexing.limit", String.valueOf(CONCURRENCY)), 32);
+        bulkIndexingService = bulkIndexingService(10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiJobExecutor.shutdown();
+    }
+
+    //================================================================//
+    //====================BULK RUN====================================//
+    @Test
+    void start_PendingPrompts_IndexedInParallelWithCheckpoints() throws Exception {
+        // Act
+        IndexingJobResponse started = bulkIndexingService.start();
+        IndexingJobResponse finished = awaitFinished(started.jobId());
+
+        // Assert
+        assertEquals(IndexingJobStatus.COMPLETED.name(), finished.status());
+        assertEquals(PROMPTS, finished.total());
+        assertEquals(PROMPTS, finished.succeeded());
+        assertEquals(PROMPTS, finished.processed());
+        assertEquals(PROMPTS, uploaded.size());
+        assertTrue(maxInFlight.get() > 1);
+        assertTrue(maxInFlight.get() <= CONCURRENCY);
+        assertEquals(pending.getLast(), jobs.get(started.jobId()).getCheckpointPromptId());
+        // one checkpoint per page
+        verify(indexingJobRepository, atLeast(PROMPTS / PAGE_SIZE)).checkpoint(eq(started.jobId()), anyString(),
+                any(UUID.class), anyInt(), anyInt(), anyInt(), any(Instant.class));
+    }
+
+    @Test
+    void start_JobLeftRunning_ResumesAfterCheckpoint() throws Exception {
+        // Arrange: a node that stopped heart-beating 10 minutes ago had processed the first 100 prompts
+        IndexingJob left = indexingJobRepository.save(IndexingJob.builder()
+                .status(IndexingJobStatus.RUNNING.name())
+                .total(PROMPTS)
+                .succeeded(100)
+                .failed(0)
+                .skipped(0)
+                .checkpointPromptId(pending.get(99))
+                .ownerNodeId("node-b")
+                .heartbeatAt(Instant.now().minus(Duration.ofMinutes(10)))
+                .build());
+
+        // Act
+        IndexingJobResponse started = bulkIndexingService.start();
+        IndexingJobResponse finished = awaitFinished(started.jobId());
+
+        // Assert
+        assertEquals(left.getId(), started.jobId());
+        assertEquals(IndexingJobStatus.COMPLETED.name(), finished.status());
+        assertEquals(PROMPTS, finished.succeeded());
+        verify(promptIndexingService, times(PROMPTS - 100)).indexPrompt(any(UUID.class));
+        for (int i = 0; i < 100; i++) {
+            verify(promptIndexingService, never()).indexPrompt(pending.get(i));
+        }
+    }
+
+    @Test
+    void start_JobRunningOnOtherNode_NotTakenOver() {
+        // Arrange
+        IndexingJob elsewhere = indexingJobRepository.save(IndexingJob.builder()
+                .status(IndexingJobStatus.RUNNING.name())
+                .total(PROMPTS)
+                .succeeded(100)
+                .failed(0)
+                .skipped(0)
+                .checkpointPromptId(pending.get(99))
+                .ownerNodeId("node-b")
+                .heartbeatAt(Instant.now().minus(Duration.ofMinutes(1)))
+                .build());
+
+        // Act
+        IndexingJobResponse response = bulkIndexingService.start();
+
+        // Assert
+        assertEquals(elsewhere.getId(), response.jobId());
+        assertEquals(IndexingJobStatus.RUNNING.name(), response.status());
+        assertEquals("node-b", jobs.get(elsewhere.getId()).getOwnerNodeId());
+        verify(promptIndexingService, never()).indexPrompt(any(UUID.class));
+    }
+
+    @Test
+    void start_TakenOverByOtherNode_StopsWithoutWritingJob() throws Exception {
+        // Arrange
+        IndexingJobResponse started = bulkIndexingService.start();
+        while (bulkIndexingService.getJob(started.jobId()).processed() < 10) {
+            Thread.sleep(5);
+        }
+
+        // Act: node-b took the job over, this node finds out at its next checkpoint
+        synchronized (jobs) {
+            jobs.get(started.jobId()).setOwnerNodeId("node-b");
+        }
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (ReflectionTestUtils.getField(bulkIndexingService, "running") != null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Assert
+        IndexingJob job = jobs.get(started.jobId());
+        assertNull(ReflectionTestUtils.getField(bulkIndexingService, "running"));
+        assertEquals("node-b", job.getOwnerNodeId());
+        assertEquals(IndexingJobStatus.RUNNING.name(), job.getStatus());
+        assertNull(job.getFinishedAt());
+        assertTrue(uploaded.size() < PROMPTS);
+    }
+
+    @Test
+    void start_UploadFails_RetriedThenCounted() throws Exception {
+        // Arrange
+        UUID flaky = pending.get(3);
+        UUID broken = pending.get(7);
+        doAnswer(invocation -> attempts.computeIfAbsent(flaky, id -> new AtomicInteger()).incrementAndGet() < 3
+                ? IndexingResult.builder().promptId(flaky).status(IndexStatus.FAILED.name()).build()
+                : upload(flaky, IndexStatus.INDEXED))
+                .when(promptIndexingService).indexPrompt(flaky);
+        doReturn(IndexingResult.builder().promptId(broken).status(IndexStatus.FAILED.name()).build())
+                .when(promptIndexingService).indexPrompt(broken);
+
+        // Act
+        IndexingJobResponse finished = awaitFinished(bulkIndexingService.start().jobId());
+
+        // Assert
+        assertEquals(PROMPTS - 1, finished.succeeded());
+        assertEquals(1, finished.failed());
+        verify(promptIndexingService, times(3)).indexPrompt(flaky);
+        verify(promptIndexingService, times(3)).indexPrompt(broken);
+    }
+
+    @Test
+    void start_UploadAttemptTimesOut_NextAttemptGetsFullTimeout() throws Exception {
+        // Arrange: 1s per attempt, the first upload of one prompt hangs
+        bulkIndexingService = bulkIndexingService(1);
+        UUID slow = pending.get(5);
+        doAnswer(invocation -> {
+            if (attempts.computeIfAbsent(slow, id -> new AtomicInteger()).incrementAndGet() == 1) {
+                Thread.sleep(5_000);
+            }
+            return upload(slow, IndexStatus.INDEXED);
+        }).when(promptIndexingService).indexPrompt(slow);
+
+        // Act
+        IndexingJobResponse finished = awaitFinished(bulkIndexingService.start().jobId());
+
+        // Assert
+        assertEquals(PROMPTS, finished.succeeded());
+        assertTrue(uploaded.contains(slow));
+        verify(promptIndexingService, times(2)).indexPrompt(slow);
+    }
+
+    //================================================================//
+    //====================CONTROL=====================================//
+    @Test
+    void start_WhileRunning_ReturnsRunningJob() throws Exception {
+        // Act
+        IndexingJobResponse first = bulkIndexingService.start();
+        IndexingJobResponse second = bulkIndexingService.start();
+        awaitFinished(first.jobId());
+
+        // Assert
+        assertEquals(first.jobId(), second.jobId());
+        assertEquals(PROMPTS, uploaded.size());
+        verify(promptIndexingService, times(PROMPTS)).indexPrompt(any(UUID.class));
+    }
+
+    @Test
+    void cancel_ThenStart_ResumesEachPromptOnce() throws Exception {
+        // Arrange
+        IndexingJobResponse started = bulkIndexingService.start();
+        while (bulkIndexingService.getJob(started.jobId()).processed() < PAGE_SIZE + 10) {
+            Thread.sleep(5);
+        }
+
+        // Act
+        bulkIndexingService.cancel(started.jobId());
+        IndexingJobResponse cancelled = awaitFinished(started.jobId());
+        IndexingJobResponse resumed = bulkIndexingService.start();
+        IndexingJobResponse finished = awaitFinished(resumed.jobId());
+
+        // Assert
+        assertEquals(IndexingJobStatus.CANCELLED.name(), cancelled.status());
+        assertTrue(cancelled.processed() < PROMPTS);
+        assertEquals(started.jobId(), resumed.jobId());
+        assertEquals(IndexingJobStatus.COMPLETED.name(), finished.status());
+        assertEquals(PROMPTS, finished.succeeded());
+        verify(promptIndexingService, times(PROMPTS)).indexPrompt(any(UUID.class));
+    }
+
+    private BulkIndexingServiceImpl bulkIndexingService(long uploadTimeoutSeconds) {
+        return new BulkIndexingServiceImpl(promptRepository, indexingJobRepository,
+                promptIndexingService, aiJobExecutor, meterRegistry,
+                CONCURRENCY, 60_000, 50, PAGE_SIZE, 3, 1, uploadTimeoutSeconds, 300);
+    }
+
+    private IndexingResult upload(UUID promptId, IndexStatus status) throws InterruptedException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            Thread.sleep(UPLOAD_MS);
+            uploaded.add(promptId);
+            return IndexingResult.builder().promptId(promptId).status(status.name()).build();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    // the row as the conditional updates see it, null once cancelled or owned by another node
+    private IndexingJob ownedRunningJob(UUID jobId, String nodeId) {
+        IndexingJob job = jobs.get(jobId);
+        return nodeId.equals(job.getOwnerNodeId()) && IndexingJobStatus.RUNNING.name().equals(job.getStatus())
+                ? job : null;
+    }
+
+    // uploaded prompts are no longer pending, like rows that got a gemini_file_id
+    private List<UUID> pendingAfter(UUID afterId, int limit) {
+        int from = pending.indexOf(afterId) + 1;
+        return pending.subList(from, pending.size()).stream()
+                .filter(id -> !uploaded.contains(id))
+                .limit(limit)
+                .toList();
+    }
+
+    private IndexingJobResponse awaitFinished(UUID jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (System.currentTimeMillis() < deadline) {
+            IndexingJobResponse job = bulkIndexingService.getJob(jobId);
+            if (!IndexingJobStatus.RUNNING.name().equals(job.status()) && job.finishedAt() != null) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        fail("indexing job " + jobId + " did not finish");
+        return null;
+    }
+
+    private IndexingJob copy(IndexingJob job) {
+        return IndexingJob.builder()
+                .id(job.getId())
+                .status(job.getStatus())
+                .total(job.getTotal())
+                .succeeded(job.getSucceeded())
+                .failed(job.getFailed())
+                .skipped(job.getSkipped())
+                .checkpointPromptId(job.getCheckpointPromptId())
+                .ownerNodeId(job.getOwnerNodeId())
+                .heartbeatAt(job.getHeartbeatAt())
+                .errorMessage(job.getErrorMessage())
+                .createdAt(job.getCreatedAt())
+                .updatedAt(job.getUpdatedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
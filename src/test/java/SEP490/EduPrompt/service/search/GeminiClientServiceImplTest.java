@@ -0,0 +1,161 @@
+package SEP490.EduPrompt.service.search;
+
+import SEP490.EduPrompt.dto.response.search.GroundingChunk;
+import SEP490.EduPrompt.model.Prompt;
+import SEP490.EduPrompt.repo.PromptRepository;
+import SEP490.EduPrompt.repo.PromptTagRepository;
+import com.google.genai.types.GroundingChunkRetrievedContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GeminiClientServiceImplTest {
+
+    private static final String STORE = "fileSearchStores/test";
+
+    @Mock
+    private PromptTagRepository promptTagRepository;
+
+    @Mock
+    private PromptRepository promptRepository;
+
+    // in-memory stand-in for the prompts table
+    private final Map<UUID, Prompt> prompts = new LinkedHashMap<>();
+    private GeminiClientServiceImpl geminiClientService;
+
+    @BeforeEach
+    void setUp() {
+        geminiClientService = new GeminiClientServiceImpl(null, promptTagRepository, promptRepository);
+        lenient().when(promptRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            List<Prompt> found = new ArrayList<>();
+            invocation.<Iterable<UUID>>getArgument(0).forEach(id -> {
+                if (prompts.containsKey(id)) {
+                    found.add(prompts.get(id));
+                }
+            });
+            return found;
+        });
+        // the prefix query returns every prompt with a document in the store, the mapping picks the right one
+        lenient().when(promptRepository.findAll(any(Specification.class))).thenAnswer(invocation -> prompts.values()
+                .stream()
+                .filter(prompt -> prompt.getGeminiFileId() != null && prompt.getGeminiFileId().startsWith(STORE))
+                .toList());
+    }
+
+    //================================================================//
+    //====================BATCHED MAPPING=============================//
+    @Test
+    void mapGroundingChunks_EmbeddedPromptIds_OneQueryForAnyNumberOfChunks() {
+        // Arrange
+        List<com.google.genai.types.GroundingChunk> few = chunksWithPromptIds(3);
+        List<com.google.genai.types.GroundingChunk> many = chunksWithPromptIds(30);
+
+        // Act
+        List<GroundingChunk> fewMapped = geminiClientService.mapGroundingChunks(STORE, few);
+        int fewQueries = mockingDetails(promptRepository).getInvocations().size();
+        clearInvocations(promptRepository);
+        List<GroundingChunk> manyMapped = geminiClientService.mapGroundingChunks(STORE, many);
+        int manyQueries = mockingDetails(promptRepository).getInvocations().size();
+
+        // Assert
+        assertEquals(3, fewMapped.size());
+        assertEquals(30, manyMapped.size());
+        assertEquals(1, fewQueries);
+        assertEquals(fewQueries, manyQueries);
+        verify(promptRepository, never()).findAll(any(Specification.class));
+    }
+
+    @Test
+    void mapGroundingChunks_TitleOnlyChunks_OnePrefixQueryForAnyNumberOfChunks() {
+        // Arrange
+        List<com.google.genai.types.GroundingChunk> few = chunksWithTitles(2);
+        List<com.google.genai.types.GroundingChunk> many = chunksWithTitles(25);
+
+        // Act
+        List<GroundingChunk> fewMapped = geminiClientService.mapGroundingChunks(STORE, few);
+        int fewQueries = mockingDetails(promptRepository).getInvocations().size();
+        clearInvocations(promptRepository);
+        List<GroundingChunk> manyMapped = geminiClientService.mapGroundingChunks(STORE, many);
+        int manyQueries = mockingDetails(promptRepository).getInvocations().size();
+
+        // Assert
+        assertEquals(2, fewMapped.size());
+        assertEquals(25, manyMapped.size());
+        assertEquals(1, fewQueries);
+        assertEquals(fewQueries, manyQueries);
+        verify(promptRepository, never()).findAllById(anyIterable());
+        for (GroundingChunk chunk : manyMapped) {
+            assertEquals(prompts.get(chunk.promptId()).getGeminiFileId(), chunk.documentId());
+        }
+    }
+
+    @Test
+    void mapGroundingChunks_UnknownChunk_SkippedAndRankKept() {
+        // Arrange
+        Prompt first = prompt("doc-first");
+        Prompt third = prompt("doc-third");
+        List<com.google.genai.types.GroundingChunk> chunks = List.of(
+                chunk(null, "PromptID: " + first.getId() + "\n\nTitle: Đề kiểm tra"),
+                chunk("doc-unknown", "Không có mã prompt"),
+                chunk("doc-third", "Title: Phiếu học tập"));
+
+        // Act
+        List<GroundingChunk> mapped = geminiClientService.mapGroundingChunks(STORE, chunks);
+
+        // Assert
+        assertEquals(List.of(first.getId(), third.getId()), mapped.stream().map(GroundingChunk::promptId).toList());
+        assertEquals(0.99, mapped.get(0).confidenceScore(), 1e-9);
+        assertEquals(0.93, mapped.get(1).confidenceScore(), 1e-9);
+        verify(promptRepository, times(1)).findAllById(anyIterable());
+        verify(promptRepository, times(1)).findAll(any(Specification.class));
+    }
+
+    private List<com.google.genai.types.GroundingChunk> chunksWithPromptIds(int count) {
+        List<com.google.genai.types.GroundingChunk> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Prompt prompt = prompt("doc-" + UUID.randomUUID());
+            chunks.add(chunk(null, "PromptID: " + prompt.getId() + "\n\nTitle: Bài tập số " + i));
+        }
+        return chunks;
+    }
+
+    private List<com.google.genai.types.GroundingChunk> chunksWithTitles(int count) {
+        List<com.google.genai.types.GroundingChunk> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String document = "doc-" + UUID.randomUUID();
+            prompt(document);
+            chunks.add(chunk(document, "Title: Bài tập số " + i));
+        }
+        return chunks;
+    }
+
+    private Prompt prompt(String document) {
+        Prompt prompt = Prompt.builder()
+                .id(UUID.randomUUID())
+                .geminiFileId(STORE + "/documents/" + document)
+                .isDeleted(false)
+                .build();
+        prompts.put(prompt.getId(), prompt);
+        return prompt;
+    }
+
+    private static com.google.genai.types.GroundingChunk chunk(String title, String text) {
+        GroundingChunkRetrievedContext.Builder context = GroundingChunkRetrievedContext.builder().text(text);
+        if (title != null) {
+            context.title(title);
+        }
+        return com.google.genai.types.GroundingChunk.builder()
+                .retrievedContext(context.build())
+                .build();
+    }
+}
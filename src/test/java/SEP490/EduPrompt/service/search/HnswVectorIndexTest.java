@@ -0,0 +1,173 @@
+package SEP490.EduPrompt.service.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswVectorIndexTest {
+
+    private static final int DIMENSIONS = 64;
+    private static final int SIZE = 5_000;
+    private static final int CLUSTERS = 40;
+
+    private final Random random = new Random(7);
+    private float[][] centers;
+    private float[][] vectors;
+    private UUID[] keys;
+    private HnswVectorIndex index;
+
+    @BeforeEach
+    void setUp() {
+        // clustered like real embeddings, uniform random vectors are unrealistically easy to separate
+        centers = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centers[c] = gaussian(1.0f, new float[DIMENSIONS]);
+        }
+        vectors = new float[SIZE][];
+        keys = new UUID[SIZE];
+        index = new HnswVectorIndex(DIMENSIONS, 16, 100, 42);
+        for (int i = 0; i < SIZE; i++) {
+            vectors[i] = gaussian(0.7f, centers[random.nextInt(CLUSTERS)]);
+            keys[i] = UUID.randomUUID();
+            index.upsert(keys[i], vectors[i]);
+        }
+    }
+
+    //================================================================//
+    //====================SEARCH======================================//
+    @Test
+    void search_ClusteredVectors_RecallAgainstExactSearch() {
+        // Arrange
+        int queries = 200;
+        int k = 10;
+        double recall = 0;
+
+        // Act
+        for (int q = 0; q < queries; q++) {
+            float[] query = gaussian(0.7f, centers[random.nextInt(CLUSTERS)]);
+            List<HnswVectorIndex.Hit> hits = index.search(query, k, 64);
+            Set<UUID> exact = exactTopK(query, k, Set.of());
+            recall += hits.stream().filter(hit -> exact.contains(hit.key())).count() / (double) k;
+        }
+
+        // Assert
+        assertTrue(recall / queries >= 0.95);
+    }
+
+    @Test
+    void search_SameVector_MostSimilarFirst() {
+        // Act
+        List<HnswVectorIndex.Hit> hits = index.search(vectors[123], 5, 64);
+
+        // Assert
+        assertEquals(5, hits.size());
+        assertEquals(keys[123], hits.getFirst().key());
+        assertEquals(1.0f, hits.getFirst().score(), 1e-5);
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).score() >= hits.get(i).score());
+        }
+    }
+
+    @Test
+    void search_EmptyIndex_NoHits() {
+        // Act + Assert
+        assertTrue(new HnswVectorIndex(DIMENSIONS, 16, 100, 42).search(vectors[0], 10, 64).isEmpty());
+    }
+
+    //================================================================//
+    //====================UPDATES=====================================//
+    @Test
+    void remove_NeverReturnedAgain() {
+        // Arrange
+        Set<UUID> removed = new HashSet<>();
+        for (int i = 0; i < SIZE; i += 5) {
+            index.remove(keys[i]);
+            removed.add(keys[i]);
+        }
+
+        // Act
+        List<HnswVectorIndex.Hit> hits = index.search(vectors[0], 10, 64);
+
+        // Assert
+        assertEquals(10, hits.size());
+        assertTrue(hits.stream().noneMatch(hit -> removed.contains(hit.key())));
+        assertEquals(exactTopK(vectors[0], 1, removed), Set.of(hits.getFirst().key()));
+        assertEquals(SIZE - removed.size(), index.size());
+        assertEquals(removed.size(), index.tombstones());
+    }
+
+    @Test
+    void upsert_ExistingKey_ReplacesVector() {
+        // Act
+        index.upsert(keys[1], vectors[2]);
+        List<HnswVectorIndex.Hit> hits = index.search(vectors[2], 2, 64);
+
+        // Assert
+        assertEquals(SIZE, index.size());
+        assertEquals(Set.of(keys[1], keys[2]), Set.of(hits.get(0).key(), hits.get(1).key()));
+        assertEquals(1.0f, hits.get(1).score(), 1e-5);
+        assertTrue(index.search(vectors[1], 10, 64).stream()
+                .noneMatch(hit -> hit.key().equals(keys[1]) && hit.score() > 0.9999f));
+    }
+
+    @Test
+    void compacted_DropsTombstones_SameResults() {
+        // Arrange
+        for (int i = 0; i < SIZE; i += 2) {
+            index.remove(keys[i]);
+        }
+
+        // Act
+        HnswVectorIndex compacted = index.compacted();
+
+        // Assert
+        assertEquals(0, compacted.tombstones());
+        assertEquals(index.size(), compacted.size());
+        assertEquals(index.search(vectors[1], 1, 64), compacted.search(vectors[1], 1, 64));
+    }
+
+    @Test
+    void upsert_WrongDimensionsOrZeroVector_Fails() {
+        // Act + Assert
+        assertThrows(IllegalArgumentException.class, () -> index.upsert(UUID.randomUUID(), new float[3]));
+        assertThrows(IllegalArgumentException.class, () -> index.upsert(UUID.randomUUID(), new float[DIMENSIONS]));
+    }
+
+    private Set<UUID> exactTopK(float[] query, int k, Set<UUID> excluded) {
+        Integer[] order = new Integer[SIZE];
+        double[] similarity = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            order[i] = i;
+            similarity[i] = excluded.contains(keys[i]) ? -2 : cosine(query, vectors[i]);
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(similarity[b], similarity[a]));
+        Set<UUID> top = new HashSet<>();
+        for (int i = 0; i < k; i++) {
+            top.add(keys[order[i]]);
+        }
+        return top;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private float[] gaussian(float spread, float[] center) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = center[i] + (float) random.nextGaussian() * spread;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,163 @@
+package SEP490.EduPrompt.service.search;
+
+import SEP490.EduPrompt.model.Prompt;
+import SEP490.EduPrompt.repo.PromptRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PromptEmbeddingBackfillTest {
+
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    @Mock
+    private PromptRepository promptRepository;
+
+    @Mock
+    private PromptVectorIndex promptVectorIndex;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private final StubEmbeddingProvider embeddingProvider = new StubEmbeddingProvider(8);
+    private final Map<UUID, Prompt> prompts = new TreeMap<>();
+    private PromptEmbeddingBackfill backfill;
+    private String doneKey;
+
+    @BeforeEach
+    void setUp() {
+        backfill = new PromptEmbeddingBackfill(promptRepository, promptVectorIndex, embeddingProvider,
+                redisTemplate, new SimpleMeterRegistry(), 2, 10);
+        doneKey = PromptEmbeddingBackfill.DONE_KEY_PREFIX + embeddingProvider.model();
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(promptVectorIndex.isLoaded()).thenReturn(true);
+        // keyset pages over the in-memory prompts, ordered by id like the native query
+        lenient().when(promptRepository.findIndexedPublicIdsAfter(any(UUID.class), anyInt())).thenAnswer(invocation -> {
+            UUID afterId = invocation.getArgument(0);
+            int limit = invocation.getArgument(1);
+            return prompts.keySet().stream().filter(id -> id.compareTo(afterId) > 0).limit(limit).toList();
+        });
+        lenient().when(promptRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            List<Prompt> found = new ArrayList<>();
+            invocation.<Iterable<UUID>>getArgument(0).forEach(id -> found.add(prompts.get(id)));
+            return found;
+        });
+    }
+
+    //================================================================//
+    //====================BACKFILL====================================//
+    @Test
+    void backfillIfNeeded_PromptsWithoutEmbeddings_EmbeddedAcrossPagesThenFlagSet() {
+        // Arrange
+        List<Prompt> all = addPrompts(5);
+        when(promptVectorIndex.contains(all.get(1).getId())).thenReturn(true);
+        when(valueOperations.setIfAbsent(eq(PromptEmbeddingBackfill.LOCK_KEY), anyString(), any(Duration.class)))
+                .thenReturn(true);
+
+        // Act
+        backfill.backfillIfNeeded();
+
+        // Assert
+        verify(promptVectorIndex, times(4)).index(any(Prompt.class));
+        verify(promptVectorIndex, never()).index(all.get(1));
+        verify(promptRepository).findIndexedPublicIdsAfter(FIRST_ID, 2);
+        verify(promptRepository).findIndexedPublicIdsAfter(all.get(1).getId(), 2);
+        verify(promptRepository).findIndexedPublicIdsAfter(all.get(3).getId(), 2);
+        verify(valueOperations).set(eq(doneKey), anyString());
+        verify(promptVectorIndex).markBackfilled();
+        verify(redisTemplate).delete(PromptEmbeddingBackfill.LOCK_KEY);
+    }
+
+    @Test
+    void backfillIfNeeded_PromptFailsToEmbed_FlagNotSetSoSearchStaysOnGemini() {
+        // Arrange
+        List<Prompt> all = addPrompts(3);
+        doThrow(new IllegalStateException("embedding quota")).when(promptVectorIndex).index(all.get(0));
+        when(valueOperations.setIfAbsent(eq(PromptEmbeddingBackfill.LOCK_KEY), anyString(), any(Duration.class)))
+                .thenReturn(true);
+
+        // Act
+        backfill.backfillIfNeeded();
+
+        // Assert: the other prompts are still embedded, the next round retries the failed one
+        verify(promptVectorIndex).index(all.get(1));
+        verify(promptVectorIndex).index(all.get(2));
+        verify(valueOperations, never()).set(eq(doneKey), anyString());
+        verify(promptVectorIndex, never()).markBackfilled();
+        verify(redisTemplate).delete(PromptEmbeddingBackfill.LOCK_KEY);
+    }
+
+    @Test
+    void backfillIfNeeded_DoneOnAnotherNode_AdoptedWithoutEmbedding() {
+        // Arrange
+        addPrompts(3);
+        when(redisTemplate.hasKey(doneKey)).thenReturn(true);
+
+        // Act
+        backfill.backfillIfNeeded();
+
+        // Assert
+        verify(promptVectorIndex).markBackfilled();
+        verify(promptVectorIndex, never()).index(any());
+        verifyNoInteractions(valueOperations);
+    }
+
+    @Test
+    void backfillIfNeeded_AnotherNodeBackfilling_WaitsForItsFlag() {
+        // Arrange
+        addPrompts(3);
+        when(valueOperations.setIfAbsent(eq(PromptEmbeddingBackfill.LOCK_KEY), anyString(), any(Duration.class)))
+                .thenReturn(false);
+
+        // Act
+        backfill.backfillIfNeeded();
+
+        // Assert
+        verify(promptVectorIndex, never()).index(any());
+        verify(promptVectorIndex, never()).markBackfilled();
+        verify(redisTemplate, never()).delete(anyString());
+    }
+
+    @Test
+    void backfillIfNeeded_IndexNotLoadedYet_NothingDone() {
+        // Arrange
+        when(promptVectorIndex.isLoaded()).thenReturn(false);
+
+        // Act
+        backfill.backfillIfNeeded();
+
+        // Assert
+        verifyNoInteractions(redisTemplate, promptRepository);
+        verify(promptVectorIndex, never()).markBackfilled();
+    }
+
+    private List<Prompt> addPrompts(int count) {
+        for (int i = 0; i < count; i++) {
+            Prompt prompt = Prompt.builder()
+                    .id(UUID.randomUUID())
+                    .title("Prompt " + i)
+                    .instruction("Instruction " + i)
+                    .visibility("PUBLIC")
+                    .isDeleted(false)
+                    .build();
+            prompts.put(prompt.getId(), prompt);
+        }
+        return new ArrayList<>(prompts.values());
+    }
+}
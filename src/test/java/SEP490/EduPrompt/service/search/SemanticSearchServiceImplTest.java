@@ -0,0 +1,543 @@
+package SEP490.EduPrompt.service.search;
+
+import SEP490.EduPrompt.dto.request.search.SemanticSearchRequest;
+import SEP490.EduPrompt.dto.response.search.GroundingChunk;
+import SEP490.EduPrompt.dto.response.search.SearchResultItem;
+import SEP490.EduPrompt.dto.response.search.SemanticSearchResponse;
+import SEP490.EduPrompt.exception.client.GeminiApiException;
+import SEP490.EduPrompt.model.Prompt;
+import SEP490.EduPrompt.model.PromptEmbedding;
+import SEP490.EduPrompt.model.User;
+import SEP490.EduPrompt.repo.PromptEmbeddingRepository;
+import SEP490.EduPrompt.repo.PromptRepository;
+import SEP490.EduPrompt.repo.SemanticSearchLogRepository;
+import SEP490.EduPrompt.repo.UserRepository;
+import SEP490.EduPrompt.service.ai.AiJobExecutor;
+import SEP490.EduPrompt.service.cache.NearCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SemanticSearchServiceImplTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final String STORE = "fileSearchStores/test";
+
+    @Mock
+    private GeminiClientService geminiClientService;
+
+    @Mock
+    private PromptRepository promptRepository;
+
+    @Mock
+    private SemanticSearchLogRepository semanticSearchLogRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PromptEmbeddingRepository promptEmbeddingRepository;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    // in-memory stand-ins for the prompts and prompt_embeddings tables
+    private final Map<UUID, Prompt> prompts = new HashMap<>();
+    private final Map<UUID, PromptEmbedding> embeddings = new HashMap<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong indexGeneration = new AtomicLong();
+    private AiJobExecutor aiJobExecutor;
+    private SearchResultCache searchResultCache;
+    private StubEmbeddingProvider embeddingProvider;
+    private PromptVectorIndex vectorIndex;
+    private SemanticSearchServiceImpl searchService;
+    private Prompt quadratic;
+    private Prompt essay;
+    private Prompt chemistry;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(promptEmbeddingRepository.save(any(PromptEmbedding.class))).thenAnswer(invocation -> {
+            PromptEmbedding embedding = invocation.getArgument(0);
+            embeddings.put(embedding.getPromptId(), embedding);
+            return embedding;
+        });
+        lenient().when(promptEmbeddingRepository.findById(any(UUID.class)))
+                .thenAnswer(invocation -> Optional.ofNullable(embeddings.get(invocation.<UUID>getArgument(0))));
+        lenient().when(promptRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            List<Prompt> found = new ArrayList<>();
+            invocation.<Iterable<UUID>>getArgument(0).forEach(id -> {
+                if (prompts.containsKey(id)) {
+                    found.add(prompts.get(id));
+                }
+            });
+            return found;
+        });
+        lenient().when(userRepository.findById(USER_ID)).thenReturn(Optional.of(User.builder().id(USER_ID).build()));
+
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(valueOperations.get(SearchResultCache.GENERATION_KEY))
+                .thenAnswer(invocation -> String.valueOf(indexGeneration.get()));
+        lenient().when(valueOperations.increment(SearchResultCache.GENERATION_KEY))
+                .thenAnswer(invocation -> indexGeneration.incrementAndGet());
+
+        aiJobExecutor = new AiJobExecutor(meterRegistry, new MockEnvironment(), 32);
+        // off unless a test is about caching, repeated searches must reach the search tiers
+        searchResultCache = resultCache(false);
+        embeddingProvider = new StubEmbeddingProvider(256);
+        vectorIndex = vectorIndex();
+        searchService = searchService(vectorIndex);
+
+        quadratic = prompt("Bài tập phương trình bậc hai",
+                "Tạo 10 bài tập giải phương trình bậc hai cho học sinh lớp 10, có đáp án và lời giải");
+        essay = prompt("Nghị luận văn học Chí Phèo",
+                "Hướng dẫn học sinh lớp 11 viết bài văn nghị luận về nhân vật Chí Phèo");
+        chemistry = prompt("Phản ứng oxi hóa khử",
+                "Soạn câu hỏi trắc nghiệm về cân bằng phản ứng oxi hóa khử cho lớp 10");
+        prompts.values().forEach(vectorIndex::index);
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiJobExecutor.shutdown();
+    }
+
+    //================================================================//
+    //====================LOCAL SEARCH================================//
+    @Test
+    void search_IndexedPrompts_AnsweredLocallyWithoutGemini() {
+        // Act
+        SemanticSearchResponse response = searchService.search(request("bài tập phương trình bậc hai lớp 10"));
+
+        // Assert
+        assertEquals(quadratic.getId(), response.results().getFirst().promptId());
+        assertTrue(response.results().getFirst().relevanceScore() > response.results().getLast().relevanceScore());
+        assertEquals(1, embeddingProvider.queryCalls.get());
+        verifyNoInteractions(geminiClientService);
+    }
+
+    @Test
+    void search_PromptMadePrivateOrRemoved_NotReturned() {
+        // Arrange
+        quadratic.setVisibility("PRIVATE");
+        vectorIndex.remove(chemistry.getId());
+
+        // Act
+        SemanticSearchResponse response = searchService.search(request("bài tập phương trình bậc hai lớp 10"));
+
+        // Assert
+        assertEquals(List.of(essay.getId()), response.results().stream().map(SearchResultItem::promptId).toList());
+        verify(promptEmbeddingRepository).deleteById(chemistry.getId());
+    }
+
+    @Test
+    void search_EmptyIndex_FallsBackToGeminiFileSearch() {
+        // Arrange
+        SemanticSearchServiceImpl emptyIndexService = searchService(vectorIndex());
+        when(geminiClientService.searchDocuments(eq(STORE), anyString(), anyInt()))
+                .thenReturn(List.of(chunk(quadratic, "phương trình", 0.9)));
+
+        // Act
+        SemanticSearchResponse response = emptyIndexService.search(request("phương trình bậc hai"));
+
+        // Assert
+        assertEquals(List.of(quadratic.getId()), response.results().stream().map(SearchResultItem::promptId).toList());
+        assertEquals(0, embeddingProvider.queryCalls.get());
+    }
+
+    @Test
+    void search_BackfillNotFinished_StaysOnGeminiFileSearch() {
+        // Arrange: prompts are in the index, but older indexed prompts may still lack embeddings
+        PromptVectorIndex partialIndex = new PromptVectorIndex(embeddingProvider, promptEmbeddingRepository,
+                new SimpleMeterRegistry(), searchResultCache, redisTemplate, null, 16, 100, 64);
+        prompts.values().forEach(partialIndex::index);
+        when(geminiClientService.searchDocuments(eq(STORE), anyString(), anyInt()))
+                .thenReturn(List.of(chunk(quadratic, "phương trình", 0.9)));
+
+        // Act
+        SemanticSearchResponse response = searchService(partialIndex).search(request("phương trình bậc hai"));
+
+        // Assert
+        assertEquals(List.of(quadratic.getId()), response.results().stream().map(SearchResultItem::promptId).toList());
+        assertEquals(0, embeddingProvider.queryCalls.get());
+    }
+
+    @Test
+    void hybridSearch_BackfillNotFinished_FullTextOnly() {
+        // Arrange
+        PromptVectorIndex partialIndex = new PromptVectorIndex(embeddingProvider, promptEmbeddingRepository,
+                new SimpleMeterRegistry(), searchResultCache, redisTemplate, null, 16, 100, 64);
+        prompts.values().forEach(partialIndex::index);
+        when(promptRepository.searchByText(anyString(), anyInt())).thenReturn(List.of(match(chemistry, 0.3)));
+
+        // Act
+        SemanticSearchResponse response = searchService(partialIndex).hybridSearch(request("oxi hóa khử"));
+
+        // Assert
+        assertEquals("lexical", response.mode());
+        assertEquals(0, embeddingProvider.queryCalls.get());
+    }
+
+    @Test
+    void search_FileSearchFallback_OneQueryForAnyNumberOfResults() {
+        // Arrange
+        SemanticSearchServiceImpl emptyIndexService = searchService(vectorIndex());
+        when(geminiClientService.searchDocuments(eq(STORE), anyString(), anyInt()))
+                .thenReturn(chunks(2))
+                .thenReturn(chunks(40));
+
+        // Act
+        clearInvocations(promptRepository);
+        emptyIndexService.search(request("phương trình bậc hai"));
+        int fewResultQueries = mockingDetails(promptRepository).getInvocations().size();
+        clearInvocations(promptRepository);
+        SemanticSearchResponse response = emptyIndexService.search(request("phương trình bậc hai"));
+        int manyResultQueries = mockingDetails(promptRepository).getInvocations().size();
+
+        // Assert
+        assertEquals(10, response.results().size());
+        assertEquals(1, fewResultQueries);
+        assertEquals(fewResultQueries, manyResultQueries);
+    }
+
+    //================================================================//
+    //====================RE-RANKING==================================//
+    @Test
+    void search_RerankEnabled_BlendsFileSearchGrounding() {
+        // Arrange
+        ReflectionTestUtils.setField(searchService, "rerankEnabled", true);
+        when(geminiClientService.searchDocuments(eq(STORE), anyString(), anyInt()))
+                .thenReturn(List.of(chunk(essay, "Chí Phèo - bi kịch tha hóa", 0.99)));
+
+        // Act
+        SemanticSearchResponse response = searchService.search(request("bài tập phương trình bậc hai lớp 10"));
+
+        // Assert
+        SearchResultItem first = response.results().getFirst();
+        assertEquals(essay.getId(), first.promptId());
+        assertEquals("Chí Phèo - bi kịch tha hóa", first.matchedSnippet());
+        assertTrue(first.relevanceScore() >= 0.5 * 0.99);
+    }
+
+    @Test
+    void search_RerankFails_KeepsVectorOrder() {
+        // Arrange
+        ReflectionTestUtils.setField(searchService, "rerankEnabled", true);
+        when(geminiClientService.searchDocuments(eq(STORE), anyString(), anyInt()))
+                .thenThrow(new GeminiApiException("Gemini unavailable"));
+
+        // Act
+        SemanticSearchResponse response = searchService.search(request("bài tập phương trình bậc hai lớp 10"));
+
+        // Assert
+        assertEquals(quadratic.getId(), response.results().getFirst().promptId());
+    }
+
+    //================================================================//
+    //====================INDEXING====================================//
+    @Test
+    void index_UnchangedText_NotEmbeddedAgain() {
+        // Arrange
+        int embedded = embeddingProvider.documentCalls.get();
+
+        // Act
+        vectorIndex.index(quadratic);
+        quadratic.setInstruction("Soạn đề kiểm tra Chí Phèo");
+        vectorIndex.index(quadratic);
+
+        // Assert
+        assertEquals(3, embedded);
+        assertEquals(4, embeddingProvider.documentCalls.get());
+        assertEquals(3, vectorIndex.size());
+        SemanticSearchResponse response = searchService.search(request("phương trình bậc hai"));
+        assertEquals(quadratic.getId(), response.results().getFirst().promptId());
+    }
+
+    @Test
+    void index_UnchangedTextAlreadyIndexed_NotReinsertedOrPublished() {
+        // Act
+        vectorIndex.index(quadratic);
+
+        // Assert: one message per prompt from setUp, none for the unchanged one
+        verify(redisTemplate, times(3)).convertAndSend(eq(PromptVectorIndex.SYNC_CHANNEL), anyString());
+        assertEquals(3, vectorIndex.size());
+    }
+
+    @Test
+    void onSync_ChangeOnOtherNode_AppliedFromStoredEmbedding() {
+        // Arrange: a second node that has not loaded anything yet
+        PromptVectorIndex otherNode = vectorIndex();
+
+        // Act
+        otherNode.onSync("node-a|index|" + quadratic.getId() + "|1");
+        otherNode.onSync("node-a|index|" + essay.getId() + "|2");
+        otherNode.onSync("node-a|remove|" + essay.getId() + "|3");
+
+        // Assert
+        assertEquals(1, otherNode.size());
+        assertEquals(quadratic.getId(), otherNode.search("phương trình bậc hai", 1).getFirst().key());
+        assertEquals(3, embeddingProvider.documentCalls.get());
+    }
+
+    //================================================================//
+    //====================RESULT CACHE================================//
+    @Test
+    void search_RepeatedQuery_HydratedFromCacheWithOneQuery() {
+        // Arrange
+        SemanticSearchServiceImpl cachedService = cachedService();
+        SemanticSearchResponse first = cachedService.search(request("Đề kiểm tra phương trình bậc hai"));
+        clearInvocations(promptRepository);
+
+        // Act
+        SemanticSearchResponse repeated = cachedService.search(request("  đề kiểm tra   PHƯƠNG trình bậc hai "));
+
+        // Assert
+        assertEquals(first.results().stream().map(SearchResultItem::promptId).toList(),
+                repeated.results().stream().map(SearchResultItem::promptId).toList());
+        assertEquals(first.results().getFirst().relevanceScore(), repeated.results().getFirst().relevanceScore());
+        assertEquals(1, embeddingProvider.queryCalls.get());
+        assertEquals(1, mockingDetails(promptRepository).getInvocations().size());
+        assertEquals(1.0, meterRegistry.counter("search.cache", "result", "hit").count());
+        // the generation is kept locally after the first read
+        verify(valueOperations, times(1)).get(SearchResultCache.GENERATION_KEY);
+    }
+
+    @Test
+    void search_IndexGenerationBumped_SearchedAgain() {
+        // Arrange
+        SemanticSearchServiceImpl cachedService = cachedService();
+        cachedService.search(request("phương trình bậc hai"));
+        quadratic.setVisibility("PRIVATE");
+
+        // Act
+        vectorIndex.remove(quadratic.getId());
+        SemanticSearchResponse response = cachedService.search(request("phương trình bậc hai"));
+
+        // Assert
+        assertEquals(2, embeddingProvider.queryCalls.get());
+        assertFalse(response.results().stream().anyMatch(item -> item.promptId().equals(quadratic.getId())));
+    }
+
+    @Test
+    void search_IndexChangedOnOtherNode_SearchedAgain() {
+        // Arrange
+        SemanticSearchServiceImpl cachedService = cachedService();
+        cachedService.search(request("phương trình bậc hai"));
+
+        // Act: another node removed the prompt and bumped the generation
+        vectorIndex.onSync("node-b|remove|" + quadratic.getId() + "|" + indexGeneration.incrementAndGet());
+        SemanticSearchResponse response = cachedService.search(request("phương trình bậc hai"));
+
+        // Assert
+        assertEquals(2, embeddingProvider.queryCalls.get());
+        assertFalse(response.results().stream().anyMatch(item -> item.promptId().equals(quadratic.getId())));
+        verify(valueOperations, times(1)).get(SearchResultCache.GENERATION_KEY);
+    }
+
+    @Test
+    void search_CachedPromptMadePrivate_DroppedOnHydration() {
+        // Arrange
+        SemanticSearchServiceImpl cachedService = cachedService();
+        cachedService.search(request("phương trình bậc hai"));
+        quadratic.setVisibility("PRIVATE");
+
+        // Act
+        SemanticSearchResponse response = cachedService.search(request("phương trình bậc hai"));
+
+        // Assert
+        assertEquals(1, embeddingProvider.queryCalls.get());
+        assertEquals(2, response.results().size());
+        assertFalse(response.results().stream().anyMatch(item -> item.promptId().equals(quadratic.getId())));
+    }
+
+    @Test
+    void search_RedisDownBeforeGenerationKnown_SearchesWithoutCache() {
+        // Arrange: this cache has not read or been handed a generation yet
+        searchResultCache = resultCache(true);
+        SemanticSearchServiceImpl cachedService = searchService(vectorIndex);
+        when(valueOperations.get(SearchResultCache.GENERATION_KEY)).thenThrow(new RedisConnectionFailureException("down"));
+
+        // Act
+        cachedService.search(request("phương trình bậc hai"));
+        SemanticSearchResponse response = cachedService.search(request("phương trình bậc hai"));
+
+        // Assert
+        assertEquals(quadratic.getId(), response.results().getFirst().promptId());
+        assertEquals(2, embeddingProvider.queryCalls.get());
+    }
+
+    //================================================================//
+    //====================HYBRID SEARCH===============================//
+    @Test
+    void hybridSearch_BothTiers_FusedByReciprocalRank() {
+        // Arrange
+        when(promptRepository.searchByText(anyString(), anyInt()))
+                .thenReturn(List.of(match(essay, 0.4), match(quadratic, 0.2)));
+
+        // Act
+        SemanticSearchResponse response = searchService.hybridSearch(request("bài tập phương trình bậc hai lớp 10"));
+
+        // Assert
+        assertEquals("hybrid", response.mode());
+        // quadratic: 2nd full-text + 1st semantic, essay: 1st full-text + last semantic
+        assertEquals(List.of(quadratic.getId(), essay.getId(), chemistry.getId()),
+                response.results().stream().map(SearchResultItem::promptId).toList());
+        assertEquals((1.0 / 62 + 1.0 / 61) / (2.0 / 61), response.results().getFirst().relevanceScore(), 1e-9);
+        verify(promptRepository).searchByText("bài | tập | phương | trình | bậc | hai | lớp | 10", 20);
+        verifyNoInteractions(geminiClientService);
+    }
+
+    @Test
+    void hybridSearch_SemanticTierSlow_FullTextOnlyWithinBudget() {
+        // Arrange
+        ReflectionTestUtils.setField(searchService, "semanticBudgetMs", 100L);
+        embeddingProvider.queryDelayMs = 5000;
+        when(promptRepository.searchByText(anyString(), anyInt()))
+                .thenReturn(List.of(match(essay, 0.4), match(quadratic, 0.2)));
+
+        // Act
+        long start = System.currentTimeMillis();
+        SemanticSearchResponse response = searchService.hybridSearch(request("bài tập phương trình bậc hai lớp 10"));
+        long elapsed = System.currentTimeMillis() - start;
+
+        // Assert
+        assertEquals("lexical", response.mode());
+        assertEquals(List.of(essay.getId(), quadratic.getId()),
+                response.results().stream().map(SearchResultItem::promptId).toList());
+        assertEquals(1.0, response.results().getFirst().relevanceScore(), 1e-9);
+        assertTrue(elapsed < 1000, "answered in " + elapsed + "ms");
+        assertEquals(1.0, meterRegistry.counter("search.hybrid.semantic", "outcome", "timeout").count());
+    }
+
+    @Test
+    void hybridSearch_EmptyIndex_FullTextOnly() {
+        // Arrange
+        SemanticSearchServiceImpl emptyIndexService = searchService(vectorIndex());
+        when(promptRepository.searchByText(anyString(), anyInt())).thenReturn(List.of(match(chemistry, 0.3)));
+
+        // Act
+        SemanticSearchResponse response = emptyIndexService.hybridSearch(request("oxi hóa khử"));
+
+        // Assert
+        assertEquals("lexical", response.mode());
+        assertEquals(List.of(chemistry.getId()), response.results().stream().map(SearchResultItem::promptId).toList());
+        assertEquals(0, embeddingProvider.queryCalls.get());
+        verifyNoInteractions(geminiClientService);
+    }
+
+    @Test
+    void lexicalTerms_PunctuationAndDecomposedAccents_WordsOnly() {
+        // Act + Assert
+        assertEquals("phương | trình | bậc | hai",
+                SemanticSearchServiceImpl.lexicalTerms(Normalizer.normalize("Phương trình: bậc hai & (bậc hai)!",
+                        Normalizer.Form.NFD)));
+        assertEquals("", SemanticSearchServiceImpl.lexicalTerms("'&|!:*"));
+    }
+
+    // backfill finished unless a test is about the switch-over
+    private PromptVectorIndex vectorIndex() {
+        PromptVectorIndex index = new PromptVectorIndex(embeddingProvider, promptEmbeddingRepository,
+                new SimpleMeterRegistry(), searchResultCache, redisTemplate, null, 16, 100, 64);
+        index.markBackfilled();
+        return index;
+    }
+
+    private SemanticSearchServiceImpl searchService(PromptVectorIndex index) {
+        SemanticSearchServiceImpl service = new SemanticSearchServiceImpl(geminiClientService, promptRepository,
+                semanticSearchLogRepository, userRepository, index, aiJobExecutor, meterRegistry, searchResultCache);
+        ReflectionTestUtils.setField(service, "fileSearchStoreName", STORE);
+        ReflectionTestUtils.setField(service, "rerankWeight", 0.5);
+        ReflectionTestUtils.setField(service, "semanticBudgetMs", 2000L);
+        ReflectionTestUtils.setField(service, "rrfK", 60);
+        return service;
+    }
+
+    private SearchResultCache resultCache(boolean enabled) {
+        NearCache nearCache = new NearCache(redisTemplate, null, new ObjectMapper(), meterRegistry, 100, 10);
+        return new SearchResultCache(nearCache, redisTemplate, meterRegistry, enabled, 10, 30);
+    }
+
+    // the vector index bumps the cache generation, so it is rebuilt on the enabled cache
+    private SemanticSearchServiceImpl cachedService() {
+        searchResultCache = resultCache(true);
+        vectorIndex = vectorIndex();
+        prompts.values().forEach(vectorIndex::index);
+        return searchService(vectorIndex);
+    }
+
+    private Prompt prompt(String title, String instruction) {
+        Prompt prompt = Prompt.builder()
+                .id(UUID.randomUUID())
+                .title(title)
+                .instruction(instruction)
+                .visibility("PUBLIC")
+                .isDeleted(false)
+                .build();
+        prompts.put(prompt.getId(), prompt);
+        return prompt;
+    }
+
+    // two chunks per prompt, like a document matched in several sections
+    private List<GroundingChunk> chunks(int count) {
+        List<GroundingChunk> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Prompt prompt = prompt("Đề ôn tập số " + i, "Soạn đề ôn tập phương trình số " + i);
+            chunks.add(chunk(prompt, "Đề ôn tập", 0.99 - i * 0.01));
+            chunks.add(chunk(prompt, "phương trình", 0.5));
+        }
+        return chunks;
+    }
+
+    private static GroundingChunk chunk(Prompt prompt, String text, double confidence) {
+        return GroundingChunk.builder()
+                .documentId("fileSearchStores/test/documents/" + prompt.getId())
+                .promptId(prompt.getId())
+                .text(text)
+                .confidenceScore(confidence)
+                .build();
+    }
+
+    private static PromptRepository.LexicalMatchProjection match(Prompt prompt, double rank) {
+        return new PromptRepository.LexicalMatchProjection() {
+            @Override
+            public UUID getPromptId() {
+                return prompt.getId();
+            }
+
+            @Override
+            public Double getRank() {
+                return rank;
+            }
+        };
+    }
+
+    private static SemanticSearchRequest request(String query) {
+        return SemanticSearchRequest.builder()
+                .query(query)
+                .userId(USER_ID)
+                .username("teacher")
+                .build();
+    }
+}
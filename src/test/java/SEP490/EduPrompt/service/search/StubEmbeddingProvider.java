@@ -0,0 +1,66 @@
+package SEP490.EduPrompt.service.search;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deterministic local embeddings for tests: words hashed into signed buckets (bag of words), so texts sharing
+ * words are close and the same text always gives the same vector
+ */
+class StubEmbeddingProvider implements EmbeddingProvider {
+
+    private final int dimensions;
+    final AtomicInteger documentCalls = new AtomicInteger();
+    final AtomicInteger queryCalls = new AtomicInteger();
+    // simulates a slow embedding call
+    volatile long queryDelayMs;
+
+    StubEmbeddingProvider(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public String model() {
+        return "stub/" + dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public float[] embedDocument(String text) {
+        documentCalls.incrementAndGet();
+        return embed(text);
+    }
+
+    @Override
+    public float[] embedQuery(String text) {
+        queryCalls.incrementAndGet();
+        if (queryDelayMs > 0) {
+            try {
+                Thread.sleep(queryDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("embedding interrupted", e);
+            }
+        }
+        return embed(text);
+    }
+
+    private float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        String folded = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "");
+        for (String word : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            int hash = word.hashCode() * 0x9E3779B9;
+            vector[Math.floorMod(hash, dimensions)] += (hash & 0x10000) == 0 ? 1 : -1;
+        }
+        return vector;
+    }
+}
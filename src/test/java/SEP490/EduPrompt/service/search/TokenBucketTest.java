@@ -0,0 +1,77 @@
+package SEP490.EduPrompt.service.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    //================================================================//
+    //====================RESERVE=====================================//
+    @Test
+    void reserve_FullBucket_BurstThenOnePerInterval() {
+        // Arrange
+        TokenBucket bucket = new TokenBucket(60, 10, clock::get);
+
+        // Act
+        long[] waits = new long[12];
+        for (int i = 0; i < waits.length; i++) {
+            waits[i] = bucket.reserve();
+        }
+
+        // Assert
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, waits[i]);
+        }
+        assertEquals(TimeUnit.SECONDS.toNanos(1), waits[10], 1);
+        assertEquals(TimeUnit.SECONDS.toNanos(2), waits[11], 1);
+    }
+
+    @Test
+    void reserve_IdlePeriod_RefillsUpToCapacityOnly() {
+        // Arrange
+        TokenBucket bucket = new TokenBucket(60, 3, clock::get);
+        for (int i = 0; i < 3; i++) {
+            bucket.reserve();
+        }
+
+        // Act
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        long first = bucket.reserve();
+        long second = bucket.reserve();
+        long third = bucket.reserve();
+        long fourth = bucket.reserve();
+
+        // Assert
+        assertEquals(0, first + second + third);
+        assertEquals(TimeUnit.SECONDS.toNanos(1), fourth, 1);
+    }
+
+    @Test
+    void reserve_SustainedLoad_NeverExceedsRate() {
+        // Arrange
+        int perMinute = 120;
+        TokenBucket bucket = new TokenBucket(perMinute, 5, clock::get);
+
+        // Act
+        long lastWait = 0;
+        for (int i = 0; i < 605; i++) {
+            lastWait = bucket.reserve();
+        }
+
+        // Assert: 600 calls past the burst take 600 / 120 minutes
+        assertEquals(TimeUnit.MINUTES.toNanos(5), lastWait, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    void constructor_NonPositiveRate_Fails() {
+        // Act + Assert
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(60, 0));
+    }
+}
@@ -0,0 +1,100 @@
+package SEP490.EduPrompt.util;
+
+import SEP490.EduPrompt.constant.AiPromptTemplates;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptTemplateTest {
+
+    // the String.format version AiClientServiceImpl used before the templates
+    private static final String LEGACY_INSTRUCTION_CLARITY = """
+            Evaluate the clarity of this instruction (0-40 points):
+
+            %s
+
+            Consider:
+            - Is the AI's role crystal clear?
+            - Is the task unambiguous?
+            - Would different AI models interpret this similarly?
+
+            Return ONLY a JSON object:
+            {"score": <0-40>, "reason": "<brief explanation>"}
+            """;
+    private static final String PROMPT = "Bạn là giáo viên Toán. Tạo bài tập về phương trình bậc hai cho học sinh lớp 10, "
+            .repeat(20);
+
+    //================================================================//
+    //====================RENDERING===================================//
+    @Test
+    void render_SlotsReusedAndOutOfOrder_ValuesInPlace() {
+        // Arrange
+        PromptTemplate template = PromptTemplate.compile("{{b}} then {{a}}, again {{b}}", "a", "b");
+
+        // Act + Assert
+        assertEquals("2 then 1, again 2", template.render("1", "2"));
+        assertEquals("null then x, again null", template.render("x", null));
+    }
+
+    @Test
+    void render_SameAsLegacyFormat() {
+        // Act + Assert
+        assertEquals(String.format(LEGACY_INSTRUCTION_CLARITY, PROMPT),
+                AiPromptTemplates.INSTRUCTION_CLARITY_SCORE.render(PROMPT));
+    }
+
+    @Test
+    void render_VirtualThread_SameResult() throws Exception {
+        // Arrange
+        String[] rendered = new String[1];
+
+        // Act
+        Thread.ofVirtual().start(() -> rendered[0] = AiPromptTemplates.INSTRUCTION_CLARITY_SCORE.render(PROMPT)).join();
+
+        // Assert
+        assertEquals(AiPromptTemplates.INSTRUCTION_CLARITY_SCORE.render(PROMPT), rendered[0]);
+    }
+
+    @Test
+    void compile_UndeclaredOrUnusedSlot_Fails() {
+        // Act + Assert
+        assertThrows(IllegalArgumentException.class, () -> PromptTemplate.compile("{{promptText}}", "prompt"));
+        assertThrows(IllegalArgumentException.class, () -> PromptTemplate.compile("{{a}}", "a", "b"));
+        assertThrows(IllegalArgumentException.class,
+                () -> AiPromptTemplates.INSTRUCTION_CLARITY_SCORE.render(PROMPT, "extra"));
+    }
+
+    //================================================================//
+    //====================ALLOCATION==================================//
+    @Test
+    void render_VsStringFormat_AllocatesLess() {
+        // Arrange
+        int iterations = 20_000;
+        for (int i = 0; i < iterations; i++) {
+            String.format(LEGACY_INSTRUCTION_CLARITY, PROMPT);
+            AiPromptTemplates.INSTRUCTION_CLARITY_SCORE.render(PROMPT);
+        }
+
+        // Act
+        long format = bytesPerOp(iterations, () -> String.format(LEGACY_INSTRUCTION_CLARITY, PROMPT));
+        long template = bytesPerOp(iterations, () -> AiPromptTemplates.INSTRUCTION_CLARITY_SCORE.render(PROMPT));
+
+        // Assert
+        assertTrue(template < format);
+    }
+
+    private static long bytesPerOp(int iterations, java.util.function.Supplier<String> render) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long checksum = 0;
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            checksum += render.get().length();
+        }
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        assertTrue(checksum > 0);
+        return bytes / iterations;
+    }
+}